@@ -4,70 +4,222 @@
 
 package org.jetbrains.ide.diff.builder.api
 
+import com.jetbrains.plugin.structure.classes.resolvers.ResolutionResult
 import com.jetbrains.plugin.structure.classes.resolvers.Resolver
 import com.jetbrains.pluginverifier.verifiers.resolution.*
 import org.jetbrains.ide.diff.builder.filter.ClassFilter
+import org.objectweb.asm.tree.ClassNode
+import org.objectweb.asm.tree.FieldNode
+import org.objectweb.asm.tree.MethodNode
+import java.util.concurrent.*
+import java.util.concurrent.atomic.AtomicBoolean
 
+/**
+ * Builds API diff of classes of two resolvers and passes differing members to the [processors].
+ */
 class ApiDiffBuilder(
   private val classFilter: ClassFilter,
   private val processors: List<ApiDiffProcessor>
 ) {
 
+  private companion object {
+    /**
+     * Members of classes with fewer methods or fields are paired by linear search,
+     * which doesn't allocate, and members of bigger classes are paired by hash lookup.
+     */
+    private const val MAX_MEMBERS_TO_SCAN = 16
+  }
+
   fun buildDiff(
     oldResolver: Resolver,
     newResolver: Resolver,
     oldClasses: Set<String>,
     newClasses: Set<String>
   ) {
-    for (className in (oldClasses + newClasses)) {
-      if (isIgnoredClassName(className)) {
-        continue
-      }
+    forEachClass(oldClasses, newClasses) { className ->
+      buildClassDiff(className, oldResolver, newResolver)
+    }
+  }
 
-      val oldClass = oldResolver.resolveClassOrNull(className)
-      val newClass = newResolver.resolveClassOrNull(className)
+  /**
+   * Builds API diff on [forkJoinPool], processing classes of each package as a separate task.
+   *
+   * The resolvers and the [processors] must be safe to use from several threads.
+   * If a task fails, the remaining tasks are stopped and awaited before the failure is rethrown,
+   * so that none of them uses the resolvers after they are closed by the caller.
+   */
+  @Throws(InterruptedException::class)
+  fun buildDiff(
+    oldResolver: Resolver,
+    newResolver: Resolver,
+    oldClasses: Set<String>,
+    newClasses: Set<String>,
+    forkJoinPool: ForkJoinPool
+  ) {
+    val packageToClasses = hashMapOf<String, MutableList<String>>()
+    forEachClass(oldClasses, newClasses) { className ->
+      packageToClasses.getOrPut(className.substringBeforeLast('/', "")) { arrayListOf() } += className
+    }
+    val cancelled = AtomicBoolean()
+    val futures = packageToClasses.values.map { packageClasses ->
+      forkJoinPool.submit(Callable {
+        for (className in packageClasses) {
+          if (cancelled.get()) {
+            throw InterruptedException()
+          }
+          buildClassDiff(className, oldResolver, newResolver)
+        }
+      })
+    }
+    try {
+      futures.forEach { it.getOrRethrow() }
+    } catch (e: Throwable) {
+      cancelled.set(true)
+      awaitCompletion(futures)
+      throw e
+    }
+  }
 
-      buildApiDiff(oldClass, newClass, oldResolver, newResolver) skip@{ oldMember, newMember ->
-        if (oldMember != null && oldMember.isIgnored || newMember != null && newMember.isIgnored) {
-          return@skip
+  /**
+   * Waits until all the [futures] complete, ignoring their failures.
+   * Interruption of the waiting thread is postponed until all the [futures] complete.
+   */
+  private fun awaitCompletion(futures: List<Future<*>>) {
+    var interrupted = false
+    for (future in futures) {
+      while (true) {
+        try {
+          future.get()
+          break
+        } catch (ie: InterruptedException) {
+          interrupted = true
+        } catch (e: ExecutionException) {
+          break
+        } catch (e: CancellationException) {
+          break
         }
-        processors.forEach { it.process(oldClass, oldMember, newClass, newMember, oldResolver, newResolver) }
       }
     }
+    if (interrupted) {
+      Thread.currentThread().interrupt()
+    }
+  }
+
+  private fun Future<Unit>.getOrRethrow() {
+    try {
+      get()
+    } catch (e: ExecutionException) {
+      throw e.cause ?: e
+    }
   }
 
+  private inline fun forEachClass(oldClasses: Set<String>, newClasses: Set<String>, action: (String) -> Unit) {
+    for (className in oldClasses) {
+      if (!isIgnoredClassName(className)) {
+        action(className)
+      }
+    }
+    for (className in newClasses) {
+      if (className !in oldClasses && !isIgnoredClassName(className)) {
+        action(className)
+      }
+    }
+  }
+
+  private fun buildClassDiff(className: String, oldResolver: Resolver, newResolver: Resolver) {
+    val oldClass = oldResolver.resolveClassNodeOrNull(className)
+    val newClass = newResolver.resolveClassNodeOrNull(className)
+
+    buildApiDiff(oldClass, newClass, oldResolver, newResolver) skip@{ oldMember, newMember ->
+      if (oldMember != null && oldMember.isIgnored || newMember != null && newMember.isIgnored) {
+        return@skip
+      }
+      processors.forEach { it.process(oldClass?.classFile, oldMember, newClass?.classFile, newMember, oldResolver, newResolver) }
+    }
+  }
+
+  /**
+   * Pairs members by the method and field lists of the underlying [ClassNode]s,
+   * so that only the paired members are wrapped into [Method]s and [Field]s.
+   */
   private fun buildApiDiff(
-    oldClass: ClassFile?,
-    newClass: ClassFile?,
+    oldClass: ResolvedClass?,
+    newClass: ResolvedClass?,
     oldResolver: Resolver,
     newResolver: Resolver,
     processor: (ClassFileMember?, ClassFileMember?) -> Unit
   ) {
-    processor(oldClass, newClass)
-
-    val oldMethods = oldClass?.methods.orEmpty().associateBy { it.name + it.descriptor }
-    val newMethods = newClass?.methods.orEmpty().associateBy { it.name + it.descriptor }
+    processor(oldClass?.classFile, newClass?.classFile)
 
-    for (nameDescriptor in (oldMethods.keys + newMethods.keys)) {
-      val oldMethod = oldMethods[nameDescriptor]
-      val newMethod = newMethods[nameDescriptor]
+    val oldMethods = oldClass?.classNode?.methods.orEmpty()
+    val newMethods = newClass?.classNode?.methods.orEmpty()
+    diffMembers(oldMethods, newMethods, { it.name }, { it.desc }) skip@{ oldMethodNode, newMethodNode ->
+      val oldMethod = oldMethodNode?.let { oldClass?.getMethod(it) }
+      val newMethod = newMethodNode?.let { newClass?.getMethod(it) }
       if (oldMethod != null && isMethodOverriding(oldMethod, oldResolver)
         || newMethod != null && isMethodOverriding(newMethod, newResolver)) {
-        continue
+        return@skip
       }
       processor(oldMethod, newMethod)
     }
 
-    val oneFields = oldClass?.fields.orEmpty().associateBy { it.name + it.descriptor }
-    val twoFields = newClass?.fields.orEmpty().associateBy { it.name + it.descriptor }
+    val oldFields = oldClass?.classNode?.fields.orEmpty()
+    val newFields = newClass?.classNode?.fields.orEmpty()
+    diffMembers(oldFields, newFields, { it.name }, { it.desc }) { oldFieldNode, newFieldNode ->
+      processor(oldFieldNode?.let { oldClass?.getField(it) }, newFieldNode?.let { newClass?.getField(it) })
+    }
+  }
+
+  private fun Resolver.resolveClassNodeOrNull(className: String): ResolvedClass? {
+    val resolutionResult = resolveClass(className) as? ResolutionResult.Found ?: return null
+    return ResolvedClass(resolutionResult.value, ClassFileAsm(resolutionResult.value, resolutionResult.fileOrigin))
+  }
 
-    for (nameDescriptor in (oneFields.keys + twoFields.keys)) {
-      val oneField = oneFields[nameDescriptor]
-      val twoField = twoFields[nameDescriptor]
-      processor(oneField, twoField)
+  private class ResolvedClass(val classNode: ClassNode, val classFile: ClassFile) {
+    fun getMethod(methodNode: MethodNode): Method = MethodAsm(classFile, methodNode)
+
+    fun getField(fieldNode: FieldNode): Field = FieldAsm(classFile, fieldNode)
+  }
+
+  /**
+   * Pairs members of the old and new class having the same name and descriptor
+   * and passes them to [processor], along with members present in only one of the classes.
+   */
+  private inline fun <T> diffMembers(
+    oldMembers: List<T>,
+    newMembers: List<T>,
+    name: (T) -> String,
+    descriptor: (T) -> String,
+    processor: (T?, T?) -> Unit
+  ) {
+    if (oldMembers.size <= MAX_MEMBERS_TO_SCAN && newMembers.size <= MAX_MEMBERS_TO_SCAN) {
+      for (oldMember in oldMembers) {
+        val newMember = newMembers.find { name(it) == name(oldMember) && descriptor(it) == descriptor(oldMember) }
+        processor(oldMember, newMember)
+      }
+      for (newMember in newMembers) {
+        if (oldMembers.none { name(it) == name(newMember) && descriptor(it) == descriptor(newMember) }) {
+          processor(null, newMember)
+        }
+      }
+    } else {
+      val newMembersByKey = newMembers.associateBy { MemberKey(name(it), descriptor(it)) }
+      val oldKeys = hashSetOf<MemberKey>()
+      for (oldMember in oldMembers) {
+        val key = MemberKey(name(oldMember), descriptor(oldMember))
+        oldKeys += key
+        processor(oldMember, newMembersByKey[key])
+      }
+      for (newMember in newMembers) {
+        if (MemberKey(name(newMember), descriptor(newMember)) !in oldKeys) {
+          processor(null, newMember)
+        }
+      }
     }
   }
 
+  private data class MemberKey(val name: String, val descriptor: String)
+
   private fun isSyntheticLikeName(name: String) = name.contains("$$")
     || name.endsWith("$")
     || name.substringAfterLast('$', "").toIntOrNull() != null
@@ -85,4 +237,4 @@ class ApiDiffBuilder(
 }
 
 val ClassFileMember.isAccessible: Boolean
-  get() = isPublic || isProtected
\ No newline at end of file
+  get() = isPublic || isProtected
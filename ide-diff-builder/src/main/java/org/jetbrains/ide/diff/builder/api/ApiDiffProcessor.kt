@@ -8,6 +8,11 @@ import com.jetbrains.plugin.structure.classes.resolvers.Resolver
 import com.jetbrains.pluginverifier.verifiers.resolution.ClassFile
 import com.jetbrains.pluginverifier.verifiers.resolution.ClassFileMember
 
+/**
+ * Processor of members of old and new classes passed by [ApiDiffBuilder].
+ *
+ * Processors used by the parallel [ApiDiffBuilder.buildDiff] are invoked from several threads at once.
+ */
 interface ApiDiffProcessor {
   fun process(
     oldClass: ClassFile?,
@@ -8,14 +8,15 @@ import com.jetbrains.plugin.structure.classes.resolvers.Resolver
 import com.jetbrains.pluginverifier.usages.deprecated.deprecationInfo
 import com.jetbrains.pluginverifier.verifiers.resolution.ClassFile
 import com.jetbrains.pluginverifier.verifiers.resolution.ClassFileMember
+import java.util.*
 
 class DeprecatedProcessor : ApiDiffProcessor {
 
   data class MarkedDeprecated(val member: ClassFileMember, val forRemoval: Boolean, val inVersion: String?)
 
-  val markedDeprecated: MutableList<MarkedDeprecated> = arrayListOf()
+  val markedDeprecated: MutableList<MarkedDeprecated> = Collections.synchronizedList(arrayListOf())
 
-  val unmarkedDeprecated: MutableList<ClassFileMember> = arrayListOf()
+  val unmarkedDeprecated: MutableList<ClassFileMember> = Collections.synchronizedList(arrayListOf())
 
   override fun process(
     oldClass: ClassFile?,
@@ -8,12 +8,13 @@ import com.jetbrains.plugin.structure.classes.resolvers.Resolver
 import com.jetbrains.pluginverifier.usages.experimental.isExperimentalApi
 import com.jetbrains.pluginverifier.verifiers.resolution.ClassFile
 import com.jetbrains.pluginverifier.verifiers.resolution.ClassFileMember
+import java.util.*
 
 class ExperimentalProcessor : ApiDiffProcessor {
 
-  val markedExperimental: MutableList<ClassFileMember> = arrayListOf()
+  val markedExperimental: MutableList<ClassFileMember> = Collections.synchronizedList(arrayListOf())
 
-  val unmarkedExperimental: MutableList<ClassFileMember> = arrayListOf()
+  val unmarkedExperimental: MutableList<ClassFileMember> = Collections.synchronizedList(arrayListOf())
 
   override fun process(
     oldClass: ClassFile?,
@@ -9,10 +9,11 @@ import com.jetbrains.pluginverifier.verifiers.resolution.ClassFile
 import com.jetbrains.pluginverifier.verifiers.resolution.ClassFileMember
 import com.jetbrains.pluginverifier.verifiers.resolution.Field
 import com.jetbrains.pluginverifier.verifiers.resolution.Method
+import java.util.*
 
 class RemovedProcessor : ApiDiffProcessor {
 
-  val result: MutableList<ClassFileMember> = arrayListOf()
+  val result: MutableList<ClassFileMember> = Collections.synchronizedList(arrayListOf())
 
   @Suppress("DuplicatedCode")
   override fun process(
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package org.jetbrains.ide.diff.builder.cli
+
+import com.jetbrains.plugin.structure.base.utils.*
+import org.jetbrains.ide.diff.builder.api.ApiEvent
+import org.jetbrains.ide.diff.builder.api.ApiReport
+import org.jetbrains.ide.diff.builder.api.ApiSignature
+import org.jetbrains.ide.diff.builder.persistence.json.JsonApiReportReader
+import org.jetbrains.ide.diff.builder.persistence.json.JsonApiReportWriter
+import org.slf4j.LoggerFactory
+import java.nio.file.Path
+
+/**
+ * Stores API metadata merged from IDE diffs in [storeDirectory],
+ * along with the names of the merged diffs.
+ *
+ * When the metadata is [updated] [update] with diffs that start with already merged ones,
+ * only the new diffs are read and appended to the stored metadata.
+ * Otherwise, for example, when an IDE build is inserted in the middle, the metadata is merged from scratch.
+ */
+class ApiMetadataStore(private val storeDirectory: Path) {
+
+  companion object {
+    private val LOG = LoggerFactory.getLogger("api-metadata-store")
+  }
+
+  private val metadataPath = storeDirectory.resolve("metadata.json")
+
+  private val mergedDiffsPath = storeDirectory.resolve("merged-diffs.txt")
+
+  /**
+   * Merges reports of adjacent IDE diffs [diffPaths], sorted by IDE versions, into API metadata.
+   */
+  fun update(diffPaths: List<Path>): ApiReport {
+    require(diffPaths.isNotEmpty()) { "No IDE diffs to merge" }
+    val diffNames = diffPaths.map { it.simpleName }
+    val mergedDiffNames = readMergedDiffNames()
+
+    val signatureToEvents = hashMapOf<ApiSignature, MutableSet<ApiEvent>>()
+    var metadata: ApiReport? = null
+    var newDiffPaths = diffPaths
+    if (mergedDiffNames.isNotEmpty() && diffNames.take(mergedDiffNames.size) == mergedDiffNames) {
+      metadata = JsonApiReportReader().readApiReport(metadataPath)
+      appendReport(signatureToEvents, metadata)
+      newDiffPaths = diffPaths.drop(mergedDiffNames.size)
+      LOG.info("Appending ${newDiffPaths.size} new IDE diff(s) to API metadata of ${metadata.ideBuildNumber}")
+    } else {
+      LOG.info("Merging all ${diffPaths.size} IDE diffs into API metadata")
+    }
+    if (newDiffPaths.isEmpty()) {
+      return metadata!!
+    }
+
+    for (diffPath in newDiffPaths) {
+      val apiReport = JsonApiReportReader().readApiReport(diffPath)
+      appendReport(signatureToEvents, apiReport)
+      metadata = ApiReport(apiReport.ideBuildNumber, signatureToEvents)
+    }
+
+    // Merging is idempotent, so the metadata is saved before the list of merged diffs:
+    // if the process is interrupted in between, the same diffs are merged again on the next update.
+    JsonApiReportWriter().saveReport(metadata!!, metadataPath)
+    mergedDiffsPath.writeText(diffNames.joinToString("\n"))
+    return metadata
+  }
+
+  /**
+   * Removes the stored metadata, so that it is merged from scratch on the next [update].
+   */
+  fun clear() {
+    storeDirectory.deleteLogged()
+  }
+
+  private fun readMergedDiffNames(): List<String> {
+    if (!mergedDiffsPath.exists() || !metadataPath.exists()) {
+      return emptyList()
+    }
+    return mergedDiffsPath.readLines().filter { it.isNotEmpty() }
+  }
+
+  private fun appendReport(signatureToEvents: MutableMap<ApiSignature, MutableSet<ApiEvent>>, apiReport: ApiReport) {
+    for ((signature, events) in apiReport.apiSignatureToEvents) {
+      signatureToEvents.getOrPut(signature) { hashSetOf() } += events
+    }
+  }
+}
@@ -45,13 +45,21 @@ class BuildIdeApiAnnotationsCommand : Command {
       https://www.jetbrains.com/intellij-repository/releases/ and https://www.jetbrains.com/intellij-repository/snapshots
       It saves them under results directory with names like `ideaIU-191.1234-annotations.zip`.
 
-      build-api-annotations [-ides-dir <IDE cache dir] [-jdk-path <path to JDK home>] [-packages "org.some;com.another"] <results directory>
+      build-api-annotations [-ides-dir <IDE cache dir] [-jdk-path <path to JDK home>] [-packages "org.some;com.another"] [-ide-diff-threads <number>] <results directory>
     """.trimIndent()
 
   open class CliOptions : IdeDiffCommand.CliOptions() {
     @set:Argument("ides-dir", description = "Path where downloaded IDE builds are cached")
     var idesDirPath: String? = null
 
+    @set:Argument(
+      "ide-diff-threads", description = "Number of IDE diffs built in parallel. " +
+      "If greater than 1, IDE jars are read through a bounded pool of open files. By default, IDE diffs are built one by one."
+    )
+    var ideDiffThreads: String? = null
+
+    fun getIdeDiffParallelism(): Int = ideDiffThreads?.toInt() ?: 1
+
     fun getIdesDirectory(): Path =
       if (idesDirPath != null) {
         Paths.get(idesDirPath!!)
@@ -92,7 +100,7 @@ class BuildIdeApiAnnotationsCommand : Command {
 
     LOG.info("The following ${allIdesToProcess.size} IU IDEs (> $MIN_BUILD_NUMBER) are available in all IDE repositories: " + allIdesToProcess.joinToString())
 
-    val metadata = BuildIdeApiMetadata().buildMetadata(
+    val metadata = BuildIdeApiMetadata(cliOptions.getIdeDiffParallelism()).buildMetadata(
       allIdesToProcess,
       ideFilesBank,
       jdkPath,
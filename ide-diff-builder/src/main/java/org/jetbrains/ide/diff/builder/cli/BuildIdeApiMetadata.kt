@@ -8,27 +8,32 @@ import com.jetbrains.plugin.structure.base.utils.ExecutorWithProgress
 import com.jetbrains.plugin.structure.base.utils.closeLogged
 import com.jetbrains.plugin.structure.base.utils.deleteLogged
 import com.jetbrains.plugin.structure.base.utils.exists
-import com.jetbrains.plugin.structure.intellij.version.IdeVersion
+import com.jetbrains.plugin.structure.base.utils.shutdownAndAwaitTermination
+import com.jetbrains.plugin.structure.classes.resolvers.JarFileResolver
 import com.jetbrains.pluginverifier.ide.AvailableIde
 import com.jetbrains.pluginverifier.ide.IdeFilesBank
 import com.jetbrains.pluginverifier.misc.retry
 import com.jetbrains.pluginverifier.repository.files.FileLock
-import org.jetbrains.ide.diff.builder.api.ApiEvent
 import org.jetbrains.ide.diff.builder.api.ApiReport
-import org.jetbrains.ide.diff.builder.api.ApiSignature
 import org.jetbrains.ide.diff.builder.filter.ClassFilter
 import org.jetbrains.ide.diff.builder.ide.IdeDiffBuilder
-import org.jetbrains.ide.diff.builder.persistence.json.JsonApiReportReader
 import org.jetbrains.ide.diff.builder.persistence.json.JsonApiReportWriter
 import org.slf4j.LoggerFactory
 import java.nio.file.Path
-import java.util.concurrent.Callable
-import java.util.concurrent.ExecutionException
-import java.util.concurrent.Executors
-import java.util.concurrent.Future
+import java.util.concurrent.*
 import java.util.concurrent.atomic.AtomicInteger
 
-class BuildIdeApiMetadata {
+/**
+ * Builds API metadata from diffs of adjacent IDE builds.
+ *
+ * IDE diffs are built by [ideDiffParallelism] threads. By default, they are built one by one:
+ * IDE diff building consumes a lot of file descriptors because many .jar files (IDE libraries, plugins) are being opened.
+ * We might get 'IOException: Too many open files' if we ran too many IDE diff buildings in parallel.
+ * With greater parallelism, IDE jars are read using [JarFileResolver.Backend.POOLED_ZIP_FILE],
+ * which keeps a bounded number of jars open, and classes of each IDE are compared in parallel
+ * on a dedicated pool of [ideDiffParallelism] threads shared by all IDE diffs.
+ */
+class BuildIdeApiMetadata(private val ideDiffParallelism: Int = 1) {
 
   companion object {
     private val LOG = LoggerFactory.getLogger("build-ide-api-metadata")
@@ -41,18 +46,11 @@ class BuildIdeApiMetadata {
       }
     }
 
-    /**
-     * IDE diff building consumes a lot of file descriptors because many .jar files (IDE libraries, plugins) are being opened.
-     * We might get 'IOException: Too many open files' if we ran too many IDE diff buildings in parallel.
-     * So let's run IDE diff building in a single application thread to avoid IO errors.
-     */
     private val ideDiffThreadCounter = AtomicInteger()
-    private val ideDiffExecutor = Executors.newSingleThreadExecutor { runnable ->
-      Thread(runnable).apply {
-        isDaemon = true
-        name = "ide-diff-${ideDiffThreadCounter.incrementAndGet()}"
-      }
-    }
+  }
+
+  init {
+    require(ideDiffParallelism > 0) { "IDE diff parallelism must be positive: $ideDiffParallelism" }
   }
 
   fun buildMetadata(
@@ -65,53 +63,51 @@ class BuildIdeApiMetadata {
     require(idesToProcess.size > 1) { "Too few IDE builds to process: ${idesToProcess.size}" }
 
     val diffsPath = resultsDirectory.resolve("diffs")
+    val metadataStore = ApiMetadataStore(resultsDirectory.resolve("merged-metadata"))
     if (System.getProperty("ide.diff.builder.rebuild").orEmpty().equals("true", true)) {
       LOG.info("Removing all existing IDE diffs from $diffsPath")
       diffsPath.deleteLogged()
+      metadataStore.clear()
     }
 
     val sortedIdesToProcess = idesToProcess.sortedBy { it.version }
     LOG.info("Building IDE diffs for ${sortedIdesToProcess.size} adjacent IDEs: " + sortedIdesToProcess.joinToString())
 
-    val ideDiffBuilder = IdeDiffBuilder(classFilter, jdkPath)
-    val ideDiffs = buildAdjacentIdeDiffs(sortedIdesToProcess, ideFilesBank, diffsPath, ideDiffBuilder)
-
-    LOG.info("Merging all IDE diffs into API metadata")
-    var metadata: ApiReport = JsonApiReportReader().readApiReport(ideDiffs.first().reportPath)
-    for (ideDiff in ideDiffs.drop(1)) {
-      val apiReport = JsonApiReportReader().readApiReport(ideDiff.reportPath)
-      metadata = mergeApiReports(ideDiff.newIde.version, listOf(metadata, apiReport))
-    }
-    return metadata
-  }
-
-  private fun mergeApiReports(resultIdeVersion: IdeVersion, reports: List<ApiReport>): ApiReport {
-    val signatureToEvents = hashMapOf<ApiSignature, MutableSet<ApiEvent>>()
-    for (report in reports) {
-      for ((signature, _) in report.asSequence()) {
-        if (!signatureToEvents.containsKey(signature)) {
-          signatureToEvents[signature] = reports.flatMapTo(hashSetOf()) { it[signature] }
-        }
+    val jarBackend = if (ideDiffParallelism > 1) JarFileResolver.Backend.POOLED_ZIP_FILE else JarFileResolver.Backend.ZIP_FILE_SYSTEM
+    val classDiffPool = if (ideDiffParallelism > 1) ForkJoinPool(ideDiffParallelism) else null
+    val ideDiffBuilder = IdeDiffBuilder(classFilter, jdkPath, jarBackend, classDiffPool)
+    val ideDiffExecutor = Executors.newFixedThreadPool(ideDiffParallelism) { runnable ->
+      Thread(runnable).apply {
+        isDaemon = true
+        name = "ide-diff-${ideDiffThreadCounter.incrementAndGet()}"
       }
     }
-    return ApiReport(resultIdeVersion, signatureToEvents)
+    val ideDiffs = try {
+      buildAdjacentIdeDiffs(sortedIdesToProcess, ideFilesBank, diffsPath, ideDiffBuilder, ideDiffExecutor)
+    } finally {
+      ideDiffExecutor.shutdownAndAwaitTermination(1, TimeUnit.MINUTES)
+      classDiffPool?.shutdownAndAwaitTermination(1, TimeUnit.MINUTES)
+    }
+
+    return metadataStore.update(ideDiffs.map { it.reportPath })
   }
 
   private fun buildAdjacentIdeDiffs(
     idesToProcess: List<AvailableIde>,
     ideFilesBank: IdeFilesBank,
     diffsPath: Path,
-    ideDiffBuilder: IdeDiffBuilder
+    ideDiffBuilder: IdeDiffBuilder,
+    ideDiffExecutor: ExecutorService
   ): List<IdeDiff> {
     val tasks = (1 until idesToProcess.size).map { index ->
       val previousIde = idesToProcess[index - 1]
       val currentIde = idesToProcess[index]
       ExecutorWithProgress.Task(
         "IDE diff between ${previousIde.version} and ${currentIde.version}",
-        BuildIdeDiffTask(diffsPath, ideFilesBank, previousIde, currentIde, ideDiffBuilder)
+        BuildIdeDiffTask(diffsPath, ideFilesBank, previousIde, currentIde, ideDiffBuilder, ideDiffExecutor)
       )
     }
-    val executor = ExecutorWithProgress<IdeDiff>("ide-diff-builder", 8, false) { progressData ->
+    val executor = ExecutorWithProgress<IdeDiff>("ide-diff-builder", maxOf(8, ideDiffParallelism), false) { progressData ->
       val message = buildString {
         append("Finished ${progressData.finishedNumber} of ${progressData.totalNumber} tasks: ")
         val result = progressData.result
@@ -131,7 +127,8 @@ class BuildIdeApiMetadata {
     private val ideFilesBank: IdeFilesBank,
     private val previousIde: AvailableIde,
     private val currentIde: AvailableIde,
-    private val ideDiffBuilder: IdeDiffBuilder
+    private val ideDiffBuilder: IdeDiffBuilder,
+    private val ideDiffExecutor: ExecutorService
   ) : Callable<IdeDiff> {
     override fun call(): IdeDiff {
       LOG.info("Building IDE diff between $previousIde and $currentIde")
@@ -14,6 +14,7 @@ import org.jetbrains.ide.diff.builder.persistence.externalAnnotations.ExternalAn
 import org.slf4j.LoggerFactory
 import java.nio.file.Path
 import java.nio.file.Paths
+import java.util.concurrent.ForkJoinPool
 import kotlin.system.exitProcess
 
 /**
@@ -59,7 +60,7 @@ class IdeDiffCommand : Command {
     LOG.info("JDK path will be used: $jdkPath")
     LOG.info(classFilter.toString())
 
-    val apiReport = IdeDiffBuilder(classFilter, jdkPath).buildIdeDiff(oldIdePath, newIdePath)
+    val apiReport = IdeDiffBuilder(classFilter, jdkPath, forkJoinPool = ForkJoinPool.commonPool()).buildIdeDiff(oldIdePath, newIdePath)
     ExternalAnnotationsApiReportWriter().saveReport(apiReport, resultRoot)
 
     LOG.info("API diff between ${newIdePath.simpleName} and ${oldIdePath.simpleName} is saved to ${resultRoot.simpleName}")
@@ -6,6 +6,7 @@ package org.jetbrains.ide.diff.builder.ide
 
 import com.jetbrains.plugin.structure.classes.resolvers.CacheResolver
 import com.jetbrains.plugin.structure.classes.resolvers.CompositeResolver
+import com.jetbrains.plugin.structure.classes.resolvers.JarFileResolver
 import com.jetbrains.plugin.structure.classes.resolvers.Resolver
 import com.jetbrains.plugin.structure.ide.Ide
 import com.jetbrains.plugin.structure.ide.IdeManager
@@ -18,11 +19,20 @@ import com.jetbrains.pluginverifier.verifiers.resolution.Method
 import org.jetbrains.ide.diff.builder.api.*
 import org.jetbrains.ide.diff.builder.filter.ClassFilter
 import java.nio.file.Path
+import java.util.concurrent.ForkJoinPool
 
 /**
  * Builder of [ApiReport] by APIs difference of two IDEs.
+ *
+ * IDE jars are read using [jarBackend].
+ * If [forkJoinPool] is specified, classes of different packages are compared in parallel on it.
  */
-class IdeDiffBuilder(private val classFilter: ClassFilter, private val jdkPath: Path) {
+class IdeDiffBuilder(
+  private val classFilter: ClassFilter,
+  private val jdkPath: Path,
+  private val jarBackend: JarFileResolver.Backend = JarFileResolver.Backend.ZIP_FILE_SYSTEM,
+  private val forkJoinPool: ForkJoinPool? = null
+) {
 
   companion object {
     /**
@@ -53,8 +63,8 @@ class IdeDiffBuilder(private val classFilter: ClassFilter, private val jdkPath:
 
   fun buildIdeDiff(oldIde: Ide, newIde: Ide): ApiReport =
     JdkDescriptorCreator.createJdkDescriptor(jdkPath, Resolver.ReadMode.SIGNATURES).use { jdkDescriptor ->
-      buildIdeResources(oldIde, Resolver.ReadMode.SIGNATURES).use { oldResources ->
-        buildIdeResources(newIde, Resolver.ReadMode.SIGNATURES).use { newResources ->
+      buildIdeResources(oldIde, Resolver.ReadMode.SIGNATURES, jarBackend).use { oldResources ->
+        buildIdeResources(newIde, Resolver.ReadMode.SIGNATURES, jarBackend).use { newResources ->
           val completeOldResolver = CacheResolver(CompositeResolver.create(listOf(oldResources.allResolver, jdkDescriptor.jdkResolver)))
           val completeNewResolver = CacheResolver(CompositeResolver.create(listOf(newResources.allResolver, jdkDescriptor.jdkResolver)))
 
@@ -67,12 +77,13 @@ class IdeDiffBuilder(private val classFilter: ClassFilter, private val jdkPath:
             listOf(removedProcessor, introducedProcessor, experimentalProcessor, deprecatedProcessor)
           )
 
-          diffBuilder.buildDiff(
-            completeOldResolver,
-            completeNewResolver,
-            oldResources.allResolver.allClasses,
-            newResources.allResolver.allClasses
-          )
+          val oldClasses = oldResources.allResolver.allClasses
+          val newClasses = newResources.allResolver.allClasses
+          if (forkJoinPool != null) {
+            diffBuilder.buildDiff(completeOldResolver, completeNewResolver, oldClasses, newClasses, forkJoinPool)
+          } else {
+            diffBuilder.buildDiff(completeOldResolver, completeNewResolver, oldClasses, newClasses)
+          }
 
           buildApiReport(
             newIde.version,
@@ -7,6 +7,7 @@ package org.jetbrains.ide.diff.builder.ide
 import com.jetbrains.plugin.structure.base.utils.closeAll
 import com.jetbrains.plugin.structure.base.utils.closeOnException
 import com.jetbrains.plugin.structure.classes.resolvers.CompositeResolver
+import com.jetbrains.plugin.structure.classes.resolvers.JarFileResolver
 import com.jetbrains.plugin.structure.classes.resolvers.Resolver
 import com.jetbrains.plugin.structure.ide.Ide
 import com.jetbrains.plugin.structure.ide.classes.IdeResolverCreator
@@ -31,13 +32,17 @@ class IdeResources(
   }
 }
 
-fun buildIdeResources(ide: Ide, readMode: Resolver.ReadMode): IdeResources {
+fun buildIdeResources(
+  ide: Ide,
+  readMode: Resolver.ReadMode,
+  jarBackend: JarFileResolver.Backend = JarFileResolver.Backend.ZIP_FILE_SYSTEM
+): IdeResources {
   val closeableResources = arrayListOf<Closeable>()
   closeableResources.closeOnException {
-    val platformResolver = IdeResolverCreator.createIdeResolver(readMode, ide)
+    val platformResolver = IdeResolverCreator.createIdeResolver(readMode, ide, null, jarBackend)
     closeableResources += platformResolver
 
-    val pluginClassLocations = readBundledPluginsClassesLocations(ide, readMode)
+    val pluginClassLocations = readBundledPluginsClassesLocations(ide, readMode, jarBackend)
     closeableResources += pluginClassLocations
 
     val bundledPluginsResolvers = pluginClassLocations.flatMap { it.getPluginClassesResolver() }
@@ -63,15 +68,23 @@ private val IGNORED_PLUGIN_IDS = setOf("org.jetbrains.kotlin", "org.jetbrains.an
  */
 private val pluginClassesLocationsKeys = IdePluginClassesFinder.MAIN_CLASSES_KEYS + listOf(CompileServerExtensionKey)
 
-private fun readBundledPluginsClassesLocations(ide: Ide, readMode: Resolver.ReadMode): List<IdePluginClassesLocations> =
-  ide.bundledPlugins.mapNotNull { readPluginClassesExceptionally(it, readMode) }
+private fun readBundledPluginsClassesLocations(
+  ide: Ide,
+  readMode: Resolver.ReadMode,
+  jarBackend: JarFileResolver.Backend
+): List<IdePluginClassesLocations> =
+  ide.bundledPlugins.mapNotNull { readPluginClassesExceptionally(it, readMode, jarBackend) }
 
-private fun readPluginClassesExceptionally(idePlugin: IdePlugin, readMode: Resolver.ReadMode): IdePluginClassesLocations? {
+private fun readPluginClassesExceptionally(
+  idePlugin: IdePlugin,
+  readMode: Resolver.ReadMode,
+  jarBackend: JarFileResolver.Backend
+): IdePluginClassesLocations? {
   if (idePlugin.pluginId in IGNORED_PLUGIN_IDS) {
     return null
   }
   LOG.debug("Reading class files of a bundled plugin $idePlugin  (${idePlugin.originalFile})")
-  return IdePluginClassesFinder.findPluginClasses(idePlugin, readMode, pluginClassesLocationsKeys)
+  return IdePluginClassesFinder.findPluginClasses(idePlugin, readMode, pluginClassesLocationsKeys, jarBackend = jarBackend)
 }
 
 private fun IdePluginClassesLocations.getPluginClassesResolver(): List<Resolver> =
@@ -10,6 +10,7 @@ import org.junit.Assert
 import java.lang.IllegalArgumentException
 import java.nio.file.Path
 import java.nio.file.Paths
+import java.util.concurrent.ForkJoinPool
 
 abstract class BaseOldNewIdesTest {
 
@@ -29,7 +30,7 @@ abstract class BaseOldNewIdesTest {
     }
   }
 
-  fun buildApiReport(): ApiReport {
+  fun buildApiReport(forkJoinPool: ForkJoinPool? = null): ApiReport {
     val oldIdeFile = getOldIdeFile()
     val newIdeFile = getNewIdeFile()
 
@@ -38,7 +39,7 @@ abstract class BaseOldNewIdesTest {
 
     val jdkHome = getJdkPathForTests()
 
-    return IdeDiffBuilder(PackagesClassFilter(emptyList()), jdkHome).buildIdeDiff(oldIde, newIde)
+    return IdeDiffBuilder(PackagesClassFilter(emptyList()), jdkHome, forkJoinPool = forkJoinPool).buildIdeDiff(oldIde, newIde)
   }
 
   private fun getJdkPathForTests(): Path {
@@ -2,7 +2,9 @@ package org.jetbrains.ide.diff.builder.api
 
 import com.jetbrains.plugin.structure.intellij.version.IdeVersion
 import org.jetbrains.ide.diff.builder.persistence.externalAnnotations.externalPresentation
+import org.junit.Assert.assertEquals
 import org.junit.Test
+import java.util.concurrent.ForkJoinPool
 
 class IdeDiffBuilderTest : BaseOldNewIdesTest() {
 
@@ -132,4 +134,14 @@ class IdeDiffBuilderTest : BaseOldNewIdesTest() {
     )
   }
 
-}
\ No newline at end of file
+  @Test
+  fun `parallel diff builder produces the same report`() {
+    val forkJoinPool = ForkJoinPool(4)
+    try {
+      assertEquals(buildApiReport(), buildApiReport(forkJoinPool))
+    } finally {
+      forkJoinPool.shutdown()
+    }
+  }
+
+}
@@ -0,0 +1,59 @@
+package org.jetbrains.ide.diff.builder.cli
+
+import com.jetbrains.plugin.structure.intellij.version.IdeVersion
+import org.jetbrains.ide.diff.builder.api.*
+import org.jetbrains.ide.diff.builder.persistence.json.JsonApiReportWriter
+import org.junit.Assert.assertEquals
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.nio.file.Files
+import java.nio.file.Path
+
+class ApiMetadataStoreTest {
+
+  @Rule
+  @JvmField
+  val tempFolder = TemporaryFolder()
+
+  private val someClass = ClassSignature("com/example/Some")
+
+  private val otherClass = ClassSignature("com/example/Other")
+
+  private val firstVersion = IdeVersion.createIdeVersion("IU-1.0")
+
+  private val secondVersion = IdeVersion.createIdeVersion("IU-2.0")
+
+  @Test
+  fun `new diffs are appended to merged metadata`() {
+    val storeDirectory = tempFolder.newFolder().toPath()
+    val firstDiff = saveDiff("first.json", ApiReport(firstVersion, mapOf(someClass to setOf(IntroducedIn(firstVersion)))))
+    val secondDiff = saveDiff("second.json", ApiReport(secondVersion, mapOf(someClass to setOf(RemovedIn(secondVersion)))))
+
+    assertEquals(firstVersion, ApiMetadataStore(storeDirectory).update(listOf(firstDiff)).ideBuildNumber)
+
+    //Already merged diffs must not be read again.
+    Files.delete(firstDiff)
+    val metadata = ApiMetadataStore(storeDirectory).update(listOf(firstDiff, secondDiff))
+    assertEquals(secondVersion, metadata.ideBuildNumber)
+    assertEquals(setOf(IntroducedIn(firstVersion), RemovedIn(secondVersion)), metadata[someClass])
+  }
+
+  @Test
+  fun `metadata is merged from scratch if merged diffs have changed`() {
+    val storeDirectory = tempFolder.newFolder().toPath()
+    val firstDiff = saveDiff("first.json", ApiReport(firstVersion, mapOf(someClass to setOf(IntroducedIn(firstVersion)))))
+    val secondDiff = saveDiff("second.json", ApiReport(secondVersion, mapOf(otherClass to setOf(IntroducedIn(secondVersion)))))
+    ApiMetadataStore(storeDirectory).update(listOf(firstDiff))
+
+    val metadata = ApiMetadataStore(storeDirectory).update(listOf(secondDiff))
+    assertEquals(emptySet<ApiEvent>(), metadata[someClass])
+    assertEquals(setOf(IntroducedIn(secondVersion)), metadata[otherClass])
+  }
+
+  private fun saveDiff(name: String, apiReport: ApiReport): Path {
+    val reportPath = tempFolder.root.toPath().resolve("diffs").resolve(name)
+    JsonApiReportWriter().saveReport(apiReport, reportPath)
+    return reportPath
+  }
+}
@@ -36,13 +36,21 @@ object FeaturesExtractor {
   fun extractFeatures(ide: Ide, ideResolver: Resolver, plugin: IdePlugin): List<ExtensionPointFeatures> {
     val bundledClassLocations = ide.bundledPlugins.map { IdePluginClassesFinder.findPluginClasses(it) }
     Closeable { bundledClassLocations.forEach { it.closeLogged() } }.use {
-      val bundledResolvers = bundledClassLocations.map { it.constructMainPluginResolver() }
-      IdePluginClassesFinder.findPluginClasses(plugin).use { pluginClassesLocations ->
-        val pluginResolver = pluginClassesLocations.constructMainPluginResolver()
-        //don't close this resolver, because ideResolver will be closed by the caller.
-        val resolver = CompositeResolver.create(listOf(pluginResolver, ideResolver) + bundledResolvers)
-        return ALL_EXTRACTORS.flatMap { it.extract(plugin, resolver) }
-      }
+      val bundledResolver = CompositeResolver.create(bundledClassLocations.map { it.constructMainPluginResolver() })
+      return extractFeatures(ideResolver, bundledResolver, plugin)
+    }
+  }
+
+  /**
+   * Extracts features of the [plugin] using already opened [bundledPluginsResolver]
+   * of the IDE bundled plugins, so that it can be reused for many plugins.
+   * Neither [ideResolver] nor [bundledPluginsResolver] is closed by this method.
+   */
+  fun extractFeatures(ideResolver: Resolver, bundledPluginsResolver: Resolver, plugin: IdePlugin): List<ExtensionPointFeatures> {
+    IdePluginClassesFinder.findPluginClasses(plugin).use { pluginClassesLocations ->
+      val pluginResolver = pluginClassesLocations.constructMainPluginResolver()
+      val resolver = CompositeResolver.create(pluginResolver, ideResolver, bundledPluginsResolver)
+      return ALL_EXTRACTORS.flatMap { it.extract(plugin, resolver) }
     }
   }
 
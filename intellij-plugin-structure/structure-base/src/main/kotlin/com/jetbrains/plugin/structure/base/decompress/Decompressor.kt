@@ -6,19 +6,38 @@ package com.jetbrains.plugin.structure.base.decompress
 
 import com.jetbrains.plugin.structure.base.utils.createDir
 import com.jetbrains.plugin.structure.base.utils.createParentDirs
+import com.jetbrains.plugin.structure.base.utils.deleteQuietly
 import com.jetbrains.plugin.structure.base.utils.inputStream
+import com.jetbrains.plugin.structure.base.utils.simpleName
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream
 import org.apache.commons.compress.compressors.CompressorException
 import org.apache.commons.compress.compressors.CompressorStreamFactory
+import org.apache.commons.io.IOUtils
 import org.apache.commons.io.input.BoundedInputStream
 import org.apache.commons.io.input.CountingInputStream
+import org.apache.commons.io.output.NullOutputStream
 import java.io.IOException
 import java.io.InputStream
 import java.nio.file.Files
 import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.util.zip.Deflater
+import java.util.zip.ZipEntry
+import java.util.zip.ZipException
+import java.util.zip.ZipFile
 import java.util.zip.ZipInputStream
+import java.util.zip.ZipOutputStream
 
-internal sealed class Decompressor(private val outputSizeLimit: Long?) {
+/**
+ * [writeFile] writes the content of a file entry, which is read from the stream, to the output file.
+ * It returns the number of bytes decompressed from archives nested into the entry, which count toward
+ * the output size limit along with the entry itself. It must not decompress more than the passed remaining size
+ * plus one byte, so that exceeding the limit is detected without decompressing the rest.
+ */
+internal sealed class Decompressor(
+  private val outputSizeLimit: Long?,
+  private val writeFile: (entryName: String, entryStream: InputStream, outputFile: Path, remainingSize: Long) -> Long
+) {
 
   companion object {
     const val FILE_NAME_LENGTH_LIMIT = 255
@@ -43,9 +62,11 @@ internal sealed class Decompressor(private val outputSizeLimit: Long?) {
               val countingStream = CountingInputStream(boundedStream)
 
               outputFile.createParentDirs()
-              Files.newOutputStream(outputFile).buffered().use { countingStream.copyTo(it) }
+              val nestedSize = writeFile(entry.name, countingStream, outputFile, remainingSize)
+              //Count the rest of the entry that may be left unread by the writer.
+              IOUtils.skip(countingStream, Long.MAX_VALUE)
 
-              remainingSize -= countingStream.byteCount
+              remainingSize -= countingStream.byteCount + nestedSize
               if (remainingSize < 0) {
                 throw DecompressorSizeLimitExceededException(actualSizeLimit)
               }
@@ -89,7 +110,87 @@ private fun getEntryFile(outputDir: Path, entry: Decompressor.Entry): Path {
   return outputDir.resolve(independentEntryName)
 }
 
-internal class ZipDecompressor(private val zipFile: Path, sizeLimit: Long?) : Decompressor(sizeLimit) {
+internal fun copyToFile(
+  @Suppress("UNUSED_PARAMETER") entryName: String,
+  entryStream: InputStream,
+  outputFile: Path,
+  @Suppress("UNUSED_PARAMETER") remainingSize: Long
+): Long {
+  Files.newOutputStream(outputFile).buffered().use { entryStream.copyTo(it) }
+  return 0
+}
+
+/**
+ * Writes an empty file instead of a class file. Nested `.jar` and `.zip` archives
+ * are written with the same entries, where class files are empty too.
+ * Nested archives without class files are copied as is.
+ */
+internal fun writeWithoutClasses(entryName: String, entryStream: InputStream, outputFile: Path, remainingSize: Long): Long =
+  when {
+    entryName.isClassFileName() -> {
+      Files.newOutputStream(outputFile).close()
+      0
+    }
+    entryName.endsWith(".jar") || entryName.endsWith(".zip") -> {
+      copyToFile(entryName, entryStream, outputFile, remainingSize)
+      removeClassesFromArchive(entryName, outputFile, remainingSize)
+    }
+    else -> copyToFile(entryName, entryStream, outputFile, remainingSize)
+  }
+
+/**
+ * Rewrites [archiveFile] with empty class files and returns the number of decompressed bytes of its entries.
+ * Stops decompression once more than [remainingSize] bytes are decompressed.
+ */
+private fun removeClassesFromArchive(entryName: String, archiveFile: Path, remainingSize: Long): Long {
+  if (!containsClasses(entryName, archiveFile)) {
+    return 0
+  }
+  val tempFile = Files.createTempFile(archiveFile.parent, archiveFile.simpleName, ".tmp")
+  try {
+    var decompressedSize = 0L
+    ZipInputStream(archiveFile.inputStream().buffered()).use { inputStream ->
+      ZipOutputStream(Files.newOutputStream(tempFile).buffered()).use { outputStream ->
+        outputStream.setLevel(Deflater.BEST_SPEED)
+        while (true) {
+          val nestedEntry = inputStream.nextEntry ?: break
+          outputStream.putNextEntry(ZipEntry(nestedEntry.name))
+          //Class files are decompressed and counted as well, like the class files of the outer archive.
+          val entryOutput = if (nestedEntry.isDirectory || nestedEntry.name.isClassFileName()) NullOutputStream.NULL_OUTPUT_STREAM else outputStream
+          decompressedSize += IOUtils.copyLarge(inputStream, entryOutput, 0, remainingSize - decompressedSize + 1)
+          outputStream.closeEntry()
+          if (decompressedSize > remainingSize) {
+            return decompressedSize
+          }
+        }
+      }
+    }
+    Files.move(tempFile, archiveFile, StandardCopyOption.REPLACE_EXISTING)
+    return decompressedSize
+  } finally {
+    tempFile.deleteQuietly()
+  }
+}
+
+/**
+ * Reads only the central directory of [archiveFile] without decompressing its entries.
+ */
+private fun containsClasses(entryName: String, archiveFile: Path): Boolean =
+  try {
+    ZipFile(archiveFile.toFile()).use { zipFile ->
+      zipFile.entries().asSequence().any { it.name.isClassFileName() }
+    }
+  } catch (e: ZipException) {
+    throw IOException("Nested archive $entryName is not a zip archive", e)
+  }
+
+private fun String.isClassFileName() = endsWith(".class")
+
+internal class ZipDecompressor(
+  private val zipFile: Path,
+  sizeLimit: Long?,
+  writeFile: (String, InputStream, Path, Long) -> Long = ::copyToFile
+) : Decompressor(sizeLimit, writeFile) {
   private lateinit var stream: ZipInputStream
 
   override fun openStream() {
@@ -115,7 +216,7 @@ internal class ZipDecompressor(private val zipFile: Path, sizeLimit: Long?) : De
   }
 }
 
-internal class TarDecompressor(private val tarFile: Path, sizeLimit: Long?) : Decompressor(sizeLimit) {
+internal class TarDecompressor(private val tarFile: Path, sizeLimit: Long?) : Decompressor(sizeLimit, ::copyToFile) {
   private var stream: TarArchiveInputStream? = null
 
   override fun openStream() {
@@ -12,12 +12,14 @@ import java.nio.file.Paths
 enum class Settings(private val key: String, private val defaultValue: () -> String) {
   EXTRACT_DIRECTORY("intellij.structure.temp.dir", { Paths.get(FileUtils.getTempDirectory().absolutePath).resolve("extracted-plugins").toString() }),
   INTELLIJ_PLUGIN_SIZE_LIMIT("intellij.structure.intellij.plugin.size.limit", { FileUtils.ONE_GB.toString() }),
+  INTELLIJ_PLUGIN_DESCRIPTOR_EXTRACTS_CLASSES("intellij.structure.intellij.plugin.descriptor.extracts.classes", { false.toString() }),
   TEAM_CITY_PLUGIN_SIZE_LIMIT("intellij.structure.team.city.plugin.size.limit", { FileUtils.ONE_GB.toString() }),
   RE_SHARPER_PLUGIN_SIZE_LIMIT("intellij.structure.re.sharper.plugin.size.limit", { FileUtils.ONE_GB.toString() }),
   HUB_PLUGIN_SIZE_LIMIT("intellij.structure.hub.plugin.size.limit", { (FileUtils.ONE_MB * 30).toString() }),
   HUB_PLUGIN_MAX_FILES_NUMBER("intellij.structure.hub.plugin.max.files.number", { 1000.toString() }),
   EDU_PLUGIN_SIZE_LIMIT("intellij.structure.edu.plugin.size.limit", { FileUtils.ONE_GB.toString() }),
-  KTOR_FEATURE_SIZE_LIMIT("intellij.structure.edu.plugin.size.limit", { FileUtils.ONE_GB.toString() });
+  KTOR_FEATURE_SIZE_LIMIT("intellij.structure.edu.plugin.size.limit", { FileUtils.ONE_GB.toString() }),
+  MAX_POOLED_ZIP_FILES("intellij.structure.max.pooled.zip.files", { 256.toString() });
 
   fun get(): String = System.getProperty(key) ?: defaultValue()
 
@@ -27,6 +29,8 @@ enum class Settings(private val key: String, private val defaultValue: () -> Str
 
   fun getAsInt(): Int = get().toInt()
 
+  fun getAsBoolean(): Boolean = get().toBoolean()
+
   fun set(value: String) {
     System.setProperty(key, value)
   }
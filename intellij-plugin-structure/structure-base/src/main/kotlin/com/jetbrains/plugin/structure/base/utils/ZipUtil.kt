@@ -7,6 +7,7 @@ package com.jetbrains.plugin.structure.base.utils
 import com.jetbrains.plugin.structure.base.decompress.TarDecompressor
 import com.jetbrains.plugin.structure.base.decompress.ZipCompressor
 import com.jetbrains.plugin.structure.base.decompress.ZipDecompressor
+import com.jetbrains.plugin.structure.base.decompress.writeWithoutClasses
 import java.nio.file.Path
 
 fun extractZip(pluginFile: Path, destination: Path, outputSizeLimit: Long? = null): Path {
@@ -15,6 +16,20 @@ fun extractZip(pluginFile: Path, destination: Path, outputSizeLimit: Long? = nul
   return destination
 }
 
+/**
+ * Extracts [pluginFile] to [destination] like [extractZip], but leaves class files empty,
+ * including class files of nested `.jar` and `.zip` archives, which are extracted as archives
+ * of the same entries. Such extraction is enough to read descriptors and resources.
+ * Decompressed entries of nested archives count toward the [outputSizeLimit].
+ *
+ * Throws [java.io.IOException] if a nested archive can't be read.
+ */
+fun extractZipWithoutClasses(pluginFile: Path, destination: Path, outputSizeLimit: Long? = null): Path {
+  destination.createDir()
+  ZipDecompressor(pluginFile, outputSizeLimit, ::writeWithoutClasses).extract(destination)
+  return destination
+}
+
 fun Path.extractTo(destination: Path, outputSizeLimit: Long? = null): Path {
   val decompressor = when {
     simpleName.endsWith(".zip") -> ZipDecompressor(this, outputSizeLimit)
@@ -4,25 +4,54 @@
 
 package com.jetbrains.plugin.structure.classes.resolvers
 
-import com.google.common.cache.CacheBuilder
-import com.google.common.cache.CacheLoader
-import com.google.common.cache.LoadingCache
+import com.google.common.cache.*
+import com.google.common.util.concurrent.UncheckedExecutionException
+import com.jetbrains.plugin.structure.classes.utils.ClassNodeCompactor
 import org.objectweb.asm.tree.ClassNode
 import java.util.*
 import java.util.concurrent.ExecutionException
 
+/**
+ * Caches up to [cacheSize] classes and property bundles resolved by [delegate].
+ * Hits, misses and evictions of the class cache are recorded in [cacheStats].
+ *
+ * If [maximumClassesBytes] is specified, the class cache is bounded by the estimated
+ * memory footprint of the cached [ClassNode]s rather than by their number. It suits long-lived caches
+ * shared by all verifications that use the same IDE or JDK.
+ *
+ * If [compactClasses] is `true`, classes are compacted by [ClassNodeCompactor]
+ * before being cached, which makes them consume several times less memory
+ * and allows to read them from several threads at once.
+ * It must only be enabled for resolvers of classes that are not verified themselves,
+ * and whose [ClassNode]s are not shared with anyone else.
+ * Cached classes are shared by all users of the resolver and must not be modified.
+ */
 class CacheResolver(
   private val delegate: Resolver,
-  cacheSize: Int = DEFAULT_CACHE_SIZE
+  cacheSize: Int = DEFAULT_CACHE_SIZE,
+  maximumClassesBytes: Long? = null,
+  private val compactClasses: Boolean = false
 ) : Resolver() {
 
   private data class BundleCacheKey(val baseName: String, val locale: Locale)
 
   private val classCache: LoadingCache<String, ResolutionResult<ClassNode>> =
     CacheBuilder.newBuilder()
-      .maximumSize(cacheSize.toLong())
+      .apply {
+        if (maximumClassesBytes != null) {
+          maximumWeight(maximumClassesBytes)
+          weigher(Weigher<String, ResolutionResult<ClassNode>> { _, result -> estimateResultSize(result) })
+        } else {
+          maximumSize(cacheSize.toLong())
+        }
+      }
+      .recordStats()
       .build(object : CacheLoader<String, ResolutionResult<ClassNode>>() {
-        override fun load(key: String) = delegate.resolveClass(key)
+        override fun load(key: String) = delegate.resolveClass(key).also {
+          if (compactClasses && it is ResolutionResult.Found) {
+            ClassNodeCompactor.compact(it.value)
+          }
+        }
       })
 
   private val propertyBundleCache: LoadingCache<BundleCacheKey, ResolutionResult<PropertyResourceBundle>> =
@@ -32,6 +61,12 @@ class CacheResolver(
         override fun load(key: BundleCacheKey) = delegate.resolveExactPropertyResourceBundle(key.baseName, key.locale)
       })
 
+  /**
+   * Statistics of the class cache: hit, miss and eviction counts.
+   */
+  val cacheStats: CacheStats
+    get() = classCache.stats()
+
   override val allClasses
     get() = delegate.allClasses
 
@@ -44,16 +79,18 @@ class CacheResolver(
   override val readMode
     get() = delegate.readMode
 
-  override fun resolveClass(className: String): ResolutionResult<ClassNode> = try {
-    classCache.get(className)
-  } catch (e: ExecutionException) {
-    throw e.cause ?: e
-  }
+  override fun resolveClass(className: String): ResolutionResult<ClassNode> =
+    getUnwrapped(classCache, className)
 
-  override fun resolveExactPropertyResourceBundle(baseName: String, locale: Locale): ResolutionResult<PropertyResourceBundle> = try {
-    propertyBundleCache.get(BundleCacheKey(baseName, locale))
+  override fun resolveExactPropertyResourceBundle(baseName: String, locale: Locale): ResolutionResult<PropertyResourceBundle> =
+    getUnwrapped(propertyBundleCache, BundleCacheKey(baseName, locale))
+
+  private fun <K, V> getUnwrapped(cache: LoadingCache<K, V>, key: K): V = try {
+    cache.get(key)
   } catch (e: ExecutionException) {
     throw e.cause ?: e
+  } catch (e: UncheckedExecutionException) {
+    throw e.cause ?: e
   }
 
   override fun toString() = "Caching resolver for $delegate"
@@ -65,13 +102,69 @@ class CacheResolver(
     delegate.containsPackage(packageName)
 
   override fun close() {
+    classCache.invalidateAll()
+    propertyBundleCache.invalidateAll()
     delegate.close()
   }
 
   override fun processAllClasses(processor: (ResolutionResult<ClassNode>) -> Boolean) =
     delegate.processAllClasses(processor)
 
+  private fun estimateResultSize(result: ResolutionResult<ClassNode>): Int =
+    if (result is ResolutionResult.Found) {
+      estimateClassNodeSize(result.value)
+    } else {
+      OBJECT_SIZE
+    }
+
+  /**
+   * Roughly estimates the number of bytes occupied by [classNode] in the heap.
+   * Method bodies dominate the footprint, so instructions are counted one by one,
+   * while other members are accounted by fixed per-element costs.
+   */
+  private fun estimateClassNodeSize(classNode: ClassNode): Int {
+    var size = CLASS_NODE_SIZE
+    size += (classNode.interfaces?.size ?: 0) * REFERENCE_SIZE
+    size += (classNode.fields?.size ?: 0) * FIELD_NODE_SIZE
+    size += (classNode.innerClasses?.size ?: 0) * INNER_CLASS_NODE_SIZE
+    size += classNode.annotationsCount() * ANNOTATION_NODE_SIZE
+    for (method in classNode.methods.orEmpty()) {
+      size += METHOD_NODE_SIZE
+      size += method.instructions.size() * INSTRUCTION_NODE_SIZE
+      size += (method.tryCatchBlocks?.size ?: 0) * TRY_CATCH_BLOCK_NODE_SIZE
+      size += (method.localVariables?.size ?: 0) * LOCAL_VARIABLE_NODE_SIZE
+    }
+    return size
+  }
+
+  private fun ClassNode.annotationsCount(): Int =
+    (visibleAnnotations?.size ?: 0) + (invisibleAnnotations?.size ?: 0)
+
   private companion object {
     private const val DEFAULT_CACHE_SIZE = 1024
+
+    /*
+     * Approximate shallow sizes of ASM tree nodes, including the referenced arrays and lists,
+     * on a 64-bit JVM. They are only used to weigh cached classes against each other.
+     */
+    private const val OBJECT_SIZE = 16
+
+    private const val REFERENCE_SIZE = 8
+
+    private const val CLASS_NODE_SIZE = 512
+
+    private const val FIELD_NODE_SIZE = 96
+
+    private const val INNER_CLASS_NODE_SIZE = 48
+
+    private const val ANNOTATION_NODE_SIZE = 64
+
+    private const val METHOD_NODE_SIZE = 256
+
+    private const val INSTRUCTION_NODE_SIZE = 48
+
+    private const val TRY_CATCH_BLOCK_NODE_SIZE = 40
+
+    private const val LOCAL_VARIABLE_NODE_SIZE = 56
   }
 }
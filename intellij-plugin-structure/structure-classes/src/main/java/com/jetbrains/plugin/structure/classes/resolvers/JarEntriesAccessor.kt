@@ -0,0 +1,232 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.plugin.structure.classes.resolvers
+
+import com.jetbrains.plugin.structure.base.utils.*
+import com.jetbrains.plugin.structure.classes.utils.getBundleBaseName
+import com.jetbrains.plugin.structure.classes.utils.getBundleNameByBundlePath
+import java.io.BufferedReader
+import java.io.Closeable
+import java.io.IOException
+import java.io.InputStream
+import java.nio.file.FileSystem
+import java.nio.file.FileSystems
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.zip.ZipFile
+import java.util.zip.ZipInputStream
+
+/**
+ * Provides access to entries of a jar file for [JarFileResolver].
+ *
+ * The jar is opened lazily on the first access.
+ */
+internal interface JarEntriesAccessor : Closeable {
+
+  val isOpen: Boolean
+
+  /**
+   * Lists all entries of the jar and builds its [JarFileIndex].
+   */
+  fun buildIndex(): JarFileIndex
+
+  /**
+   * Opens entry [entryName] and passes its content to [reader],
+   * or returns `null` if there is no such entry.
+   */
+  fun <T> readEntry(entryName: String, reader: (InputStream) -> T): T?
+}
+
+/**
+ * Accessor that opens the jar as a zip [FileSystem].
+ */
+internal class ZipFileSystemAccessor(private val jarPath: Path) : JarEntriesAccessor {
+
+  private val zipFsDelegate = lazy { FileSystems.newFileSystem(jarPath, JarFileResolver::class.java.classLoader) }
+
+  private val zipFs: FileSystem by zipFsDelegate
+
+  private val zipRoot: Path by lazy { zipFs.rootDirectories.single() }
+
+  override val isOpen: Boolean
+    get() = !zipFsDelegate.isInitialized() || zipFs.isOpen
+
+  override fun buildIndex(): JarFileIndex {
+    validateZipArchiveOnJavaPriorTo11(jarPath)
+    val indexBuilder = JarFileIndexBuilder()
+    Files.walk(zipRoot).use { stream ->
+      stream.forEach { entry ->
+        val entryName = zipRoot.relativize(entry).toString().toSystemIndependentName()
+        indexBuilder.addEntry(entryName, entry.isDirectory) { readEntryLines(entryName) }
+      }
+    }
+    return indexBuilder.build()
+  }
+
+  // Workaround for https://bugs.openjdk.java.net/browse/JDK-8197398:
+  // File walker in Java before 11 infinitely walks some zip files
+  // that have invalid zip entries, for example:
+  // <zip root>
+  //   /some
+  //     /
+  //     /entry.txt
+  //   /some2
+  //     ...
+  // Zip entry "/some//" will make the file walker re-visit the "/some" directory over and over again.
+  // This can lead to OutOfMemory in stack of the visited entries.
+  private fun validateZipArchiveOnJavaPriorTo11(zipFile: Path) {
+    ZipInputStream(zipFile.inputStream()).use { zis ->
+      var entry = zis.nextEntry
+      while (entry != null) {
+        if (entry.name.endsWith("//")) {
+          throw IOException("Zip archive $zipFile contains invalid cyclic entry ${entry.name}")
+        }
+        entry = zis.nextEntry
+      }
+    }
+  }
+
+  private fun readEntryLines(entryName: String): List<String> {
+    val entryPath = zipFs.getPath(entryName)
+    if (!entryPath.exists()) {
+      return emptyList()
+    }
+    return entryPath.readLines()
+  }
+
+  override fun <T> readEntry(entryName: String, reader: (InputStream) -> T): T? {
+    val entryPath = zipRoot.resolve(entryName)
+    if (!entryPath.exists()) {
+      return null
+    }
+    return entryPath.inputStream().use(reader)
+  }
+
+  override fun close() {
+    if (zipFsDelegate.isInitialized()) {
+      zipFs.close()
+    }
+  }
+}
+
+/**
+ * Accessor that opens the jar as [ZipFile], which reads the zip central directory once
+ * and then reads entries directly by name, without per-entry [Path]s and channels.
+ */
+internal class ZipFileAccessor(private val jarPath: Path) : JarEntriesAccessor {
+
+  private val zipFileDelegate = lazy { ZipFile(jarPath.toFile()) }
+
+  private val zipFile: ZipFile by zipFileDelegate
+
+  @Volatile
+  private var isClosed = false
+
+  override val isOpen: Boolean
+    get() = !isClosed
+
+  override fun buildIndex(): JarFileIndex = buildZipFileIndex(zipFile)
+
+  override fun <T> readEntry(entryName: String, reader: (InputStream) -> T): T? {
+    val entry = zipFile.getEntry(entryName) ?: return null
+    return zipFile.getInputStream(entry).use(reader)
+  }
+
+  override fun close() {
+    isClosed = true
+    if (zipFileDelegate.isInitialized()) {
+      zipFile.close()
+    }
+  }
+}
+
+/**
+ * Accessor that reads the jar as [ZipFile] taken from the [pool] for each access.
+ * Closing the accessor closes the pooled file once it is not used by other accessors of the same jar.
+ */
+internal class PooledZipFileAccessor(private val jarPath: Path, private val pool: ZipFilePool) : JarEntriesAccessor {
+
+  @Volatile
+  private var isClosed = false
+
+  override val isOpen: Boolean
+    get() = !isClosed
+
+  override fun buildIndex(): JarFileIndex = pool.withZipFile(jarPath) { buildZipFileIndex(it) }
+
+  override fun <T> readEntry(entryName: String, reader: (InputStream) -> T): T? = pool.withZipFile(jarPath) { zipFile ->
+    val entry = zipFile.getEntry(entryName)
+    if (entry != null) {
+      zipFile.getInputStream(entry).use(reader)
+    } else {
+      null
+    }
+  }
+
+  override fun close() {
+    isClosed = true
+    pool.close(jarPath)
+  }
+}
+
+/**
+ * Builds [JarFileIndex] of [zipFile] from its central directory.
+ */
+private fun buildZipFileIndex(zipFile: ZipFile): JarFileIndex {
+  val indexBuilder = JarFileIndexBuilder()
+  val entries = zipFile.entries()
+  while (entries.hasMoreElements()) {
+    val entry = entries.nextElement()
+    indexBuilder.addEntry(entry.name.trimEnd('/'), entry.isDirectory) {
+      zipFile.getInputStream(entry).bufferedReader().use(BufferedReader::readLines)
+    }
+  }
+  return indexBuilder.build()
+}
+
+/**
+ * Collects [JarFileIndex] from names of the jar entries.
+ *
+ * Classes are kept in the order of the entries, so that [JarFileResolver.processAllClasses]
+ * reads them sequentially through the archive.
+ */
+internal class JarFileIndexBuilder {
+
+  private companion object {
+    private const val CLASS_SUFFIX = ".class"
+
+    private const val PROPERTIES_SUFFIX = ".properties"
+
+    private const val SERVICE_PROVIDERS_PREFIX = "META-INF/services/"
+  }
+
+  private val classes = linkedSetOf<String>()
+
+  private val packageSet = PackageSet()
+
+  private val bundleNames = hashMapOf<String, MutableSet<String>>()
+
+  private val serviceProviders = hashMapOf<String, Set<String>>()
+
+  fun addEntry(entryName: String, isDirectory: Boolean, readLines: () -> List<String>) {
+    when {
+      entryName.endsWith(CLASS_SUFFIX) -> {
+        val className = entryName.substringBeforeLast(CLASS_SUFFIX)
+        classes.add(className)
+        packageSet.addPackagesOfClass(className)
+      }
+      entryName.endsWith(PROPERTIES_SUFFIX) -> {
+        val fullBundleName = getBundleNameByBundlePath(entryName)
+        bundleNames.getOrPut(getBundleBaseName(fullBundleName)) { hashSetOf() } += fullBundleName
+      }
+      !isDirectory && entryName.startsWith(SERVICE_PROVIDERS_PREFIX) && entryName.count { it == '/' } == 2 -> {
+        val serviceProvider = entryName.substringAfter(SERVICE_PROVIDERS_PREFIX)
+        serviceProviders[serviceProvider] = readLines().map { it.substringBefore("#").trim() }.filterNotTo(hashSetOf()) { it.isEmpty() }
+      }
+    }
+  }
+
+  fun build() = JarFileIndex(classes, packageSet.getAllPackages(), bundleNames, serviceProviders)
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.plugin.structure.classes.resolvers
+
+import com.google.common.hash.Hashing
+import com.jetbrains.plugin.structure.base.utils.*
+import com.jetbrains.plugin.structure.classes.utils.readZipCentralDirectory
+import com.jetbrains.plugin.structure.classes.utils.readZipTail
+import org.slf4j.LoggerFactory
+import java.io.*
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.StandardCopyOption
+import java.util.zip.CRC32
+
+/**
+ * Names of classes, packages, resource bundles and service providers contained in a jar file.
+ *
+ * It is everything [JarFileResolver] needs to answer queries
+ * that don't require reading the classes themselves.
+ */
+class JarFileIndex(
+  val classes: Set<String>,
+  val packages: Set<String>,
+  val bundleNames: Map<String, Set<String>>,
+  val serviceProviders: Map<String, Set<String>>
+)
+
+/**
+ * Persistent storage of [JarFileIndex]es in [indexDirectory].
+ *
+ * An index is reused as long as the jar's path, size, modification time and
+ * checksum of its zip central directory are equal to those recorded
+ * when the index was built. Otherwise, the index is rebuilt and saved.
+ * Symbolic links are resolved, so all links to the same jar share one index.
+ *
+ * [JarFileResolver] created with such a cache doesn't open the jar
+ * until a class or a resource bundle is actually read.
+ *
+ * Indexes of deleted or changed jars are removed when the cache is created
+ * and on [removeOutdatedIndexes]. Owners of jars that delete them
+ * while the cache is in use should call [remove] beforehand.
+ */
+class JarFileIndexCache(val indexDirectory: Path) {
+
+  private companion object {
+    private val LOG = LoggerFactory.getLogger(JarFileIndexCache::class.java)
+
+    private const val INDEX_FORMAT_VERSION = 1
+
+    private const val INDEX_SUFFIX = ".index"
+  }
+
+  private data class JarStamp(val path: String, val size: Long, val lastModified: Long, val checksum: Long)
+
+  init {
+    indexDirectory.createDir()
+    removeOutdatedIndexes()
+  }
+
+  /**
+   * Returns the index of [jarPath] saved in this cache,
+   * or builds the index with [indexBuilder] and saves it.
+   */
+  fun getOrBuild(jarPath: Path, indexBuilder: () -> JarFileIndex): JarFileIndex {
+    val jarStamp = getJarStamp(jarPath)
+    val indexFile = getIndexFile(jarStamp.path)
+    val savedIndex = readIndex(indexFile, jarStamp)
+    if (savedIndex != null) {
+      return savedIndex
+    }
+    val index = indexBuilder()
+    saveIndex(indexFile, jarStamp, index)
+    return index
+  }
+
+  /**
+   * Removes the index of [jarPath], if any.
+   *
+   * It must be called before the jar is deleted so that symbolic links
+   * are resolved the same way as when the index was built.
+   */
+  fun remove(jarPath: Path) {
+    val absolutePath = try {
+      jarPath.toRealPath()
+    } catch (e: IOException) {
+      jarPath.toAbsolutePath().normalize()
+    }
+    getIndexFile(absolutePath.toString()).deleteLogged()
+  }
+
+  /**
+   * Removes indexes of jars that don't exist anymore or have changed since the indexes were built,
+   * as well as indexes of other format versions.
+   */
+  fun removeOutdatedIndexes() {
+    for (indexFile in indexDirectory.listFiles()) {
+      if (indexFile.simpleName.endsWith(INDEX_SUFFIX) && isOutdated(indexFile)) {
+        LOG.debug("Removing outdated jar index $indexFile")
+        indexFile.deleteLogged()
+      }
+    }
+  }
+
+  private fun isOutdated(indexFile: Path): Boolean =
+    try {
+      DataInputStream(BufferedInputStream(Files.newInputStream(indexFile))).use { input ->
+        if (input.readInt() != INDEX_FORMAT_VERSION) {
+          return true
+        }
+        val jarPath = Paths.get(input.readUTF())
+        val size = input.readLong()
+        val lastModified = input.readLong()
+        !jarPath.exists() || Files.size(jarPath) != size || Files.getLastModifiedTime(jarPath).toMillis() != lastModified
+      }
+    } catch (e: Exception) {
+      e.rethrowIfInterrupted()
+      true
+    }
+
+  private fun getIndexFile(absoluteJarPath: String): Path {
+    val hash = Hashing.sha256().hashString(absoluteJarPath, Charsets.UTF_8).toString()
+    return indexDirectory.resolve(hash + INDEX_SUFFIX)
+  }
+
+  private fun getJarStamp(jarPath: Path): JarStamp {
+    val absolutePath = jarPath.toRealPath()
+    return JarStamp(
+      absolutePath.toString(),
+      Files.size(absolutePath),
+      Files.getLastModifiedTime(absolutePath).toMillis(),
+      getCentralDirectoryChecksum(absolutePath)
+    )
+  }
+
+  /**
+   * Calculates the checksum of the zip central directory, which lists
+   * names and CRC-32 of all the entries. This way any change of the jar's content is detected
+   * without reading the whole file. If the central directory can't be located
+   * (e.g. Zip64 archives), the checksum of the archive's tail is used instead.
+   */
+  private fun getCentralDirectoryChecksum(jarPath: Path): Long {
+    val crc = CRC32()
+    crc.update(readZipCentralDirectory(jarPath) ?: readZipTail(jarPath))
+    return crc.value
+  }
+
+  private fun readIndex(indexFile: Path, jarStamp: JarStamp): JarFileIndex? {
+    if (!indexFile.exists()) {
+      return null
+    }
+    return try {
+      DataInputStream(BufferedInputStream(Files.newInputStream(indexFile))).use { input ->
+        if (input.readInt() != INDEX_FORMAT_VERSION) {
+          return null
+        }
+        val savedStamp = JarStamp(input.readUTF(), input.readLong(), input.readLong(), input.readLong())
+        if (savedStamp != jarStamp) {
+          return null
+        }
+        JarFileIndex(
+          input.readStrings(),
+          input.readStrings(),
+          input.readStringsMap(),
+          input.readStringsMap()
+        )
+      }
+    } catch (e: Exception) {
+      e.rethrowIfInterrupted()
+      LOG.info("Unable to read jar index $indexFile of ${jarStamp.path}, it will be rebuilt: ${e.message}")
+      null
+    }
+  }
+
+  private fun saveIndex(indexFile: Path, jarStamp: JarStamp, index: JarFileIndex) {
+    val tempFile = Files.createTempFile(indexDirectory, indexFile.fileName.toString(), ".tmp")
+    try {
+      DataOutputStream(BufferedOutputStream(Files.newOutputStream(tempFile))).use { output ->
+        output.writeInt(INDEX_FORMAT_VERSION)
+        output.writeUTF(jarStamp.path)
+        output.writeLong(jarStamp.size)
+        output.writeLong(jarStamp.lastModified)
+        output.writeLong(jarStamp.checksum)
+        output.writeStrings(index.classes)
+        output.writeStrings(index.packages)
+        output.writeStringsMap(index.bundleNames)
+        output.writeStringsMap(index.serviceProviders)
+      }
+      Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+    } catch (e: Exception) {
+      e.rethrowIfInterrupted()
+      LOG.info("Unable to save jar index $indexFile of ${jarStamp.path}: ${e.message}")
+    } finally {
+      tempFile.deleteQuietly()
+    }
+  }
+
+  private fun DataOutputStream.writeStrings(strings: Set<String>) {
+    writeInt(strings.size)
+    strings.forEach { writeUTF(it) }
+  }
+
+  private fun DataOutputStream.writeStringsMap(map: Map<String, Set<String>>) {
+    writeInt(map.size)
+    for ((key, values) in map) {
+      writeUTF(key)
+      writeStrings(values)
+    }
+  }
+
+  private fun DataInputStream.readStrings(): Set<String> {
+    val size = readInt()
+    val result = LinkedHashSet<String>(size * 4 / 3 + 1)
+    repeat(size) { result += readUTF() }
+    return result
+  }
+
+  private fun DataInputStream.readStringsMap(): Map<String, Set<String>> {
+    val size = readInt()
+    val result = HashMap<String, Set<String>>(size * 4 / 3 + 1)
+    repeat(size) { result[readUTF()] = readStrings() }
+    return result
+  }
+
+}
@@ -6,44 +6,63 @@ package com.jetbrains.plugin.structure.classes.resolvers
 
 import com.jetbrains.plugin.structure.base.utils.*
 import com.jetbrains.plugin.structure.classes.utils.AsmUtil
-import com.jetbrains.plugin.structure.classes.utils.getBundleBaseName
-import com.jetbrains.plugin.structure.classes.utils.getBundleNameByBundlePath
 import org.objectweb.asm.tree.ClassNode
-import java.io.IOException
 import java.nio.channels.ClosedChannelException
-import java.nio.file.FileSystem
 import java.nio.file.FileSystems
-import java.nio.file.Files
 import java.nio.file.Path
 import java.util.*
 import java.util.concurrent.atomic.AtomicBoolean
-import java.util.zip.ZipInputStream
 
-class JarFileResolver(
+class JarFileResolver @JvmOverloads constructor(
   private val jarPath: Path,
   override val readMode: ReadMode,
-  private val fileOrigin: FileOrigin
+  private val fileOrigin: FileOrigin,
+  indexCache: JarFileIndexCache? = null,
+  backend: Backend = Backend.ZIP_FILE_SYSTEM
 ) : Resolver() {
 
+  /**
+   * Specifies how the jar entries are read.
+   */
+  enum class Backend {
+    /**
+     * The jar is opened as a zip file system.
+     */
+    ZIP_FILE_SYSTEM,
+
+    /**
+     * The jar is opened as [java.util.zip.ZipFile]: its central directory
+     * is read once and class files are read directly by entry names.
+     * It allocates less and makes fewer system calls per class than [ZIP_FILE_SYSTEM].
+     *
+     * Only jars of the default file system can be opened this way,
+     * other jars are opened with [ZIP_FILE_SYSTEM].
+     */
+    ZIP_FILE,
+
+    /**
+     * The jar is read as [java.util.zip.ZipFile] like [ZIP_FILE], but it is kept open
+     * in the [shared] [ZipFilePool.shared] pool of a bounded size rather than until the resolver is closed.
+     * Resolvers of the same jar share its open file.
+     * It allows to keep many resolvers without running out of file descriptors.
+     *
+     * Only jars of the default file system can be opened this way,
+     * other jars are opened with [ZIP_FILE_SYSTEM].
+     */
+    POOLED_ZIP_FILE
+  }
+
   private companion object {
     private const val CLASS_SUFFIX = ".class"
-
-    private const val PROPERTIES_SUFFIX = ".properties"
-
-    private const val SERVICE_PROVIDERS_PREFIX = "META-INF/services/"
   }
 
-  private val classes: MutableSet<String> = hashSetOf()
-
-  private val packageSet = PackageSet()
-
-  private val bundleNames = hashMapOf<String, MutableSet<String>>()
-
-  private val serviceProviders: MutableMap<String, Set<String>> = hashMapOf()
-
-  private val zipFs: FileSystem
+  private val entriesAccessor: JarEntriesAccessor = when (backend) {
+    Backend.ZIP_FILE_SYSTEM -> ZipFileSystemAccessor(jarPath)
+    Backend.ZIP_FILE -> if (jarPath.fileSystem == FileSystems.getDefault()) ZipFileAccessor(jarPath) else ZipFileSystemAccessor(jarPath)
+    Backend.POOLED_ZIP_FILE -> if (jarPath.fileSystem == FileSystems.getDefault()) PooledZipFileAccessor(jarPath, ZipFilePool.shared) else ZipFileSystemAccessor(jarPath)
+  }
 
-  private val zipRoot: Path
+  private val index: JarFileIndex
 
   @Volatile
   private var closeStacktrace: Throwable? = null
@@ -53,113 +72,51 @@ class JarFileResolver(
   init {
     require(jarPath.exists()) { "File does not exist: $jarPath" }
     require(jarPath.simpleName.endsWith(".jar") || jarPath.simpleName.endsWith(".zip")) { "File is neither a .jar nor .zip archive: $jarPath" }
-    validateZipArchiveOnJavaPriorTo11(jarPath)
-    zipFs = FileSystems.newFileSystem(jarPath, JarFileResolver::class.java.classLoader)
-    zipRoot = zipFs.rootDirectories.single()
-    readClassNamesAndServiceProviders()
-  }
-
-  // Workaround for https://bugs.openjdk.java.net/browse/JDK-8197398:
-  // File walker in Java before 11 infinitely walks some zip files
-  // that have invalid zip entries, for example:
-  // <zip root>
-  //   /some
-  //     /
-  //     /entry.txt
-  //   /some2
-  //     ...
-  // Zip entry "/some//" will make the file walker re-visit the "/some" directory over and over again.
-  // This can lead to OutOfMemory in stack of the visited entries.
-  private fun validateZipArchiveOnJavaPriorTo11(zipFile: Path) {
-    ZipInputStream(zipFile.inputStream()).use { zis ->
-      var entry = zis.nextEntry
-      while (entry != null) {
-        if (entry.name.endsWith("//")) {
-          throw IOException("Zip archive $zipFile contains invalid cyclic entry ${entry.name}")
-        }
-        entry = zis.nextEntry
-      }
-    }
-  }
-
-  private fun readClassNamesAndServiceProviders() {
-    Files.walk(zipRoot).use { stream ->
-      stream.forEach { entry ->
-        val entryName = getPathInJar(entry)
-        when {
-          entryName.endsWith(CLASS_SUFFIX) -> {
-            val className = entryName.substringBeforeLast(CLASS_SUFFIX)
-            classes.add(className)
-            packageSet.addPackagesOfClass(className)
-          }
-          entryName.endsWith(PROPERTIES_SUFFIX) -> {
-            val fullBundleName = getBundleNameByBundlePath(entryName)
-            bundleNames.getOrPut(getBundleBaseName(fullBundleName)) { hashSetOf() } += fullBundleName
-          }
-          !entry.isDirectory && entryName.startsWith(SERVICE_PROVIDERS_PREFIX) && entryName.count { it == '/' } == 2 -> {
-            val serviceProvider = entryName.substringAfter(SERVICE_PROVIDERS_PREFIX)
-            serviceProviders[serviceProvider] = readServiceImplementationNames(serviceProvider)
-          }
-        }
-      }
-    }
-  }
-
-  private fun getPathInJar(entry: Path): String = zipRoot.relativize(entry).toString().toSystemIndependentName()
-
-  private fun readServiceImplementationNames(serviceProvider: String): Set<String> {
-    val entry = SERVICE_PROVIDERS_PREFIX + serviceProvider
-    val entryPath = zipFs.getPath(entry)
-    if (!entryPath.exists()) {
-      return emptySet()
+    index = entriesAccessor.closeOnException {
+      indexCache?.getOrBuild(jarPath) { it.buildIndex() } ?: it.buildIndex()
     }
-    return entryPath.readLines().map { it.substringBefore("#").trim() }.filterNotTo(hashSetOf()) { it.isEmpty() }
   }
 
   val implementedServiceProviders: Map<String, Set<String>>
-    get() = serviceProviders
+    get() = index.serviceProviders
 
   override val allPackages
-    get() = packageSet.getAllPackages()
+    get() = index.packages
 
   override val allBundleNameSet: ResourceBundleNameSet
-    get() = ResourceBundleNameSet(bundleNames)
+    get() = ResourceBundleNameSet(index.bundleNames)
 
   override val allClasses
-    get() = classes
+    get() = index.classes
 
   override fun processAllClasses(processor: (ResolutionResult<ClassNode>) -> Boolean): Boolean {
+    if (index.classes.isEmpty()) {
+      return true
+    }
     checkIsOpen()
-    Files.walk(zipRoot).use { stream ->
-      for (zipEntry in stream.filter { it.simpleName.endsWith(CLASS_SUFFIX) }) {
-        val className = getPathInJar(zipEntry).removeSuffix(CLASS_SUFFIX)
-        val result = readClass(className, zipEntry)
-        if (!processor(result)) {
-          return false
-        }
+    for (className in index.classes) {
+      val result = readClass(className) ?: continue
+      if (!processor(result)) {
+        return false
       }
     }
     return true
   }
 
-  override fun containsClass(className: String) = className in classes
+  override fun containsClass(className: String) = className in index.classes
 
-  override fun containsPackage(packageName: String) = packageSet.containsPackage(packageName)
+  override fun containsPackage(packageName: String) = packageName in index.packages
 
   override fun resolveClass(className: String): ResolutionResult<ClassNode> {
-    checkIsOpen()
-    if (className !in classes) {
+    if (className !in index.classes) {
       return ResolutionResult.NotFound
     }
-    val classPath = zipRoot.resolve(className + CLASS_SUFFIX)
-    if (!classPath.exists()) {
-      ResolutionResult.NotFound
-    }
-    return readClass(className, classPath)
+    checkIsOpen()
+    return readClass(className) ?: ResolutionResult.NotFound
   }
 
   override fun resolveExactPropertyResourceBundle(baseName: String, locale: Locale): ResolutionResult<PropertyResourceBundle> {
-    if (baseName !in bundleNames) {
+    if (baseName !in index.bundleNames) {
       return ResolutionResult.NotFound
     }
 
@@ -185,25 +142,22 @@ class JarFileResolver(
 
   private fun readPropertyResourceBundle(bundleResourceName: String): PropertyResourceBundle? {
     checkIsOpen()
-    val path = zipRoot.resolve(bundleResourceName)
-    if (!path.exists()) {
-      return null
-    }
-    return path.inputStream().use { PropertyResourceBundle(it) }
+    return entriesAccessor.readEntry(bundleResourceName) { PropertyResourceBundle(it) }
   }
 
-  private fun readClass(className: String, classPath: Path): ResolutionResult<ClassNode> {
+  private fun readClass(className: String): ResolutionResult<ClassNode>? {
+    val entryName = className + CLASS_SUFFIX
     return try {
-      val classNode = classPath.inputStream().use {
+      val classNode = entriesAccessor.readEntry(entryName) {
         AsmUtil.readClassNode(className, it, readMode == ReadMode.FULL)
-      }
+      } ?: return null
       ResolutionResult.Found(classNode, fileOrigin)
     } catch (e: InvalidClassFileException) {
       ResolutionResult.Invalid(e.message)
     } catch (e: Exception) {
       e.rethrowIfInterrupted()
       if (e is ClosedChannelException) {
-        val exception = IllegalStateException("ClosedChannelException for $className of $this from $classPath", e)
+        val exception = IllegalStateException("ClosedChannelException for $className of $this from $entryName", e)
         closeStacktrace?.let { exception.addSuppressed(it) }
         throw exception
       }
@@ -212,14 +166,14 @@ class JarFileResolver(
   }
 
   private fun checkIsOpen() {
-    check(zipFs.isOpen) { "Jar file system must be open for $this" }
+    check(!isClosed.get() && entriesAccessor.isOpen) { "Jar file system must be open for $this" }
   }
 
   override fun close() {
     if (!isClosed.compareAndSet(false, true)) {
       throw IllegalStateException("This resolver is already closed: $this")
     }
-    zipFs.close()
+    entriesAccessor.close()
     closeStacktrace = RuntimeException()
   }
 
@@ -227,16 +181,19 @@ class JarFileResolver(
 
 }
 
+@JvmOverloads
 fun buildJarOrZipFileResolvers(
   jarsOrZips: Iterable<Path>,
   readMode: Resolver.ReadMode,
-  parentOrigin: FileOrigin
+  parentOrigin: FileOrigin,
+  indexCache: JarFileIndexCache? = null,
+  backend: JarFileResolver.Backend = JarFileResolver.Backend.ZIP_FILE_SYSTEM
 ): List<Resolver> {
   val resolvers = arrayListOf<Resolver>()
   resolvers.closeOnException {
     jarsOrZips.mapTo(resolvers) { file ->
       val fileOrigin = JarOrZipFileOrigin(file.simpleName, parentOrigin)
-      JarFileResolver(file, readMode, fileOrigin)
+      JarFileResolver(file, readMode, fileOrigin, indexCache, backend)
     }
   }
   return resolvers
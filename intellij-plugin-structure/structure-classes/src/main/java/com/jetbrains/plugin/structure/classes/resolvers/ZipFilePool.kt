@@ -0,0 +1,155 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.plugin.structure.classes.resolvers
+
+import com.jetbrains.plugin.structure.base.plugin.Settings
+import com.jetbrains.plugin.structure.base.utils.closeLogged
+import java.nio.file.Path
+import java.util.zip.ZipFile
+
+/**
+ * Pool of [ZipFile]s opened by [JarFileResolver]s that use [JarFileResolver.Backend.POOLED_ZIP_FILE].
+ *
+ * Zip files are opened on demand, one per path, and shared by all the resolvers of the same jar.
+ * A zip file is not closed while it is used by someone. At most [maxOpenFiles] zip files are open at once:
+ * to open another file, the least recently used unused file is closed, and if all open files are in use,
+ * the opening thread waits until one of them is released. This bounds the number of file descriptors consumed
+ * by resolvers of many jars, for example, when several IDEs are processed in parallel.
+ *
+ * Zip files must not be requested while another zip file of the same pool is used by the same thread,
+ * otherwise the thread may wait forever.
+ */
+class ZipFilePool(private val maxOpenFiles: Int) {
+
+  companion object {
+    /**
+     * The pool shared by all resolvers of [JarFileResolver.Backend.POOLED_ZIP_FILE].
+     * Its size is specified by [Settings.MAX_POOLED_ZIP_FILES].
+     */
+    val shared = ZipFilePool(Settings.MAX_POOLED_ZIP_FILES.getAsInt())
+  }
+
+  init {
+    require(maxOpenFiles > 0) { "Pool size must be positive: $maxOpenFiles" }
+  }
+
+  private val lock = Object()
+
+  private val openFiles = LinkedHashMap<Path, Entry>(16, 0.75f, true)
+
+  /**
+   * Number of zip files that are being opened outside of the lock.
+   * They count toward [maxOpenFiles] along with [openFiles].
+   */
+  private var openingFilesNumber = 0
+
+  val openFilesNumber: Int
+    get() = synchronized(lock) { openFiles.size }
+
+  /**
+   * Executes [action] with the open zip file of [zipPath] and returns its result.
+   * The zip file is not closed while the action is running.
+   */
+  @Throws(InterruptedException::class)
+  fun <T> withZipFile(zipPath: Path, action: (ZipFile) -> T): T {
+    val entry = acquire(zipPath)
+    try {
+      return action(entry.zipFile)
+    } finally {
+      release(entry)
+    }
+  }
+
+  /**
+   * Closes the zip file of [zipPath] as soon as it is not used.
+   * It will be reopened on the next access.
+   */
+  fun close(zipPath: Path) {
+    val zipFile = synchronized(lock) {
+      val entry = openFiles[zipPath] ?: return
+      if (entry.users > 0) {
+        entry.isEvicted = true
+        return
+      }
+      openFiles.remove(zipPath)
+      lock.notifyAll()
+      entry.zipFile
+    }
+    zipFile.closeLogged()
+  }
+
+  private fun acquire(zipPath: Path): Entry {
+    var idleZipFile: ZipFile? = null
+    synchronized(lock) {
+      while (true) {
+        val entry = openFiles[zipPath]
+        if (entry != null) {
+          entry.users++
+          return entry
+        }
+        if (openFiles.size + openingFilesNumber < maxOpenFiles) {
+          break
+        }
+        val idleEntry = openFiles.values.find { it.users == 0 }
+        if (idleEntry != null) {
+          openFiles.remove(idleEntry.zipPath)
+          idleZipFile = idleEntry.zipFile
+          break
+        }
+        lock.wait()
+      }
+      openingFilesNumber++
+    }
+    idleZipFile.closeLogged()
+
+    val zipFile = try {
+      ZipFile(zipPath.toFile())
+    } catch (e: Throwable) {
+      synchronized(lock) {
+        openingFilesNumber--
+        lock.notifyAll()
+      }
+      throw e
+    }
+
+    val (entry, unusedZipFile) = synchronized(lock) {
+      openingFilesNumber--
+      val concurrentEntry = openFiles[zipPath]
+      if (concurrentEntry != null) {
+        concurrentEntry.users++
+        lock.notifyAll()
+        concurrentEntry to zipFile
+      } else {
+        val newEntry = Entry(zipPath, zipFile)
+        newEntry.users++
+        openFiles[zipPath] = newEntry
+        newEntry to null
+      }
+    }
+    unusedZipFile.closeLogged()
+    return entry
+  }
+
+  private fun release(entry: Entry) {
+    val zipFile = synchronized(lock) {
+      if (--entry.users > 0) {
+        return
+      }
+      lock.notifyAll()
+      if (!entry.isEvicted) {
+        return
+      }
+      openFiles.remove(entry.zipPath)
+      entry.zipFile
+    }
+    zipFile.closeLogged()
+  }
+
+  private class Entry(val zipPath: Path, val zipFile: ZipFile) {
+    var users = 0
+
+    var isEvicted = false
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.plugin.structure.classes.utils
+
+import com.google.common.collect.Interner
+import com.google.common.collect.Interners
+import org.objectweb.asm.Opcodes
+import org.objectweb.asm.Type
+import org.objectweb.asm.tree.*
+
+/**
+ * Reduces memory retained by [ClassNode]s that are kept in long-lived caches
+ * of classes that are referenced but not verified themselves, such as IDE, JDK and dependencies classes.
+ *
+ * - debug information (line numbers, local variables, source debug extension)
+ * and stack map frames are dropped: they are only needed for classes under verification.
+ * Local variables of method parameters are kept because they provide the parameters' names.
+ * Instructions are kept because constants of referenced classes may be evaluated.
+ * - names, descriptors and signatures are interned in a pool shared by all compacted classes,
+ * so that strings like `java/lang/String` or `()V` are stored once rather than once per class.
+ * - lists of members are trimmed to their sizes.
+ *
+ * Compacted classes are meant to be shared by several threads, so they must be treated as read-only.
+ * [InsnList] builds its array of instructions lazily on the first indexed access, which is not thread-safe,
+ * so the array is built by the compactor before the class is published.
+ */
+object ClassNodeCompactor {
+
+  private val stringPool: Interner<String> = Interners.newWeakInterner()
+
+  /**
+   * Compacts [classNode] in place and returns it.
+   */
+  fun compact(classNode: ClassNode): ClassNode {
+    with(classNode) {
+      name = name.pooled()
+      superName = superName.pooled()
+      signature = signature.pooled()
+      outerClass = outerClass.pooled()
+      outerMethod = outerMethod.pooled()
+      outerMethodDesc = outerMethodDesc.pooled()
+      interfaces = interfaces.pooledAll()
+      sourceDebug = null
+      innerClasses?.forEach { it.compact() }
+      fields?.forEach { it.compact() }
+      methods?.forEach { it.compact() }
+      visibleAnnotations?.forEach { it.compact() }
+      invisibleAnnotations?.forEach { it.compact() }
+      (innerClasses as? ArrayList)?.trimToSize()
+      (fields as? ArrayList)?.trimToSize()
+      (methods as? ArrayList)?.trimToSize()
+    }
+    return classNode
+  }
+
+  private fun InnerClassNode.compact() {
+    name = name.pooled()
+    outerName = outerName.pooled()
+    innerName = innerName.pooled()
+  }
+
+  private fun FieldNode.compact() {
+    name = name.pooled()
+    desc = desc.pooled()
+    signature = signature.pooled()
+    visibleAnnotations?.forEach { it.compact() }
+    invisibleAnnotations?.forEach { it.compact() }
+  }
+
+  private fun MethodNode.compact() {
+    name = name.pooled()
+    desc = desc.pooled()
+    signature = signature.pooled()
+    exceptions = exceptions.pooledAll()
+    localVariables = getParameterLocalVariables()
+    visibleLocalVariableAnnotations = null
+    invisibleLocalVariableAnnotations = null
+    visibleAnnotations?.forEach { it.compact() }
+    invisibleAnnotations?.forEach { it.compact() }
+    tryCatchBlocks?.forEach { it.type = it.type.pooled() }
+
+    val iterator = instructions.iterator()
+    while (iterator.hasNext()) {
+      when (val instruction = iterator.next()) {
+        is LineNumberNode, is FrameNode -> iterator.remove()
+        is MethodInsnNode -> {
+          instruction.owner = instruction.owner.pooled()
+          instruction.name = instruction.name.pooled()
+          instruction.desc = instruction.desc.pooled()
+        }
+        is FieldInsnNode -> {
+          instruction.owner = instruction.owner.pooled()
+          instruction.name = instruction.name.pooled()
+          instruction.desc = instruction.desc.pooled()
+        }
+        is TypeInsnNode -> instruction.desc = instruction.desc.pooled()
+        is MultiANewArrayInsnNode -> instruction.desc = instruction.desc.pooled()
+      }
+    }
+    if (instructions.size() > 0) {
+      //Builds the lazy instructions array and their indices while the class is not shared yet.
+      instructions.get(0)
+    }
+  }
+
+  /**
+   * Returns local variables occupying slots of `this` and the method parameters,
+   * or `null` if the method has no parameters.
+   */
+  private fun MethodNode.getParameterLocalVariables(): List<LocalVariableNode>? {
+    val localVariables = localVariables ?: return null
+    //Size of the arguments including the implicit `this`.
+    val argumentsSize = Type.getArgumentsAndReturnSizes(desc) shr 2
+    if (argumentsSize == 1) {
+      return null
+    }
+    val parametersSlotsEnd = if (access and Opcodes.ACC_STATIC != 0) argumentsSize - 1 else argumentsSize
+    return localVariables.filter { it.index < parametersSlotsEnd }.onEach {
+      it.name = it.name.pooled()
+      it.desc = it.desc.pooled()
+      it.signature = it.signature.pooled()
+    }
+  }
+
+  private fun AnnotationNode.compact() {
+    desc = desc.pooled()
+  }
+
+  private fun String?.pooled(): String? = this?.let { stringPool.intern(it) }
+
+  private fun List<String>?.pooledAll(): List<String>? = this?.mapTo(ArrayList(size)) { stringPool.intern(it) }
+}
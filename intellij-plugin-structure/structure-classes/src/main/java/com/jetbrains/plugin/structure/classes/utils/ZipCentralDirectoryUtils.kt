@@ -0,0 +1,72 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.plugin.structure.classes.utils
+
+import java.io.EOFException
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+
+private const val END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50
+
+private const val END_OF_CENTRAL_DIRECTORY_MIN_SIZE = 22
+
+private const val MAX_ZIP_COMMENT_SIZE = 0xFFFF
+
+/**
+ * Reads the central directory of zip archive [zipPath], which lists names,
+ * sizes and CRC-32 of all the entries, without reading the whole file.
+ *
+ * Returns `null` if the central directory can't be located (e.g. Zip64 archives).
+ */
+fun readZipCentralDirectory(zipPath: Path): ByteArray? {
+  FileChannel.open(zipPath, StandardOpenOption.READ).use { channel ->
+    val tail = channel.readTail()
+    val eocd = findEndOfCentralDirectory(tail) ?: return null
+    val centralDirectorySize = tail.getInt(eocd + 12).toLong() and 0xFFFFFFFFL
+    val centralDirectoryOffset = tail.getInt(eocd + 16).toLong() and 0xFFFFFFFFL
+    if (centralDirectoryOffset + centralDirectorySize > channel.size()) {
+      return null
+    }
+    val centralDirectory = ByteBuffer.allocate(centralDirectorySize.toInt())
+    channel.readFully(centralDirectory, centralDirectoryOffset)
+    return centralDirectory.array()
+  }
+}
+
+/**
+ * Reads the tail of zip archive [zipPath] that may contain the end of its central directory.
+ */
+internal fun readZipTail(zipPath: Path): ByteArray =
+  FileChannel.open(zipPath, StandardOpenOption.READ).use { it.readTail().array() }
+
+private fun FileChannel.readTail(): ByteBuffer {
+  val fileSize = size()
+  val tailSize = minOf(fileSize, (MAX_ZIP_COMMENT_SIZE + END_OF_CENTRAL_DIRECTORY_MIN_SIZE).toLong()).toInt()
+  val tail = ByteBuffer.allocate(tailSize).order(ByteOrder.LITTLE_ENDIAN)
+  readFully(tail, fileSize - tailSize)
+  return tail
+}
+
+private fun findEndOfCentralDirectory(tail: ByteBuffer): Int? {
+  var eocd = tail.capacity() - END_OF_CENTRAL_DIRECTORY_MIN_SIZE
+  while (eocd >= 0 && tail.getInt(eocd) != END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+    eocd--
+  }
+  return eocd.takeIf { it >= 0 }
+}
+
+private fun FileChannel.readFully(buffer: ByteBuffer, position: Long) {
+  var offset = position
+  while (buffer.hasRemaining()) {
+    val read = read(buffer, offset)
+    if (read < 0) {
+      throw EOFException()
+    }
+    offset += read
+  }
+}
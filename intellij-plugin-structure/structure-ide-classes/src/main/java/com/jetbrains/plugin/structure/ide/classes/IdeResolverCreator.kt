@@ -17,15 +17,32 @@ import java.nio.file.Path
 
 object IdeResolverCreator {
 
+  private data class JarResolverSettings(val indexCache: JarFileIndexCache?, val backend: JarFileResolver.Backend)
+
   @JvmStatic
   fun createIdeResolver(ide: Ide): Resolver = createIdeResolver(Resolver.ReadMode.FULL, ide)
 
   @JvmStatic
-  fun createIdeResolver(readMode: Resolver.ReadMode, ide: Ide): Resolver {
+  fun createIdeResolver(readMode: Resolver.ReadMode, ide: Ide): Resolver = createIdeResolver(readMode, ide, null)
+
+  /**
+   * Creates [Resolver] of the [ide] classes.
+   * If [jarIndexCache] is specified, indexes of the IDE jars are taken from and saved to it.
+   * IDE jars are read using the [jarBackend].
+   */
+  @JvmStatic
+  @JvmOverloads
+  fun createIdeResolver(
+    readMode: Resolver.ReadMode,
+    ide: Ide,
+    jarIndexCache: JarFileIndexCache?,
+    jarBackend: JarFileResolver.Backend = JarFileResolver.Backend.ZIP_FILE_SYSTEM
+  ): Resolver {
+    val jarResolverSettings = JarResolverSettings(jarIndexCache, jarBackend)
     val idePath = ide.idePath
     return when {
-      isDistributionIde(idePath) -> getJarsResolver(idePath.resolve("lib"), readMode, IdeFileOrigin.IdeLibDirectory(ide))
-      isCompiledCommunity(idePath) || isCompiledUltimate(idePath) -> getIdeResolverFromCompiledSources(idePath, readMode, ide)
+      isDistributionIde(idePath) -> getJarsResolver(idePath.resolve("lib"), readMode, IdeFileOrigin.IdeLibDirectory(ide), jarResolverSettings)
+      isCompiledCommunity(idePath) || isCompiledUltimate(idePath) -> getIdeResolverFromCompiledSources(idePath, readMode, ide, jarResolverSettings)
       else -> throw InvalidIdeException(idePath, "Invalid IDE $ide at $idePath")
     }
   }
@@ -33,14 +50,15 @@ object IdeResolverCreator {
   private fun getJarsResolver(
     directory: Path,
     readMode: Resolver.ReadMode,
-    parentOrigin: FileOrigin
+    parentOrigin: FileOrigin,
+    jarResolverSettings: JarResolverSettings
   ): Resolver {
     if (!directory.isDirectory) {
       return EmptyResolver
     }
 
     val jars = directory.listFiles().filter { file -> file.isJar() }
-    return CompositeResolver.create(buildJarOrZipFileResolvers(jars, readMode, parentOrigin))
+    return CompositeResolver.create(buildJarOrZipFileResolvers(jars, readMode, parentOrigin, jarResolverSettings.indexCache, jarResolverSettings.backend))
   }
 
   //TODO: Resolver created this way contains all libraries declared in the project,
@@ -49,11 +67,16 @@ object IdeResolverCreator {
   // IDE sources can generate so-called "project-structure-mapping.json", which contains mapping
   // between compiled modules and jar files to which these modules are packaged in the final distribution.
   // We can use this mapping to construct a true resolver without irrelevant libraries.
-  private fun getIdeResolverFromCompiledSources(idePath: Path, readMode: Resolver.ReadMode, ide: Ide): Resolver {
+  private fun getIdeResolverFromCompiledSources(
+    idePath: Path,
+    readMode: Resolver.ReadMode,
+    ide: Ide,
+    jarResolverSettings: JarResolverSettings
+  ): Resolver {
     val resolvers = arrayListOf<Resolver>()
     resolvers.closeOnException {
-      resolvers += getJarsResolver(idePath.resolve("lib"), readMode, IdeFileOrigin.SourceLibDirectory(ide))
-      resolvers += getRepositoryLibrariesResolver(idePath, readMode, ide)
+      resolvers += getJarsResolver(idePath.resolve("lib"), readMode, IdeFileOrigin.SourceLibDirectory(ide), jarResolverSettings)
+      resolvers += getRepositoryLibrariesResolver(idePath, readMode, ide, jarResolverSettings)
 
       val compiledClassesRoot = IdeManagerImpl.getCompiledClassesRoot(idePath)!!
       compiledClassesRoot.listFiles().forEach { moduleRoot ->
@@ -62,15 +85,22 @@ object IdeResolverCreator {
       }
 
       if (isCompiledUltimate(idePath)) {
-        resolvers += getJarsResolver(idePath.resolve("community").resolve("lib"), readMode, IdeFileOrigin.SourceLibDirectory(ide))
+        resolvers += getJarsResolver(idePath.resolve("community").resolve("lib"), readMode, IdeFileOrigin.SourceLibDirectory(ide), jarResolverSettings)
       }
       return CompositeResolver.create(resolvers)
     }
   }
 
-  private fun getRepositoryLibrariesResolver(idePath: Path, readMode: Resolver.ReadMode, ide: Ide): Resolver {
+  private fun getRepositoryLibrariesResolver(
+    idePath: Path,
+    readMode: Resolver.ReadMode,
+    ide: Ide,
+    jarResolverSettings: JarResolverSettings
+  ): Resolver {
     val jars = getRepositoryLibrariesJars(idePath)
-    return CompositeResolver.create(buildJarOrZipFileResolvers(jars, readMode, IdeFileOrigin.RepositoryLibrary(ide)))
+    return CompositeResolver.create(
+      buildJarOrZipFileResolvers(jars, readMode, IdeFileOrigin.RepositoryLibrary(ide), jarResolverSettings.indexCache, jarResolverSettings.backend)
+    )
   }
 
 }
@@ -77,10 +77,12 @@ class IdeManagerImpl : IdeManager() {
     val platformJarFiles = idePath.resolve("lib")
       .listFiles()
       .filter { it.isJar() }
-    val platformResourceResolver = PlatformResourceResolver(platformJarFiles)
-    val bundledPlugins = readBundledPlugins(idePath, platformResourceResolver, ideVersion)
-    val platformPlugins = readPlatformPlugins(idePath, product, platformJarFiles, platformResourceResolver, ideVersion)
-    return bundledPlugins + platformPlugins
+    return JarFilesResourceResolver(platformJarFiles).use { jarFilesResourceResolver ->
+      val platformResourceResolver = PlatformResourceResolver(jarFilesResourceResolver)
+      val bundledPlugins = readBundledPlugins(idePath, platformResourceResolver, ideVersion)
+      val platformPlugins = readPlatformPlugins(idePath, product, platformJarFiles, platformResourceResolver, ideVersion)
+      bundledPlugins + platformPlugins
+    }
   }
 
   /**
@@ -105,8 +107,7 @@ class IdeManagerImpl : IdeManager() {
    * But rarely `nearby.xml` may reside in another platform's jar file. Apparently, IDE handles such a case accidentally:
    * an ugly fallback hack is used `com.intellij.util.io.URLUtil.openResourceStream(URL)`.
    */
-  private class PlatformResourceResolver(platformJarFiles: List<Path>) : ResourceResolver {
-    private val jarFilesResourceResolver = JarFilesResourceResolver(platformJarFiles)
+  private class PlatformResourceResolver(private val jarFilesResourceResolver: JarFilesResourceResolver) : ResourceResolver {
 
     override fun resolveResource(relativePath: String, basePath: Path): ResourceResolver.Result {
       val resolveResult = jarFilesResourceResolver.resolveResource(relativePath, basePath)
@@ -169,13 +170,15 @@ class IdeManagerImpl : IdeManager() {
     val compilationRoot = getCompiledClassesRoot(idePath)!!
     val moduleRoots = compilationRoot.listFiles().toList()
     val librariesJars = getRepositoryLibrariesJars(idePath)
-    val pathResolver = CompositeResourceResolver(
-      listOf(
-        CompiledModulesResourceResolver(moduleRoots),
-        JarFilesResourceResolver(librariesJars)
+    return JarFilesResourceResolver(librariesJars).use { librariesResourceResolver ->
+      val pathResolver = CompositeResourceResolver(
+        listOf(
+          CompiledModulesResourceResolver(moduleRoots),
+          librariesResourceResolver
+        )
       )
-    )
-    return readCompiledBundledPlugins(idePath, moduleRoots, pathResolver, ideVersion)
+      readCompiledBundledPlugins(idePath, moduleRoots, pathResolver, ideVersion)
+    }
   }
 
   private fun readCompiledBundledPlugins(
@@ -26,5 +26,5 @@ class ClassesDirectoryLocator(private val readMode: Resolver.ReadMode) : Classes
 object ClassesDirectoryKey : LocationKey {
   override val name: String = "classes directory"
 
-  override fun getLocator(readMode: Resolver.ReadMode) = ClassesDirectoryLocator(readMode)
+  override fun getLocator(options: LocatorOptions) = ClassesDirectoryLocator(options.readMode)
 }
@@ -6,6 +6,7 @@ package com.jetbrains.plugin.structure.intellij.classes.locator
 
 import com.jetbrains.plugin.structure.base.utils.isDirectory
 import com.jetbrains.plugin.structure.base.utils.isFile
+import com.jetbrains.plugin.structure.classes.resolvers.JarFileResolver
 import com.jetbrains.plugin.structure.classes.resolvers.Resolver
 import com.jetbrains.plugin.structure.classes.resolvers.buildJarOrZipFileResolvers
 import com.jetbrains.plugin.structure.intellij.plugin.IdePlugin
@@ -15,7 +16,10 @@ import java.nio.file.Path
  * Classes that added to external build process' classpath.
  * See PR-1063 and com.intellij.compiler.server.CompileServerPlugin for details
  */
-class CompileServerExtensionLocator(private val readMode: Resolver.ReadMode) : ClassesLocator {
+class CompileServerExtensionLocator(
+  private val readMode: Resolver.ReadMode,
+  private val jarBackend: JarFileResolver.Backend = JarFileResolver.Backend.ZIP_FILE_SYSTEM
+) : ClassesLocator {
   companion object {
     private const val EXTENSION_POINT_NAME = "com.intellij.compileServer.plugin"
   }
@@ -32,7 +36,7 @@ class CompileServerExtensionLocator(private val readMode: Resolver.ReadMode) : C
           .filter { it.endsWith(".jar") }
           .map { pluginLib.resolve(it) }
           .filter { it.isFile }
-      return buildJarOrZipFileResolvers(allCompileJars, readMode, PluginFileOrigin.CompileServer(idePlugin))
+      return buildJarOrZipFileResolvers(allCompileJars, readMode, PluginFileOrigin.CompileServer(idePlugin), backend = jarBackend)
     }
     return emptyList()
   }
@@ -41,6 +45,6 @@ class CompileServerExtensionLocator(private val readMode: Resolver.ReadMode) : C
 object CompileServerExtensionKey : LocationKey {
   override val name: String = "compileServer.plugin extension point"
 
-  override fun getLocator(readMode: Resolver.ReadMode) = CompileServerExtensionLocator(readMode)
+  override fun getLocator(options: LocatorOptions) = CompileServerExtensionLocator(options.readMode, options.jarBackend)
 
 }
\ No newline at end of file
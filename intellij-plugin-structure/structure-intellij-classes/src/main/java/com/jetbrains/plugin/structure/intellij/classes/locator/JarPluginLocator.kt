@@ -10,12 +10,15 @@ import com.jetbrains.plugin.structure.classes.resolvers.Resolver
 import com.jetbrains.plugin.structure.intellij.plugin.IdePlugin
 import java.nio.file.Path
 
-class JarPluginLocator(private val readMode: Resolver.ReadMode) : ClassesLocator {
+class JarPluginLocator(
+  private val readMode: Resolver.ReadMode,
+  private val jarBackend: JarFileResolver.Backend = JarFileResolver.Backend.ZIP_FILE_SYSTEM
+) : ClassesLocator {
   override val locationKey: LocationKey = JarPluginKey
 
   override fun findClasses(idePlugin: IdePlugin, pluginFile: Path): List<Resolver> {
     if (pluginFile.isJar()) {
-      return listOf(JarFileResolver(pluginFile, readMode, PluginFileOrigin.SingleJar(idePlugin)))
+      return listOf(JarFileResolver(pluginFile, readMode, PluginFileOrigin.SingleJar(idePlugin), backend = jarBackend))
     }
     return emptyList()
   }
@@ -24,5 +27,5 @@ class JarPluginLocator(private val readMode: Resolver.ReadMode) : ClassesLocator
 object JarPluginKey : LocationKey {
   override val name: String = "jar"
 
-  override fun getLocator(readMode: Resolver.ReadMode) = JarPluginLocator(readMode)
+  override fun getLocator(options: LocatorOptions) = JarPluginLocator(options.readMode, options.jarBackend)
 }
\ No newline at end of file
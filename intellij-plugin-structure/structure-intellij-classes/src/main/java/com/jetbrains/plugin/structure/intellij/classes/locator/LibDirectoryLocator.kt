@@ -5,13 +5,22 @@
 package com.jetbrains.plugin.structure.intellij.classes.locator
 
 import com.jetbrains.plugin.structure.base.utils.*
-import com.jetbrains.plugin.structure.classes.resolvers.Resolver
-import com.jetbrains.plugin.structure.classes.resolvers.buildDirectoriesResolvers
-import com.jetbrains.plugin.structure.classes.resolvers.buildJarOrZipFileResolvers
+import com.jetbrains.plugin.structure.classes.resolvers.*
 import com.jetbrains.plugin.structure.intellij.plugin.IdePlugin
+import java.nio.file.Files
 import java.nio.file.Path
 
-class LibDirectoryLocator(private val readMode: Resolver.ReadMode) : ClassesLocator {
+/**
+ * Locates classes in jars and directories of the plugin's `lib` directory.
+ *
+ * Indexes of jars that are symbolic links to shared copies, see [com.jetbrains.plugin.structure.intellij.classes.plugin.PluginJarsStorage],
+ * are reused from [jarIndexCache], if it is specified.
+ */
+class LibDirectoryLocator(
+  private val readMode: Resolver.ReadMode,
+  private val jarIndexCache: JarFileIndexCache? = null,
+  private val jarBackend: JarFileResolver.Backend = JarFileResolver.Backend.ZIP_FILE_SYSTEM
+) : ClassesLocator {
   override val locationKey = LibDirectoryKey
 
   override fun findClasses(idePlugin: IdePlugin, pluginFile: Path): List<Resolver> {
@@ -22,7 +31,10 @@ class LibDirectoryLocator(private val readMode: Resolver.ReadMode) : ClassesLoca
       val jarsOrZips = pluginLib.listFiles().filter { file -> file.isJar() || file.isZip() }
       val directories = pluginLib.listFiles().filter { file -> file.isDirectory }
       resolvers.closeOnException {
-        resolvers += buildJarOrZipFileResolvers(jarsOrZips, readMode, libDirectoryOrigin)
+        for (jarOrZip in jarsOrZips) {
+          val indexCache = jarIndexCache?.takeIf { Files.isSymbolicLink(jarOrZip) }
+          resolvers += JarFileResolver(jarOrZip, readMode, JarOrZipFileOrigin(jarOrZip.simpleName, libDirectoryOrigin), indexCache, jarBackend)
+        }
         resolvers += buildDirectoriesResolvers(directories, readMode, libDirectoryOrigin)
       }
     }
@@ -34,5 +46,6 @@ class LibDirectoryLocator(private val readMode: Resolver.ReadMode) : ClassesLoca
 object LibDirectoryKey : LocationKey {
   override val name: String = "lib directory"
 
-  override fun getLocator(readMode: Resolver.ReadMode) = LibDirectoryLocator(readMode)
+  override fun getLocator(options: LocatorOptions) =
+    LibDirectoryLocator(options.readMode, options.jarIndexCache, options.jarBackend)
 }
\ No newline at end of file
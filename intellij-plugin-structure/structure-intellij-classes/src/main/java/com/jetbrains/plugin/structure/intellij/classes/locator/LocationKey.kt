@@ -4,10 +4,25 @@
 
 package com.jetbrains.plugin.structure.intellij.classes.locator
 
+import com.jetbrains.plugin.structure.classes.resolvers.JarFileIndexCache
+import com.jetbrains.plugin.structure.classes.resolvers.JarFileResolver
 import com.jetbrains.plugin.structure.classes.resolvers.Resolver
 
+/**
+ * Options of [ClassesLocator]s created by [LocationKey.getLocator].
+ *
+ * - [readMode] - mode of reading the located classes
+ * - [jarIndexCache] - cache of indexes of shared jars that locators may reuse, see [LibDirectoryLocator]
+ * - [jarBackend] - the way the located jars are read
+ */
+data class LocatorOptions(
+  val readMode: Resolver.ReadMode = Resolver.ReadMode.FULL,
+  val jarIndexCache: JarFileIndexCache? = null,
+  val jarBackend: JarFileResolver.Backend = JarFileResolver.Backend.ZIP_FILE_SYSTEM
+)
+
 interface LocationKey {
   val name: String
 
-  fun getLocator(readMode: Resolver.ReadMode): ClassesLocator
-}
\ No newline at end of file
+  fun getLocator(options: LocatorOptions): ClassesLocator
+}
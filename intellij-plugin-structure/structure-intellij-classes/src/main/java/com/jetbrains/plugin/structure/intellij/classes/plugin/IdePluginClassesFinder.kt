@@ -6,11 +6,13 @@ package com.jetbrains.plugin.structure.intellij.classes.plugin
 
 import com.jetbrains.plugin.structure.base.plugin.Settings
 import com.jetbrains.plugin.structure.base.utils.*
+import com.jetbrains.plugin.structure.classes.resolvers.JarFileResolver
 import com.jetbrains.plugin.structure.classes.resolvers.Resolver
 import com.jetbrains.plugin.structure.intellij.classes.locator.ClassesDirectoryKey
 import com.jetbrains.plugin.structure.intellij.classes.locator.JarPluginKey
 import com.jetbrains.plugin.structure.intellij.classes.locator.LibDirectoryKey
 import com.jetbrains.plugin.structure.intellij.classes.locator.LocationKey
+import com.jetbrains.plugin.structure.intellij.classes.locator.LocatorOptions
 import com.jetbrains.plugin.structure.intellij.extractor.ExtractorResult
 import com.jetbrains.plugin.structure.intellij.extractor.PluginExtractor
 import com.jetbrains.plugin.structure.intellij.plugin.IdePlugin
@@ -23,7 +25,9 @@ class IdePluginClassesFinder private constructor(
   private val idePlugin: IdePlugin,
   private val extractDirectory: Path,
   private val readMode: Resolver.ReadMode,
-  private val locatorKeys: List<LocationKey>
+  private val locatorKeys: List<LocationKey>,
+  private val jarsStorage: PluginJarsStorage?,
+  private val jarBackend: JarFileResolver.Backend
 ) {
 
   private fun findPluginClasses(): IdePluginClassesLocations {
@@ -47,21 +51,48 @@ class IdePluginClassesFinder private constructor(
   private fun findInZip(pluginZip: Path): IdePluginClassesLocations {
     return when (val extractorResult = PluginExtractor.extractPlugin(pluginZip, extractDirectory)) {
       is ExtractorResult.Success -> {
-        extractorResult.extractedPlugin.closeOnException {
-          val locations = findLocations(it.pluginFile)
-          IdePluginClassesLocations(idePlugin, it, locations)
+        extractorResult.extractedPlugin.closeOnException { extractedPlugin ->
+          val sharedJars = shareLibraryJars(extractedPlugin.pluginFile)
+          val allocatedResource = Closeable {
+            sharedJars.forEach { it.closeLogged() }
+            extractedPlugin.close()
+          }
+          allocatedResource.closeOnException {
+            val locations = findLocations(extractedPlugin.pluginFile)
+            IdePluginClassesLocations(idePlugin, allocatedResource, locations)
+          }
         }
       }
       is ExtractorResult.Fail -> throw IOException(extractorResult.pluginProblem.message)
     }
   }
 
+  /**
+   * Replaces jars of the extracted plugin's `lib` directory with links to their shared copies
+   * in the [jarsStorage], if it is specified.
+   */
+  private fun shareLibraryJars(extractedPluginFile: Path): List<Closeable> {
+    val pluginLib = extractedPluginFile.resolve("lib")
+    if (jarsStorage == null || !pluginLib.isDirectory) {
+      return emptyList()
+    }
+    val sharedJars = arrayListOf<Closeable>()
+    sharedJars.closeOnException {
+      for (jar in pluginLib.listFiles().filter { it.isJar() }) {
+        checkIfInterrupted()
+        jarsStorage.share(jar)?.let { sharedJars += it }
+      }
+    }
+    return sharedJars
+  }
+
   private fun findLocations(pluginFile: Path): Map<LocationKey, List<Resolver>> {
     val locations = hashMapOf<LocationKey, List<Resolver>>()
+    val locatorOptions = LocatorOptions(readMode, jarsStorage?.jarIndexCache, jarBackend)
     try {
       for (locatorKey in locatorKeys) {
         checkIfInterrupted()
-        val resolvers = locatorKey.getLocator(readMode).findClasses(idePlugin, pluginFile)
+        val resolvers = locatorKey.getLocator(locatorOptions).findClasses(idePlugin, pluginFile)
         locations[locatorKey] = resolvers
       }
     } catch (e: Throwable) {
@@ -86,22 +117,35 @@ class IdePluginClassesFinder private constructor(
     fun findPluginClasses(
       idePlugin: IdePlugin,
       readMode: Resolver.ReadMode = Resolver.ReadMode.FULL,
-      additionalKeys: List<LocationKey> = emptyList()
+      additionalKeys: List<LocationKey> = emptyList(),
+      jarsStorage: PluginJarsStorage? = null,
+      jarBackend: JarFileResolver.Backend = JarFileResolver.Backend.ZIP_FILE_SYSTEM
     ): IdePluginClassesLocations {
       val extractDirectory = Settings.EXTRACT_DIRECTORY.getAsPath().createDir()
-      return findPluginClasses(idePlugin, extractDirectory, readMode, additionalKeys)
+      return findPluginClasses(idePlugin, extractDirectory, readMode, additionalKeys, jarsStorage, jarBackend)
     }
 
+    /**
+     * Finds classes of the [idePlugin], extracting it to [extractDirectory] if it is a `.zip`.
+     *
+     * If [jarsStorage] is specified, library jars of the extracted plugin are shared
+     * with other plugins that bundle identical jars.
+     * Jars of the plugin are read using [jarBackend].
+     */
     fun findPluginClasses(
       idePlugin: IdePlugin,
       extractDirectory: Path,
       readMode: Resolver.ReadMode = Resolver.ReadMode.FULL,
-      additionalKeys: List<LocationKey> = emptyList()
+      additionalKeys: List<LocationKey> = emptyList(),
+      jarsStorage: PluginJarsStorage? = null,
+      jarBackend: JarFileResolver.Backend = JarFileResolver.Backend.ZIP_FILE_SYSTEM
     ): IdePluginClassesLocations = IdePluginClassesFinder(
       idePlugin,
       extractDirectory,
       readMode,
-      MAIN_CLASSES_KEYS + additionalKeys
+      MAIN_CLASSES_KEYS + additionalKeys,
+      jarsStorage,
+      jarBackend
     ).findPluginClasses()
   }
 
@@ -22,15 +22,34 @@ data class IdePluginClassesLocations(
 
   private var isClosed: Boolean = false
 
-  @Synchronized
+  private val closeListeners = arrayListOf<() -> Unit>()
+
   override fun close() {
-    if (!isClosed) {
+    val listeners = synchronized(this) {
+      if (isClosed) {
+        return
+      }
       isClosed = true
       for (resolvers in locations.values) {
         resolvers.forEach { it.closeLogged() }
       }
       allocatedResource.closeLogged()
+      closeListeners.toList()
+    }
+    listeners.forEach { it() }
+  }
+
+  /**
+   * Registers [listener] to be invoked after these locations are closed.
+   * Returns `false` and doesn't register the listener if the locations are already closed.
+   */
+  @Synchronized
+  fun addCloseListener(listener: () -> Unit): Boolean {
+    if (isClosed) {
+      return false
     }
+    closeListeners += listener
+    return true
   }
 
   fun getResolvers(key: LocationKey): List<Resolver> = locations[key].orEmpty()
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.plugin.structure.intellij.classes.plugin
+
+import com.jetbrains.plugin.structure.classes.resolvers.JarFileIndexCache
+import java.io.Closeable
+import java.nio.file.Path
+
+/**
+ * Storage that keeps a single copy of identical library jars of extracted plugins,
+ * such as Kotlin stdlib or Apache Commons bundled by many plugins.
+ */
+interface PluginJarsStorage {
+
+  /**
+   * Cache of indexes of jars kept in this storage, or `null` if the indexes are not persisted.
+   */
+  val jarIndexCache: JarFileIndexCache?
+
+  /**
+   * Replaces [jar] with a symbolic link to the copy of the same content kept in this storage.
+   *
+   * Returns the handle that protects the copy from removal until it is closed,
+   * or `null` if the [jar] has been left as is.
+   */
+  fun share(jar: Path): Closeable?
+}
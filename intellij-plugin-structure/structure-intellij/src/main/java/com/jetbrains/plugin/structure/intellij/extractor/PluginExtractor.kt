@@ -12,17 +12,31 @@ import com.jetbrains.plugin.structure.base.utils.*
 import com.jetbrains.plugin.structure.intellij.problems.PluginZipContainsMultipleFiles
 import com.jetbrains.plugin.structure.intellij.problems.PluginZipContainsUnknownFile
 import com.jetbrains.plugin.structure.intellij.problems.PluginZipIsEmpty
+import org.slf4j.LoggerFactory
 import java.nio.file.Files
 import java.nio.file.Path
 
 object PluginExtractor {
 
-  fun extractPlugin(pluginFile: Path, extractDirectory: Path): ExtractorResult {
+  private val LOG = LoggerFactory.getLogger(PluginExtractor::class.java)
+
+  /**
+   * Extracts the plugin zip [pluginFile] to a new directory in [extractDirectory].
+   *
+   * If [extractClasses] is `false`, class files, also those in jars of the plugin, are left empty.
+   * It is enough to read plugin descriptors and saves most of the disk writes.
+   */
+  fun extractPlugin(pluginFile: Path, extractDirectory: Path, extractClasses: Boolean = true): ExtractorResult {
     Files.createDirectories(extractDirectory)
     val extractedPlugin = Files.createTempDirectory(extractDirectory, "plugin_")
 
     try {
-      extractZip(pluginFile, extractedPlugin, Settings.INTELLIJ_PLUGIN_SIZE_LIMIT.getAsLong())
+      val sizeLimit = Settings.INTELLIJ_PLUGIN_SIZE_LIMIT.getAsLong()
+      if (extractClasses) {
+        extractZip(pluginFile, extractedPlugin, sizeLimit)
+      } else {
+        extractZipWithoutClassesOrFully(pluginFile, extractedPlugin, sizeLimit)
+      }
     } catch (e: DecompressorSizeLimitExceededException) {
       return fail(PluginFileSizeIsTooLarge(e.sizeLimit), extractedPlugin)
     } catch (e: Throwable) {
@@ -33,6 +47,23 @@ object PluginExtractor {
     return getExtractorResult(extractedPlugin)
   }
 
+  /**
+   * Nested archives are read as streams, which doesn't work for some valid archives,
+   * so the plugin is extracted fully if it can't be extracted without classes.
+   */
+  private fun extractZipWithoutClassesOrFully(pluginFile: Path, destination: Path, sizeLimit: Long) {
+    try {
+      extractZipWithoutClasses(pluginFile, destination, sizeLimit)
+    } catch (e: DecompressorSizeLimitExceededException) {
+      throw e
+    } catch (e: Exception) {
+      e.rethrowIfInterrupted()
+      LOG.debug("Unable to extract $pluginFile without classes, so it is extracted fully: ${e.message}")
+      destination.deleteQuietly()
+      extractZip(pluginFile, destination, sizeLimit)
+    }
+  }
+
   private fun success(actualFile: Path, fileToDelete: Path): ExtractorResult =
     ExtractorResult.Success(ExtractedPlugin(actualFile, fileToDelete))
 
@@ -136,20 +136,21 @@ class IdePluginManager private constructor(
       return createInvalidPlugin(root, descriptorPath, PluginLibDirectoryIsEmpty())
     }
     val jarFiles = files.filter { it.isJar() }
-    val libResourceResolver: ResourceResolver = JarFilesResourceResolver(jarFiles)
-    val compositeResolver: ResourceResolver = CompositeResourceResolver(listOf(libResourceResolver, resourceResolver))
     val results: MutableList<PluginCreator> = ArrayList()
-    for (file in files) {
-      val innerCreator: PluginCreator = if (file.isJar() || file.isZip()) {
-        //Use the composite resource resolver, which can resolve resources in lib's jar files.
-        loadPluginInfoFromJarFile(file, descriptorPath, validateDescriptor, compositeResolver, parentPlugin)
-      } else if (file.isDirectory) {
-        //Use the common resource resolver, which is unaware of lib's jar files.
-        loadPluginInfoFromDirectory(file, descriptorPath, validateDescriptor, resourceResolver, parentPlugin)
-      } else {
-        continue
+    JarFilesResourceResolver(jarFiles).use { libResourceResolver ->
+      val compositeResolver: ResourceResolver = CompositeResourceResolver(listOf(libResourceResolver, resourceResolver))
+      for (file in files) {
+        val innerCreator: PluginCreator = if (file.isJar() || file.isZip()) {
+          //Use the composite resource resolver, which can resolve resources in lib's jar files.
+          loadPluginInfoFromJarFile(file, descriptorPath, validateDescriptor, compositeResolver, parentPlugin)
+        } else if (file.isDirectory) {
+          //Use the common resource resolver, which is unaware of lib's jar files.
+          loadPluginInfoFromDirectory(file, descriptorPath, validateDescriptor, resourceResolver, parentPlugin)
+        } else {
+          continue
+        }
+        results.add(innerCreator)
       }
-      results.add(innerCreator)
     }
     val possibleResults = results.stream()
       .filter { r: PluginCreator -> r.isSuccess || hasOnlyInvalidDescriptorErrors(r) }
@@ -233,7 +234,8 @@ class IdePluginManager private constructor(
     resourceResolver: ResourceResolver
   ): PluginCreator {
     val extractorResult = try {
-      extractPlugin(pluginFile, extractDirectory)
+      //Only descriptors and resources are read, so classes are extracted only if requested.
+      extractPlugin(pluginFile, extractDirectory, Settings.INTELLIJ_PLUGIN_DESCRIPTOR_EXTRACTS_CLASSES.getAsBoolean())
     } catch (e: Exception) {
       LOG.info("Unable to extract plugin zip ${pluginFile.simpleName}", e)
       return createInvalidPlugin(pluginFile.simpleName, descriptorPath, UnableToExtractZip())
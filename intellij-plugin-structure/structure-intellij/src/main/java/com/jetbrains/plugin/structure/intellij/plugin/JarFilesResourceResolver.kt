@@ -4,38 +4,118 @@
 
 package com.jetbrains.plugin.structure.intellij.plugin
 
-import com.jetbrains.plugin.structure.base.utils.exists
+import com.jetbrains.plugin.structure.base.utils.closeLogged
 import com.jetbrains.plugin.structure.base.utils.inputStream
-import com.jetbrains.plugin.structure.base.utils.withZipFsSeparator
+import com.jetbrains.plugin.structure.base.utils.rethrowIfInterrupted
 import com.jetbrains.plugin.structure.intellij.resources.DefaultResourceResolver
 import com.jetbrains.plugin.structure.intellij.resources.ResourceResolver
+import org.slf4j.LoggerFactory
+import java.io.Closeable
+import java.nio.file.FileSystem
 import java.nio.file.FileSystems
 import java.nio.file.Path
+import java.util.zip.ZipFile
+
+/**
+ * Resolves resources against roots of [jarFiles], in their order.
+ *
+ * On the first lookup, names of all entries of the jar files except classes are indexed,
+ * so a resource is found by a hash lookup. Only the jar files containing resolved resources
+ * are opened, and they stay open until this resolver is closed.
+ */
+class JarFilesResourceResolver(private val jarFiles: List<Path>) : ResourceResolver, Closeable {
+
+  private companion object {
+    private val LOG = LoggerFactory.getLogger(JarFilesResourceResolver::class.java)
+
+    private const val CLASS_SUFFIX = ".class"
+  }
+
+  private val openedJarFileSystems = hashMapOf<Path, FileSystem>()
+
+  private var isClosed = false
+
+  /**
+   * Maps absolute normalized paths of resources to the first jar file containing them.
+   */
+  private var resourceIndex: Map<String, Path>? = null
 
-class JarFilesResourceResolver(private val jarFiles: List<Path>) : ResourceResolver {
   override fun resolveResource(relativePath: String, basePath: Path): ResourceResolver.Result {
     val resourceResult = DefaultResourceResolver.resolveResource(relativePath, basePath)
     if (resourceResult !is ResourceResolver.Result.NotFound) {
       return resourceResult
     }
+    val resourcePath = toAbsoluteNormalizedPath(relativePath)
+    val jarFile = getResourceIndex()[resourcePath] ?: return ResourceResolver.Result.NotFound
+    val jarFs = try {
+      getJarFileSystem(jarFile)
+    } catch (e: Exception) {
+      e.rethrowIfInterrupted()
+      return ResourceResolver.Result.Failed(jarFile, e)
+    }
+    val path = jarFs.getPath(resourcePath)
+    return try {
+      ResourceResolver.Result.Found(path, path.inputStream())
+    } catch (e: Exception) {
+      e.rethrowIfInterrupted()
+      ResourceResolver.Result.Failed(path, e)
+    }
+  }
+
+  @Synchronized
+  private fun getResourceIndex(): Map<String, Path> {
+    check(!isClosed) { "Resolver is closed" }
+    resourceIndex?.let { return it }
+    val index = hashMapOf<String, Path>()
     for (jarFile in jarFiles) {
-      val jarFs = FileSystems.newFileSystem(jarFile, JarFilesResourceResolver::class.java.classLoader)
-      val foundResult = try {
-        val path = jarFs.getPath(relativePath.withZipFsSeparator())
-        if (path.exists()) {
-          ResourceResolver.Result.Found(path, path.inputStream(), resourceToClose = jarFs)
-        } else {
-          null
+      try {
+        ZipFile(jarFile.toFile()).use { zipFile ->
+          for (entry in zipFile.entries()) {
+            if (!entry.isDirectory && !entry.name.endsWith(CLASS_SUFFIX)) {
+              index.putIfAbsent(toAbsoluteNormalizedPath(entry.name), jarFile)
+            }
+          }
         }
-      } catch (e: Throwable) {
-        jarFs.close()
-        throw e
+      } catch (e: Exception) {
+        e.rethrowIfInterrupted()
+        LOG.warn("Unable to read $jarFile to resolve resources: ${e.message}")
       }
-      if (foundResult != null) {
-        return foundResult
+    }
+    resourceIndex = index
+    return index
+  }
+
+  @Synchronized
+  private fun getJarFileSystem(jarFile: Path): FileSystem {
+    check(!isClosed) { "Resolver is closed" }
+    return openedJarFileSystems.getOrPut(jarFile) {
+      FileSystems.newFileSystem(jarFile, JarFilesResourceResolver::class.java.classLoader)
+    }
+  }
+
+  /**
+   * Converts [relativePath] to a path against a jar root, as zip file system does:
+   * `/META-INF/a.xml` for `META-INF/a.xml`, `/META-INF/./a.xml` or `/META-INF/b/../a.xml`.
+   */
+  private fun toAbsoluteNormalizedPath(relativePath: String): String {
+    val names = arrayListOf<String>()
+    for (name in relativePath.replace('\\', '/').split('/')) {
+      when (name) {
+        "", "." -> Unit
+        ".." -> if (names.isNotEmpty()) names.removeAt(names.lastIndex)
+        else -> names += name
       }
-      jarFs.close()
     }
-    return ResourceResolver.Result.NotFound
+    return names.joinToString("/", prefix = "/")
+  }
+
+  @Synchronized
+  override fun close() {
+    if (!isClosed) {
+      isClosed = true
+      openedJarFileSystems.values.forEach { it.closeLogged() }
+      openedJarFileSystems.clear()
+      resourceIndex = null
+    }
   }
 }
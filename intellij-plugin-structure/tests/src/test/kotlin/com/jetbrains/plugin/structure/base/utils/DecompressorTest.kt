@@ -1,7 +1,10 @@
 package com.jetbrains.plugin.structure.base.utils
 
+import com.jetbrains.plugin.structure.base.decompress.DecompressorSizeLimitExceededException
 import com.jetbrains.plugin.structure.base.utils.contentBuilder.buildZipFile
+import org.junit.Assert.assertArrayEquals
 import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
 import org.junit.Rule
 import org.junit.Test
 import org.junit.rules.ExpectedException
@@ -9,6 +12,7 @@ import org.junit.rules.TemporaryFolder
 import java.io.IOException
 import java.nio.file.Files
 import java.util.zip.ZipEntry
+import java.util.zip.ZipFile
 import java.util.zip.ZipOutputStream
 
 class DecompressorTest {
@@ -33,6 +37,66 @@ class DecompressorTest {
     assertEquals("content", someTxt.readText())
   }
 
+  @Test
+  fun `extract without classes`() {
+    val zipFile = buildZipFile(tempFolder.newFile("plugin.zip").toPath()) {
+      dir("plugin") {
+        dir("lib") {
+          zip("plugin.jar") {
+            dir("META-INF") {
+              file("plugin.xml", "<idea-plugin/>")
+            }
+            dir("some") {
+              file("Some.class", "class content")
+            }
+          }
+        }
+        file("Other.class", "class content")
+      }
+    }
+    val destination = tempFolder.newFolder().toPath()
+    extractZipWithoutClasses(zipFile, destination)
+
+    val pluginDirectory = destination.resolve("plugin")
+    assertEquals("", pluginDirectory.resolve("Other.class").readText())
+    val pluginJar = pluginDirectory.resolve("lib").resolve("plugin.jar")
+    ZipFile(pluginJar.toFile()).use { jar ->
+      val classEntry = jar.getEntry("some/Some.class")
+      assertEquals(0, classEntry.size)
+      assertEquals("<idea-plugin/>", jar.getInputStream(jar.getEntry("META-INF/plugin.xml")).reader().readText())
+    }
+  }
+
+  @Test
+  fun `nested archive without classes is extracted as is`() {
+    val zipFile = buildZipFile(tempFolder.newFile("plugin.zip").toPath()) {
+      zip("resources.jar") {
+        file("some.txt", "content")
+      }
+    }
+    val destination = tempFolder.newFolder().toPath()
+    extractZipWithoutClasses(zipFile, destination)
+
+    val originalJar = ZipFile(zipFile.toFile()).use { zip ->
+      zip.getInputStream(zip.getEntry("resources.jar")).readBytes()
+    }
+    assertArrayEquals(originalJar, Files.readAllBytes(destination.resolve("resources.jar")))
+  }
+
+  @Test
+  fun `decompressed entries of nested archive count toward size limit`() {
+    val zipFile = buildZipFile(tempFolder.newFile("plugin.zip").toPath()) {
+      zip("plugin.jar") {
+        file("Some.class", "class content")
+        file("big.txt", "a".repeat(100_000))
+      }
+    }
+    assertTrue(Files.size(zipFile) < 10_000)
+
+    expectedEx.expect(DecompressorSizeLimitExceededException::class.java)
+    extractZipWithoutClasses(zipFile, tempFolder.newFolder().toPath(), 10_000)
+  }
+
   @Test
   fun `contains file with relative path`() {
     val relativeName = "some/../relative.txt"
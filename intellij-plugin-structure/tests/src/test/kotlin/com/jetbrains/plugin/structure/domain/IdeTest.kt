@@ -94,6 +94,40 @@ class IdeTest {
     assertEquals(ideaCorePlugin, ide.getPluginByModule("some.idea.module"))
   }
 
+  @Test
+  fun `xi-includes of platform plugin are resolved in other platform jars`() {
+    val ideaFolder = buildDirectory(temporaryFolder.newFolder("idea").toPath()) {
+      file("build.txt", "IU-163.1.2.3")
+      dir("lib") {
+        zip("resources.jar") {
+          dir("META-INF") {
+            file("plugin.xml") {
+              perfectXmlBuilder.modify {
+                ideaPluginTagOpen = """<idea-plugin xmlns:xi="http://www.w3.org/2001/XInclude">"""
+                id = "<id>com.intellij</id>"
+                name = "<name>IDEA CORE</name>"
+                additionalContent = """
+                  <xi:include href="/META-INF/absolute.xml" xpointer="xpointer(/idea-plugin/*)"/>
+                  <xi:include href="relative.xml" xpointer="xpointer(/idea-plugin/*)"/>
+                """.trimIndent()
+              }
+            }
+          }
+        }
+        zip("modules.jar") {
+          dir("META-INF") {
+            file("absolute.xml", "<idea-plugin><module value=\"absolute.module\"/></idea-plugin>")
+            file("relative.xml", "<idea-plugin><module value=\"relative.module\"/></idea-plugin>")
+          }
+        }
+      }
+    }
+
+    val ide = IdeManager.createManager().createIde(ideaFolder)
+    val ideaCorePlugin = ide.bundledPlugins.single()
+    assertEquals(setOf("absolute.module", "relative.module"), ideaCorePlugin.definedModules)
+  }
+
   /**
    * .m2 (local Maven repository)
    *   com
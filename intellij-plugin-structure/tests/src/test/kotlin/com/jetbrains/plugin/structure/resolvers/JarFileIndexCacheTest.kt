@@ -0,0 +1,73 @@
+package com.jetbrains.plugin.structure.resolvers
+
+import com.jetbrains.plugin.structure.base.utils.contentBuilder.buildZipFile
+import com.jetbrains.plugin.structure.base.utils.listFiles
+import com.jetbrains.plugin.structure.classes.resolvers.JarFileIndex
+import com.jetbrains.plugin.structure.classes.resolvers.JarFileIndexCache
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.nio.file.Files
+import java.nio.file.Path
+
+class JarFileIndexCacheTest {
+
+  @Rule
+  @JvmField
+  val temporaryFolder = TemporaryFolder()
+
+  private fun buildJar(jarPath: Path, vararg entries: String) = buildZipFile(jarPath) {
+    for (entry in entries) {
+      file(entry, entry)
+    }
+  }
+
+  private fun JarFileIndexCache.index(jarPath: Path) =
+    getOrBuild(jarPath) { JarFileIndex(setOf(jarPath.fileName.toString()), emptySet(), emptyMap(), emptyMap()) }
+
+  @Test
+  fun `index of removed jar is deleted`() {
+    val jarsDirectory = temporaryFolder.newFolder().toPath()
+    val someJar = buildJar(jarsDirectory.resolve("some.jar"), "a.txt")
+    val otherJar = buildJar(jarsDirectory.resolve("other.jar"), "b.txt")
+    val indexDirectory = temporaryFolder.newFolder().toPath()
+    val indexCache = JarFileIndexCache(indexDirectory)
+    indexCache.index(someJar)
+    indexCache.index(otherJar)
+    assertEquals(2, indexDirectory.listFiles().size)
+
+    indexCache.remove(someJar)
+    Files.delete(someJar)
+    assertEquals(1, indexDirectory.listFiles().size)
+
+    var indexBuilt = false
+    indexCache.getOrBuild(otherJar) {
+      indexBuilt = true
+      JarFileIndex(emptySet(), emptySet(), emptyMap(), emptyMap())
+    }
+    assertFalse(indexBuilt)
+  }
+
+  @Test
+  fun `indexes of deleted and changed jars are removed`() {
+    val jarsDirectory = temporaryFolder.newFolder().toPath()
+    val keptJar = buildJar(jarsDirectory.resolve("kept.jar"), "a.txt")
+    val deletedJar = buildJar(jarsDirectory.resolve("deleted.jar"), "b.txt")
+    val changedJar = buildJar(jarsDirectory.resolve("changed.jar"), "c.txt")
+    val indexDirectory = temporaryFolder.newFolder().toPath()
+    val indexCache = JarFileIndexCache(indexDirectory)
+    listOf(keptJar, deletedJar, changedJar).forEach { indexCache.index(it) }
+    val keptIndex = indexDirectory.listFiles().single { Files.readAllBytes(it).toString(Charsets.UTF_8).contains("kept.jar") }
+
+    Files.delete(deletedJar)
+    buildJar(changedJar, "c.txt", "d.txt")
+    indexCache.removeOutdatedIndexes()
+    assertEquals(listOf(keptIndex), indexDirectory.listFiles())
+
+    Files.delete(keptJar)
+    JarFileIndexCache(indexDirectory)
+    assertEquals(emptyList<Path>(), indexDirectory.listFiles())
+  }
+}
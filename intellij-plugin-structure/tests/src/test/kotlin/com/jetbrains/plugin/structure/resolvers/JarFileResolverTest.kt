@@ -0,0 +1,125 @@
+package com.jetbrains.plugin.structure.resolvers
+
+import com.jetbrains.plugin.structure.base.utils.contentBuilder.buildZipFile
+import com.jetbrains.plugin.structure.base.utils.listFiles
+import com.jetbrains.plugin.structure.classes.resolvers.*
+import org.junit.Assert.*
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.junit.runners.Parameterized
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Opcodes
+import java.nio.file.Path
+import java.util.*
+
+@RunWith(Parameterized::class)
+class JarFileResolverTest(private val backend: JarFileResolver.Backend) {
+
+  companion object {
+    @JvmStatic
+    @Parameterized.Parameters(name = "backend={0}")
+    fun backends(): List<Array<JarFileResolver.Backend>> = JarFileResolver.Backend.values().map { arrayOf(it) }
+  }
+
+  @Rule
+  @JvmField
+  val temporaryFolder = TemporaryFolder()
+
+  private object TestFileOrigin : FileOrigin {
+    override val parent: FileOrigin? = null
+  }
+
+  private fun buildClassBytes(className: String): ByteArray {
+    val classWriter = ClassWriter(0)
+    classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, className, null, "java/lang/Object", null)
+    classWriter.visitEnd()
+    return classWriter.toByteArray()
+  }
+
+  private fun buildJar(jarPath: Path, withOtherClass: Boolean = false) = buildZipFile(jarPath) {
+    dir("com") {
+      dir("example") {
+        file("A.class", buildClassBytes("com/example/A"))
+      }
+    }
+    if (withOtherClass) {
+      dir("org") {
+        dir("other") {
+          file("B.class", buildClassBytes("org/other/B"))
+        }
+      }
+    }
+    dir("messages") {
+      file("Bundle.properties", "key=value")
+    }
+    dir("META-INF") {
+      dir("services") {
+        file("com.example.Service", "com.example.ServiceImpl")
+      }
+    }
+  }
+
+  @Test
+  fun `index is saved and reused for unchanged jar`() {
+    val jarPath = buildJar(temporaryFolder.newFolder().toPath().resolve("some.jar"))
+    val indexDirectory = temporaryFolder.newFolder().toPath()
+    val indexCache = JarFileIndexCache(indexDirectory)
+
+    JarFileResolver(jarPath, Resolver.ReadMode.FULL, TestFileOrigin, indexCache, backend).close()
+    assertEquals(1, indexDirectory.listFiles().size)
+
+    var indexBuilt = false
+    val index = indexCache.getOrBuild(jarPath) {
+      indexBuilt = true
+      JarFileIndex(emptySet(), emptySet(), emptyMap(), emptyMap())
+    }
+    assertFalse(indexBuilt)
+    assertEquals(setOf("com/example/A"), index.classes)
+    assertEquals(setOf("com", "com/example"), index.packages)
+    assertEquals(setOf("messages.Bundle"), index.bundleNames["messages.Bundle"])
+    assertEquals(setOf("com.example.ServiceImpl"), index.serviceProviders["com.example.Service"])
+
+    JarFileResolver(jarPath, Resolver.ReadMode.FULL, TestFileOrigin, indexCache, backend).use { resolver ->
+      assertEquals(setOf("com/example/A"), resolver.allClasses)
+      assertTrue(resolver.containsPackage("com/example"))
+      assertEquals(mapOf("com.example.Service" to setOf("com.example.ServiceImpl")), resolver.implementedServiceProviders)
+      val found = resolver.resolveClass("com/example/A") as ResolutionResult.Found
+      assertEquals("com/example/A", found.value.name)
+      val bundle = resolver.resolveExactPropertyResourceBundle("messages.Bundle", Locale.ROOT) as ResolutionResult.Found
+      assertEquals("value", bundle.value.getString("key"))
+    }
+  }
+
+  @Test
+  fun `index is rebuilt when jar content changes`() {
+    val jarPath = buildJar(temporaryFolder.newFolder().toPath().resolve("some.jar"))
+    val indexCache = JarFileIndexCache(temporaryFolder.newFolder().toPath())
+
+    JarFileResolver(jarPath, Resolver.ReadMode.FULL, TestFileOrigin, indexCache, backend).use { resolver ->
+      assertEquals(setOf("com/example/A"), resolver.allClasses)
+    }
+
+    buildJar(jarPath, withOtherClass = true)
+
+    JarFileResolver(jarPath, Resolver.ReadMode.FULL, TestFileOrigin, indexCache, backend).use { resolver ->
+      assertEquals(setOf("com/example/A", "org/other/B"), resolver.allClasses)
+      assertTrue(resolver.resolveClass("org/other/B") is ResolutionResult.Found)
+    }
+  }
+
+  @Test
+  fun `jar without index cache is resolved`() {
+    val jarPath = buildJar(temporaryFolder.newFolder().toPath().resolve("some.jar"), withOtherClass = true)
+
+    JarFileResolver(jarPath, Resolver.ReadMode.SIGNATURES, TestFileOrigin, backend = backend).use { resolver ->
+      assertEquals(setOf("com/example/A", "org/other/B"), resolver.allClasses)
+      assertEquals(setOf("com", "com/example", "org", "org/other"), resolver.allPackages)
+      assertEquals(ResourceBundleNameSet(mapOf("messages.Bundle" to setOf("messages.Bundle"))), resolver.allBundleNameSet)
+      assertEquals(mapOf("com.example.Service" to setOf("com.example.ServiceImpl")), resolver.implementedServiceProviders)
+      assertTrue(resolver.resolveClass("org/other/B") is ResolutionResult.Found)
+      assertTrue(resolver.resolveClass("org/other/C") is ResolutionResult.NotFound)
+    }
+  }
+}
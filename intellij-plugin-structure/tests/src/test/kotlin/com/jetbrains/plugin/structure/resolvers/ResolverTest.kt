@@ -3,7 +3,8 @@ package com.jetbrains.plugin.structure.resolvers
 import com.jetbrains.plugin.structure.classes.resolvers.*
 import org.junit.Assert.*
 import org.junit.Test
-import org.objectweb.asm.tree.ClassNode
+import org.objectweb.asm.Opcodes
+import org.objectweb.asm.tree.*
 import java.util.*
 
 class ResolverTest {
@@ -37,6 +38,102 @@ class ResolverTest {
     assertTrue(cacheResolver.containsPackage(""))
   }
 
+  @Test
+  fun `cache resolves class once and records statistics`() {
+    val classNode = ClassNode().apply { name = "a" }
+    val fileOrigin = object : FileOrigin {
+      override val parent: FileOrigin? = null
+    }
+    val cacheResolver = CacheResolver(FixedClassesResolver.create(listOf(classNode), fileOrigin), maximumClassesBytes = 1024L * 1024)
+
+    repeat(3) {
+      assertSame(classNode, (cacheResolver.resolveClass("a") as ResolutionResult.Found).value)
+    }
+    assertEquals(ResolutionResult.NotFound, cacheResolver.resolveClass("b"))
+
+    val cacheStats = cacheResolver.cacheStats
+    assertEquals(2, cacheStats.hitCount())
+    assertEquals(2, cacheStats.missCount())
+    assertEquals(0, cacheStats.evictionCount())
+  }
+
+  @Test
+  fun `cache evicts classes exceeding maximum weight`() {
+    val classNodes = (1..10).map { ClassNode().apply { name = "c$it" } }
+    val fileOrigin = object : FileOrigin {
+      override val parent: FileOrigin? = null
+    }
+    val cacheResolver = CacheResolver(FixedClassesResolver.create(classNodes, fileOrigin), maximumClassesBytes = 2048)
+
+    for (classNode in classNodes) {
+      assertSame(classNode, (cacheResolver.resolveClass(classNode.name) as ResolutionResult.Found).value)
+    }
+    assertTrue(cacheResolver.cacheStats.evictionCount() > 0)
+  }
+
+  @Test
+  fun `cache compacts classes`() {
+    val classNodes = (1..2).map { index ->
+      ClassNode().apply {
+        name = "c$index"
+        superName = StringBuilder("java/lang/").append("Object").toString()
+        methods.add(MethodNode(Opcodes.ACC_PUBLIC, "m", "()V", null, null).apply {
+          val label = LabelNode()
+          instructions.add(label)
+          instructions.add(LineNumberNode(42, label))
+          instructions.add(InsnNode(Opcodes.RETURN))
+          localVariables = arrayListOf(LocalVariableNode("this", "Lc$index;", null, label, label, 0))
+        })
+      }
+    }
+    val fileOrigin = object : FileOrigin {
+      override val parent: FileOrigin? = null
+    }
+    val cacheResolver = CacheResolver(FixedClassesResolver.create(classNodes, fileOrigin), compactClasses = true)
+
+    val first = (cacheResolver.resolveClass("c1") as ResolutionResult.Found).value
+    val second = (cacheResolver.resolveClass("c2") as ResolutionResult.Found).value
+    assertSame(first.superName, second.superName)
+    val method = first.methods.single()
+    assertNull(method.localVariables)
+    assertEquals(listOf(LabelNode::class.java, InsnNode::class.java), method.instructions.map { it.javaClass })
+  }
+
+  @Test
+  fun `compacted methods keep names of parameters`() {
+    val label = LabelNode()
+    val classNode = ClassNode().apply {
+      name = "c"
+      superName = "java/lang/Object"
+      methods.add(MethodNode(Opcodes.ACC_PUBLIC, "m", "(JLjava/lang/String;)V", null, null).apply {
+        instructions.add(label)
+        instructions.add(InsnNode(Opcodes.RETURN))
+        localVariables = arrayListOf(
+          LocalVariableNode("local", "I", null, label, label, 4),
+          LocalVariableNode("this", "Lc;", null, label, label, 0),
+          LocalVariableNode("number", "J", null, label, label, 1),
+          LocalVariableNode("defaultValue", "Ljava/lang/String;", null, label, label, 3)
+        )
+      })
+      methods.add(MethodNode(Opcodes.ACC_PUBLIC or Opcodes.ACC_STATIC, "s", "(I)V", null, null).apply {
+        instructions.add(label)
+        instructions.add(InsnNode(Opcodes.RETURN))
+        localVariables = arrayListOf(
+          LocalVariableNode("key", "I", null, label, label, 0),
+          LocalVariableNode("local", "I", null, label, label, 1)
+        )
+      })
+    }
+    val fileOrigin = object : FileOrigin {
+      override val parent: FileOrigin? = null
+    }
+    val cacheResolver = CacheResolver(FixedClassesResolver.create(listOf(classNode), fileOrigin), compactClasses = true)
+
+    val compacted = (cacheResolver.resolveClass("c") as ResolutionResult.Found).value
+    assertEquals(listOf("this", "number", "defaultValue"), compacted.methods[0].localVariables.map { it.name })
+    assertEquals(listOf("key"), compacted.methods[1].localVariables.map { it.name })
+  }
+
   @Test
   fun `composite resolver search order is equal to class-path`() {
     val commonPackage = "some/package"
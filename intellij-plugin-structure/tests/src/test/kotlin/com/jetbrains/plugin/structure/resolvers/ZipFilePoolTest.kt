@@ -0,0 +1,83 @@
+package com.jetbrains.plugin.structure.resolvers
+
+import com.jetbrains.plugin.structure.base.utils.contentBuilder.buildZipFile
+import com.jetbrains.plugin.structure.classes.resolvers.ZipFilePool
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.nio.file.Path
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class ZipFilePoolTest {
+
+  @Rule
+  @JvmField
+  val temporaryFolder = TemporaryFolder()
+
+  private fun buildZip(name: String): Path = buildZipFile(temporaryFolder.newFolder().toPath().resolve(name)) {
+    file("entry.txt", name)
+  }
+
+  @Test
+  fun `least recently used unused files are closed`() {
+    val pool = ZipFilePool(2)
+    val zips = (1..4).map { buildZip("$it.zip") }
+    for (zip in zips) {
+      pool.withZipFile(zip) { zipFile -> assertNotNull(zipFile.getEntry("entry.txt")) }
+    }
+    assertEquals(2, pool.openFilesNumber)
+  }
+
+  @Test
+  fun `file of the same path is shared`() {
+    val pool = ZipFilePool(1)
+    val zip = buildZip("some.zip")
+    pool.withZipFile(zip) { firstZip ->
+      pool.withZipFile(zip) { secondZip -> assertSame(firstZip, secondZip) }
+    }
+    assertEquals(1, pool.openFilesNumber)
+  }
+
+  @Test
+  fun `opening files over the limit waits until files in use are released`() {
+    val pool = ZipFilePool(1)
+    val first = buildZip("first.zip")
+    val second = buildZip("second.zip")
+    val executor = Executors.newSingleThreadExecutor()
+    try {
+      val secondOpened = CountDownLatch(1)
+      val future = pool.withZipFile(first) { firstZip ->
+        val future = executor.submit { pool.withZipFile(second) { secondOpened.countDown() } }
+        assertFalse(secondOpened.await(500, TimeUnit.MILLISECONDS))
+        assertEquals("first.zip", firstZip.getInputStream(firstZip.getEntry("entry.txt")).bufferedReader().readText())
+        future
+      }
+      assertTrue(secondOpened.await(10, TimeUnit.SECONDS))
+      future.get(10, TimeUnit.SECONDS)
+      assertEquals(1, pool.openFilesNumber)
+    } finally {
+      executor.shutdownNow()
+    }
+  }
+
+  @Test
+  fun `closed file is reopened on next access`() {
+    val pool = ZipFilePool(10)
+    val zip = buildZip("some.zip")
+    pool.withZipFile(zip) { }
+    assertEquals(1, pool.openFilesNumber)
+
+    pool.close(zip)
+    assertEquals(0, pool.openFilesNumber)
+
+    pool.withZipFile(zip) { zipFile -> assertNotNull(zipFile.getEntry("entry.txt")) }
+    assertEquals(1, pool.openFilesNumber)
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.pluginverifier.benchmarks
+
+import com.jetbrains.plugin.structure.base.plugin.PluginCreationSuccess
+import com.jetbrains.plugin.structure.base.utils.closeLogged
+import com.jetbrains.plugin.structure.base.utils.deleteLogged
+import com.jetbrains.plugin.structure.classes.resolvers.CompositeResolver
+import com.jetbrains.plugin.structure.classes.resolvers.Resolver
+import com.jetbrains.plugin.structure.intellij.classes.plugin.IdePluginClassesFinder
+import com.jetbrains.plugin.structure.intellij.classes.plugin.IdePluginClassesLocations
+import com.jetbrains.plugin.structure.intellij.plugin.IdePlugin
+import com.jetbrains.plugin.structure.intellij.plugin.IdePluginManager
+import com.jetbrains.pluginverifier.createPluginResolver
+import com.jetbrains.pluginverifier.ide.IdeDescriptor
+import com.jetbrains.pluginverifier.results.problems.CompatibilityProblem
+import com.jetbrains.pluginverifier.usages.ApiUsageProcessor
+import com.jetbrains.pluginverifier.verifiers.BytecodeVerifier
+import com.jetbrains.pluginverifier.verifiers.ProblemRegistrar
+import com.jetbrains.pluginverifier.verifiers.VerificationContext
+import com.jetbrains.pluginverifier.verifiers.packages.DefaultPackageFilter
+import com.jetbrains.pluginverifier.verifiers.packages.PackageFilter
+import com.jetbrains.pluginverifier.warnings.CompatibilityWarning
+import com.jetbrains.pluginverifier.warnings.WarningRegistrar
+import org.openjdk.jmh.annotations.*
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.TimeUnit
+
+/**
+ * [BytecodeVerifier.verify] of the mock plugin of 'verifier-test', compiled against 'before-idea',
+ * against the mock IDE 'after-idea'. Paths to them are passed by `benchmarks.mock.plugin` and `benchmarks.mock.ide`
+ * system properties. The JDK is specified by `benchmarks.jdk`, `JAVA_HOME` or the running JDK.
+ *
+ * Only the bytecode verification is measured: the IDE, the plugin and its resolvers are created once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+open class BytecodeVerifierBenchmark {
+
+  private lateinit var extractDirectory: Path
+
+  private lateinit var ideDescriptor: IdeDescriptor
+
+  private lateinit var classesLocations: IdePluginClassesLocations
+
+  private lateinit var classResolver: Resolver
+
+  private lateinit var classesToCheck: Set<String>
+
+  private lateinit var forkJoinPool: ForkJoinPool
+
+  @Setup(Level.Trial)
+  fun setUp() {
+    extractDirectory = Files.createTempDirectory("bytecode-verifier-benchmark")
+    ideDescriptor = IdeDescriptor.create(getPathProperty("benchmarks.mock.ide"), getJdkPath(), null, null)
+    val plugin = createPlugin(getPathProperty("benchmarks.mock.plugin"))
+    classesLocations = IdePluginClassesFinder.findPluginClasses(plugin, extractDirectory)
+    val pluginResolver = classesLocations.createPluginResolver()
+    classResolver = CompositeResolver.create(pluginResolver, ideDescriptor.jdkDescriptor.jdkResolver, ideDescriptor.ideResolver)
+    classesToCheck = pluginResolver.allClasses
+    forkJoinPool = ForkJoinPool(Runtime.getRuntime().availableProcessors())
+  }
+
+  private fun createPlugin(pluginFile: Path): IdePlugin {
+    val creationResult = IdePluginManager.createManager(extractDirectory).createPlugin(pluginFile, false)
+    check(creationResult is PluginCreationSuccess) { "Mock plugin $pluginFile is invalid: $creationResult" }
+    return creationResult.plugin
+  }
+
+  @TearDown(Level.Trial)
+  fun tearDown() {
+    forkJoinPool.shutdownNow()
+    classesLocations.closeLogged()
+    ideDescriptor.closeLogged()
+    extractDirectory.deleteLogged()
+  }
+
+  @Benchmark
+  fun verify(): Int {
+    val context = BenchmarkVerificationContext(classResolver)
+    BytecodeVerifier().verify(classesToCheck, context) {}
+    return context.problems.size
+  }
+
+  @Benchmark
+  fun verifyInParallel(): Int {
+    val context = BenchmarkVerificationContext(classResolver)
+    BytecodeVerifier().verify(classesToCheck, context, forkJoinPool) {}
+    return context.problems.size
+  }
+
+  private fun getPathProperty(name: String): Path {
+    val path = System.getProperty(name) ?: throw IllegalArgumentException("System property '$name' is not set")
+    return Paths.get(path).also { check(Files.exists(it)) { "$it doesn't exist. Run the benchmarks with './gradlew jmh'" } }
+  }
+
+  private fun getJdkPath(): Path {
+    val jdkPath = System.getProperty("benchmarks.jdk") ?: System.getenv("JAVA_HOME") ?: System.getProperty("java.home")
+    return Paths.get(jdkPath)
+  }
+
+  private class BenchmarkVerificationContext(override val classResolver: Resolver) : VerificationContext, ProblemRegistrar, WarningRegistrar {
+
+    val problems: MutableSet<CompatibilityProblem> = hashSetOf()
+
+    private val warnings = hashSetOf<CompatibilityWarning>()
+
+    override val externalClassesPackageFilter: PackageFilter = DefaultPackageFilter(emptyList())
+
+    override val problemRegistrar: ProblemRegistrar
+      get() = this
+
+    override val warningRegistrar: WarningRegistrar
+      get() = this
+
+    override val apiUsageProcessors: List<ApiUsageProcessor> = emptyList()
+
+    @Synchronized
+    override fun registerProblem(problem: CompatibilityProblem) {
+      problems += problem
+    }
+
+    @Synchronized
+    override fun registerCompatibilityWarning(warning: CompatibilityWarning) {
+      warnings += warning
+    }
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.pluginverifier.benchmarks
+
+import com.jetbrains.plugin.structure.classes.resolvers.PackageSet
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.infra.Blackhole
+import java.util.concurrent.TimeUnit
+
+/**
+ * Filling of [PackageSet] with packages of [classesNumber] classes and lookups of their packages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+open class PackageSetBenchmark {
+
+  @Param("10000", "100000")
+  @JvmField
+  var classesNumber: Int = 0
+
+  private lateinit var classNames: List<String>
+
+  private lateinit var packageNames: List<String>
+
+  private lateinit var packageSet: PackageSet
+
+  @Setup(Level.Trial)
+  fun setUp() {
+    classNames = SyntheticContent.getClassNames(classesNumber, "com/example/library")
+    packageNames = classNames.map { it.substringBeforeLast('/') }
+    packageSet = PackageSet()
+    classNames.forEach { packageSet.addPackagesOfClass(it) }
+  }
+
+  @Benchmark
+  fun addPackagesOfClasses(): PackageSet {
+    val packageSet = PackageSet()
+    for (className in classNames) {
+      packageSet.addPackagesOfClass(className)
+    }
+    return packageSet
+  }
+
+  @Benchmark
+  fun containsPackage(blackhole: Blackhole) {
+    for (packageName in packageNames) {
+      blackhole.consume(packageSet.containsPackage(packageName))
+    }
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.pluginverifier.benchmarks
+
+import com.jetbrains.plugin.structure.base.plugin.PluginCreationResult
+import com.jetbrains.plugin.structure.base.plugin.PluginCreationSuccess
+import com.jetbrains.plugin.structure.base.utils.deleteLogged
+import com.jetbrains.plugin.structure.intellij.plugin.IdePlugin
+import com.jetbrains.plugin.structure.intellij.plugin.IdePluginManager
+import org.openjdk.jmh.annotations.*
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.TimeUnit
+
+/**
+ * [IdePluginManager.createPlugin] of a synthetic plugin `.zip` with a plugin jar
+ * and [librariesNumber] library jars, each of [classesNumber] classes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+open class PluginLoadingBenchmark {
+
+  @Param("100", "1000")
+  @JvmField
+  var classesNumber: Int = 0
+
+  @Param("1", "10")
+  @JvmField
+  var librariesNumber: Int = 0
+
+  private lateinit var tempDirectory: Path
+
+  private lateinit var pluginZip: Path
+
+  private lateinit var pluginManager: IdePluginManager
+
+  @Setup(Level.Trial)
+  fun setUp() {
+    tempDirectory = Files.createTempDirectory("plugin-loading-benchmark")
+    pluginZip = SyntheticContent.generatePluginZip(tempDirectory.resolve("synthetic-plugin.zip"), classesNumber, librariesNumber)
+    pluginManager = IdePluginManager.createManager(Files.createDirectory(tempDirectory.resolve("extracted")))
+    val creationResult = pluginManager.createPlugin(pluginZip)
+    check(creationResult is PluginCreationSuccess) { "Synthetic plugin is invalid: $creationResult" }
+  }
+
+  @TearDown(Level.Trial)
+  fun tearDown() {
+    tempDirectory.deleteLogged()
+  }
+
+  @Benchmark
+  fun createPlugin(): PluginCreationResult<IdePlugin> = pluginManager.createPlugin(pluginZip)
+}
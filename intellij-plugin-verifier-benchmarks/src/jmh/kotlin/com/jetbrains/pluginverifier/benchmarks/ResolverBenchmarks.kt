@@ -0,0 +1,191 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.pluginverifier.benchmarks
+
+import com.jetbrains.plugin.structure.base.utils.closeLogged
+import com.jetbrains.plugin.structure.base.utils.deleteLogged
+import com.jetbrains.plugin.structure.classes.resolvers.CacheResolver
+import com.jetbrains.plugin.structure.classes.resolvers.CompositeResolver
+import com.jetbrains.plugin.structure.classes.resolvers.JarFileResolver
+import com.jetbrains.plugin.structure.classes.resolvers.Resolver
+import com.jetbrains.pluginverifier.benchmarks.SyntheticContent.SyntheticFileOrigin
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.infra.Blackhole
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.TimeUnit
+
+/**
+ * Construction of [JarFileResolver] for a jar of [classesNumber] classes and resolution of all its classes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+open class JarFileResolverBenchmark {
+
+  @Param("1000", "10000")
+  @JvmField
+  var classesNumber: Int = 0
+
+  @Param("ZIP_FILE_SYSTEM", "ZIP_FILE")
+  @JvmField
+  var backend: JarFileResolver.Backend = JarFileResolver.Backend.ZIP_FILE_SYSTEM
+
+  private lateinit var tempDirectory: Path
+
+  private lateinit var jarFile: Path
+
+  private lateinit var classNames: List<String>
+
+  private lateinit var resolver: Resolver
+
+  @Setup(Level.Trial)
+  fun setUp() {
+    tempDirectory = Files.createTempDirectory("jar-file-resolver-benchmark")
+    jarFile = SyntheticContent.generateJar(tempDirectory.resolve("classes.jar"), classesNumber, "library")
+    classNames = SyntheticContent.getClassNames(classesNumber, "library")
+    resolver = JarFileResolver(jarFile, Resolver.ReadMode.FULL, SyntheticFileOrigin, backend = backend)
+  }
+
+  @TearDown(Level.Trial)
+  fun tearDown() {
+    resolver.closeLogged()
+    tempDirectory.deleteLogged()
+  }
+
+  @Benchmark
+  fun createResolver(blackhole: Blackhole) {
+    JarFileResolver(jarFile, Resolver.ReadMode.FULL, SyntheticFileOrigin, backend = backend).use {
+      blackhole.consume(it.allClasses)
+    }
+  }
+
+  @Benchmark
+  fun resolveAllClasses(blackhole: Blackhole) {
+    for (className in classNames) {
+      blackhole.consume(resolver.resolveClass(className))
+    }
+  }
+}
+
+/**
+ * Lookup of classes in a [CompositeResolver] of [jarsNumber] jars, each of 1000 classes.
+ * Classes of the last jar and missing classes are looked up, which are the slowest cases.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+open class CompositeResolverBenchmark {
+
+  @Param("10", "100")
+  @JvmField
+  var jarsNumber: Int = 0
+
+  private lateinit var tempDirectory: Path
+
+  private lateinit var resolvers: List<Resolver>
+
+  private lateinit var compositeResolver: Resolver
+
+  private lateinit var lastJarClassNames: List<String>
+
+  private lateinit var missingClassNames: List<String>
+
+  @Setup(Level.Trial)
+  fun setUp() {
+    tempDirectory = Files.createTempDirectory("composite-resolver-benchmark")
+    resolvers = (0 until jarsNumber).map {
+      val jarFile = SyntheticContent.generateJar(tempDirectory.resolve("library$it.jar"), CLASSES_PER_JAR, "library$it")
+      JarFileResolver(jarFile, Resolver.ReadMode.FULL, SyntheticFileOrigin)
+    }
+    compositeResolver = CompositeResolver.create(resolvers)
+    lastJarClassNames = SyntheticContent.getClassNames(CLASSES_PER_JAR, "library${jarsNumber - 1}")
+    missingClassNames = SyntheticContent.getClassNames(CLASSES_PER_JAR, "missing")
+  }
+
+  @TearDown(Level.Trial)
+  fun tearDown() {
+    resolvers.forEach { it.closeLogged() }
+    tempDirectory.deleteLogged()
+  }
+
+  @Benchmark
+  fun resolveClassesOfLastJar(blackhole: Blackhole) {
+    for (className in lastJarClassNames) {
+      blackhole.consume(compositeResolver.resolveClass(className))
+    }
+  }
+
+  @Benchmark
+  fun resolveMissingClasses(blackhole: Blackhole) {
+    for (className in missingClassNames) {
+      blackhole.consume(compositeResolver.resolveClass(className))
+    }
+  }
+
+  @Benchmark
+  fun containsPackage(blackhole: Blackhole) {
+    for (className in lastJarClassNames) {
+      blackhole.consume(compositeResolver.containsPackage(className.substringBeforeLast('/')))
+    }
+  }
+
+  private companion object {
+    const val CLASSES_PER_JAR = 1000
+  }
+}
+
+/**
+ * Resolution of classes that are already cached by [CacheResolver].
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+open class CacheResolverBenchmark {
+
+  @Param("1000", "10000")
+  @JvmField
+  var classesNumber: Int = 0
+
+  private lateinit var tempDirectory: Path
+
+  private lateinit var jarResolver: Resolver
+
+  private lateinit var cacheResolver: Resolver
+
+  private lateinit var classNames: List<String>
+
+  @Setup(Level.Trial)
+  fun setUp() {
+    tempDirectory = Files.createTempDirectory("cache-resolver-benchmark")
+    val jarFile = SyntheticContent.generateJar(tempDirectory.resolve("classes.jar"), classesNumber, "library")
+    jarResolver = JarFileResolver(jarFile, Resolver.ReadMode.FULL, SyntheticFileOrigin)
+    cacheResolver = CacheResolver(jarResolver, classesNumber)
+    classNames = SyntheticContent.getClassNames(classesNumber, "library")
+    classNames.forEach { cacheResolver.resolveClass(it) }
+  }
+
+  @TearDown(Level.Trial)
+  fun tearDown() {
+    cacheResolver.closeLogged()
+    tempDirectory.deleteLogged()
+  }
+
+  @Benchmark
+  fun resolveCachedClasses(blackhole: Blackhole) {
+    for (className in classNames) {
+      blackhole.consume(cacheResolver.resolveClass(className))
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.pluginverifier.benchmarks
+
+import com.jetbrains.pluginverifier.repository.cleanup.SizeEvictionPolicy
+import com.jetbrains.pluginverifier.repository.cleanup.SizeWeight
+import com.jetbrains.pluginverifier.repository.provider.ProvideResult
+import com.jetbrains.pluginverifier.repository.provider.ResourceProvider
+import com.jetbrains.pluginverifier.repository.resources.ResourceRepositoryImpl
+import com.jetbrains.pluginverifier.repository.resources.ResourceRepositoryResult
+import org.openjdk.jmh.annotations.*
+import java.time.Clock
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.TimeUnit
+
+/**
+ * Locking and releasing of random resources of [ResourceRepositoryImpl] by 1, 8 and 64 threads.
+ *
+ * The repository holds at most [maximumSize] of [keysNumber] resources,
+ * so with a smaller [maximumSize] the threads also provide and evict resources.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+open class ResourceRepositoryContentionBenchmark {
+
+  @Param("1000")
+  @JvmField
+  var keysNumber: Int = 0
+
+  @Param("1000", "100")
+  @JvmField
+  var maximumSize: Int = 0
+
+  private lateinit var repository: ResourceRepositoryImpl<String, Int, SizeWeight>
+
+  @Setup(Level.Trial)
+  fun setUp() {
+    repository = ResourceRepositoryImpl(
+      SizeEvictionPolicy(maximumSize),
+      Clock.systemUTC(),
+      object : ResourceProvider<Int, String> {
+        override fun provide(key: Int) = ProvideResult.Provided("resource-$key")
+      },
+      SizeWeight(0),
+      { SizeWeight(1) },
+      { },
+      "contention-benchmark"
+    )
+    for (key in 0 until keysNumber) {
+      lockAndRelease(key)
+    }
+  }
+
+  private fun lockAndRelease(key: Int): String {
+    val result = repository.get(key) as ResourceRepositoryResult.Found
+    return result.lockedResource.use { it.resource }
+  }
+
+  private fun lockAndReleaseRandom(): String =
+    lockAndRelease(ThreadLocalRandom.current().nextInt(keysNumber))
+
+  @Benchmark
+  @Threads(1)
+  fun lockAndRelease1Thread(): String = lockAndReleaseRandom()
+
+  @Benchmark
+  @Threads(8)
+  fun lockAndRelease8Threads(): String = lockAndReleaseRandom()
+
+  @Benchmark
+  @Threads(64)
+  fun lockAndRelease64Threads(): String = lockAndReleaseRandom()
+}
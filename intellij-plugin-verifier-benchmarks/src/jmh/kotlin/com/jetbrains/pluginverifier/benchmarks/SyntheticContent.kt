@@ -0,0 +1,126 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.pluginverifier.benchmarks
+
+import com.jetbrains.plugin.structure.classes.resolvers.FileOrigin
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Opcodes
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+/**
+ * Generates jars and plugins of configurable size, so benchmarks don't need network access.
+ */
+object SyntheticContent {
+
+  const val CLASSES_PER_PACKAGE = 50
+
+  /**
+   * Returns names of classes generated by [generateJar] for [classesNumber] and [prefix].
+   *
+   * Each class `C<i>` extends `C<i-1>` of the same package, if any, and calls its method,
+   * so the classes reference each other like classes of real libraries.
+   */
+  fun getClassNames(classesNumber: Int, prefix: String): List<String> =
+    (0 until classesNumber).map { getClassName(prefix, it) }
+
+  private fun getClassName(prefix: String, index: Int) = "$prefix/p${index / CLASSES_PER_PACKAGE}/C$index"
+
+  fun generateJar(jarFile: Path, classesNumber: Int, prefix: String, resources: Map<String, String> = emptyMap()): Path {
+    ZipOutputStream(Files.newOutputStream(jarFile).buffered()).use { zip ->
+      for ((resourceName, content) in resources) {
+        zip.putNextEntry(ZipEntry(resourceName))
+        zip.write(content.toByteArray())
+        zip.closeEntry()
+      }
+      for (index in 0 until classesNumber) {
+        zip.putNextEntry(ZipEntry(getClassName(prefix, index) + ".class"))
+        zip.write(generateClass(prefix, index))
+        zip.closeEntry()
+      }
+    }
+    return jarFile
+  }
+
+  private fun generateClass(prefix: String, index: Int): ByteArray {
+    val className = getClassName(prefix, index)
+    val superName = if (index % CLASSES_PER_PACKAGE == 0) "java/lang/Object" else getClassName(prefix, index - 1)
+    val writer = ClassWriter(0)
+    writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, className, null, superName, null)
+    writer.visitField(Opcodes.ACC_PRIVATE, "value", "I", null, null).visitEnd()
+
+    val constructor = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null)
+    constructor.visitCode()
+    constructor.visitVarInsn(Opcodes.ALOAD, 0)
+    constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false)
+    constructor.visitInsn(Opcodes.RETURN)
+    constructor.visitMaxs(1, 1)
+    constructor.visitEnd()
+
+    val method = writer.visitMethod(Opcodes.ACC_PUBLIC, "compute", "()I", null, null)
+    method.visitCode()
+    if (superName == "java/lang/Object") {
+      method.visitVarInsn(Opcodes.ALOAD, 0)
+      method.visitFieldInsn(Opcodes.GETFIELD, className, "value", "I")
+    } else {
+      method.visitVarInsn(Opcodes.ALOAD, 0)
+      method.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "compute", "()I", false)
+    }
+    method.visitInsn(Opcodes.IRETURN)
+    method.visitMaxs(1, 1)
+    method.visitEnd()
+
+    writer.visitEnd()
+    return writer.toByteArray()
+  }
+
+  /**
+   * Generates a plugin `.zip` with `<plugin>/lib/plugin.jar`, containing `plugin.xml` and [classesNumber] classes,
+   * and [librariesNumber] library jars of [classesNumber] classes each.
+   */
+  fun generatePluginZip(pluginZip: Path, classesNumber: Int, librariesNumber: Int): Path {
+    val contentDirectory = Files.createTempDirectory("synthetic-plugin")
+    try {
+      val pluginJar = generateJar(
+        contentDirectory.resolve("plugin.jar"),
+        classesNumber,
+        "plugin",
+        mapOf("META-INF/plugin.xml" to PLUGIN_XML)
+      )
+      val libraries = (0 until librariesNumber).map {
+        generateJar(contentDirectory.resolve("library$it.jar"), classesNumber, "library$it")
+      }
+      ZipOutputStream(Files.newOutputStream(pluginZip).buffered()).use { zip ->
+        for (jar in listOf(pluginJar) + libraries) {
+          zip.putNextEntry(ZipEntry("synthetic-plugin/lib/${jar.fileName}"))
+          Files.copy(jar, zip)
+          zip.closeEntry()
+        }
+      }
+    } finally {
+      contentDirectory.toFile().deleteRecursively()
+    }
+    return pluginZip
+  }
+
+  private val PLUGIN_XML = """
+    <idea-plugin>
+      <id>synthetic.plugin</id>
+      <name>Synthetic plugin</name>
+      <version>1.0</version>
+      <vendor email="vendor@example.com" url="https://example.com">Vendor</vendor>
+      <description>Synthetic plugin generated for benchmarks of the plugin verifier</description>
+      <change-notes>Synthetic plugin generated for benchmarks of the plugin verifier</change-notes>
+      <idea-version since-build="193.1"/>
+      <depends>com.intellij.modules.platform</depends>
+    </idea-plugin>
+  """.trimIndent()
+
+  object SyntheticFileOrigin : FileOrigin {
+    override val parent: FileOrigin? = null
+  }
+}
@@ -11,12 +11,16 @@ import com.jetbrains.pluginverifier.PluginVerifierMain.commandRunners
 import com.jetbrains.pluginverifier.PluginVerifierMain.main
 import com.jetbrains.pluginverifier.ide.IdeFilesBank
 import com.jetbrains.pluginverifier.ide.repositories.ReleaseIdeRepository
+import com.jetbrains.pluginverifier.metrics.VerificationMetricsCollector
+import com.jetbrains.pluginverifier.metrics.VerificationStage
 import com.jetbrains.pluginverifier.options.CmdOpts
 import com.jetbrains.pluginverifier.options.OptionsParser
 import com.jetbrains.pluginverifier.output.OutputOptions
+import com.jetbrains.pluginverifier.plugin.ContentAddressedPluginJarsStorage
 import com.jetbrains.pluginverifier.plugin.PluginDetailsCache
 import com.jetbrains.pluginverifier.plugin.PluginDetailsProviderImpl
 import com.jetbrains.pluginverifier.plugin.PluginFilesBank
+import com.jetbrains.pluginverifier.reporting.AsyncPluginVerificationReportage
 import com.jetbrains.pluginverifier.reporting.DirectoryBasedPluginVerificationReportage
 import com.jetbrains.pluginverifier.reporting.PluginVerificationReportage
 import com.jetbrains.pluginverifier.repository.cleanup.DiskSpaceSetting
@@ -33,6 +37,7 @@ import org.apache.commons.io.FileUtils
 import java.net.URL
 import java.nio.file.Path
 import java.nio.file.Paths
+import java.time.Duration
 import kotlin.system.exitProcess
 
 /**
@@ -48,7 +53,7 @@ object PluginVerifierMain {
     CheckPluginApiRunner()
   )
 
-  private val pluginVerifierVersion: String by lazy {
+  val pluginVerifierVersion: String by lazy {
     val versionTxtUrl = PluginVerifierMain::class.java.getResource("/META-INF/intellij-plugin-verifier-version.txt")
     versionTxtUrl ?: return@lazy "<unknown>"
     versionTxtUrl.readText()
@@ -83,6 +88,18 @@ object PluginVerifierMain {
 
   private val ideDownloadDirectory: Path = verifierHomeDirectory.resolve("ides").createDir()
 
+  /**
+   * Creates the storage of library jars shared by extracted plugins,
+   * if its maximum size is specified with `plugin.verifier.shared.jars.max.space` property.
+   */
+  private fun createPluginJarsStorage(): ContentAddressedPluginJarsStorage? {
+    if (System.getProperty("plugin.verifier.shared.jars.max.space") == null) {
+      return null
+    }
+    val diskSpaceSetting = getDiskSpaceSetting("plugin.verifier.shared.jars.max.space", 0)
+    return ContentAddressedPluginJarsStorage(verifierHomeDirectory.resolve("shared-plugin-jars"), diskSpaceSetting)
+  }
+
   @JvmStatic
   fun main(args: Array<String>) {
     println("Starting the IntelliJ Plugin Verifier $pluginVerifierVersion")
@@ -107,15 +124,17 @@ object PluginVerifierMain {
     val pluginRepository = MarketplaceRepository(URL(pluginRepositoryUrl))
     val pluginDownloadDirDiskSpaceSetting = getDiskSpaceSetting("plugin.verifier.cache.dir.max.space", 5 * 1024)
     val pluginFilesBank = PluginFilesBank.create(pluginRepository, downloadDirectory, pluginDownloadDirDiskSpaceSetting)
-    val pluginDetailsProvider = PluginDetailsProviderImpl(getPluginsExtractDirectory())
+    val verificationMetrics = VerificationMetricsCollector()
+    val pluginDetailsProvider = PluginDetailsProviderImpl(getPluginsExtractDirectory(), createPluginJarsStorage(), verificationMetrics)
 
     val ideRepository = ReleaseIdeRepository()
     val ideFilesDiskSetting = getDiskSpaceSetting("plugin.verifier.cache.ide.dir.max.space", 10 * 1024)
     val ideFilesBank = IdeFilesBank(ideDownloadDirectory, ideRepository, ideFilesDiskSetting)
 
-    DirectoryBasedPluginVerificationReportage { outputOptions.getTargetReportDirectory(it) }.use { reportage ->
+    val directoryReportage = DirectoryBasedPluginVerificationReportage(opts.singleResultsFile) { outputOptions.getTargetReportDirectory(it) }
+    AsyncPluginVerificationReportage(directoryReportage).use { reportage ->
       val detailsCacheSize = System.getProperty("plugin.verifier.plugin.details.cache.size")?.toIntOrNull() ?: 32
-      val taskResult = PluginDetailsCache(detailsCacheSize, pluginFilesBank, pluginDetailsProvider).use { pluginDetailsCache ->
+      val taskResult = PluginDetailsCache(detailsCacheSize, pluginFilesBank, pluginDetailsProvider, verificationMetrics).use { pluginDetailsCache ->
         runner.getParametersBuilder(
           pluginRepository,
           ideFilesBank,
@@ -130,10 +149,27 @@ object PluginVerifierMain {
         }
       }
 
-      val taskResultsPrinter = runner.createTaskResultsPrinter(outputOptions, pluginRepository)
-      taskResultsPrinter.printResults(taskResult)
+      taskResult.use {
+        val taskResultsPrinter = runner.createTaskResultsPrinter(outputOptions, pluginRepository)
+        taskResultsPrinter.printResults(it)
+      }
       reportage.reportDownloadStatistics(outputOptions, pluginFilesBank)
+      reportage.reportVerificationMetrics(outputOptions, verificationMetrics)
+    }
+  }
+
+  private fun PluginVerificationReportage.reportVerificationMetrics(outputOptions: OutputOptions, metrics: VerificationMetricsCollector) {
+    for (stage in VerificationStage.values()) {
+      val statistics = metrics.getStageStatistics(stage)
+      val totalDuration = Duration.ofNanos(statistics.totalNanos)
+      logVerificationStage("Total time spent in stage '${stage.metricName}' (${statistics.count} times): ${totalDuration.formatDuration()}")
+      outputOptions.teamCityLog?.buildStatisticValue("intellij.plugin.verifier.stage.${stage.metricName}.time.ms", totalDuration.toMillis())
+    }
+    logVerificationStage("Classes looked up by verifications: ${metrics.getResolvedClassesCount()}, of them missing in the verification caches: ${metrics.getReadClassesCount()}")
+    for ((cacheName, statistics) in metrics.getCacheStatistics()) {
+      logVerificationStage("Hit rate of the class cache of $cacheName: ${String.format("%.3f", statistics.hitRate)}")
     }
+    outputOptions.saveVerificationMetrics(metrics)
   }
 
   private fun PluginVerificationReportage.reportDownloadStatistics(outputOptions: OutputOptions, pluginFilesBank: PluginFilesBank) {
@@ -46,6 +46,21 @@ open class CmdOpts(
   )
   var pluginsToCheckFile: String? = null,
 
+  @set:Argument("jar-index-dir", alias = "jid", description = "The directory where indexes of the IDE jar files are persisted. If specified, the indexes are reused on subsequent runs against the same IDE.")
+  var jarIndexDir: String? = null,
+
+  @set:Argument("zip-file-jar-reading", alias = "zfjr", description = "Read IDE jars using java.util.zip.ZipFile instead of zip file systems. It reduces allocations and system calls when reading IDE classes.")
+  var zipFileJarReading: Boolean = false,
+
+  @set:Argument("single-results-file", alias = "srf", description = "Append verification results of all plugins to one 'verification-results.txt' file per IDE instead of creating a directory with report files for each plugin.")
+  var singleResultsFile: Boolean = false,
+
+  @set:Argument("incremental-verification", alias = "incr", description = "Verify again only those classes of a plugin whose referenced classes have changed since the verification of the same plugin against another IDE in this run. It speeds up verification of plugins against several IDE builds.")
+  var incrementalVerification: Boolean = false,
+
+  @set:Argument("incremental-verification-dir", alias = "incrd", description = "The directory where outcomes of verifications of plugin classes are persisted. If specified, the incremental verification is enabled and the next runs, for example against the next IDE build, verify again only those classes of already verified plugins whose referenced classes have changed.")
+  var incrementalVerificationDir: String? = null,
+
   @set:Argument("external-prefixes", alias = "ex-prefixes", delimiter = ":", description = "The prefixes of classes from the external libraries. The Verifier will not report 'No such class' for such classes.")
   var externalClassesPrefixes: Array<String> = arrayOf(),
 
@@ -5,6 +5,8 @@
 package com.jetbrains.pluginverifier.options
 
 import com.jetbrains.plugin.structure.base.utils.*
+import com.jetbrains.plugin.structure.classes.resolvers.JarFileIndexCache
+import com.jetbrains.plugin.structure.classes.resolvers.JarFileResolver
 import com.jetbrains.plugin.structure.ide.IdeIncompatiblePluginsUtil.parseIncompatiblePluginsByLines
 import com.jetbrains.plugin.structure.ide.PluginIdAndVersion
 import com.jetbrains.plugin.structure.intellij.version.IdeVersion
@@ -24,6 +26,7 @@ import java.nio.file.Path
 import java.nio.file.Paths
 import java.text.SimpleDateFormat
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
 
 object OptionsParser {
 
@@ -31,6 +34,12 @@ object OptionsParser {
 
   private val TIMESTAMP_DATE_FORMAT = SimpleDateFormat("yyyy-MM-dd 'at' HH.mm.ss")
 
+  /**
+   * Jar index caches by their directories.
+   * All IDEs opened during the run share one cache, so outdated indexes are removed only once.
+   */
+  private val jarIndexCaches = ConcurrentHashMap<Path, JarFileIndexCache>()
+
   private fun getVerificationReportsDirectory(opts: CmdOpts): Path {
     val reportDirectory = opts.verificationReportsDir?.let { Paths.get(it) }
     if (reportDirectory != null) {
@@ -60,10 +69,22 @@ object OptionsParser {
     )
   }
 
-  fun createIdeDescriptor(idePath: Path, opts: CmdOpts): IdeDescriptor {
+  /**
+   * Creates [IdeDescriptor] of the IDE at [idePath].
+   * [openedIdesNumber] is the number of IDEs that will be opened at once: they share the heap reserved for cached classes.
+   */
+  fun createIdeDescriptor(idePath: Path, opts: CmdOpts, openedIdesNumber: Int = 1): IdeDescriptor {
     val ideVersion = takeVersionFromCmd(opts)
     val defaultJdkPath = getJdkPath(opts)
-    return IdeDescriptor.create(idePath, defaultJdkPath, ideVersion, null)
+    val jarIndexCache = getJarIndexCache(opts)
+    val jarBackend = if (opts.zipFileJarReading) JarFileResolver.Backend.ZIP_FILE else JarFileResolver.Backend.ZIP_FILE_SYSTEM
+    val classCacheBytes = IdeDescriptor.getIdeClassCachesBytes() / openedIdesNumber
+    return IdeDescriptor.create(idePath, defaultJdkPath, ideVersion, null, jarIndexCache, jarBackend, classCacheBytes)
+  }
+
+  private fun getJarIndexCache(opts: CmdOpts): JarFileIndexCache? {
+    val indexDirectory = opts.jarIndexDir?.let { Paths.get(it).toAbsolutePath().normalize() } ?: return null
+    return jarIndexCaches.computeIfAbsent(indexDirectory) { JarFileIndexCache(it) }
   }
 
   fun getJdkPath(opts: CmdOpts): Path {
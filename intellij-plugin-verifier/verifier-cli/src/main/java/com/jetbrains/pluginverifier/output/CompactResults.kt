@@ -0,0 +1,26 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.pluginverifier.output
+
+import com.jetbrains.pluginverifier.PluginVerificationResult
+
+/**
+ * Returns a copy of this result without API usages, ignored problems and plugin structure warnings,
+ * which take most of the memory, while the compatibility problems, warnings and the dependencies are kept.
+ *
+ * Such results of all the verifications may be retained until the end of the task
+ * to be printed on TeamCity and compared between the verification targets.
+ */
+fun PluginVerificationResult.compact(): PluginVerificationResult = when (this) {
+  is PluginVerificationResult.Verified -> PluginVerificationResult.Verified(
+    plugin,
+    verificationTarget,
+    dependenciesGraph,
+    compatibilityProblems,
+    compatibilityWarnings = compatibilityWarnings,
+    dynamicPluginStatus = dynamicPluginStatus
+  )
+  else -> this
+}
@@ -4,8 +4,11 @@
 
 package com.jetbrains.pluginverifier.output
 
+import com.jetbrains.plugin.structure.base.utils.createDir
 import com.jetbrains.plugin.structure.base.utils.replaceInvalidFileNameCharacters
+import com.jetbrains.plugin.structure.base.utils.writeText
 import com.jetbrains.pluginverifier.PluginVerificationTarget
+import com.jetbrains.pluginverifier.metrics.VerificationMetricsCollector
 import com.jetbrains.pluginverifier.output.teamcity.TeamCityHistory
 import com.jetbrains.pluginverifier.output.teamcity.TeamCityLog
 import com.jetbrains.pluginverifier.output.teamcity.TeamCityResultPrinter
@@ -27,6 +30,15 @@ data class OutputOptions(
       .resolve("${verificationTarget.plugin.pluginId} ${verificationTarget.plugin.version}".replaceInvalidFileNameCharacters())
   }
 
+  /**
+   * Saves [metrics] to `verification-metrics.prom` in the Prometheus text format and to `verification-metrics.json`.
+   */
+  fun saveVerificationMetrics(metrics: VerificationMetricsCollector) {
+    verificationReportsDirectory.createDir()
+    verificationReportsDirectory.resolve("verification-metrics.prom").writeText(metrics.toPrometheusText())
+    verificationReportsDirectory.resolve("verification-metrics.json").writeText(metrics.toJson())
+  }
+
   fun postProcessTeamCityTests(newTcHistory: TeamCityHistory) {
     if (teamCityLog != null) {
       newTcHistory.writeToFile(verificationReportsDirectory.resolve("tc-tests.json"))
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.pluginverifier.output
+
+import com.jetbrains.plugin.structure.base.utils.deleteLogged
+import java.io.Closeable
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.StandardOpenOption
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Texts rendered from verification results, spilled to a temporary file
+ * so that they are not held in memory until all the verifications complete.
+ *
+ * Only [handles] [Handle] of the texts are kept in memory.
+ * Texts may be added from several threads at once: each text gets its own region of the file
+ * and is written there without locking. The temporary file is deleted on [close].
+ */
+class SpilledTexts : Closeable {
+
+  private val spillFile = Files.createTempFile("plugin-verifier-", ".spill")
+
+  private val channel = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE)
+
+  private val size = AtomicLong()
+
+  fun add(text: String): Handle {
+    val bytes = text.toByteArray()
+    val buffer = ByteBuffer.wrap(bytes)
+    val offset = size.getAndAdd(bytes.size.toLong())
+    while (buffer.hasRemaining()) {
+      channel.write(buffer, offset + buffer.position())
+    }
+    return Handle(offset, bytes.size)
+  }
+
+  fun get(handle: Handle): String {
+    val buffer = ByteBuffer.allocate(handle.length)
+    while (buffer.hasRemaining()) {
+      val read = channel.read(buffer, handle.offset + buffer.position())
+      check(read >= 0) { "Unexpected end of $spillFile" }
+    }
+    return String(buffer.array())
+  }
+
+  override fun close() {
+    channel.close()
+    spillFile.deleteLogged()
+  }
+
+  class Handle(val offset: Long, val length: Int)
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.pluginverifier.output.html
+
+import com.jetbrains.pluginverifier.PluginVerificationResult
+import com.jetbrains.pluginverifier.PluginVerificationTarget
+import com.jetbrains.pluginverifier.dependencies.presentation.DependenciesGraphPrettyPrinter
+import com.jetbrains.pluginverifier.misc.HtmlBuilder
+import com.jetbrains.pluginverifier.output.SpilledTexts
+import java.io.Closeable
+import java.io.PrintWriter
+import java.io.StringWriter
+
+/**
+ * HTML sections of verification results against [verificationTarget], rendered as the results are [added] [addResult].
+ *
+ * The sections are [spilled] [SpilledTexts] to disk, and only short [fragments] [Fragment] describing them are kept in memory,
+ * so the results themselves need not be retained until the [report] [HtmlResultPrinter.printReport] is printed.
+ *
+ * Results may be added from several threads at once. They are rendered and spilled concurrently,
+ * and only the fragments are recorded under a lock.
+ */
+class HtmlReportFragments(val verificationTarget: PluginVerificationTarget) : Closeable {
+
+  private val spilledTexts = SpilledTexts()
+
+  private val pluginIdToFragments = hashMapOf<String, MutableList<Fragment>>()
+
+  val isEmpty: Boolean
+    get() = synchronized(pluginIdToFragments) { pluginIdToFragments.isEmpty() }
+
+  fun addResult(result: PluginVerificationResult) {
+    require(result.verificationTarget == verificationTarget) { "Result of verification against ${result.verificationTarget} instead of $verificationTarget" }
+    val html = StringWriter().also { HtmlBuilder(PrintWriter(it)).printPluginResult(result) }.toString()
+    val verifiedResult = result as? PluginVerificationResult.Verified
+    val fragment = Fragment(
+      result.plugin.version,
+      result is PluginVerificationResult.InvalidPlugin,
+      verifiedResult?.hasCompatibilityProblems ?: false,
+      verifiedResult?.hasDirectMissingMandatoryDependencies ?: false,
+      verifiedResult?.hasCompatibilityWarnings ?: false,
+      spilledTexts.add(html)
+    )
+    synchronized(pluginIdToFragments) {
+      pluginIdToFragments.getOrPut(result.plugin.pluginId) { arrayListOf() } += fragment
+    }
+  }
+
+  fun getPluginFragments(): Map<String, List<Fragment>> = pluginIdToFragments
+
+  fun getHtml(fragment: Fragment): String = spilledTexts.get(fragment.htmlHandle)
+
+  override fun close() {
+    spilledTexts.close()
+  }
+
+  class Fragment(
+    val pluginVersion: String,
+    val isInvalidPlugin: Boolean,
+    val hasCompatibilityProblems: Boolean,
+    val hasDirectMissingMandatoryDependencies: Boolean,
+    val hasCompatibilityWarnings: Boolean,
+    val htmlHandle: SpilledTexts.Handle
+  )
+
+  private fun HtmlBuilder.printPluginResult(result: PluginVerificationResult) {
+    val resultStyle = when (result) {
+      is PluginVerificationResult.Verified -> when {
+        result.hasCompatibilityWarnings -> "warnings"
+        result.hasDirectMissingMandatoryDependencies -> "missingDeps"
+        result.hasCompatibilityProblems -> "updateHasProblems"
+        else -> "updateOk"
+      }
+      is PluginVerificationResult.InvalidPlugin -> "badPlugin"
+      is PluginVerificationResult.NotFound -> "notFound"
+      is PluginVerificationResult.FailedToDownload -> "failedToDownload"
+    }
+
+    div(classes = "update $resultStyle") {
+      h3 {
+        printUpdateHeader(result)
+      }
+      div {
+        printProblemsAndWarnings(result)
+      }
+    }
+  }
+
+  private fun HtmlBuilder.printUpdateHeader(result: PluginVerificationResult) {
+    span(classes = "uMarker") { +"    " }
+    +result.plugin.version
+    small { +result.plugin.toString() }
+    small { +result.verificationVerdict }
+  }
+
+  private fun HtmlBuilder.printProblemsAndWarnings(result: PluginVerificationResult) {
+    with(result) {
+      when (this) {
+        is PluginVerificationResult.InvalidPlugin -> printShortAndFullDescription(pluginStructureErrors.joinToString(), result.plugin.pluginId)
+        is PluginVerificationResult.NotFound -> printShortAndFullDescription("Plugin ${result.plugin} is not found in the Repository", notFoundReason)
+        is PluginVerificationResult.FailedToDownload -> printShortAndFullDescription("Plugin ${result.plugin} is not downloaded from the Repository", failedToDownloadReason)
+        is PluginVerificationResult.Verified -> {
+          printShortAndFullDescriptionItems("Compatibility problems", compatibilityProblems) { it.shortDescription to it.fullDescription }
+          printShortAndFullDescriptionItems("Compatibility warnings", compatibilityWarnings) { it.shortDescription to it.fullDescription }
+          printShortAndFullDescriptionItems("Deprecated API usages", deprecatedUsages) { it.shortDescription to it.fullDescription }
+          printShortAndFullDescriptionItems("Experimental API usages", experimentalApiUsages) { it.shortDescription to it.fullDescription }
+          printShortAndFullDescriptionItems("Internal API usages", internalApiUsages) { it.shortDescription to it.fullDescription }
+          printShortAndFullDescriptionItems("Non-extendable API usages", nonExtendableApiUsages) { it.shortDescription to it.fullDescription }
+          printShortAndFullDescriptionItems("Override-only API usages", overrideOnlyMethodUsages) { it.shortDescription to it.fullDescription }
+          if (pluginStructureWarnings.isNotEmpty()) {
+            printShortAndFullDescription("Plugin structure defects") {
+              pluginStructureWarnings.forEach {
+                +it.message
+              }
+            }
+          }
+          if (directMissingMandatoryDependencies.isNotEmpty()) {
+            printShortAndFullDescription("Missing dependencies") {
+              directMissingMandatoryDependencies.forEach {
+                +it.missingReason
+              }
+            }
+          }
+          printShortAndFullDescription("Dependencies used on verification") {
+            val graphPresentation = DependenciesGraphPrettyPrinter(dependenciesGraph).prettyPresentation()
+            graphPresentation.lines().forEach { line ->
+              +line
+              br()
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private fun <T> HtmlBuilder.printShortAndFullDescriptionItems(
+    title: String,
+    items: Set<T>,
+    mapper: (T) -> Pair<String, String>
+  ) {
+    if (items.isEmpty()) {
+      return
+    }
+    p {
+      printShortAndFullDescription(title) {
+        items
+          .map(mapper)
+          .sortedBy { it.first }
+          .groupBy { it.first }
+          .forEach { (shortDesc, fullDescriptions) ->
+            val allProblems = fullDescriptions.joinToString(separator = "\n")
+            printShortAndFullDescription(shortDesc, allProblems)
+          }
+      }
+    }
+  }
+
+
+  private fun HtmlBuilder.printShortAndFullDescription(shortDescription: String, fullDescription: String) {
+    printShortAndFullDescription(shortDescription) {
+      +fullDescription
+    }
+  }
+
+  private fun HtmlBuilder.printShortAndFullDescription(shortDescription: String, fullDescriptionBuilder: HtmlBuilder.() -> Unit) {
+    div(classes = "shortDescription") {
+      +shortDescription
+      +" "
+      a(href = "#", classes = "detailsLink") {
+        +"details"
+      }
+      div(classes = "longDescription") {
+        fullDescriptionBuilder()
+      }
+    }
+  }
+}
@@ -8,7 +8,6 @@ import com.jetbrains.plugin.structure.base.utils.create
 import com.jetbrains.plugin.structure.ide.VersionComparatorUtil
 import com.jetbrains.pluginverifier.PluginVerificationResult
 import com.jetbrains.pluginverifier.PluginVerificationTarget
-import com.jetbrains.pluginverifier.dependencies.presentation.DependenciesGraphPrettyPrinter
 import com.jetbrains.pluginverifier.misc.HtmlBuilder
 import com.jetbrains.pluginverifier.output.OutputOptions
 import java.io.PrintWriter
@@ -20,14 +19,22 @@ class HtmlResultPrinter(
 ) {
 
   fun printResults(results: List<PluginVerificationResult>) {
+    HtmlReportFragments(verificationTarget).use { fragments ->
+      results.forEach { fragments.addResult(it) }
+      printReport(fragments)
+    }
+  }
+
+  fun printReport(fragments: HtmlReportFragments) {
+    require(fragments.verificationTarget == verificationTarget) { "Results of verification against ${fragments.verificationTarget} instead of $verificationTarget" }
     val reportHtmlFile = outputOptions.getTargetReportDirectory(verificationTarget).resolve("report.html")
     PrintWriter(Files.newBufferedWriter(reportHtmlFile.create())).use {
       val htmlBuilder = HtmlBuilder(it)
-      htmlBuilder.doPrintResults(results)
+      htmlBuilder.doPrintReport(fragments)
     }
   }
 
-  private fun HtmlBuilder.doPrintResults(results: List<PluginVerificationResult>) {
+  private fun HtmlBuilder.doPrintReport(fragments: HtmlReportFragments) {
     html {
       head {
         title("Verification result $verificationTarget")
@@ -38,11 +45,11 @@ class HtmlResultPrinter(
       }
       body {
         h2 { +verificationTarget.toString() }
-        if (results.isEmpty()) {
+        if (fragments.isEmpty) {
           +"No plugins checked"
         } else {
-          results.sortedBy { it.plugin.pluginId }.groupBy { it.plugin.pluginId }.forEach { (pluginId, pluginResults) ->
-            appendPluginResults(pluginResults, pluginId)
+          fragments.getPluginFragments().toSortedMap().forEach { (pluginId, pluginFragments) ->
+            appendPluginResults(fragments, pluginFragments, pluginId)
           }
         }
         script { unsafe(loadReportScript()) }
@@ -50,153 +57,42 @@ class HtmlResultPrinter(
     }
   }
 
-  private fun HtmlBuilder.appendPluginResults(pluginResults: List<PluginVerificationResult>, pluginId: String) {
-    div(classes = "plugin " + getPluginStyle(pluginResults)) {
+  private fun HtmlBuilder.appendPluginResults(
+    fragments: HtmlReportFragments,
+    pluginFragments: List<HtmlReportFragments.Fragment>,
+    pluginId: String
+  ) {
+    div(classes = "plugin " + getPluginStyle(pluginFragments)) {
       h3 {
         span(classes = "pMarker") { +"    " }
         +pluginId
       }
       div {
-        pluginResults
-          .sortedWith(compareByDescending(VersionComparatorUtil.COMPARATOR) { it.plugin.version })
-          .forEach { printPluginResult(it) }
+        pluginFragments
+          .sortedWith(compareByDescending(VersionComparatorUtil.COMPARATOR) { it.pluginVersion })
+          .forEach { unsafe(fragments.getHtml(it).trimEnd()) }
       }
     }
   }
 
-  private fun getPluginStyle(results: List<PluginVerificationResult>): String {
-    if (results.any { it is PluginVerificationResult.InvalidPlugin }) {
+  private fun getPluginStyle(pluginFragments: List<HtmlReportFragments.Fragment>): String {
+    if (pluginFragments.any { it.isInvalidPlugin }) {
       return "badPlugin"
     }
-    val verifiedResults = results.filterIsInstance<PluginVerificationResult.Verified>()
-    if (verifiedResults.any { it.hasCompatibilityProblems }) {
+    if (pluginFragments.any { it.hasCompatibilityProblems }) {
       return "pluginHasProblems"
     }
-    if (verifiedResults.any { it.hasDirectMissingMandatoryDependencies }) {
+    if (pluginFragments.any { it.hasDirectMissingMandatoryDependencies }) {
       return "missingDeps"
     }
-    if (verifiedResults.any { it.hasCompatibilityWarnings }) {
+    if (pluginFragments.any { it.hasCompatibilityWarnings }) {
       return "warnings"
     }
     return "pluginOk"
   }
 
-  private fun HtmlBuilder.printPluginResult(result: PluginVerificationResult) {
-    val resultStyle = when (result) {
-      is PluginVerificationResult.Verified -> when {
-        result.hasCompatibilityWarnings -> "warnings"
-        result.hasDirectMissingMandatoryDependencies -> "missingDeps"
-        result.hasCompatibilityProblems -> "updateHasProblems"
-        else -> "updateOk"
-      }
-      is PluginVerificationResult.InvalidPlugin -> "badPlugin"
-      is PluginVerificationResult.NotFound -> "notFound"
-      is PluginVerificationResult.FailedToDownload -> "failedToDownload"
-    }
-
-    div(classes = "update $resultStyle") {
-      h3 {
-        printUpdateHeader(result)
-      }
-      div {
-        printProblemsAndWarnings(result)
-      }
-    }
-  }
-
-  private fun HtmlBuilder.printUpdateHeader(result: PluginVerificationResult) {
-    span(classes = "uMarker") { +"    " }
-    +result.plugin.version
-    small { +result.plugin.toString() }
-    small { +result.verificationVerdict }
-  }
-
-  private fun HtmlBuilder.printProblemsAndWarnings(result: PluginVerificationResult) {
-    with(result) {
-      when (this) {
-        is PluginVerificationResult.InvalidPlugin -> printShortAndFullDescription(pluginStructureErrors.joinToString(), result.plugin.pluginId)
-        is PluginVerificationResult.NotFound -> printShortAndFullDescription("Plugin ${result.plugin} is not found in the Repository", notFoundReason)
-        is PluginVerificationResult.FailedToDownload -> printShortAndFullDescription("Plugin ${result.plugin} is not downloaded from the Repository", failedToDownloadReason)
-        is PluginVerificationResult.Verified -> {
-          printShortAndFullDescriptionItems("Compatibility problems", compatibilityProblems) { it.shortDescription to it.fullDescription }
-          printShortAndFullDescriptionItems("Compatibility warnings", compatibilityWarnings) { it.shortDescription to it.fullDescription }
-          printShortAndFullDescriptionItems("Deprecated API usages", deprecatedUsages) { it.shortDescription to it.fullDescription }
-          printShortAndFullDescriptionItems("Experimental API usages", experimentalApiUsages) { it.shortDescription to it.fullDescription }
-          printShortAndFullDescriptionItems("Internal API usages", internalApiUsages) { it.shortDescription to it.fullDescription }
-          printShortAndFullDescriptionItems("Non-extendable API usages", nonExtendableApiUsages) { it.shortDescription to it.fullDescription }
-          printShortAndFullDescriptionItems("Override-only API usages", overrideOnlyMethodUsages) { it.shortDescription to it.fullDescription }
-          if (pluginStructureWarnings.isNotEmpty()) {
-            printShortAndFullDescription("Plugin structure defects") {
-              pluginStructureWarnings.forEach {
-                +it.message
-              }
-            }
-          }
-          if (directMissingMandatoryDependencies.isNotEmpty()) {
-            printShortAndFullDescription("Missing dependencies") {
-              directMissingMandatoryDependencies.forEach {
-                +it.missingReason
-              }
-            }
-          }
-          printShortAndFullDescription("Dependencies used on verification") {
-            val graphPresentation = DependenciesGraphPrettyPrinter(dependenciesGraph).prettyPresentation()
-            graphPresentation.lines().forEach { line ->
-              +line
-              br()
-            }
-          }
-        }
-      }
-    }
-  }
-
   private fun loadReportScript() = HtmlResultPrinter::class.java.getResource("/reportScript.js").readText()
 
   private fun loadReportCss() = HtmlResultPrinter::class.java.getResource("/reportCss.css").readText()
 
-  private fun <T> HtmlBuilder.printShortAndFullDescriptionItems(
-    title: String,
-    items: Set<T>,
-    mapper: (T) -> Pair<String, String>
-  ) {
-    if (items.isEmpty()) {
-      return
-    }
-    p {
-      printShortAndFullDescription(title) {
-        items
-          .map(mapper)
-          .sortedBy { it.first }
-          .groupBy { it.first }
-          .forEach { (shortDesc, fullDescriptions) ->
-            val allProblems = fullDescriptions.joinToString(separator = "\n")
-            printShortAndFullDescription(shortDesc, allProblems)
-          }
-      }
-    }
-  }
-
-
-  private fun HtmlBuilder.printShortAndFullDescription(shortDescription: String, fullDescription: String) {
-    printShortAndFullDescription(shortDescription) {
-      +fullDescription
-    }
-  }
-
-  private fun HtmlBuilder.printShortAndFullDescription(shortDescription: String, fullDescriptionBuilder: HtmlBuilder.() -> Unit) {
-    div(classes = "shortDescription") {
-      +shortDescription
-      +" "
-      a(href = "#", classes = "detailsLink") {
-        +"details"
-      }
-      div(classes = "longDescription") {
-        fullDescriptionBuilder()
-      }
-    }
-  }
-
 }
-
-
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.pluginverifier.output.stream
+
+import com.jetbrains.pluginverifier.PluginVerificationResult
+import com.jetbrains.pluginverifier.output.SpilledTexts
+import java.io.Closeable
+import java.io.PrintWriter
+import java.io.StringWriter
+
+/**
+ * Text presentations of verification results printed by [WriterResultPrinter],
+ * rendered as the results are [added] [addResult] and [spilled] [SpilledTexts] to disk.
+ *
+ * Results may be added from several threads at once: only the handle of the spilled text is recorded under a lock.
+ */
+class TextReportFragments : Closeable {
+
+  private val spilledTexts = SpilledTexts()
+
+  private val textHandles = arrayListOf<SpilledTexts.Handle>()
+
+  fun addResult(result: PluginVerificationResult) {
+    val text = StringWriter().also { WriterResultPrinter(PrintWriter(it)).printResult(result) }.toString()
+    val textHandle = spilledTexts.add(text)
+    synchronized(textHandles) {
+      textHandles += textHandle
+    }
+  }
+
+  /**
+   * Prints the results to [out] in the order they were added.
+   */
+  fun printTo(out: PrintWriter) {
+    for (textHandle in textHandles) {
+      out.print(spilledTexts.get(textHandle))
+    }
+  }
+
+  override fun close() {
+    spilledTexts.close()
+  }
+}
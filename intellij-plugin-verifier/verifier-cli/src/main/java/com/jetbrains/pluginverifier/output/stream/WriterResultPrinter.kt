@@ -17,13 +17,15 @@ class WriterResultPrinter(private val out: PrintWriter) : ResultPrinter {
   }
 
   override fun printResults(results: List<PluginVerificationResult>) {
-    results.forEach { result ->
-      val plugin = result.plugin
-      val verificationTarget = result.verificationTarget
-      out.println("Plugin $plugin against $verificationTarget: ${result.verificationVerdict}")
-      if (result is PluginVerificationResult.Verified) {
-        out.println(result.printVerificationResult())
-      }
+    results.forEach { printResult(it) }
+  }
+
+  fun printResult(result: PluginVerificationResult) {
+    val plugin = result.plugin
+    val verificationTarget = result.verificationTarget
+    out.println("Plugin $plugin against $verificationTarget: ${result.verificationVerdict}")
+    if (result is PluginVerificationResult.Verified) {
+      out.println(result.printVerificationResult())
     }
   }
 
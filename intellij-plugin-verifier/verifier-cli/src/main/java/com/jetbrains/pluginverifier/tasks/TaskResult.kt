@@ -4,7 +4,13 @@
 
 package com.jetbrains.pluginverifier.tasks
 
+import java.io.Closeable
+
 /**
  * Base class of all the verification [tasks] [Task]' results.
+ *
+ * The result is closed after it has been printed, releasing resources such as spilled reports.
  */
-abstract class TaskResult
\ No newline at end of file
+abstract class TaskResult : Closeable {
+  override fun close() = Unit
+}
@@ -55,7 +55,8 @@ class CheckIdeParamsBuilder(
       val classResolverProvider = DefaultClassResolverProvider(
         dependencyFinder,
         ideDescriptor,
-        externalClassesPackageFilter
+        externalClassesPackageFilter,
+        pluginDetailsCache.metrics
       )
 
       val verificationDescriptors = pluginsSet.pluginsToCheck.map {
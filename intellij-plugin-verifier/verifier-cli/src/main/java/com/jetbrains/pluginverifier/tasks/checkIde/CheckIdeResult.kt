@@ -4,12 +4,28 @@
 
 package com.jetbrains.pluginverifier.tasks.checkIde
 
+import com.jetbrains.plugin.structure.base.utils.closeLogged
 import com.jetbrains.pluginverifier.PluginVerificationResult
 import com.jetbrains.pluginverifier.PluginVerificationTarget
+import com.jetbrains.pluginverifier.output.html.HtmlReportFragments
+import com.jetbrains.pluginverifier.output.stream.TextReportFragments
 import com.jetbrains.pluginverifier.tasks.TaskResult
 
+/**
+ * Results of the 'check-ide' task.
+ *
+ * The [results] are [compact] [com.jetbrains.pluginverifier.output.compact],
+ * while the complete results are rendered to [htmlReportFragments] and [textReportFragments].
+ */
 class CheckIdeResult(
   val ide: PluginVerificationTarget.IDE,
   val results: List<PluginVerificationResult>,
+  val htmlReportFragments: HtmlReportFragments,
+  val textReportFragments: TextReportFragments,
   val missingCompatibleVersionsProblems: List<MissingCompatibleVersionProblem>
-) : TaskResult()
+) : TaskResult() {
+  override fun close() {
+    htmlReportFragments.closeLogged()
+    textReportFragments.closeLogged()
+  }
+}
@@ -11,7 +11,6 @@ import com.jetbrains.plugin.structure.ide.PluginIdAndVersion
 import com.jetbrains.pluginverifier.PluginVerificationResult
 import com.jetbrains.pluginverifier.output.OutputOptions
 import com.jetbrains.pluginverifier.output.html.HtmlResultPrinter
-import com.jetbrains.pluginverifier.output.stream.WriterResultPrinter
 import com.jetbrains.pluginverifier.output.teamcity.TeamCityHistory
 import com.jetbrains.pluginverifier.output.teamcity.TeamCityLog
 import com.jetbrains.pluginverifier.output.teamcity.TeamCityResultPrinter
@@ -35,7 +34,7 @@ class CheckIdeResultPrinter(val outputOptions: OutputOptions, val pluginReposito
         printOnStdOut(this)
       }
 
-      HtmlResultPrinter(ide, outputOptions).printResults(results)
+      HtmlResultPrinter(ide, outputOptions).printReport(htmlReportFragments)
 
       if (outputOptions.dumpBrokenPluginsFile != null) {
         val brokenPlugins = results
@@ -78,8 +77,7 @@ class CheckIdeResultPrinter(val outputOptions: OutputOptions, val pluginReposito
 
   private fun printOnStdOut(checkIdeResult: CheckIdeResult) {
     val printWriter = PrintWriter(System.out)
-    val resultPrinter = WriterResultPrinter(printWriter)
-    resultPrinter.printResults(checkIdeResult.results)
+    checkIdeResult.textReportFragments.printTo(printWriter)
     printWriter.flush()
   }
 }
\ No newline at end of file
@@ -4,13 +4,24 @@
 
 package com.jetbrains.pluginverifier.tasks.checkIde
 
+import com.jetbrains.plugin.structure.base.utils.closeOnException
+import com.jetbrains.pluginverifier.PluginVerificationResult
 import com.jetbrains.pluginverifier.PluginVerifier
+import com.jetbrains.pluginverifier.output.compact
+import com.jetbrains.pluginverifier.output.html.HtmlReportFragments
+import com.jetbrains.pluginverifier.output.stream.TextReportFragments
 import com.jetbrains.pluginverifier.plugin.PluginDetailsCache
 import com.jetbrains.pluginverifier.reporting.PluginVerificationReportage
 import com.jetbrains.pluginverifier.runSeveralVerifiers
 import com.jetbrains.pluginverifier.tasks.Task
 import com.jetbrains.pluginverifier.verifiers.filter.DynamicallyLoadedFilter
 
+/**
+ * The 'check-ide' task that verifies plugins against an IDE.
+ *
+ * Results are folded into [CheckIdeResult] as soon as each verification completes,
+ * so that complete results of all the verifications are not held in memory at once.
+ */
 class CheckIdeTask(private val parameters: CheckIdeParams) : Task {
 
   override fun execute(
@@ -27,13 +38,27 @@ class CheckIdeTask(private val parameters: CheckIdeParams) : Task {
         )
       }
 
-      val results = runSeveralVerifiers(reportage, verifiers)
+      return HtmlReportFragments(verificationTarget).closeOnException { htmlReportFragments ->
+        TextReportFragments().closeOnException { textReportFragments ->
+          val results = arrayListOf<PluginVerificationResult>()
+          runSeveralVerifiers(reportage, verifiers) { result ->
+            htmlReportFragments.addResult(result)
+            textReportFragments.addResult(result)
+            val compactResult = result.compact()
+            synchronized(results) {
+              results += compactResult
+            }
+          }
 
-      return CheckIdeResult(
-        verificationTarget,
-        results,
-        missingCompatibleVersionsProblems
-      )
+          CheckIdeResult(
+            verificationTarget,
+            results,
+            htmlReportFragments,
+            textReportFragments,
+            missingCompatibleVersionsProblems
+          )
+        }
+      }
     }
   }
 
@@ -10,12 +10,15 @@ import com.jetbrains.pluginverifier.filtering.ProblemsFilter
 import com.jetbrains.pluginverifier.ide.IdeDescriptor
 import com.jetbrains.pluginverifier.tasks.InvalidPluginFile
 import com.jetbrains.pluginverifier.tasks.TaskParameters
+import java.nio.file.Path
 
 class CheckPluginParams(
   private val ideDescriptors: List<IdeDescriptor>,
   val problemsFilters: List<ProblemsFilter>,
   val verificationDescriptors: List<PluginVerificationDescriptor>,
-  val invalidPluginFiles: List<InvalidPluginFile>
+  val invalidPluginFiles: List<InvalidPluginFile>,
+  val incrementalVerification: Boolean = false,
+  val incrementalVerificationDir: Path? = null
 ) : TaskParameters {
 
   override val presentableText
@@ -33,9 +33,10 @@ class CheckPluginParamsBuilder(
         "java -jar verifier.jar check-plugin #14986 ~/EAPs/idea-IU-117.963"
     }
 
-    val ideDescriptors = freeArgs.drop(1).map { Paths.get(it) }.map {
+    val idePaths = freeArgs.drop(1).map { Paths.get(it) }
+    val ideDescriptors = idePaths.map {
       reportage.logVerificationStage("Reading IDE $it")
-      OptionsParser.createIdeDescriptor(it, opts)
+      OptionsParser.createIdeDescriptor(it, opts, idePaths.size)
     }
 
     val ideVersions = ideDescriptors.map { it.ideVersion }
@@ -63,7 +64,8 @@ class CheckPluginParamsBuilder(
       val classResolverProvider = DefaultClassResolverProvider(
         dependencyFinder,
         ideDescriptor,
-        externalClassesPackageFilter
+        externalClassesPackageFilter,
+        pluginDetailsCache.metrics
       )
 
       pluginsSet.pluginsToCheck.map {
@@ -85,7 +87,9 @@ class CheckPluginParamsBuilder(
       ideDescriptors,
       problemsFilters,
       verificationDescriptors,
-      pluginsSet.invalidPluginFiles
+      pluginsSet.invalidPluginFiles,
+      opts.incrementalVerification || opts.incrementalVerificationDir != null,
+      opts.incrementalVerificationDir?.let { Paths.get(it) }
     )
   }
 
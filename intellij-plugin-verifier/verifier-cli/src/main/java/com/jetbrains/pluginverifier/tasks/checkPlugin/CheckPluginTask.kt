@@ -5,7 +5,9 @@
 package com.jetbrains.pluginverifier.tasks.checkPlugin
 
 import com.jetbrains.pluginverifier.PluginVerifier
+import com.jetbrains.pluginverifier.PluginVerifierMain
 import com.jetbrains.pluginverifier.dependencies.resolution.DependencyFinder
+import com.jetbrains.pluginverifier.incremental.IncrementalVerificationCache
 import com.jetbrains.pluginverifier.plugin.PluginDetailsCache
 import com.jetbrains.pluginverifier.reporting.PluginVerificationReportage
 import com.jetbrains.pluginverifier.repository.PluginRepository
@@ -19,6 +21,9 @@ import com.jetbrains.pluginverifier.verifiers.filter.DynamicallyLoadedFilter
  * If one verified plugins depends on
  * another verified plugin then the [dependency resolution] [DependencyFinder]
  * prefers the verified plugin to a plugin from the [PluginRepository].
+ *
+ * In the [incremental] [CheckPluginParams.incrementalVerification] mode verifications of a plugin
+ * against several IDEs verify again only the classes affected by the differences of the IDEs.
  */
 class CheckPluginTask(private val parameters: CheckPluginParams) : Task {
 
@@ -27,12 +32,20 @@ class CheckPluginTask(private val parameters: CheckPluginParams) : Task {
     pluginDetailsCache: PluginDetailsCache
   ): CheckPluginResult {
     with(parameters) {
+      val classFilters = listOf(DynamicallyLoadedFilter())
+      val incrementalVerificationCache = if (incrementalVerification) {
+        val configurationKey = IncrementalVerificationCache.getConfigurationKey(PluginVerifierMain.pluginVerifierVersion, problemsFilters, classFilters)
+        IncrementalVerificationCache(incrementalVerificationDir, configurationKey = configurationKey)
+      } else {
+        null
+      }
       val verifiers = verificationDescriptors.map {
         PluginVerifier(
           it,
           problemsFilters,
           pluginDetailsCache,
-          listOf(DynamicallyLoadedFilter())
+          classFilters,
+          incrementalVerificationCache = incrementalVerificationCache
         )
       }
 
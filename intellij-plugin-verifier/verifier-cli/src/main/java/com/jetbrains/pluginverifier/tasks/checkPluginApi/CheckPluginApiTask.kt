@@ -4,6 +4,7 @@
 
 package com.jetbrains.pluginverifier.tasks.checkPluginApi
 
+import com.jetbrains.plugin.structure.base.utils.closeOnException
 import com.jetbrains.pluginverifier.PluginVerifier
 import com.jetbrains.pluginverifier.plugin.PluginDetailsCache
 import com.jetbrains.pluginverifier.reporting.PluginVerificationReportage
@@ -38,13 +39,10 @@ class CheckPluginApiTask(private val parameters: CheckPluginApiParams) : Task {
         )
       }
 
-      val results = runSeveralVerifiers(reportage, verifiers)
-      return TwoTargetsVerificationResults(
-        baseVerificationTarget,
-        results.filter { it.verificationTarget == baseVerificationTarget },
-        newVerificationTarget,
-        results.filter { it.verificationTarget == newVerificationTarget }
-      )
+      return TwoTargetsVerificationResults(baseVerificationTarget, newVerificationTarget).closeOnException { results ->
+        runSeveralVerifiers(reportage, verifiers) { results.addResult(it) }
+        results
+      }
     }
   }
 
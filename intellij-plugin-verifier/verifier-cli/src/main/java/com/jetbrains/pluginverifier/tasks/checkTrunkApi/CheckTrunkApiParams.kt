@@ -12,6 +12,7 @@ import com.jetbrains.pluginverifier.filtering.ProblemsFilter
 import com.jetbrains.pluginverifier.ide.IdeDescriptor
 import com.jetbrains.pluginverifier.repository.files.FileLock
 import com.jetbrains.pluginverifier.tasks.TaskParameters
+import java.nio.file.Path
 
 
 class CheckTrunkApiParams(
@@ -23,7 +24,9 @@ class CheckTrunkApiParams(
   val releaseVerificationDescriptors: List<PluginVerificationDescriptor.IDE>,
   val trunkVerificationDescriptors: List<PluginVerificationDescriptor.IDE>,
   val releaseVerificationTarget: PluginVerificationTarget.IDE,
-  val trunkVerificationTarget: PluginVerificationTarget.IDE
+  val trunkVerificationTarget: PluginVerificationTarget.IDE,
+  val incrementalVerification: Boolean = false,
+  val incrementalVerificationDir: Path? = null
 ) : TaskParameters {
   override val presentableText: String
     get() = buildString {
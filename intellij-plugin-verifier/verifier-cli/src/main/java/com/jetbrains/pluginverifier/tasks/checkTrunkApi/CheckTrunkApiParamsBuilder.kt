@@ -48,7 +48,7 @@ class CheckTrunkApiParamsBuilder(
     require(args.isNotEmpty()) { "The IDE to be checked is not specified" }
 
     reportage.logVerificationStage("Reading classes of the trunk IDE ${args[0]}")
-    val trunkIdeDescriptor = OptionsParser.createIdeDescriptor(Paths.get(args[0]), opts)
+    val trunkIdeDescriptor = OptionsParser.createIdeDescriptor(Paths.get(args[0]), opts, 2)
     return trunkIdeDescriptor.closeOnException {
       buildParameters(opts, apiOpts, trunkIdeDescriptor)
     }
@@ -81,7 +81,7 @@ class CheckTrunkApiParamsBuilder(
     }
 
     reportage.logVerificationStage("Reading classes of the release IDE ${releaseIdeFileLock.file}")
-    val releaseIdeDescriptor = OptionsParser.createIdeDescriptor(releaseIdeFileLock.file, opts)
+    val releaseIdeDescriptor = OptionsParser.createIdeDescriptor(releaseIdeFileLock.file, opts, 2)
     return releaseIdeDescriptor.closeOnException {
       releaseIdeFileLock.closeOnException {
         buildParameters(opts, apiOpts, releaseIdeDescriptor, trunkIdeDescriptor, deleteReleaseIdeOnExit, releaseIdeFileLock)
@@ -173,7 +173,8 @@ class CheckTrunkApiParamsBuilder(
     val releaseResolverProvider = DefaultClassResolverProvider(
       releaseFinder,
       releaseIdeDescriptor,
-      externalClassesPackageFilter
+      externalClassesPackageFilter,
+      pluginDetailsCache.metrics
     )
     val releaseVerificationDescriptors = releasePluginsSet.pluginsToCheck.map {
       PluginVerificationDescriptor.IDE(releaseIdeDescriptor, releaseResolverProvider, it)
@@ -183,7 +184,8 @@ class CheckTrunkApiParamsBuilder(
     val trunkResolverProvider = DefaultClassResolverProvider(
       trunkFinder,
       trunkIdeDescriptor,
-      externalClassesPackageFilter
+      externalClassesPackageFilter,
+      pluginDetailsCache.metrics
     )
     val trunkVerificationDescriptors = trunkPluginsSet.pluginsToCheck.map {
       PluginVerificationDescriptor.IDE(trunkIdeDescriptor, trunkResolverProvider, it)
@@ -208,7 +210,9 @@ class CheckTrunkApiParamsBuilder(
       releaseVerificationDescriptors,
       trunkVerificationDescriptors,
       releaseVerificationTarget,
-      trunkVerificationTarget
+      trunkVerificationTarget,
+      opts.incrementalVerification || opts.incrementalVerificationDir != null,
+      opts.incrementalVerificationDir?.let { Paths.get(it) }
     )
   }
 
@@ -4,16 +4,27 @@
 
 package com.jetbrains.pluginverifier.tasks.checkTrunkApi
 
+import com.jetbrains.plugin.structure.base.utils.closeOnException
 import com.jetbrains.pluginverifier.PluginVerifier
+import com.jetbrains.pluginverifier.PluginVerifierMain
+import com.jetbrains.pluginverifier.incremental.IncrementalVerificationCache
 import com.jetbrains.pluginverifier.plugin.PluginDetailsCache
 import com.jetbrains.pluginverifier.reporting.PluginVerificationReportage
 import com.jetbrains.pluginverifier.runSeveralVerifiers
 import com.jetbrains.pluginverifier.tasks.Task
 import com.jetbrains.pluginverifier.tasks.twoTargets.TwoTargetsVerificationResults
+import com.jetbrains.pluginverifier.verifiers.filter.ClassFilter
 import com.jetbrains.pluginverifier.verifiers.filter.DynamicallyLoadedFilter
 
 /**
  * The 'check-trunk-api' task that runs the verification of a trunk and a release IDEs and reports the new API breakages.
+ *
+ * Plugins verified against both IDEs are loaded once and their classes are traversed once,
+ * being resolved against the release and the trunk IDEs simultaneously.
+ *
+ * In the [incremental] [CheckTrunkApiParams.incrementalVerification] mode the release and trunk verifications are run separately,
+ * so that verifications against the trunk IDE verify again only the plugin classes
+ * affected by the differences of the release and the trunk IDEs.
  */
 class CheckTrunkApiTask(private val parameters: CheckTrunkApiParams) : Task {
 
@@ -23,40 +34,65 @@ class CheckTrunkApiTask(private val parameters: CheckTrunkApiParams) : Task {
   ): TwoTargetsVerificationResults {
     with(parameters) {
       val classFilters = listOf(DynamicallyLoadedFilter())
-
-      val verifiers = arrayListOf<PluginVerifier>()
-      verifiers += releaseVerificationDescriptors.map {
-        PluginVerifier(
-          it,
-          problemsFilters,
-          pluginDetailsCache,
-          classFilters
-        )
+      val verifiers = if (incrementalVerification) {
+        createSeparateVerifiers(pluginDetailsCache, classFilters)
+      } else {
+        createSharedVerifiers(pluginDetailsCache, classFilters)
       }
-
-      verifiers += trunkVerificationDescriptors.map {
-        PluginVerifier(
-          it,
-          problemsFilters,
-          pluginDetailsCache,
-          classFilters
-        )
+      return TwoTargetsVerificationResults(releaseVerificationTarget, trunkVerificationTarget).closeOnException { results ->
+        runSeveralVerifiers(reportage, verifiers) { results.addResult(it) }
+        results
       }
+    }
+  }
 
-      /*
-       * Sort verification tasks to increase chances that two verifications of the same plugin
-       * would be executed shortly, and therefore caches, such as plugin details cache, would be warmed-up.
-       */
-      val sortedVerifiers = verifiers.sortedBy { it.verificationDescriptor.checkedPlugin.pluginId }
-      val results = runSeveralVerifiers(reportage, sortedVerifiers)
-
-      return TwoTargetsVerificationResults(
-        releaseVerificationTarget,
-        results.filter { it.verificationTarget == releaseVerificationTarget },
-        trunkVerificationTarget,
-        results.filter { it.verificationTarget == trunkVerificationTarget }
+  /**
+   * Creates verifiers that verify plugins checked against both IDEs in one pass.
+   */
+  private fun CheckTrunkApiParams.createSharedVerifiers(
+    pluginDetailsCache: PluginDetailsCache,
+    classFilters: List<ClassFilter>
+  ): List<PluginVerifier> {
+    val trunkDescriptors = trunkVerificationDescriptors.associateBy { it.checkedPlugin }
+    val verifiers = arrayListOf<PluginVerifier>()
+    for (releaseDescriptor in releaseVerificationDescriptors) {
+      val trunkDescriptor = trunkDescriptors[releaseDescriptor.checkedPlugin]
+      verifiers += PluginVerifier(
+        releaseDescriptor,
+        problemsFilters,
+        pluginDetailsCache,
+        classFilters,
+        additionalVerificationDescriptors = listOfNotNull(trunkDescriptor)
       )
     }
+    val releasePlugins = releaseVerificationDescriptors.mapTo(hashSetOf()) { it.checkedPlugin }
+    verifiers += trunkVerificationDescriptors
+      .filterNot { it.checkedPlugin in releasePlugins }
+      .map { PluginVerifier(it, problemsFilters, pluginDetailsCache, classFilters) }
+    return verifiers
+  }
+
+  private fun CheckTrunkApiParams.createSeparateVerifiers(
+    pluginDetailsCache: PluginDetailsCache,
+    classFilters: List<ClassFilter>
+  ): List<PluginVerifier> {
+    val configurationKey = IncrementalVerificationCache.getConfigurationKey(PluginVerifierMain.pluginVerifierVersion, problemsFilters, classFilters)
+    val incrementalVerificationCache = IncrementalVerificationCache(incrementalVerificationDir, configurationKey = configurationKey)
+    val verifiers = (releaseVerificationDescriptors + trunkVerificationDescriptors).map {
+      PluginVerifier(
+        it,
+        problemsFilters,
+        pluginDetailsCache,
+        classFilters,
+        incrementalVerificationCache = incrementalVerificationCache
+      )
+    }
+
+    /*
+     * Sort verification tasks to increase chances that two verifications of the same plugin
+     * would be executed shortly, and therefore caches, such as plugin details cache, would be warmed-up.
+     */
+    return verifiers.sortedBy { it.verificationDescriptor.checkedPlugin.pluginId }
   }
 
-}
\ No newline at end of file
+}
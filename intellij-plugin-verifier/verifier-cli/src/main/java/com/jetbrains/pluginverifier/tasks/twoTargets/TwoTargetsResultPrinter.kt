@@ -40,8 +40,8 @@ class TwoTargetsResultPrinter(private val outputOptions: OutputOptions) : TaskRe
         println("Enable TeamCity results printing option (-team-city or -tc) to see the results in TeamCity builds format.")
       }
 
-      HtmlResultPrinter(baseTarget, outputOptions).printResults(baseResults)
-      HtmlResultPrinter(newTarget, outputOptions).printResults(newResults)
+      HtmlResultPrinter(baseTarget, outputOptions).printReport(baseHtmlReportFragments)
+      HtmlResultPrinter(newTarget, outputOptions).printReport(newHtmlReportFragments)
     }
   }
 
@@ -89,19 +89,7 @@ class TwoTargetsResultPrinter(private val outputOptions: OutputOptions) : TaskRe
       }
     }
 
-    val oldApiUsages = hashMapOf<SymbolicReference, MutableList<ApiUsage>>()
-    for (baseResult in twoTargetsVerificationResults.baseResults) {
-      if (baseResult is PluginVerificationResult.Verified) {
-        val apiUsages = baseResult.deprecatedUsages.asSequence() +
-          baseResult.experimentalApiUsages.asSequence() +
-          baseResult.internalApiUsages.asSequence() +
-          baseResult.nonExtendableApiUsages +
-          baseResult.overrideOnlyMethodUsages
-        for (apiUsage in apiUsages) {
-          oldApiUsages.getOrPut(apiUsage.apiReference) { arrayListOf() } += apiUsage
-        }
-      }
-    }
+    val oldApiUsages = twoTargetsVerificationResults.baseApiUsages
 
     for ((problemClass, allProblemsOfClass) in allProblems.groupBy { it.javaClass }) {
       val problemTypeSuite = TeamCityResultPrinter.convertProblemClassNameToSentence(problemClass)
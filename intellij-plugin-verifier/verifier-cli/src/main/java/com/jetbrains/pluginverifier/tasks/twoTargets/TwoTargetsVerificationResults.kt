@@ -4,13 +4,92 @@
 
 package com.jetbrains.pluginverifier.tasks.twoTargets
 
+import com.jetbrains.plugin.structure.base.utils.closeLogged
 import com.jetbrains.pluginverifier.PluginVerificationResult
 import com.jetbrains.pluginverifier.PluginVerificationTarget
+import com.jetbrains.pluginverifier.output.compact
+import com.jetbrains.pluginverifier.output.html.HtmlReportFragments
+import com.jetbrains.pluginverifier.results.reference.SymbolicReference
 import com.jetbrains.pluginverifier.tasks.TaskResult
+import com.jetbrains.pluginverifier.usages.ApiUsage
 
-data class TwoTargetsVerificationResults(
+/**
+ * Results of verifications against the [baseTarget] and the [newTarget] being compared,
+ * folded as soon as each verification completes by [addResult].
+ *
+ * The [baseResults] and [newResults] are [compact] [com.jetbrains.pluginverifier.output.compact],
+ * while the complete results are rendered to [baseHtmlReportFragments] and [newHtmlReportFragments].
+ * API usages of the base results are kept in [baseApiUsages], one usage of each kind per used API.
+ */
+class TwoTargetsVerificationResults(
   val baseTarget: PluginVerificationTarget,
-  val baseResults: List<PluginVerificationResult>,
-  val newTarget: PluginVerificationTarget,
+  val newTarget: PluginVerificationTarget
+) : TaskResult() {
+
+  private val _baseResults = arrayListOf<PluginVerificationResult>()
+
+  private val _newResults = arrayListOf<PluginVerificationResult>()
+
+  private val _baseApiUsages = hashMapOf<SymbolicReference, MutableList<ApiUsage>>()
+
+  val baseResults: List<PluginVerificationResult>
+    get() = _baseResults
+
   val newResults: List<PluginVerificationResult>
-) : TaskResult()
\ No newline at end of file
+    get() = _newResults
+
+  val baseApiUsages: Map<SymbolicReference, List<ApiUsage>>
+    get() = _baseApiUsages
+
+  val baseHtmlReportFragments = HtmlReportFragments(baseTarget)
+
+  val newHtmlReportFragments = HtmlReportFragments(newTarget)
+
+  /**
+   * Adds the result of verification against one of the targets.
+   * Results of verifications against other targets are ignored.
+   *
+   * Results may be added from several threads at once. They are rendered and compacted concurrently,
+   * and only the shared results and API usages are updated under a lock.
+   */
+  fun addResult(result: PluginVerificationResult) {
+    when (result.verificationTarget) {
+      baseTarget -> {
+        baseHtmlReportFragments.addResult(result)
+        val compactResult = result.compact()
+        synchronized(this) {
+          addBaseApiUsages(result)
+          _baseResults += compactResult
+        }
+      }
+      newTarget -> {
+        newHtmlReportFragments.addResult(result)
+        val compactResult = result.compact()
+        synchronized(this) {
+          _newResults += compactResult
+        }
+      }
+    }
+  }
+
+  private fun addBaseApiUsages(baseResult: PluginVerificationResult) {
+    if (baseResult is PluginVerificationResult.Verified) {
+      val apiUsages = baseResult.deprecatedUsages.asSequence() +
+        baseResult.experimentalApiUsages.asSequence() +
+        baseResult.internalApiUsages.asSequence() +
+        baseResult.nonExtendableApiUsages +
+        baseResult.overrideOnlyMethodUsages
+      for (apiUsage in apiUsages) {
+        val usagesOfApi = _baseApiUsages.getOrPut(apiUsage.apiReference) { arrayListOf() }
+        if (usagesOfApi.none { it.javaClass == apiUsage.javaClass }) {
+          usagesOfApi += apiUsage
+        }
+      }
+    }
+  }
+
+  override fun close() {
+    baseHtmlReportFragments.closeLogged()
+    newHtmlReportFragments.closeLogged()
+  }
+}
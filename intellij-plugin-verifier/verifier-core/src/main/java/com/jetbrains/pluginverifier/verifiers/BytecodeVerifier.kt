@@ -13,13 +13,20 @@ import com.jetbrains.pluginverifier.verifiers.instruction.*
 import com.jetbrains.pluginverifier.verifiers.method.*
 import com.jetbrains.pluginverifier.verifiers.resolution.ClassFile
 import com.jetbrains.pluginverifier.verifiers.resolution.resolveClassOrNull
+import java.util.concurrent.Callable
+import java.util.concurrent.CancellationException
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.Future
+import java.util.concurrent.atomic.AtomicBoolean
 
 class BytecodeVerifier(
   private val verificationFilters: List<ClassFilter> = emptyList(),
   additionalClassVerifiers: List<ClassVerifier> = emptyList(),
   additionalMethodVerifiers: List<MethodVerifier> = emptyList(),
   additionalFieldVerifiers: List<FieldVerifier> = emptyList(),
-  additionalInstructionVerifiers: List<InstructionVerifier> = emptyList()
+  additionalInstructionVerifiers: List<InstructionVerifier> = emptyList(),
+  private val classVerificationListener: ClassVerificationListener? = null
 ) {
 
   private val fieldVerifiers = listOf<FieldVerifier>(FieldTypeVerifier()) + additionalFieldVerifiers
@@ -53,46 +60,182 @@ class BytecodeVerifier(
     context: VerificationContext,
     progressIndicator: (Double) -> Unit
   ) {
+    verify(classesToCheck, listOf(context), progressIndicator)
+  }
+
+  /**
+   * Verifies [classesToCheck] against several [contexts] in a single pass:
+   * every class is resolved once, by the resolver of the first context,
+   * and its methods and instructions are walked once, applying the verifiers in all the [contexts].
+   *
+   * All the [contexts] must resolve the checked classes to the same class files,
+   * which holds when they verify the same plugin against different targets.
+   */
+  @Throws(InterruptedException::class)
+  fun verify(
+    classesToCheck: Set<String>,
+    contexts: List<VerificationContext>,
+    progressIndicator: (Double) -> Unit
+  ) {
+    require(contexts.isNotEmpty()) { "No verification contexts" }
     if (classesToCheck.isNotEmpty()) {
       for ((totalVerifiedClasses, className) in classesToCheck.withIndex()) {
         checkIfInterrupted()
-        verifyClass(className, context)
+        verifyClass(className, contexts)
         progressIndicator((totalVerifiedClasses + 1).toDouble() / classesToCheck.size)
       }
     }
   }
 
-  private fun verifyClass(className: String, context: VerificationContext) {
-    val classFile = context.classResolver.resolveClassOrNull(className)
+  /**
+   * Verifies [classesToCheck] on [forkJoinPool], splitting the classes into work units.
+   *
+   * The [context] must be safe to use from several threads.
+   * The [progressIndicator] is invoked on the calling thread as work units complete.
+   */
+  @Throws(InterruptedException::class)
+  fun verify(
+    classesToCheck: Set<String>,
+    context: VerificationContext,
+    forkJoinPool: ForkJoinPool,
+    progressIndicator: (Double) -> Unit
+  ) {
+    verify(classesToCheck, listOf(context), forkJoinPool, progressIndicator)
+  }
+
+  /**
+   * Verifies [classesToCheck] against several [contexts] in a single pass on [forkJoinPool].
+   *
+   * The [contexts] must be safe to use from several threads.
+   *
+   * If a work unit fails, the remaining work units are stopped and awaited
+   * before the failure is rethrown, so that none of them uses the [contexts] afterwards.
+   */
+  @Throws(InterruptedException::class)
+  fun verify(
+    classesToCheck: Set<String>,
+    contexts: List<VerificationContext>,
+    forkJoinPool: ForkJoinPool,
+    progressIndicator: (Double) -> Unit
+  ) {
+    require(contexts.isNotEmpty()) { "No verification contexts" }
+    if (classesToCheck.isEmpty()) {
+      return
+    }
+    val cancelled = AtomicBoolean()
+    val workUnits = classesToCheck.sorted().chunked(CLASSES_PER_WORK_UNIT)
+    val futures = workUnits.map { workUnit ->
+      forkJoinPool.submit(Callable {
+        for (className in workUnit) {
+          if (cancelled.get()) {
+            throw InterruptedException()
+          }
+          verifyClass(className, contexts)
+        }
+      })
+    }
+    try {
+      var totalVerifiedClasses = 0
+      for ((index, future) in futures.withIndex()) {
+        future.getOrRethrow()
+        totalVerifiedClasses += workUnits[index].size
+        progressIndicator(totalVerifiedClasses.toDouble() / classesToCheck.size)
+      }
+    } catch (e: Throwable) {
+      cancelled.set(true)
+      awaitCompletion(futures)
+      throw e
+    }
+  }
+
+  /**
+   * Waits until all the [futures] complete, ignoring their failures.
+   * Interruption of the waiting thread is postponed until all the [futures] complete.
+   */
+  private fun awaitCompletion(futures: List<Future<*>>) {
+    var interrupted = false
+    for (future in futures) {
+      while (true) {
+        try {
+          future.get()
+          break
+        } catch (ie: InterruptedException) {
+          interrupted = true
+        } catch (e: ExecutionException) {
+          break
+        } catch (e: CancellationException) {
+          break
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt()
+    }
+  }
+
+  private fun Future<Unit>.getOrRethrow() {
+    try {
+      get()
+    } catch (e: ExecutionException) {
+      throw e.cause ?: e
+    }
+  }
+
+  private fun verifyClass(className: String, contexts: List<VerificationContext>) {
+    if (classVerificationListener == null) {
+      doVerifyClass(className, contexts)
+      return
+    }
+    classVerificationListener.classVerificationStarted(className)
+    try {
+      doVerifyClass(className, contexts)
+    } finally {
+      classVerificationListener.classVerificationFinished(className)
+    }
+  }
+
+  private fun doVerifyClass(className: String, contexts: List<VerificationContext>) {
+    val classFile = contexts.first().classResolver.resolveClassOrNull(className)
     if (classFile != null && shouldVerify(classFile)) {
-      verifyClassFile(classFile, context)
+      verifyClassFile(classFile, contexts)
     }
   }
 
   private fun shouldVerify(classFile: ClassFile) = verificationFilters.all { it.shouldVerify(classFile) }
 
-  private fun verifyClassFile(classFile: ClassFile, context: VerificationContext) {
-    for (verifier in classVerifiers) {
-      verifier.verify(classFile, context)
+  private fun verifyClassFile(classFile: ClassFile, contexts: List<VerificationContext>) {
+    for (context in contexts) {
+      for (verifier in classVerifiers) {
+        verifier.verify(classFile, context)
+      }
     }
 
     for (method in classFile.methods) {
-      for (verifier in methodVerifiers) {
-        verifier.verify(method, context)
+      for (context in contexts) {
+        for (verifier in methodVerifiers) {
+          verifier.verify(method, context)
+        }
       }
 
       method.instructions.forEach { instruction ->
-        for (verifier in instructionVerifiers) {
-          verifier.verify(method, instruction, context)
+        for (context in contexts) {
+          for (verifier in instructionVerifiers) {
+            verifier.verify(method, instruction, context)
+          }
         }
       }
     }
 
     for (field in classFile.fields) {
-      for (verifier in fieldVerifiers) {
-        verifier.verify(field, context)
+      for (context in contexts) {
+        for (verifier in fieldVerifiers) {
+          verifier.verify(field, context)
+        }
       }
     }
   }
 
-}
\ No newline at end of file
+  private companion object {
+    private const val CLASSES_PER_WORK_UNIT = 64
+  }
+}
@@ -0,0 +1,21 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.pluginverifier.verifiers
+
+/**
+ * Listener notified by [BytecodeVerifier] around verification of each class.
+ *
+ * Both methods are invoked on the thread that verifies the class,
+ * so everything resolved and registered between them belongs to that class.
+ */
+interface ClassVerificationListener {
+
+  fun classVerificationStarted(className: String)
+
+  /**
+   * Invoked after the verification of the class, even if it has failed.
+   */
+  fun classVerificationFinished(className: String)
+}
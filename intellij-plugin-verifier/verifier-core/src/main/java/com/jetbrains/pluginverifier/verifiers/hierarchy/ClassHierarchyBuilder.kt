@@ -9,40 +9,32 @@ import com.jetbrains.pluginverifier.verifiers.VerificationContext
 import com.jetbrains.pluginverifier.verifiers.resolution.ClassFile
 import com.jetbrains.pluginverifier.verifiers.resolution.resolveClassChecked
 
+/**
+ * Builds hierarchies of classes from the parents memoized by [ClassHierarchyOracle].
+ *
+ * Every link of the hierarchy is resolved with [resolveClassChecked], so that access to all the ancestors
+ * and usages of deprecated or internal API in the hierarchy are reported.
+ */
 class ClassHierarchyBuilder(private val context: VerificationContext) {
 
+  private val oracle = ClassHierarchyOracle.getOracle(context.classResolver)
+
   fun buildClassHierarchy(classFile: ClassFile): ClassHierarchy {
-    val className2Hierarchy = hashMapOf<String, ClassHierarchy>()
+    checkHierarchyLinks(classFile)
+    val resolver = context.classResolver
+    return ClassHierarchy(
+      classFile.name,
+      classFile.isInterface,
+      classFile.superName?.let { oracle.getClassHierarchy(resolver, it) },
+      classFile.interfaces.mapNotNull { oracle.getClassHierarchy(resolver, it) }
+    )
+  }
 
+  private fun checkHierarchyLinks(classFile: ClassFile) {
     val parentsVisitor = ClassParentsVisitor(true) { subclassFile, superName ->
       context.classResolver.resolveClassChecked(superName, subclassFile, context)
     }
-    parentsVisitor.visitClass(
-      classFile,
-      true,
-      onEnter = { parent ->
-        className2Hierarchy[parent.name] = ClassHierarchy(
-          parent.name,
-          parent.isInterface,
-          null,
-          emptyList()
-        )
-        true
-      },
-      onExit = { parent ->
-        val classHierarchy = className2Hierarchy[parent.name]!!
-
-        val superName = parent.superName
-        if (superName != null) {
-          classHierarchy.superClass = className2Hierarchy[superName]
-        }
-
-        classHierarchy.superInterfaces = parent.interfaces.mapNotNull { className2Hierarchy[it] }
-      }
-    )
-
-    return className2Hierarchy[classFile.name]!!
+    parentsVisitor.visitClass(classFile, false, onEnter = { true })
   }
 
-
-}
\ No newline at end of file
+}
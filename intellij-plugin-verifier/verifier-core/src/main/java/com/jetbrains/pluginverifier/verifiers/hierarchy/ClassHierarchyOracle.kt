@@ -0,0 +1,189 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.pluginverifier.verifiers.hierarchy
+
+import com.google.common.cache.CacheBuilder
+import com.google.common.cache.CacheLoader
+import com.google.common.cache.LoadingCache
+import com.jetbrains.plugin.structure.classes.resolvers.ResolutionResult
+import com.jetbrains.plugin.structure.classes.resolvers.Resolver
+import com.jetbrains.pluginverifier.results.hierarchy.ClassHierarchy
+import org.objectweb.asm.Opcodes
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Memoizes direct parents and ancestors of classes resolved by one [Resolver],
+ * so that repeated subtype checks and [ClassHierarchy] constructions don't re-resolve the same classes.
+ * Memoized values are immutable, so the oracle may be shared by concurrent verifications.
+ *
+ * Only classes that are resolved by the resolver participate in the hierarchy.
+ * The oracle doesn't reference the resolver: it is passed to every query
+ * and must be the same resolver the oracle is obtained for by [getOracle].
+ *
+ * If the resolver is a [LookupListener], it is notified of all the classes of the hierarchy
+ * that a query depends on, even if they are memoized and not resolved again.
+ */
+class ClassHierarchyOracle private constructor() {
+
+  companion object {
+    /**
+     * Oracles are looked up on every subtype check, so they are kept in a concurrent cache
+     * whose resolver keys are weakly referenced and compared by identity.
+     */
+    private val oracles: LoadingCache<Resolver, ClassHierarchyOracle> = CacheBuilder.newBuilder()
+      .weakKeys()
+      .build(CacheLoader.from { _: Resolver? -> ClassHierarchyOracle() })
+
+    private val UNRESOLVED = HierarchyNode(false, null, emptyList())
+
+    /**
+     * Returns the oracle of [resolver], which lives as long as the resolver is reachable.
+     */
+    fun getOracle(resolver: Resolver): ClassHierarchyOracle = oracles.getUnchecked(resolver)
+  }
+
+  /**
+   * Resolver that records the classes looked up through it, for example,
+   * to find out which classes the verification of a class depends on.
+   */
+  interface LookupListener {
+    fun classLookedUp(className: String)
+  }
+
+  private val nodes = ConcurrentHashMap<String, HierarchyNode>()
+
+  private val ancestors = ConcurrentHashMap<String, Set<String>>()
+
+  /**
+   * Returns `true` if [parentName] is one of the resolvable [directParents] or their ancestors.
+   */
+  fun isSubclassOf(resolver: Resolver, directParents: List<String>, parentName: String): Boolean {
+    notifyLookups(resolver, directParents)
+    for (parent in directParents) {
+      if (getNode(resolver, parent) != null) {
+        if (parent == parentName) {
+          return true
+        }
+        val parentAncestors = getAncestors(resolver, parent)
+          ?: return parentName in collectAncestors(resolver, directParents)
+        if (parentName in parentAncestors) {
+          return true
+        }
+      }
+    }
+    return false
+  }
+
+  /**
+   * Returns the hierarchy of resolvable parents of class [className],
+   * or `null` if the class is not resolved.
+   *
+   * Only parents of classes are memoized. The returned hierarchy is created anew on every call,
+   * so it is not shared with concurrent verifications.
+   */
+  fun getClassHierarchy(resolver: Resolver, className: String): ClassHierarchy? {
+    notifyLookups(resolver, listOf(className))
+    return createHierarchy(resolver, className, hashMapOf())
+  }
+
+  private fun createHierarchy(resolver: Resolver, className: String, created: MutableMap<String, ClassHierarchy>): ClassHierarchy? {
+    created[className]?.let { return it }
+    val node = getNode(resolver, className) ?: return null
+    val classHierarchy = ClassHierarchy(className, node.isInterface, null, emptyList())
+    created[className] = classHierarchy
+    classHierarchy.superClass = node.superName?.let { createHierarchy(resolver, it, created) }
+    classHierarchy.superInterfaces = node.interfaces.mapNotNull { createHierarchy(resolver, it, created) }
+    return classHierarchy
+  }
+
+  /**
+   * Returns names of all resolvable ancestors of class [className].
+   * Returns `null` if the class is not resolved or its hierarchy is cyclic.
+   */
+  private fun getAncestors(resolver: Resolver, className: String): Set<String>? {
+    ancestors[className]?.let { return it }
+    return computeAncestors(resolver, className, hashSetOf())
+  }
+
+  private fun computeAncestors(resolver: Resolver, className: String, inProgress: MutableSet<String>): Set<String>? {
+    ancestors[className]?.let { return it }
+    if (!inProgress.add(className)) {
+      return null
+    }
+    val node = getNode(resolver, className) ?: return null
+    val result = hashSetOf<String>()
+    for (parent in node.parents) {
+      if (getNode(resolver, parent) != null) {
+        result += parent
+        result += computeAncestors(resolver, parent, inProgress) ?: return null
+      }
+    }
+    inProgress.remove(className)
+    ancestors[className] = result
+    return result
+  }
+
+  /**
+   * Collects ancestors by traversal, which terminates on cyclic hierarchies.
+   */
+  private fun collectAncestors(resolver: Resolver, directParents: List<String>): Set<String> {
+    val visited = hashSetOf<String>()
+    val queue = ArrayDeque<String>()
+    for (parent in directParents) {
+      if (getNode(resolver, parent) != null && visited.add(parent)) {
+        queue.add(parent)
+      }
+    }
+    while (queue.isNotEmpty()) {
+      val node = getNode(resolver, queue.poll())!!
+      for (parent in node.parents) {
+        if (getNode(resolver, parent) != null && visited.add(parent)) {
+          queue.add(parent)
+        }
+      }
+    }
+    return visited
+  }
+
+  /**
+   * Notifies the [LookupListener] resolver of [classNames] and all their ancestors, including unresolved ones,
+   * because queries about these classes depend on them.
+   */
+  private fun notifyLookups(resolver: Resolver, classNames: List<String>) {
+    if (resolver !is LookupListener) {
+      return
+    }
+    val visited = hashSetOf<String>()
+    val queue = ArrayDeque<String>()
+    classNames.filterTo(queue) { visited.add(it) }
+    while (queue.isNotEmpty()) {
+      val className = queue.poll()
+      resolver.classLookedUp(className)
+      getNode(resolver, className)?.parents?.filterTo(queue) { visited.add(it) }
+    }
+  }
+
+  private fun getNode(resolver: Resolver, className: String): HierarchyNode? {
+    val node = nodes.getOrPut(className) {
+      val resolutionResult = resolver.resolveClass(className)
+      if (resolutionResult is ResolutionResult.Found) {
+        val classNode = resolutionResult.value
+        HierarchyNode(classNode.access and Opcodes.ACC_INTERFACE != 0, classNode.superName, classNode.interfaces.orEmpty())
+      } else {
+        UNRESOLVED
+      }
+    }
+    return if (node === UNRESOLVED) null else node
+  }
+
+  private class HierarchyNode(
+    val isInterface: Boolean,
+    val superName: String?,
+    val interfaces: List<String>
+  ) {
+    val parents: List<String> = listOfNotNull(superName) + interfaces
+  }
+}
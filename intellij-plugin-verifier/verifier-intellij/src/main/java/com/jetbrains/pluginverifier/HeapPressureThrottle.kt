@@ -0,0 +1,102 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.pluginverifier
+
+import java.lang.management.GarbageCollectorMXBean
+import java.lang.management.ManagementFactory
+import java.lang.management.MemoryPoolMXBean
+import java.lang.management.MemoryType
+
+/**
+ * Limits the number of concurrently running actions depending on heap usage.
+ *
+ * A new action is started only if the heap occupied after the latest garbage collection
+ * is below [maxHeapUsageFraction] of the maximum heap size. Otherwise, it waits until
+ * some of the running actions complete and memory is freed. At least one action is always let through,
+ * so the actions make progress even if the heap is small.
+ *
+ * Memory pools that have not been collected yet are measured by their current usage including garbage,
+ * which lets through fewer actions rather than more. For example, with the Parallel GC the old generation
+ * is collected only by full collections, and until the first one its usage after collection is reported as zero.
+ * Running actions are never suspended:
+ * under pressure the number of concurrent actions decreases as they complete, and it grows back
+ * when collections free memory.
+ *
+ * The [isUnderPressure] function may be specified to decide on pressure differently.
+ */
+class HeapPressureThrottle(private val isUnderPressure: () -> Boolean) {
+
+  constructor(maxHeapUsageFraction: Double = DEFAULT_MAX_HEAP_USAGE_FRACTION) : this(HeapUsageAfterGc(maxHeapUsageFraction)::isAboveLimit)
+
+  private companion object {
+    private const val DEFAULT_MAX_HEAP_USAGE_FRACTION = 0.75
+
+    private const val WAIT_INTERVAL_MS = 100L
+  }
+
+  private val lock = Object()
+
+  private var runningActions = 0
+
+  @Throws(InterruptedException::class)
+  fun <T> runThrottled(action: () -> T): T {
+    synchronized(lock) {
+      while (runningActions > 0 && isUnderPressure()) {
+        lock.wait(WAIT_INTERVAL_MS)
+      }
+      runningActions++
+    }
+    try {
+      return action()
+    } finally {
+      synchronized(lock) {
+        runningActions--
+        lock.notifyAll()
+      }
+    }
+  }
+
+  private class HeapUsageAfterGc(private val maxHeapUsageFraction: Double) {
+
+    private val heapPools: List<MemoryPoolMXBean> = ManagementFactory.getMemoryPoolMXBeans()
+      .filter { it.type == MemoryType.HEAP && it.isCollectionUsageThresholdSupported }
+
+    private val garbageCollectors: List<GarbageCollectorMXBean> = ManagementFactory.getGarbageCollectorMXBeans()
+
+    fun isAboveLimit(): Boolean {
+      val maxMemory = Runtime.getRuntime().maxMemory()
+      if (maxMemory == Long.MAX_VALUE) {
+        return false
+      }
+      return getUsedHeap() > maxMemory * maxHeapUsageFraction
+    }
+
+    private fun getUsedHeap(): Long {
+      if (heapPools.isEmpty()) {
+        return ManagementFactory.getMemoryMXBean().heapMemoryUsage.used
+      }
+      return heapPools.sumByLong { pool ->
+        val collectionUsage = pool.collectionUsage
+        if (collectionUsage != null && isCollected(pool)) collectionUsage.used else pool.usage.used
+      }
+    }
+
+    /**
+     * Whether some of the collectors of [pool] has already run, so its usage after collection is known.
+     */
+    private fun isCollected(pool: MemoryPoolMXBean): Boolean {
+      val poolCollectors = pool.memoryManagerNames
+      return garbageCollectors.any { it.collectionCount > 0 && it.name in poolCollectors }
+    }
+
+    private inline fun <T> List<T>.sumByLong(selector: (T) -> Long): Long {
+      var sum = 0L
+      for (element in this) {
+        sum += selector(element)
+      }
+      return sum
+    }
+  }
+}
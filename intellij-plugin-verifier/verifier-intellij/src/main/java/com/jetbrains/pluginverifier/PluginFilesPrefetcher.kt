@@ -0,0 +1,140 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.pluginverifier
+
+import com.jetbrains.plugin.structure.base.utils.closeLogged
+import com.jetbrains.plugin.structure.base.utils.rethrowIfInterrupted
+import com.jetbrains.plugin.structure.base.utils.shutdownAndAwaitTermination
+import com.jetbrains.pluginverifier.plugin.PluginFileProvider
+import com.jetbrains.pluginverifier.repository.files.FileLock
+import org.slf4j.LoggerFactory
+import java.io.Closeable
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Downloads files of plugins to be verified by [verifiers] ahead of their verifications,
+ * so that verification threads don't wait for the network.
+ *
+ * Files are fetched on [downloadThreads] threads separate from the verification threads,
+ * in the order of [verifiers], and at most [prefetchCount] plugins ahead of the
+ * last [started] [verificationStarted] verification.
+ *
+ * Locks of prefetched files are held until the verification that uses the file
+ * is [finished] [verificationFinished], so that prefetched files
+ * are not evicted from the plugin files cache before they are used.
+ */
+internal class PluginFilesPrefetcher(
+  private val verifiers: List<PluginVerifier>,
+  private val prefetchCount: Int,
+  downloadThreads: Int
+) : Closeable {
+
+  private companion object {
+    private val LOG = LoggerFactory.getLogger(PluginFilesPrefetcher::class.java)
+  }
+
+  private val lock = Object()
+
+  private var startedVerifications = 0
+
+  private val prefetchedFiles = hashMapOf<PluginVerifier, FileLock>()
+
+  private val finishedVerifiers = hashSetOf<PluginVerifier>()
+
+  private var isClosed = false
+
+  private val nextIndex = AtomicInteger()
+
+  private val threadCounter = AtomicInteger()
+
+  private val executor = Executors.newFixedThreadPool(downloadThreads) { r ->
+    Thread(r).apply {
+      isDaemon = true
+      name = "plugin-prefetch_" + threadCounter.incrementAndGet()
+    }
+  }
+
+  init {
+    repeat(downloadThreads) {
+      executor.execute { prefetchAll() }
+    }
+  }
+
+  /**
+   * Notifies that one more verification has started, which allows to prefetch one more plugin.
+   */
+  fun verificationStarted() {
+    synchronized(lock) {
+      startedVerifications++
+      lock.notifyAll()
+    }
+  }
+
+  /**
+   * Notifies that the verification of [verifier] has finished,
+   * which releases the lock of the file prefetched for it.
+   */
+  fun verificationFinished(verifier: PluginVerifier) {
+    val fileLock = synchronized(lock) {
+      finishedVerifiers += verifier
+      prefetchedFiles.remove(verifier)
+    }
+    fileLock?.closeLogged()
+  }
+
+  private fun prefetchAll() {
+    try {
+      while (true) {
+        val index = nextIndex.getAndIncrement()
+        if (index >= verifiers.size) {
+          return
+        }
+        synchronized(lock) {
+          while (index >= startedVerifications + prefetchCount) {
+            lock.wait()
+          }
+        }
+        prefetch(verifiers[index])
+      }
+    } catch (e: InterruptedException) {
+      //Prefetching is cancelled.
+    }
+  }
+
+  private fun prefetch(verifier: PluginVerifier) {
+    val pluginInfo = verifier.verificationDescriptor.checkedPlugin
+    try {
+      val result = verifier.pluginDetailsCache.pluginFileProvider.getPluginFile(pluginInfo)
+      if (result is PluginFileProvider.Result.Found) {
+        val keepLock = synchronized(lock) {
+          if (isClosed || verifier in finishedVerifiers) {
+            false
+          } else {
+            prefetchedFiles[verifier] = result.pluginFileLock
+            true
+          }
+        }
+        if (!keepLock) {
+          result.pluginFileLock.closeLogged()
+        }
+      }
+    } catch (e: Exception) {
+      e.rethrowIfInterrupted()
+      LOG.debug("Failed to prefetch $pluginInfo", e)
+    }
+  }
+
+  override fun close() {
+    executor.shutdownNow()
+    executor.shutdownAndAwaitTermination(1, TimeUnit.MINUTES)
+    val fileLocks = synchronized(lock) {
+      isClosed = true
+      prefetchedFiles.values.toList().also { prefetchedFiles.clear() }
+    }
+    fileLocks.forEach { it.closeLogged() }
+  }
+}
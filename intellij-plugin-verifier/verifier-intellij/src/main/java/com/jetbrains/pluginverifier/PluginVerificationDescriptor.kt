@@ -26,7 +26,7 @@ sealed class PluginVerificationDescriptor {
   abstract val presentableName: String
 
   class IDE(
-    private val ideDescriptor: IdeDescriptor,
+    internal val ideDescriptor: IdeDescriptor,
     override val classResolverProvider: DefaultClassResolverProvider,
     override val checkedPlugin: PluginInfo
   ) : PluginVerificationDescriptor() {
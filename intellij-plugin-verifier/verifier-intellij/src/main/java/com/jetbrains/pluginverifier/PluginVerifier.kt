@@ -5,6 +5,8 @@
 package com.jetbrains.pluginverifier
 
 import com.jetbrains.plugin.structure.base.plugin.PluginProblem
+import com.jetbrains.plugin.structure.base.utils.closeAll
+import com.jetbrains.plugin.structure.classes.resolvers.CacheResolver
 import com.jetbrains.plugin.structure.classes.resolvers.CompositeResolver
 import com.jetbrains.plugin.structure.classes.resolvers.Resolver
 import com.jetbrains.plugin.structure.ide.PluginIdAndVersion
@@ -17,8 +19,14 @@ import com.jetbrains.pluginverifier.dymamic.DynamicPlugins
 import com.jetbrains.pluginverifier.filtering.ExternalBuildClassesSelector
 import com.jetbrains.pluginverifier.filtering.MainClassesSelector
 import com.jetbrains.pluginverifier.filtering.ProblemsFilter
+import com.jetbrains.pluginverifier.incremental.IncrementalVerificationCache
+import com.jetbrains.pluginverifier.incremental.IncrementalVerificationSession
+import com.jetbrains.pluginverifier.metrics.VerificationMetrics
+import com.jetbrains.pluginverifier.metrics.VerificationStage
+import com.jetbrains.pluginverifier.metrics.measureStage
 import com.jetbrains.pluginverifier.plugin.PluginDetails
 import com.jetbrains.pluginverifier.plugin.PluginDetailsCache
+import com.jetbrains.pluginverifier.resolution.ClassResolverProvider
 import com.jetbrains.pluginverifier.results.problems.CompatibilityProblem
 import com.jetbrains.pluginverifier.usages.deprecated.DeprecatedMethodOverridingProcessor
 import com.jetbrains.pluginverifier.usages.experimental.ExperimentalMethodOverridingProcessor
@@ -26,39 +34,83 @@ import com.jetbrains.pluginverifier.usages.internal.InternalMethodOverridingProc
 import com.jetbrains.pluginverifier.usages.nonExtendable.NonExtendableMethodOverridingProcessor
 import com.jetbrains.pluginverifier.usages.nonExtendable.NonExtendableTypeInheritedProcessor
 import com.jetbrains.pluginverifier.verifiers.BytecodeVerifier
+import com.jetbrains.pluginverifier.verifiers.ClassVerificationListener
 import com.jetbrains.pluginverifier.verifiers.PluginVerificationContext
 import com.jetbrains.pluginverifier.verifiers.VerificationContext
+import com.jetbrains.pluginverifier.verifiers.clazz.ClassVerifier
 import com.jetbrains.pluginverifier.verifiers.filter.ClassFilter
 import com.jetbrains.pluginverifier.verifiers.method.MethodOverridingVerifier
+import com.jetbrains.pluginverifier.verifiers.method.MethodVerifier
+import com.jetbrains.pluginverifier.verifiers.resolution.ClassFile
+import com.jetbrains.pluginverifier.verifiers.resolution.Method
 import com.jetbrains.pluginverifier.warnings.*
+import org.slf4j.LoggerFactory
+import java.util.*
+import java.util.concurrent.ForkJoinPool
 
 /**
  * Performs verification specified by [verificationDescriptor] and returns [PluginVerificationResult].
+ *
+ * If [additionalVerificationDescriptors] of the same plugin are specified, the plugin is loaded once
+ * and its classes are traversed once, being resolved against all the targets simultaneously.
+ * Results for all the targets are returned by [loadPluginAndVerifyAllTargets].
+ *
+ * Durations of the verification stages, numbers of resolved classes and statistics
+ * of the shared class caches are recorded to [metrics].
+ *
+ * If [incrementalVerificationCache] is specified, classes of the plugin that were verified before
+ * and whose referenced symbols have not changed since then are not verified again.
+ *
+ * Classes of large plugins are verified in parallel on [classesVerificationPool], if it is specified.
  */
 class PluginVerifier(
   val verificationDescriptor: PluginVerificationDescriptor,
   private val problemFilters: List<ProblemsFilter>,
-  private val pluginDetailsCache: PluginDetailsCache,
-  private val classFilters: List<ClassFilter>
+  internal val pluginDetailsCache: PluginDetailsCache,
+  private val classFilters: List<ClassFilter>,
+  val metrics: VerificationMetrics = pluginDetailsCache.metrics,
+  private val incrementalVerificationCache: IncrementalVerificationCache? = null,
+  val additionalVerificationDescriptors: List<PluginVerificationDescriptor> = emptyList(),
+  private val classesVerificationPool: ForkJoinPool? = defaultClassesVerificationPool
 ) {
 
-  fun loadPluginAndVerify(): PluginVerificationResult {
+  init {
+    require(additionalVerificationDescriptors.all { it.checkedPlugin == verificationDescriptor.checkedPlugin }) {
+      "All verifications must check the same plugin ${verificationDescriptor.checkedPlugin}"
+    }
+  }
+
+  val verificationDescriptors: List<PluginVerificationDescriptor>
+    get() = listOf(verificationDescriptor) + additionalVerificationDescriptors
+
+  /**
+   * Verifies the plugin against the target of [verificationDescriptor].
+   */
+  fun loadPluginAndVerify(): PluginVerificationResult = loadPluginAndVerifyAllTargets().first()
+
+  /**
+   * Verifies the plugin against targets of all the [verificationDescriptors]
+   * and returns the results in the same order.
+   */
+  fun loadPluginAndVerifyAllTargets(): List<PluginVerificationResult> {
     pluginDetailsCache.getPluginDetailsCacheEntry(verificationDescriptor.checkedPlugin).use { cacheEntry ->
       return when (cacheEntry) {
         is PluginDetailsCache.Result.InvalidPlugin -> {
-          PluginVerificationResult.InvalidPlugin(
-            verificationDescriptor.checkedPlugin,
-            verificationDescriptor.toTarget(),
-            cacheEntry.pluginErrors
-              .filter { it.level == PluginProblem.Level.ERROR }
-              .mapTo(hashSetOf()) { PluginStructureError(it) }
-          )
+          verificationDescriptors.map { descriptor ->
+            PluginVerificationResult.InvalidPlugin(
+              descriptor.checkedPlugin,
+              descriptor.toTarget(),
+              cacheEntry.pluginErrors
+                .filter { it.level == PluginProblem.Level.ERROR }
+                .mapTo(hashSetOf()) { PluginStructureError(it) }
+            )
+          }
         }
         is PluginDetailsCache.Result.FileNotFound -> {
-          PluginVerificationResult.NotFound(verificationDescriptor.checkedPlugin, verificationDescriptor.toTarget(), cacheEntry.reason)
+          verificationDescriptors.map { PluginVerificationResult.NotFound(it.checkedPlugin, it.toTarget(), cacheEntry.reason) }
         }
         is PluginDetailsCache.Result.Failed -> {
-          PluginVerificationResult.FailedToDownload(verificationDescriptor.checkedPlugin, verificationDescriptor.toTarget(), cacheEntry.reason)
+          verificationDescriptors.map { PluginVerificationResult.FailedToDownload(it.checkedPlugin, it.toTarget(), cacheEntry.reason) }
         }
         is PluginDetailsCache.Result.Provided -> {
           verify(cacheEntry.pluginDetails)
@@ -67,50 +119,109 @@ class PluginVerifier(
     }
   }
 
+  private fun verify(pluginDetails: PluginDetails): List<PluginVerificationResult> {
+    val resolvers = arrayListOf<ClassResolverProvider.Result>()
+    try {
+      val targetVerifications = verificationDescriptors.map { descriptor ->
+        val targetResolvers = descriptor.classResolverProvider.provide(pluginDetails)
+        resolvers += targetResolvers
+        createTargetVerification(pluginDetails, descriptor, targetResolvers)
+      }
+      val contexts = targetVerifications.map { it.context }
+      val incrementalSessions = targetVerifications.mapNotNull { it.incrementalSession }
 
-  private fun verify(pluginDetails: PluginDetails): PluginVerificationResult {
-    verificationDescriptor.classResolverProvider.provide(pluginDetails).use { (pluginResolver, allResolver, dependenciesGraph) ->
-      val externalClassesPackageFilter = verificationDescriptor.classResolverProvider.provideExternalClassesPackageFilter()
-
-      val context = PluginVerificationContext(
-        pluginDetails.idePlugin,
-        verificationDescriptor,
-        pluginResolver,
-        allResolver,
-        externalClassesPackageFilter,
-        dependenciesGraph
+      val bytecodeVerifier = BytecodeVerifier(
+        classFilters,
+        listOf(ContextClassVerifier(contexts) { NonExtendableTypeInheritedProcessor(it) }),
+        listOf(
+          ContextMethodVerifier(contexts) {
+            MethodOverridingVerifier(
+              listOf(
+                ExperimentalMethodOverridingProcessor(it),
+                DeprecatedMethodOverridingProcessor(it),
+                NonExtendableMethodOverridingProcessor(it),
+                InternalMethodOverridingProcessor(it)
+              )
+            )
+          }
+        ),
+        classVerificationListener = CompositeClassVerificationListener.create(incrementalSessions)
       )
+      metrics.measureStage(VerificationStage.BYTECODE_VERIFICATION) {
+        val allClassesToCheck = selectClassesForCheck(pluginDetails)
+        val classesToCheck = if (incrementalSessions.isNotEmpty()) {
+          selectOutdatedClasses(allClassesToCheck, targetVerifications)
+        } else {
+          allClassesToCheck
+        }
+        val forkJoinPool = classesVerificationPool
+        if (forkJoinPool != null && classesToCheck.size >= MIN_CLASSES_FOR_PARALLEL_VERIFICATION) {
+          bytecodeVerifier.verify(classesToCheck, contexts, forkJoinPool) {}
+        } else {
+          bytecodeVerifier.verify(classesToCheck, contexts) {}
+        }
+      }
+      return targetVerifications.map { it.complete() }
+    } finally {
+      resolvers.closeAll()
+    }
+  }
 
-      pluginDetails.pluginWarnings.forEach { context.registerPluginStructureWarning(PluginStructureWarning(it)) }
-      context.checkIfPluginIsMarkedIncompatibleWithThisIde()
-      context.findMistakenlyBundledIdeClasses(pluginResolver)
-      context.findDependenciesCycles(dependenciesGraph)
+  private fun createTargetVerification(
+    pluginDetails: PluginDetails,
+    descriptor: PluginVerificationDescriptor,
+    resolvers: ClassResolverProvider.Result
+  ): TargetVerification {
+    val (pluginResolver, allResolver, dependenciesGraph) = resolvers
+    val externalClassesPackageFilter = descriptor.classResolverProvider.provideExternalClassesPackageFilter()
 
-      val classesToCheck = selectClassesForCheck(pluginDetails)
+    val incrementalSession = incrementalVerificationCache?.let {
+      IncrementalVerificationSession(it.getRecords(descriptor.checkedPlugin, descriptor.toTarget()), allResolver)
+    }
 
-      BytecodeVerifier(
-        classFilters,
-        listOf(NonExtendableTypeInheritedProcessor(context)),
-        listOf(
-          MethodOverridingVerifier(
-            listOf(
-              ExperimentalMethodOverridingProcessor(context),
-              DeprecatedMethodOverridingProcessor(context),
-              NonExtendableMethodOverridingProcessor(context),
-              InternalMethodOverridingProcessor(context)
-            )
-          )
-        )
-      ).verify(classesToCheck, context) {}
+    val context = PluginVerificationContext(
+      pluginDetails.idePlugin,
+      descriptor,
+      pluginResolver,
+      incrementalSession?.recordingResolver ?: allResolver,
+      externalClassesPackageFilter,
+      dependenciesGraph
+    )
+    context.incrementalVerificationSession = incrementalSession
 
-      context.postProcessResults()
+    pluginDetails.pluginWarnings.forEach { context.registerPluginStructureWarning(PluginStructureWarning(it)) }
+    context.checkIfPluginIsMarkedIncompatibleWithThisIde()
+    context.findMistakenlyBundledIdeClasses(pluginResolver)
+    context.findDependenciesCycles(dependenciesGraph)
+    return TargetVerification(context, allResolver, incrementalSession)
+  }
 
-      val (reportProblems, ignoredProblems) = partitionReportAndIgnoredProblems(context.compatibilityProblems, context)
+  /**
+   * State of the verification against one of the targets.
+   */
+  private inner class TargetVerification(
+    val context: PluginVerificationContext,
+    val allResolver: Resolver,
+    val incrementalSession: IncrementalVerificationSession?
+  ) {
+    private val descriptor: PluginVerificationDescriptor
+      get() = context.verificationDescriptor
+
+    fun complete(): PluginVerificationResult {
+      if (incrementalSession != null) {
+        incrementalVerificationCache?.putRecords(descriptor.checkedPlugin, descriptor.toTarget(), HashMap(incrementalSession.records))
+      }
+      recordClassResolutionMetrics(descriptor, allResolver)
+
+      val (reportProblems, ignoredProblems) = metrics.measureStage(VerificationStage.POST_PROCESSING) {
+        context.postProcessResults()
+        partitionReportAndIgnoredProblems(context.compatibilityProblems, context)
+      }
 
       return with(context) {
         PluginVerificationResult.Verified(
-          verificationDescriptor.checkedPlugin,
-          verificationDescriptor.toTarget(),
+          descriptor.checkedPlugin,
+          descriptor.toTarget(),
           dependenciesGraph,
           reportProblems,
           ignoredProblems,
@@ -127,6 +238,37 @@ class PluginVerifier(
     }
   }
 
+  /**
+   * Returns the classes that must be verified, skipping the classes
+   * whose previous records are up to date against all the targets.
+   */
+  private fun selectOutdatedClasses(
+    classesToCheck: Set<String>,
+    targetVerifications: List<TargetVerification>
+  ): Set<String> {
+    val classesToVerify = classesToCheck.filterTo(hashSetOf()) { className ->
+      !targetVerifications.all { it.incrementalSession?.isUpToDate(className) == true }
+    }
+    LOG.debug("${classesToCheck.size - classesToVerify.size} of ${classesToCheck.size} classes of ${verificationDescriptor.checkedPlugin} are up to date")
+    return classesToVerify
+  }
+
+  private fun recordClassResolutionMetrics(descriptor: PluginVerificationDescriptor, allResolver: Resolver) {
+    if (allResolver is CacheResolver) {
+      val cacheStats = allResolver.cacheStats
+      metrics.recordClassResolution(cacheStats.requestCount(), cacheStats.missCount())
+    }
+    if (descriptor is PluginVerificationDescriptor.IDE) {
+      val ideDescriptor = descriptor.ideDescriptor
+      ideDescriptor.ideClassCacheStats?.let {
+        metrics.recordCacheStatistics("IDE", ideDescriptor.ideResolver, it.hitCount(), it.missCount(), it.evictionCount())
+      }
+      ideDescriptor.jdkDescriptor.classCacheStats?.let {
+        metrics.recordCacheStatistics("JDK", ideDescriptor.jdkDescriptor.jdkResolver, it.hitCount(), it.missCount(), it.evictionCount())
+      }
+    }
+  }
+
   private fun partitionReportAndIgnoredProblems(
     allProblems: Set<CompatibilityProblem>,
     verificationContext: VerificationContext
@@ -152,9 +294,10 @@ class PluginVerifier(
   }
 
   private fun PluginVerificationContext.checkIfPluginIsMarkedIncompatibleWithThisIde() {
-    if (verificationDescriptor is PluginVerificationDescriptor.IDE) {
-      if (PluginIdAndVersion(verificationDescriptor.checkedPlugin.pluginId, verificationDescriptor.checkedPlugin.version) in verificationDescriptor.incompatiblePlugins) {
-        registerProblem(PluginIsMarkedIncompatibleProblem(verificationDescriptor.checkedPlugin, verificationDescriptor.ideVersion))
+    val descriptor = verificationDescriptor
+    if (descriptor is PluginVerificationDescriptor.IDE) {
+      if (PluginIdAndVersion(descriptor.checkedPlugin.pluginId, descriptor.checkedPlugin.version) in descriptor.incompatiblePlugins) {
+        registerProblem(PluginIsMarkedIncompatibleProblem(descriptor.checkedPlugin, descriptor.ideVersion))
       }
     }
   }
@@ -181,8 +324,65 @@ class PluginVerifier(
     return classesForCheck
   }
 
+  private companion object {
+    private val LOG = LoggerFactory.getLogger(PluginVerifier::class.java)
+  }
+
+}
+
+/**
+ * Delegates to the [ClassVerifier] created by [createVerifier] for the verified context,
+ * for verifiers that register their findings directly into one of the [contexts].
+ */
+private class ContextClassVerifier(
+  contexts: List<PluginVerificationContext>,
+  createVerifier: (PluginVerificationContext) -> ClassVerifier
+) : ClassVerifier {
+  private val verifiers = contexts.associateWithTo(IdentityHashMap<VerificationContext, ClassVerifier>()) { createVerifier(it) }
+
+  override fun verify(classFile: ClassFile, context: VerificationContext) {
+    verifiers.getValue(context).verify(classFile, context)
+  }
+}
+
+/**
+ * Delegates to the [MethodVerifier] created by [createVerifier] for the verified context.
+ */
+private class ContextMethodVerifier(
+  contexts: List<PluginVerificationContext>,
+  createVerifier: (PluginVerificationContext) -> MethodVerifier
+) : MethodVerifier {
+  private val verifiers = contexts.associateWithTo(IdentityHashMap<VerificationContext, MethodVerifier>()) { createVerifier(it) }
+
+  override fun verify(method: Method, context: VerificationContext) {
+    verifiers.getValue(context).verify(method, context)
+  }
+}
+
+private class CompositeClassVerificationListener(private val listeners: List<ClassVerificationListener>) : ClassVerificationListener {
+  override fun classVerificationStarted(className: String) {
+    listeners.forEach { it.classVerificationStarted(className) }
+  }
+
+  override fun classVerificationFinished(className: String) {
+    listeners.forEach { it.classVerificationFinished(className) }
+  }
+
+  companion object {
+    fun create(listeners: List<ClassVerificationListener>): ClassVerificationListener? = when (listeners.size) {
+      0 -> null
+      1 -> listeners.single()
+      else -> CompositeClassVerificationListener(listeners)
+    }
+  }
 }
 
+/**
+ * Plugins with fewer classes are verified sequentially
+ * as the overhead of splitting them into work units outweighs the gain.
+ */
+private const val MIN_CLASSES_FOR_PARALLEL_VERIFICATION = 1000
+
 /**
  * Selectors of classes that constitute the plugin
  * class loader and of classes that should be verified.
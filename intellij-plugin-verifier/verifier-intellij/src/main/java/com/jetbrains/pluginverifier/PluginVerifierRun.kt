@@ -5,45 +5,132 @@
 package com.jetbrains.pluginverifier
 
 import com.jetbrains.plugin.structure.base.utils.ExecutorWithProgress
+import com.jetbrains.pluginverifier.metrics.VerificationStage
+import com.jetbrains.pluginverifier.metrics.measureStage
 import com.jetbrains.pluginverifier.reporting.PluginVerificationReportage
 import java.util.concurrent.Callable
+import java.util.concurrent.ForkJoinPool
 
+/**
+ * Runs [verifiers] concurrently in the order chosen by [VerificationScheduler] and returns all the results.
+ * Results of verifiers with several targets are returned in the order of their targets.
+ *
+ * The number of concurrent verifications is fixed if `intellij.plugin.verifier.concurrency.level`
+ * system property is specified. Otherwise, up to one verification per CPU and per 200 MB of the maximum heap
+ * is run, and new verifications are not started while the measured heap usage is close to the maximum heap,
+ * see [HeapPressureThrottle].
+ *
+ * Files of the next plugins are downloaded by [PluginFilesPrefetcher] while the current ones are verified.
+ * The number of plugins to prefetch and the number of download threads are specified by
+ * `intellij.plugin.verifier.prefetch.plugins` and `intellij.plugin.verifier.download.threads` system properties.
+ */
 fun runSeveralVerifiers(reportage: PluginVerificationReportage, verifiers: List<PluginVerifier>): List<PluginVerificationResult> {
-  if (verifiers.isEmpty()) {
-    return emptyList()
+  val results = arrayListOf<PluginVerificationResult>()
+  runSeveralVerifiers(reportage, verifiers) { result ->
+    synchronized(results) {
+      results += result
+    }
   }
+  return results
+}
 
-  val executor = ExecutorWithProgress<PluginVerificationResult>("verifier", getConcurrencyLevel(), true) { progressData ->
-    val result = progressData.result!!
-    reportage.logVerificationStage(
-      "Finished ${progressData.finishedNumber} of ${progressData.totalNumber} verifications (in ${String.format("%.1f", progressData.elapsedTime.toDouble() / 1000)} s): " +
-        "${result.verificationTarget} against ${result.plugin}: ${result.verificationVerdict}"
-    )
+/**
+ * Runs [verifiers] the same way as the function above but passes every result
+ * to [resultProcessor] as soon as it is reported, instead of retaining all the results until the end.
+ *
+ * The [resultProcessor] is invoked in the verification threads, concurrently for results of different verifiers,
+ * so that expensive processing, like rendering of reports, is done in parallel.
+ * It must be thread safe and should only synchronize updates of the state shared by all results.
+ */
+fun runSeveralVerifiers(
+  reportage: PluginVerificationReportage,
+  verifiers: List<PluginVerifier>,
+  resultProcessor: (PluginVerificationResult) -> Unit
+) {
+  if (verifiers.isEmpty()) {
+    return
   }
 
-  val tasks = verifiers.map { verifier ->
+  val fixedConcurrencyLevel = getFixedConcurrencyLevel()
+  val concurrencyLevel = fixedConcurrencyLevel ?: getDefaultConcurrencyLevel()
+  val heapPressureThrottle = if (fixedConcurrencyLevel == null) HeapPressureThrottle() else null
+
+  val scheduledVerifiers = VerificationScheduler.schedule(verifiers)
+  val prefetcher = createPluginFilesPrefetcher(scheduledVerifiers, concurrencyLevel)
+
+  val tasks = scheduledVerifiers.map { verifier ->
     ExecutorWithProgress.Task(
       verifier.verificationDescriptor.toString(),
       Callable {
-        val verificationResult = verifier.loadPluginAndVerify()
-        reportage.reportVerificationResult(verificationResult)
-        verificationResult
+        prefetcher?.verificationStarted()
+        val verificationResults = try {
+          if (heapPressureThrottle != null) {
+            heapPressureThrottle.runThrottled { verifier.loadPluginAndVerifyAllTargets() }
+          } else {
+            verifier.loadPluginAndVerifyAllTargets()
+          }
+        } finally {
+          prefetcher?.verificationFinished(verifier)
+        }
+        verifier.metrics.measureStage(VerificationStage.REPORTING) {
+          verificationResults.forEach { reportage.reportVerificationResult(it) }
+          verificationResults.forEach(resultProcessor)
+        }
+        verificationResults.joinToString { "${it.verificationTarget} against ${it.plugin}: ${it.verificationVerdict}" }
       }
     )
   }
-  return executor.executeTasks(tasks)
+
+  val executor = ExecutorWithProgress<String>("verifier", concurrencyLevel, true) { progressData ->
+    reportage.logVerificationStage(
+      "Finished ${progressData.finishedNumber} of ${progressData.totalNumber} verifications (in ${String.format("%.1f", progressData.elapsedTime.toDouble() / 1000)} s): " +
+        progressData.result
+    )
+  }
+  prefetcher.use {
+    executor.use { it.executeTasks(tasks) }
+  }
 }
 
-private fun getConcurrencyLevel(): Int {
-  val fromProperty = System.getProperty("intellij.plugin.verifier.concurrency.level")?.toIntOrNull()
-  if (fromProperty != null) {
-    check(fromProperty > 0) { "Invalid concurrency level: $fromProperty" }
-    return fromProperty
+private fun createPluginFilesPrefetcher(scheduledVerifiers: List<PluginVerifier>, concurrencyLevel: Int): PluginFilesPrefetcher? {
+  val prefetchCount = getNonNegativeIntProperty("intellij.plugin.verifier.prefetch.plugins") ?: concurrencyLevel
+  val downloadThreads = getNonNegativeIntProperty("intellij.plugin.verifier.download.threads") ?: DEFAULT_DOWNLOAD_THREADS
+  if (prefetchCount == 0 || downloadThreads == 0 || scheduledVerifiers.size <= 1) {
+    return null
   }
+  return PluginFilesPrefetcher(scheduledVerifiers, prefetchCount, minOf(downloadThreads, prefetchCount))
+}
+
+private const val DEFAULT_DOWNLOAD_THREADS = 4
+
+private fun getNonNegativeIntProperty(name: String): Int? {
+  val fromProperty = System.getProperty(name)?.toIntOrNull() ?: return null
+  check(fromProperty >= 0) { "Invalid value of $name: $fromProperty" }
+  return fromProperty
+}
 
+private fun getFixedConcurrencyLevel(): Int? {
+  val fromProperty = System.getProperty("intellij.plugin.verifier.concurrency.level")?.toIntOrNull() ?: return null
+  check(fromProperty > 0) { "Invalid concurrency level: $fromProperty" }
+  return fromProperty
+}
+
+private fun getDefaultConcurrencyLevel(): Int {
   val availableMemory = Runtime.getRuntime().maxMemory()
   val availableCpu = Runtime.getRuntime().availableProcessors().toLong()
   //About 200 Mb is needed for an average verification
   val maxByMemory = availableMemory / 1024 / 1024 / 200
   return maxOf(4, minOf(maxByMemory, availableCpu)).toInt()
-}
\ No newline at end of file
+}
+
+/**
+ * Pool used to verify classes of large plugins in parallel, or `null` if classes are verified sequentially.
+ *
+ * The parallelism is specified by `intellij.plugin.verifier.class.verification.parallelism` system property.
+ */
+internal val defaultClassesVerificationPool: ForkJoinPool? by lazy {
+  val parallelism = System.getProperty("intellij.plugin.verifier.class.verification.parallelism")?.toIntOrNull()
+    ?: return@lazy null
+  check(parallelism > 0) { "Invalid class verification parallelism: $parallelism" }
+  if (parallelism > 1) ForkJoinPool(parallelism) else null
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.pluginverifier
+
+import com.jetbrains.plugin.structure.base.utils.exists
+import com.jetbrains.pluginverifier.plugin.PluginFilesBank
+import com.jetbrains.pluginverifier.repository.PluginInfo
+import com.jetbrains.pluginverifier.repository.cleanup.SpaceAmount
+import com.jetbrains.pluginverifier.repository.cleanup.fileSize
+import com.jetbrains.pluginverifier.repository.repositories.bundled.BundledPluginInfo
+import com.jetbrains.pluginverifier.repository.repositories.local.LocalPluginInfo
+
+/**
+ * Orders verifications to be run concurrently so that all of them complete sooner.
+ *
+ * Verifications against the same target (IDE or API plugin) are grouped together
+ * to keep the target's class caches hot. Groups, and verifications within a group,
+ * are ordered by estimated cost, largest first, so that big plugins don't end up
+ * being verified alone at the very end.
+ *
+ * The cost of a verification is estimated by the size of the plugin's file,
+ * if it is already available locally. Verifications of plugins that have not been downloaded yet
+ * keep their relative order and go after the ones with known cost in the same group.
+ */
+object VerificationScheduler {
+
+  fun schedule(verifiers: List<PluginVerifier>): List<PluginVerifier> {
+    val pluginSizes = getLocallyAvailablePluginSizes(verifiers)
+    val cost: (PluginVerifier) -> SpaceAmount = { pluginSizes[it.verificationDescriptor.checkedPlugin] ?: SpaceAmount.ZERO_SPACE }
+    return verifiers
+      .groupBy { it.verificationDescriptor.toTarget() }
+      .values
+      .map { group -> group.sortedByDescending(cost) }
+      .sortedByDescending { group -> group.fold(SpaceAmount.ZERO_SPACE) { total, verifier -> total + cost(verifier) } }
+      .flatten()
+  }
+
+  private fun getLocallyAvailablePluginSizes(verifiers: List<PluginVerifier>): Map<PluginInfo, SpaceAmount> {
+    val pluginSizes = hashMapOf<PluginInfo, SpaceAmount>()
+    verifiers
+      .map { it.pluginDetailsCache.pluginFileProvider }
+      .filterIsInstance<PluginFilesBank>()
+      .distinct()
+      .forEach { pluginFilesBank ->
+        for (availableFile in pluginFilesBank.getAvailablePluginFiles()) {
+          pluginSizes[availableFile.key] = availableFile.fileInfo.fileSize
+        }
+      }
+    for (verifier in verifiers) {
+      val pluginInfo = verifier.verificationDescriptor.checkedPlugin
+      val pluginFile = when (pluginInfo) {
+        is LocalPluginInfo -> pluginInfo.idePlugin.originalFile
+        is BundledPluginInfo -> pluginInfo.idePlugin.originalFile
+        else -> null
+      }
+      if (pluginFile != null && pluginFile.exists()) {
+        pluginSizes[pluginInfo] = pluginFile.fileSize
+      }
+    }
+    return pluginSizes
+  }
+}
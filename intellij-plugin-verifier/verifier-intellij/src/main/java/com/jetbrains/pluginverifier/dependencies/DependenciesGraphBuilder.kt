@@ -11,7 +11,6 @@ import com.jetbrains.plugin.structure.intellij.plugin.PluginDependency
 import com.jetbrains.plugin.structure.intellij.plugin.PluginDependencyImpl
 import com.jetbrains.pluginverifier.dependencies.resolution.DependencyFinder
 import com.jetbrains.pluginverifier.plugin.PluginDetailsCache
-import org.jgrapht.DirectedGraph
 import org.jgrapht.graph.DefaultDirectedGraph
 import org.jgrapht.graph.DefaultEdge
 
@@ -27,7 +26,7 @@ class DependenciesGraphBuilder(private val dependencyFinder: DependencyFinder) {
   }
 
   fun buildDependenciesGraph(plugin: IdePlugin, ide: Ide): Pair<DependenciesGraph, List<DependencyFinder.Result>> {
-    val graph = DefaultDirectedGraph<DepVertex, DepEdge>(DepEdge::class.java)
+    val graph = DepGraph()
     val missingDependencies = hashMapOf<DepId, MutableSet<DepMissingVertex>>()
 
     val start = DepVertex(plugin, DependencyFinder.Result.FoundPlugin(plugin))
@@ -42,7 +41,7 @@ class DependenciesGraphBuilder(private val dependencyFinder: DependencyFinder) {
   }
 
   private fun addTransitiveDependencies(
-    graph: DirectedGraph<DepVertex, DepEdge>,
+    graph: DepGraph,
     vertex: DepVertex,
     missingDependencies: MutableMap<DepId, MutableSet<DepMissingVertex>>
   ) {
@@ -88,18 +87,12 @@ class DependenciesGraphBuilder(private val dependencyFinder: DependencyFinder) {
   private fun resolveDependency(
     vertex: DepVertex,
     pluginDependency: PluginDependency,
-    graph: DirectedGraph<DepVertex, DepEdge>,
+    graph: DepGraph,
     missingDependencies: MutableMap<DepId, MutableSet<DepMissingVertex>>
   ): DepVertex? {
     val depId = DepId(pluginDependency.id, pluginDependency.isModule)
 
-    val existingVertex = graph.vertexSet().find {
-      if (depId.isModule) {
-        it.plugin.definedModules.contains(depId.id)
-      } else {
-        it.plugin.pluginId == depId.id
-      }
-    }
+    val existingVertex = graph.findVertex(depId)
     if (existingVertex != null) {
       return existingVertex
     }
@@ -153,7 +146,7 @@ class DependenciesGraphBuilder(private val dependencyFinder: DependencyFinder) {
   private fun maybeAddOptionalJavaPluginDependency(
     plugin: IdePlugin,
     ide: Ide,
-    graph: DirectedGraph<DepVertex, DepEdge>,
+    graph: DepGraph,
     missingDependencies: MutableMap<DepId, MutableSet<DepMissingVertex>>
   ) {
     if (ide.getPluginByModule(ALL_MODULES_ID) == null) {
@@ -184,7 +177,7 @@ class DependenciesGraphBuilder(private val dependencyFinder: DependencyFinder) {
    */
   private fun maybeAddBundledPluginsWithUseIdeaClassLoader(
     ide: Ide,
-    graph: DirectedGraph<DepVertex, DepEdge>,
+    graph: DepGraph,
     missingDependencies: MutableMap<DepId, MutableSet<DepMissingVertex>>
   ) {
     for (bundledPlugin in ide.bundledPlugins) {
@@ -207,6 +200,31 @@ private data class DepVertex(val plugin: IdePlugin, val dependencyResult: Depend
   override fun hashCode() = plugin.hashCode()
 }
 
+/**
+ * Dependencies graph that indexes its vertices by plugin IDs and defined modules.
+ * When several vertices match a [DepId], the first added one is found.
+ */
+private class DepGraph : DefaultDirectedGraph<DepVertex, DepEdge>(DepEdge::class.java) {
+
+  private val vertexIndex = hashMapOf<DepId, DepVertex>()
+
+  override fun addVertex(vertex: DepVertex): Boolean {
+    if (!super.addVertex(vertex)) {
+      return false
+    }
+    val pluginId = vertex.plugin.pluginId
+    if (pluginId != null) {
+      vertexIndex.putIfAbsent(DepId(pluginId, false), vertex)
+    }
+    for (module in vertex.plugin.definedModules) {
+      vertexIndex.putIfAbsent(DepId(module, true), vertex)
+    }
+    return true
+  }
+
+  fun findVertex(depId: DepId): DepVertex? = vertexIndex[depId]
+}
+
 private data class DepEdge(
   val dependency: PluginDependency,
   private val sourceVertex: DepVertex,
@@ -224,7 +242,7 @@ private data class DepMissingVertex(val vertex: DepVertex, val pluginDependency:
 private class DepGraph2ApiGraphConverter {
 
   fun convert(
-    graph: DirectedGraph<DepVertex, DepEdge>,
+    graph: DepGraph,
     startVertex: DepVertex,
     vertexMissingDependencies: Map<DepId, Set<DepMissingVertex>>
   ): DependenciesGraph {
@@ -10,9 +10,17 @@ import com.jetbrains.pluginverifier.verifiers.VerificationContext
 
 /**
  * [ProblemsFilter] that ignores problems specified in [ignoreConditions].
+ *
+ * Conditions are grouped by plugin ID and version, and patterns of each group
+ * are combined into one [Regex], so a problem is matched against at most four regexps.
  */
 class IgnoredProblemsFilter(val ignoreConditions: List<IgnoreCondition>) : ProblemsFilter {
 
+  private val conditionGroups: Map<Pair<String?, String?>, List<ConditionsMatcher>> =
+    ignoreConditions.withIndex()
+      .groupBy { it.value.pluginId to it.value.version }
+      .mapValues { (_, conditions) -> createMatchers(conditions) }
+
   override fun shouldReportProblem(
     problem: CompatibilityProblem,
     context: VerificationContext
@@ -23,16 +31,70 @@ class IgnoredProblemsFilter(val ignoreConditions: List<IgnoreCondition>) : Probl
     val currentId = context.idePlugin.pluginId
     val currentVersion = context.idePlugin.pluginVersion
 
-    for ((pluginId, version, pattern) in ignoreConditions) {
-      if (pluginId == null || pluginId == currentId) {
-        if (version == null || version == currentVersion) {
-          if (problem.shortDescription.matches(pattern)) {
-            return ProblemsFilter.Result.Ignore("the problem is ignored by RegExp pattern: \"$pattern\"")
-          }
+    val matchers = listOf(
+      null to null,
+      currentId to null,
+      null to currentVersion,
+      currentId to currentVersion
+    ).distinct().flatMap { conditionGroups[it].orEmpty() }
+    if (matchers.isEmpty()) {
+      return ProblemsFilter.Result.Report
+    }
+
+    val shortDescription = problem.shortDescription
+    val matchedCondition = matchers
+      .mapNotNull { it.findMatchingCondition(shortDescription) }
+      .minBy { it.index }
+      ?.value
+    if (matchedCondition != null) {
+      return ProblemsFilter.Result.Ignore("the problem is ignored by RegExp pattern: \"${matchedCondition.pattern}\"")
+    }
+    return ProblemsFilter.Result.Report
+  }
+
+  private fun createMatchers(conditions: List<IndexedValue<IgnoreCondition>>): List<ConditionsMatcher> =
+    conditions
+      .groupBy { it.value.pattern.options to it.value.pattern.isCombinable() }
+      .flatMap { (key, sameConditions) ->
+        if (key.second) {
+          listOf(ConditionsMatcher(sameConditions))
+        } else {
+          sameConditions.map { ConditionsMatcher(listOf(it)) }
         }
       }
+
+  /**
+   * Back references and named groups refer to groups of the whole regexp, while comments
+   * and quotations may swallow the closing parenthesis, so such patterns are matched separately.
+   */
+  private fun Regex.isCombinable() =
+    RegexOption.COMMENTS !in options && RegexOption.LITERAL !in options && !pattern.contains(NOT_COMBINABLE_REGEX)
+
+  /**
+   * Matches a description against the patterns of [conditions], which have the same options,
+   * combined into one regexp.
+   */
+  private class ConditionsMatcher(private val conditions: List<IndexedValue<IgnoreCondition>>) {
+
+    private val combinedRegex = if (conditions.size == 1) {
+      conditions.single().value.pattern
+    } else {
+      Regex(conditions.joinToString("|") { "(?:${it.value.pattern.pattern})" }, conditions.first().value.pattern.options)
     }
-    return ProblemsFilter.Result.Report
+
+    /**
+     * Returns the first condition whose pattern matches the [description], if any.
+     */
+    fun findMatchingCondition(description: String): IndexedValue<IgnoreCondition>? {
+      if (!combinedRegex.matches(description)) {
+        return null
+      }
+      return conditions.find { description.matches(it.value.pattern) }
+    }
+  }
+
+  private companion object {
+    val NOT_COMBINABLE_REGEX = Regex("""\\([1-9]|k<|Q)|\(\?<[a-zA-Z]""")
   }
 
-}
\ No newline at end of file
+}
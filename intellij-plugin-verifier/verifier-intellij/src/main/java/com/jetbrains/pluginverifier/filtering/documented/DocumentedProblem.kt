@@ -243,25 +243,28 @@ private fun FieldReference.doesFieldDependOnClass(className: String) =
  * Checks if the method's signature of _this_ [MethodReference] contains
  * a class that matches the passed predicate.
  */
-private fun MethodReference.doesMethodDependOnClass(classPredicate: (String) -> Boolean): Boolean {
-  if (classPredicate(hostClass.className)) {
-    return true
-  }
+private fun MethodReference.doesMethodDependOnClass(classPredicate: (String) -> Boolean): Boolean =
+  getSignatureClasses().any(classPredicate)
+
+/**
+ * Checks if the field's signature of _this_ [FieldReference] contains
+ * a class that matches the passed predicate.
+ */
+private fun FieldReference.doesFieldDependOnClass(classFinder: (String) -> Boolean): Boolean =
+  getSignatureClasses().any(classFinder)
+
+/**
+ * Returns the host class, the parameter classes and the return class of _this_ [MethodReference].
+ */
+internal fun MethodReference.getSignatureClasses(): List<String> {
   val (rawParamTypes, rawReturnType) = JvmDescriptorsPresentation.splitMethodDescriptorOnRawParametersAndReturnTypes(methodDescriptor)
   val paramClasses = rawParamTypes.mapNotNull { it.extractClassNameFromDescriptor() }
   val returnType = rawReturnType.extractClassNameFromDescriptor()
-
-  return paramClasses.any(classPredicate) || (returnType != null && classPredicate(returnType))
+  return listOf(hostClass.className) + paramClasses + listOfNotNull(returnType)
 }
 
 /**
- * Checks if the field's signature of _this_ [FieldReference] contains
- * a class that matches the passed predicate.
+ * Returns the host class and the type class of _this_ [FieldReference].
  */
-private fun FieldReference.doesFieldDependOnClass(classFinder: (String) -> Boolean): Boolean {
-  if (classFinder(hostClass.className)) {
-    return true
-  }
-  val fieldType = fieldDescriptor.extractClassNameFromDescriptor()
-  return fieldType != null && classFinder(fieldType)
-}
+internal fun FieldReference.getSignatureClasses(): List<String> =
+  listOfNotNull(hostClass.className, fieldDescriptor.extractClassNameFromDescriptor())
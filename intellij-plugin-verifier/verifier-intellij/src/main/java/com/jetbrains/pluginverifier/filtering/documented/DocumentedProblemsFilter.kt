@@ -13,10 +13,12 @@ import com.jetbrains.pluginverifier.verifiers.VerificationContext
  * the problems documented on the
  * [Breaking API Changes page](https://www.jetbrains.org/intellij/sdk/docs/reference_guide/api_changes_list.html).
  */
-class DocumentedProblemsFilter(private val documentedProblems: List<DocumentedProblem>) : ProblemsFilter {
+class DocumentedProblemsFilter(val documentedProblems: List<DocumentedProblem>) : ProblemsFilter {
+
+  private val documentedProblemsIndex = DocumentedProblemsIndex(documentedProblems)
 
   override fun shouldReportProblem(problem: CompatibilityProblem, context: VerificationContext): ProblemsFilter.Result {
-    val documentedProblem = documentedProblems.find { it.isDocumenting(problem, context) }
+    val documentedProblem = documentedProblemsIndex.findDocumentingProblem(problem, context)
     if (documentedProblem != null) {
       return ProblemsFilter.Result.Ignore("the problem is already documented in the API Breakages page (https://www.jetbrains.org/intellij/sdk/docs/reference_guide/api_changes_list.html)")
     }
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.pluginverifier.filtering.documented
+
+import com.jetbrains.pluginverifier.results.problems.*
+import com.jetbrains.pluginverifier.verifiers.VerificationContext
+
+/**
+ * Index of [DocumentedProblem]s by the names of methods, fields, properties, classes and packages they describe.
+ *
+ * For a compatibility problem, only the documented problems sharing at least one key
+ * with the problem are checked by [DocumentedProblem.isDocumenting], so the lookup doesn't
+ * depend on the number of documented problems. Documented problems of unknown types
+ * are not indexed and are checked for every compatibility problem.
+ */
+internal class DocumentedProblemsIndex(documentedProblems: List<DocumentedProblem>) {
+
+  private val keyToDocumentedProblems = hashMapOf<String, MutableList<DocumentedProblem>>()
+
+  private val notIndexedProblems = arrayListOf<DocumentedProblem>()
+
+  init {
+    for (documentedProblem in documentedProblems) {
+      if (documentedProblem is NoOpValidatingDocumentedProblem) {
+        continue
+      }
+      val key = getKey(documentedProblem)
+      if (key != null) {
+        keyToDocumentedProblems.getOrPut(key) { arrayListOf() } += documentedProblem
+      } else {
+        notIndexedProblems += documentedProblem
+      }
+    }
+  }
+
+  fun findDocumentingProblem(problem: CompatibilityProblem, context: VerificationContext): DocumentedProblem? {
+    for (key in getKeys(problem)) {
+      val documentedProblems = keyToDocumentedProblems[key] ?: continue
+      documentedProblems.find { it.isDocumenting(problem, context) }?.let { return it }
+    }
+    return notIndexedProblems.find { it.isDocumenting(problem, context) }
+  }
+
+  private fun getKey(documentedProblem: DocumentedProblem): String? = when (documentedProblem) {
+    is DocClassRemoved -> classKey(documentedProblem.className)
+    is DocClassMovedToPackage -> classKey(documentedProblem.oldClassName)
+    is DocPackageRemoved -> packageKey(documentedProblem.packageName)
+    is DocMethodRemoved -> methodKey(documentedProblem.methodName)
+    is DocMethodReturnTypeChanged -> methodKey(documentedProblem.methodName)
+    is DocMethodVisibilityChanged -> methodKey(documentedProblem.methodName)
+    is DocMethodMarkedFinal -> methodKey(documentedProblem.methodName)
+    is DocFinalMethodInherited -> methodKey(documentedProblem.methodName)
+    is DocMethodParameterTypeChanged -> methodKey(documentedProblem.methodName)
+    is DocAbstractMethodAdded -> methodKey(documentedProblem.methodName)
+    is DocFieldRemoved -> fieldKey(documentedProblem.fieldName)
+    is DocFieldTypeChanged -> fieldKey(documentedProblem.fieldName)
+    is DocFieldVisibilityChanged -> fieldKey(documentedProblem.fieldName)
+    is DocPropertyRemoved -> propertyKey(documentedProblem.propertyName)
+    else -> null
+  }
+
+  private fun getKeys(problem: CompatibilityProblem): Set<String> = when (problem) {
+    is ClassNotFoundProblem -> getClassKeys(listOf(problem.unresolved.className))
+    is PackageNotFoundProblem -> getPackageKeys(problem.packageName) + packageKey(problem.packageName)
+    is MethodNotFoundProblem -> getClassKeys(problem.unresolvedMethod.getSignatureClasses()) + methodKey(problem.unresolvedMethod.methodName)
+    is FieldNotFoundProblem -> getClassKeys(problem.unresolvedField.getSignatureClasses()) + fieldKey(problem.unresolvedField.fieldName)
+    is MethodNotImplementedProblem -> setOf(methodKey(problem.abstractMethod.methodName))
+    is IllegalMethodAccessProblem -> setOf(methodKey(problem.inaccessibleMethod.methodName))
+    is OverridingFinalMethodProblem -> setOf(methodKey(problem.finalMethod.methodName))
+    is IllegalFieldAccessProblem -> setOf(fieldKey(problem.inaccessibleField.fieldName))
+    is MissingPropertyReferenceProblem -> setOf(propertyKey(problem.propertyKey))
+    else -> emptySet()
+  }
+
+  /**
+   * Keys of the classes and all their enclosing packages.
+   */
+  private fun getClassKeys(classNames: List<String>): Set<String> {
+    val keys = linkedSetOf<String>()
+    for (className in classNames) {
+      keys += classKey(className)
+      keys += getPackageKeys(className)
+    }
+    return keys
+  }
+
+  /**
+   * Keys of packages enclosing the [name]: `a/b/c` for `a/b/c/D`, `a/b` and `a`.
+   */
+  private fun getPackageKeys(name: String): Set<String> {
+    val keys = linkedSetOf<String>()
+    var index = name.lastIndexOf('/')
+    while (index > 0) {
+      keys += packageKey(name.substring(0, index))
+      index = name.lastIndexOf('/', index - 1)
+    }
+    return keys
+  }
+
+  private fun classKey(className: String) = "class:$className"
+
+  private fun packageKey(packageName: String) = "package:$packageName"
+
+  private fun methodKey(methodName: String) = "method:$methodName"
+
+  private fun fieldKey(fieldName: String) = "field:$fieldName"
+
+  private fun propertyKey(propertyName: String) = "property:$propertyName"
+}
@@ -4,16 +4,24 @@
 
 package com.jetbrains.pluginverifier.ide
 
+import com.google.common.cache.CacheStats
 import com.jetbrains.plugin.structure.base.utils.closeLogged
 import com.jetbrains.plugin.structure.base.utils.closeOnException
+import com.jetbrains.plugin.structure.classes.resolvers.CacheResolver
+import com.jetbrains.plugin.structure.classes.resolvers.CompositeResolver
+import com.jetbrains.plugin.structure.classes.resolvers.JarFileIndexCache
+import com.jetbrains.plugin.structure.classes.resolvers.JarFileResolver
 import com.jetbrains.plugin.structure.classes.resolvers.Resolver
 import com.jetbrains.plugin.structure.ide.Ide
 import com.jetbrains.plugin.structure.ide.IdeManager
 import com.jetbrains.plugin.structure.ide.classes.IdeResolverCreator
+import com.jetbrains.plugin.structure.intellij.classes.plugin.IdePluginClassesFinder
+import com.jetbrains.plugin.structure.intellij.classes.plugin.IdePluginClassesLocations
 import com.jetbrains.plugin.structure.intellij.version.IdeVersion
 import com.jetbrains.pluginverifier.jdk.JdkDescriptor
 import com.jetbrains.pluginverifier.jdk.JdkDescriptorCreator
 import com.jetbrains.pluginverifier.repository.files.FileLock
+import com.jetbrains.pluginverifier.resolution.DependenciesResolverCache
 import java.io.Closeable
 import java.nio.file.Path
 
@@ -21,12 +29,20 @@ import java.nio.file.Path
  * Holds IDE objects necessary for verification.
  *
  * - [ide] - instance of this IDE
- * - [ideResolver] - accessor of IDE class files
+ * - [ideResolver] - accessor of IDE class files. When created with [create],
+ * it caches resolved classes in a [CacheResolver], so that concurrent verifications
+ * against this IDE don't parse the same classes over and over again.
  * - [jdkDescriptor] - JDK used to run the IDE: a bundled JDK if available or a specified default JDK
  * - [ideFileLock] - a lock to protect the IDE file from deletion.
  * It will be closed along with `this` descriptor.
+ * - [dependenciesResolverCache] - resolvers of plugin dependencies shared by verifications against this IDE.
+ * - [bundledPluginsResolver] - accessor of the main class files of all plugins bundled to this IDE.
+ * It is created on the first access and closed along with `this` descriptor.
+ *
+ * The descriptor owns caches and resources that must not be shared with copies of it,
+ * so it is compared by identity.
  */
-data class IdeDescriptor(
+class IdeDescriptor(
   val ide: Ide,
   val ideResolver: Resolver,
   val jdkDescriptor: JdkDescriptor,
@@ -37,26 +53,99 @@ data class IdeDescriptor(
 
   val jdkVersion get() = jdkDescriptor.jdkVersion
 
+  val dependenciesResolverCache = DependenciesResolverCache()
+
+  private val bundledPluginsClassesLocations = lazy { findBundledPluginsClasses(ide) }
+
+  val bundledPluginsResolver: Resolver by lazy {
+    CompositeResolver.create(
+      bundledPluginsClassesLocations.value.flatMap { classesLocations ->
+        IdePluginClassesFinder.MAIN_CLASSES_KEYS.flatMap { classesLocations.getResolvers(it) }
+      }
+    )
+  }
+
+  /**
+   * Statistics of the shared IDE class cache, or `null` if [ideResolver] is not cached.
+   */
+  val ideClassCacheStats: CacheStats?
+    get() = (ideResolver as? CacheResolver)?.cacheStats
+
   override fun toString() = ideVersion.toString()
 
   override fun close() {
+    if (bundledPluginsClassesLocations.isInitialized()) {
+      bundledPluginsClassesLocations.value.forEach { it.closeLogged() }
+    }
     ideResolver.closeLogged()
     jdkDescriptor.closeLogged()
     ideFileLock.closeLogged()
   }
 
   companion object {
+
+    /**
+     * Fraction of the maximum heap size that may be occupied by cached classes of all opened IDEs, by default.
+     */
+    private const val IDE_CLASS_CACHES_HEAP_FRACTION = 4
+
+    private const val FALLBACK_IDE_CLASS_CACHES_BYTES = 256L * 1024 * 1024
+
+    /**
+     * Returns the total number of bytes that classes cached by all the IDE descriptors opened at once may occupy.
+     * It is specified by the `intellij.plugin.verifier.ide.class.cache.bytes` system property
+     * and defaults to a quarter of the maximum heap size.
+     * Callers that open several IDEs at once should divide it between them.
+     */
+    fun getIdeClassCachesBytes(): Long {
+      val fromProperty = System.getProperty("intellij.plugin.verifier.ide.class.cache.bytes")?.toLongOrNull()
+      if (fromProperty != null) {
+        return fromProperty
+      }
+      val maxMemory = Runtime.getRuntime().maxMemory()
+      if (maxMemory == Long.MAX_VALUE) {
+        return FALLBACK_IDE_CLASS_CACHES_BYTES
+      }
+      return maxMemory / IDE_CLASS_CACHES_HEAP_FRACTION
+    }
+
+    private fun findBundledPluginsClasses(ide: Ide): List<IdePluginClassesLocations> {
+      val classesLocations = arrayListOf<IdePluginClassesLocations>()
+      classesLocations.closeOnException {
+        for (bundledPlugin in ide.bundledPlugins) {
+          classesLocations += IdePluginClassesFinder.findPluginClasses(bundledPlugin)
+        }
+      }
+      return classesLocations
+    }
+
     /**
      * Creates [IdeDescriptor] for specified [idePath].
      * [ideVersion] is used to override the default version.
      * [ideFileLock] will be released when this [IdeDescriptor] is closed.
+     * [jarIndexCache], if specified, is used to avoid re-indexing of unchanged IDE jars and JDK images.
+     * [jarBackend] specifies how the IDE jars are read.
+     * [classCacheBytes] limits the estimated size of cached IDE classes.
      */
-    fun create(idePath: Path, defaultJdkPath: Path, ideVersion: IdeVersion?, ideFileLock: FileLock?): IdeDescriptor {
+    fun create(
+      idePath: Path,
+      defaultJdkPath: Path,
+      ideVersion: IdeVersion?,
+      ideFileLock: FileLock?,
+      jarIndexCache: JarFileIndexCache? = null,
+      jarBackend: JarFileResolver.Backend = JarFileResolver.Backend.ZIP_FILE_SYSTEM,
+      classCacheBytes: Long = getIdeClassCachesBytes()
+    ): IdeDescriptor {
       val ide = IdeManager.createManager().createIde(idePath, ideVersion)
-      val ideResolver = IdeResolverCreator.createIdeResolver(ide)
+      val ideResolver = CacheResolver(
+        IdeResolverCreator.createIdeResolver(Resolver.ReadMode.FULL, ide, jarIndexCache, jarBackend),
+        maximumClassesBytes = classCacheBytes,
+        compactClasses = true
+      )
       ideResolver.closeOnException {
-        val jdkDescriptor = JdkDescriptorCreator.createBundledJdkDescriptor(ide)
-          ?: JdkDescriptorCreator.createJdkDescriptor(defaultJdkPath)
+        val jdkIndexDirectory = jarIndexCache?.indexDirectory?.resolve("jdk")
+        val jdkDescriptor = JdkDescriptorCreator.createBundledJdkDescriptor(ide, indexDirectory = jdkIndexDirectory)
+          ?: JdkDescriptorCreator.createJdkDescriptor(defaultJdkPath, indexDirectory = jdkIndexDirectory)
         return IdeDescriptor(ide, ideResolver, jdkDescriptor, ideFileLock)
       }
     }
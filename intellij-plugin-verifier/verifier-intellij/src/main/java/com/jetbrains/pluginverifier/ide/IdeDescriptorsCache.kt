@@ -6,6 +6,8 @@ package com.jetbrains.pluginverifier.ide
 
 import com.jetbrains.plugin.structure.base.utils.closeLogged
 import com.jetbrains.plugin.structure.base.utils.rethrowIfInterrupted
+import com.jetbrains.plugin.structure.classes.resolvers.JarFileIndexCache
+import com.jetbrains.plugin.structure.classes.resolvers.JarFileResolver
 import com.jetbrains.plugin.structure.intellij.version.IdeVersion
 import com.jetbrains.pluginverifier.repository.cache.ResourceCacheEntry
 import com.jetbrains.pluginverifier.repository.cache.ResourceCacheEntryResult
@@ -20,12 +22,23 @@ import java.nio.file.Path
  * Cache of [IdeDescriptor] associated by [IdeVersion].
  *
  * This must be [close] on the application shutdown to deallocate all [IdeDescriptor]s.
+ *
+ * If [jarIndexCache] is specified, IDE jars' indexes are persisted there,
+ * so re-opening an evicted IDE doesn't require re-indexing all its jars.
+ * IDE jars are read using the [jarBackend].
+ * Each of at most [cacheSize] opened IDEs caches its classes within an equal share of [IdeDescriptor.getIdeClassCachesBytes].
  */
-class IdeDescriptorsCache(cacheSize: Int, ideFilesBank: IdeFilesBank, defaultJdkPath: Path) : Closeable {
+class IdeDescriptorsCache(
+  cacheSize: Int,
+  ideFilesBank: IdeFilesBank,
+  defaultJdkPath: Path,
+  jarIndexCache: JarFileIndexCache? = null,
+  jarBackend: JarFileResolver.Backend = JarFileResolver.Backend.ZIP_FILE_SYSTEM
+) : Closeable {
 
   private val descriptorsCache = createSizeLimitedResourceCache(
     cacheSize,
-    IdeDescriptorResourceProvider(ideFilesBank, defaultJdkPath),
+    IdeDescriptorResourceProvider(ideFilesBank, defaultJdkPath, jarIndexCache, jarBackend, IdeDescriptor.getIdeClassCachesBytes() / cacheSize),
     { it.close() },
     "IdeDescriptorsCache"
   )
@@ -66,7 +79,10 @@ class IdeDescriptorsCache(cacheSize: Int, ideFilesBank: IdeFilesBank, defaultJdk
 
   private class IdeDescriptorResourceProvider(
     private val ideFilesBank: IdeFilesBank,
-    private val defaultJdkPath: Path
+    private val defaultJdkPath: Path,
+    private val jarIndexCache: JarFileIndexCache?,
+    private val jarBackend: JarFileResolver.Backend,
+    private val classCacheBytes: Long
   ) : ResourceProvider<IdeVersion, IdeDescriptor> {
 
     override fun provide(key: IdeVersion): ProvideResult<IdeDescriptor> {
@@ -74,7 +90,7 @@ class IdeDescriptorsCache(cacheSize: Int, ideFilesBank: IdeFilesBank, defaultJdk
         is IdeFilesBank.Result.Found -> {
           val ideLock = result.ideFileLock
           val ideDescriptor = try {
-            IdeDescriptor.create(ideLock.file, defaultJdkPath, key, ideLock)
+            IdeDescriptor.create(ideLock.file, defaultJdkPath, key, ideLock, jarIndexCache, jarBackend, classCacheBytes)
           } catch (e: Exception) {
             ideLock.closeLogged()
             e.rethrowIfInterrupted()
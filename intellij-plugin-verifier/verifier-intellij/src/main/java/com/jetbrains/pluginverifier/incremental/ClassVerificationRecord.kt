@@ -0,0 +1,17 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.pluginverifier.incremental
+
+/**
+ * Outcome of verification of one plugin class that registered no problems, warnings or API usages.
+ *
+ * [symbolFingerprints] map symbols that the verification looked up
+ * to their [fingerprints] [SymbolFingerprints].
+ *
+ * Records of classes with registrations are not kept, because registrations refer to
+ * origins of classes, which would keep the verified IDE and plugins reachable
+ * and would be stale in verifications against other IDE builds.
+ */
+internal class ClassVerificationRecord(val symbolFingerprints: Map<String, Long>)
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.pluginverifier.incremental
+
+import com.jetbrains.plugin.structure.base.utils.*
+import com.jetbrains.pluginverifier.PluginVerificationTarget
+import com.jetbrains.pluginverifier.filtering.IgnoredProblemsFilter
+import com.jetbrains.pluginverifier.filtering.ProblemsFilter
+import com.jetbrains.pluginverifier.filtering.documented.DocumentedProblemsFilter
+import com.jetbrains.pluginverifier.repository.PluginInfo
+import com.jetbrains.pluginverifier.verifiers.filter.ClassFilter
+import org.slf4j.LoggerFactory
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+
+/**
+ * Keeps outcomes of verifications of plugin classes, so that verifications of the same plugin
+ * against other IDE builds re-verify only the classes whose referenced symbols have changed.
+ *
+ * For every plugin class without problems, warnings and API usages the set of looked up classes,
+ * packages and resource bundles is recorded together with fingerprints of their APIs and origins.
+ * On the next verification of the plugin, such a class whose symbols all have the same fingerprints is not verified.
+ *
+ * Records are kept separately for each [PluginVerificationTarget], so that verification of the plugin
+ * against several targets at once does not overwrite records of one target with records of another.
+ * A target verified for the first time starts from records of the most recently used target of the plugin.
+ *
+ * Outcomes of at most [maxPlugins] recently verified plugins against at most [maxTargetsPerPlugin] targets are kept in memory.
+ * If [recordsDirectory] is specified, records are also saved there, one file per plugin and target,
+ * so that subsequent runs, for example nightly verifications against the next IDE build, start from them.
+ * At most [maxTargetsPerPlugin] most recently saved files are kept for every plugin.
+ *
+ * The cache may be shared only by verifications with the same problem and class filters.
+ * Saved records are marked with the [configurationKey], which must identify the verifier version and the filters,
+ * see [getConfigurationKey]. Records saved with another key are discarded, so that classes are verified again
+ * after the verifier or the filters change.
+ */
+class IncrementalVerificationCache(
+  private val recordsDirectory: Path? = null,
+  private val maxPlugins: Int = 1000,
+  private val maxTargetsPerPlugin: Int = 10,
+  configurationKey: String = ""
+) {
+
+  companion object {
+    private val LOG = LoggerFactory.getLogger(IncrementalVerificationCache::class.java)
+
+    /**
+     * Version of the records file format and of the fingerprints in it.
+     * Saved records of other versions are ignored.
+     */
+    private const val RECORDS_FORMAT_VERSION = 2
+
+    private const val RECORDS_SUFFIX = ".records"
+
+    /**
+     * Returns the configuration key of verifications by the verifier of [verifierVersion]
+     * with [problemsFilters] and [classFilters]. Filters are described by their classes
+     * and by the conditions of the [IgnoredProblemsFilter]s and [DocumentedProblemsFilter]s.
+     */
+    fun getConfigurationKey(verifierVersion: String, problemsFilters: List<ProblemsFilter>, classFilters: List<ClassFilter>): String =
+      buildString {
+        appendln(verifierVersion)
+        for (problemsFilter in problemsFilters) {
+          appendln(problemsFilter.javaClass.name)
+          when (problemsFilter) {
+            is IgnoredProblemsFilter -> problemsFilter.ignoreConditions.forEach { appendln(it) }
+            is DocumentedProblemsFilter -> problemsFilter.documentedProblems.forEach { appendln(it) }
+          }
+        }
+        for (classFilter in classFilters) {
+          appendln(classFilter.javaClass.name)
+        }
+      }
+  }
+
+  private val configurationHash = sha256(configurationKey)
+
+  private val pluginRecords = object : LinkedHashMap<PluginInfo, TargetRecords>(16, 0.75f, true) {
+    override fun removeEldestEntry(eldest: MutableMap.MutableEntry<PluginInfo, TargetRecords>) =
+      size > maxPlugins
+  }
+
+  internal fun getRecords(plugin: PluginInfo, target: PluginVerificationTarget): Map<String, ClassVerificationRecord> {
+    val latestRecords = synchronized(pluginRecords) {
+      val targetRecords = pluginRecords[plugin]
+      targetRecords?.get(target)?.let { return it }
+      targetRecords?.values?.lastOrNull()
+    }
+    if (recordsDirectory == null) {
+      return latestRecords.orEmpty()
+    }
+    val pluginDirectory = getPluginDirectory(plugin)
+    val savedRecords = readRecords(getRecordsFile(pluginDirectory, target))
+    if (savedRecords != null) {
+      synchronized(pluginRecords) {
+        pluginRecords.getOrPut(plugin) { TargetRecords() }.putIfAbsent(target, savedRecords)
+      }
+      return savedRecords
+    }
+    return latestRecords ?: getSavedRecordsFiles(pluginDirectory).lastOrNull()?.let { readRecords(it) }.orEmpty()
+  }
+
+  internal fun putRecords(plugin: PluginInfo, target: PluginVerificationTarget, records: Map<String, ClassVerificationRecord>) {
+    synchronized(pluginRecords) {
+      pluginRecords.getOrPut(plugin) { TargetRecords() }[target] = records
+    }
+    if (recordsDirectory != null) {
+      val pluginDirectory = getPluginDirectory(plugin)
+      saveRecords(pluginDirectory, getRecordsFile(pluginDirectory, target), records)
+      removeOldRecordsFiles(pluginDirectory)
+    }
+  }
+
+  private fun getPluginDirectory(plugin: PluginInfo): Path =
+    recordsDirectory!!.resolve(sha256(plugin.pluginId + ":" + plugin.version))
+
+  private fun getRecordsFile(pluginDirectory: Path, target: PluginVerificationTarget): Path {
+    val targetKey = when (target) {
+      is PluginVerificationTarget.IDE -> "ide:" + target.ideVersion.asString() + ":" + target.jdkVersion.javaVersion
+      is PluginVerificationTarget.Plugin -> "plugin:" + target.plugin.pluginId + ":" + target.plugin.version + ":" + target.jdkVersion.javaVersion
+    }
+    return pluginDirectory.resolve(sha256(targetKey) + RECORDS_SUFFIX)
+  }
+
+  /**
+   * Returns records files of the plugin ordered from the least to the most recently saved.
+   */
+  private fun getSavedRecordsFiles(pluginDirectory: Path): List<Path> =
+    try {
+      pluginDirectory.listFiles()
+        .filter { it.simpleName.endsWith(RECORDS_SUFFIX) }
+        .sortedBy { Files.getLastModifiedTime(it).toMillis() }
+    } catch (e: Exception) {
+      e.rethrowIfInterrupted()
+      emptyList()
+    }
+
+  private fun removeOldRecordsFiles(pluginDirectory: Path) {
+    val recordsFiles = getSavedRecordsFiles(pluginDirectory)
+    recordsFiles.take(recordsFiles.size - maxTargetsPerPlugin).forEach { it.deleteLogged() }
+  }
+
+  private fun sha256(string: String): String =
+    MessageDigest.getInstance("SHA-256").digest(string.toByteArray()).joinToString("") { "%02x".format(it) }
+
+  private fun readRecords(recordsFile: Path): Map<String, ClassVerificationRecord>? {
+    if (!recordsFile.exists()) {
+      return null
+    }
+    return try {
+      DataInputStream(BufferedInputStream(Files.newInputStream(recordsFile))).use { input ->
+        if (input.readInt() != RECORDS_FORMAT_VERSION || input.readString() != configurationHash) {
+          return null
+        }
+        val classCount = input.readInt()
+        val records = HashMap<String, ClassVerificationRecord>(classCount * 4 / 3 + 1)
+        repeat(classCount) {
+          val className = input.readString()
+          val symbolCount = input.readInt()
+          val symbolFingerprints = HashMap<String, Long>(symbolCount * 4 / 3 + 1)
+          repeat(symbolCount) {
+            symbolFingerprints[input.readString()] = input.readLong()
+          }
+          records[className] = ClassVerificationRecord(symbolFingerprints)
+        }
+        records
+      }
+    } catch (e: Exception) {
+      e.rethrowIfInterrupted()
+      LOG.info("Unable to read incremental verification records $recordsFile: ${e.message}")
+      null
+    }
+  }
+
+  private fun saveRecords(pluginDirectory: Path, recordsFile: Path, records: Map<String, ClassVerificationRecord>) {
+    try {
+      pluginDirectory.createDir()
+    } catch (e: Exception) {
+      e.rethrowIfInterrupted()
+      LOG.info("Unable to create directory of incremental verification records $pluginDirectory: ${e.message}")
+      return
+    }
+    val tempFile = Files.createTempFile(pluginDirectory, recordsFile.simpleName, ".tmp")
+    try {
+      DataOutputStream(BufferedOutputStream(Files.newOutputStream(tempFile))).use { output ->
+        output.writeInt(RECORDS_FORMAT_VERSION)
+        output.writeString(configurationHash)
+        output.writeInt(records.size)
+        for ((className, record) in records) {
+          output.writeString(className)
+          output.writeInt(record.symbolFingerprints.size)
+          for ((symbol, fingerprint) in record.symbolFingerprints) {
+            output.writeString(symbol)
+            output.writeLong(fingerprint)
+          }
+        }
+      }
+      Files.move(tempFile, recordsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+    } catch (e: Exception) {
+      e.rethrowIfInterrupted()
+      LOG.info("Unable to save incremental verification records $recordsFile: ${e.message}")
+    } finally {
+      tempFile.deleteQuietly()
+    }
+  }
+
+  private fun DataOutputStream.writeString(string: String) {
+    val bytes = string.toByteArray()
+    writeInt(bytes.size)
+    write(bytes)
+  }
+
+  private fun DataInputStream.readString(): String {
+    val bytes = ByteArray(readInt())
+    readFully(bytes)
+    return String(bytes)
+  }
+
+  private inner class TargetRecords : LinkedHashMap<PluginVerificationTarget, Map<String, ClassVerificationRecord>>(4, 0.75f, true) {
+    override fun removeEldestEntry(eldest: MutableMap.MutableEntry<PluginVerificationTarget, Map<String, ClassVerificationRecord>>) =
+      size > maxTargetsPerPlugin
+  }
+}
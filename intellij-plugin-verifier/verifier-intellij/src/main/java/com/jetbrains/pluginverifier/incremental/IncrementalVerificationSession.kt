@@ -0,0 +1,80 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.pluginverifier.incremental
+
+import com.jetbrains.plugin.structure.classes.resolvers.Resolver
+import com.jetbrains.pluginverifier.verifiers.ClassVerificationListener
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Records [ClassVerificationRecord]s of classes verified in one plugin verification
+ * and checks which [previous records] [previousRecords] are still valid for the current [resolver].
+ *
+ * Lookups in [recordingResolver] and registrations reported to [recordRegistration]
+ * are attributed to the class being verified on the calling thread.
+ * Classes with registrations are not recorded. The body of the verified class itself is recorded too,
+ * because code analyses read its methods and static initializer.
+ */
+internal class IncrementalVerificationSession(
+  private val previousRecords: Map<String, ClassVerificationRecord>,
+  private val resolver: Resolver
+) : ClassVerificationListener {
+
+  private val fingerprints = SymbolFingerprints(resolver)
+
+  private val currentClassRecord = ThreadLocal<ClassRecordBuilder>()
+
+  private val _records = ConcurrentHashMap<String, ClassVerificationRecord>()
+
+  val recordingResolver: Resolver = RecordingResolver(resolver, this)
+
+  val records: Map<String, ClassVerificationRecord>
+    get() = _records
+
+  /**
+   * Returns `true` if [className] has a previous record and none of the symbols
+   * it depends on has changed, or `false` if the class must be verified again.
+   */
+  fun isUpToDate(className: String): Boolean {
+    val record = previousRecords[className] ?: return false
+    val upToDate = record.symbolFingerprints.all { (symbol, fingerprint) -> fingerprints.getFingerprint(symbol) == fingerprint }
+    if (upToDate) {
+      _records[className] = record
+    }
+    return upToDate
+  }
+
+  override fun classVerificationStarted(className: String) {
+    currentClassRecord.set(ClassRecordBuilder())
+    recordSymbol(SymbolFingerprints.classBodySymbol(className)) {
+      SymbolFingerprints.classBodyFingerprint(resolver.resolveClass(className))
+    }
+  }
+
+  override fun classVerificationFinished(className: String) {
+    val recordBuilder = currentClassRecord.get() ?: return
+    currentClassRecord.remove()
+    if (!recordBuilder.hasRegistrations) {
+      _records[className] = ClassVerificationRecord(recordBuilder.symbolFingerprints)
+    }
+  }
+
+  fun recordSymbol(symbol: String, fingerprint: () -> Long) {
+    val recordBuilder = currentClassRecord.get() ?: return
+    if (symbol !in recordBuilder.symbolFingerprints) {
+      recordBuilder.symbolFingerprints[symbol] = fingerprints.getOrPutFingerprint(symbol, fingerprint)
+    }
+  }
+
+  fun recordRegistration() {
+    currentClassRecord.get()?.hasRegistrations = true
+  }
+
+  private class ClassRecordBuilder {
+    val symbolFingerprints = hashMapOf<String, Long>()
+
+    var hasRegistrations = false
+  }
+}
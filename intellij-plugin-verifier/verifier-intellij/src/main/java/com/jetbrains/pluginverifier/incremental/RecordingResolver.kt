@@ -0,0 +1,82 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.pluginverifier.incremental
+
+import com.jetbrains.plugin.structure.classes.resolvers.ResolutionResult
+import com.jetbrains.plugin.structure.classes.resolvers.Resolver
+import com.jetbrains.plugin.structure.classes.resolvers.ResourceBundleNameSet
+import com.jetbrains.pluginverifier.verifiers.hierarchy.ClassHierarchyOracle
+import org.objectweb.asm.tree.ClassNode
+import java.util.*
+
+/**
+ * Resolver that delegates to [delegate] and records looked up symbols
+ * to the class being verified in the [session].
+ *
+ * Classes of hierarchies memoized by [ClassHierarchyOracle] are recorded
+ * when the oracle reports them to [classLookedUp].
+ */
+internal class RecordingResolver(
+  private val delegate: Resolver,
+  private val session: IncrementalVerificationSession
+) : Resolver(), ClassHierarchyOracle.LookupListener {
+
+  override val readMode
+    get() = delegate.readMode
+
+  override val allClasses
+    get() = delegate.allClasses
+
+  override val allPackages
+    get() = delegate.allPackages
+
+  override val allBundleNameSet: ResourceBundleNameSet
+    get() = delegate.allBundleNameSet
+
+  override fun resolveClass(className: String): ResolutionResult<ClassNode> {
+    val resolutionResult = delegate.resolveClass(className)
+    session.recordSymbol(SymbolFingerprints.classSymbol(className)) {
+      SymbolFingerprints.classFingerprint(resolutionResult)
+    }
+    return resolutionResult
+  }
+
+  override fun classLookedUp(className: String) {
+    session.recordSymbol(SymbolFingerprints.classSymbol(className)) {
+      SymbolFingerprints.classFingerprint(delegate.resolveClass(className))
+    }
+  }
+
+  override fun resolveExactPropertyResourceBundle(baseName: String, locale: Locale): ResolutionResult<PropertyResourceBundle> {
+    val resolutionResult = delegate.resolveExactPropertyResourceBundle(baseName, locale)
+    session.recordSymbol(SymbolFingerprints.bundleSymbol(baseName, locale)) {
+      SymbolFingerprints.bundleFingerprint(resolutionResult)
+    }
+    return resolutionResult
+  }
+
+  override fun containsClass(className: String): Boolean {
+    val containsClass = delegate.containsClass(className)
+    session.recordSymbol(SymbolFingerprints.classPresenceSymbol(className)) {
+      SymbolFingerprints.presenceFingerprint(containsClass)
+    }
+    return containsClass
+  }
+
+  override fun containsPackage(packageName: String): Boolean {
+    val containsPackage = delegate.containsPackage(packageName)
+    session.recordSymbol(SymbolFingerprints.packagePresenceSymbol(packageName)) {
+      SymbolFingerprints.presenceFingerprint(containsPackage)
+    }
+    return containsPackage
+  }
+
+  override fun processAllClasses(processor: (ResolutionResult<ClassNode>) -> Boolean) =
+    delegate.processAllClasses(processor)
+
+  override fun close() = Unit
+
+  override fun toString() = delegate.toString()
+}
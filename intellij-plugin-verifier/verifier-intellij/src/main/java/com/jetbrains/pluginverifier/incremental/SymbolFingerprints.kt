@@ -0,0 +1,266 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.pluginverifier.incremental
+
+import com.google.common.hash.Hasher
+import com.google.common.hash.Hashing
+import com.jetbrains.plugin.structure.classes.resolvers.FileOrigin
+import com.jetbrains.plugin.structure.classes.resolvers.JdkFileOrigin
+import com.jetbrains.plugin.structure.classes.resolvers.ResolutionResult
+import com.jetbrains.plugin.structure.classes.resolvers.Resolver
+import com.jetbrains.plugin.structure.classes.resolvers.findOriginOfType
+import com.jetbrains.plugin.structure.ide.classes.IdeFileOrigin
+import com.jetbrains.plugin.structure.intellij.classes.locator.PluginFileOrigin
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Type
+import org.objectweb.asm.tree.AnnotationNode
+import org.objectweb.asm.tree.ClassNode
+import org.objectweb.asm.tree.MethodNode
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Fingerprints of symbols looked up in a [Resolver] during verification of a class.
+ *
+ * A symbol is a class, a resource bundle or a package. The fingerprint of a class covers
+ * its API (signatures, hierarchy, access flags and annotations of the class and its members,
+ * names and annotations of method parameters)
+ * and the kind of its origin, but not the bodies of its methods, because verification of a class
+ * depends only on the API of the classes it references.
+ *
+ * Code analyses of a verified class, like evaluation of property keys passed to methods,
+ * also read bodies of its methods and its static initializer. So the body fingerprint
+ * of a class covers the whole class file, and it is recorded for every verified class.
+ *
+ * Fingerprints are memoized, so every symbol is evaluated once per verification.
+ */
+internal class SymbolFingerprints(private val resolver: Resolver) {
+
+  private val fingerprints = ConcurrentHashMap<String, Long>()
+
+  fun getFingerprint(symbol: String): Long =
+    fingerprints[symbol] ?: evaluate(symbol).also { fingerprints.putIfAbsent(symbol, it) }
+
+  fun getOrPutFingerprint(symbol: String, fingerprint: () -> Long): Long =
+    fingerprints[symbol] ?: fingerprint().also { fingerprints.putIfAbsent(symbol, it) }
+
+  private fun evaluate(symbol: String): Long {
+    val name = symbol.substring(2)
+    return when (symbol[0]) {
+      CLASS_SYMBOL -> classFingerprint(resolver.resolveClass(name))
+      CLASS_BODY_SYMBOL -> classBodyFingerprint(resolver.resolveClass(name))
+      CLASS_PRESENCE_SYMBOL -> presenceFingerprint(resolver.containsClass(name))
+      PACKAGE_PRESENCE_SYMBOL -> presenceFingerprint(resolver.containsPackage(name))
+      BUNDLE_SYMBOL -> {
+        val baseName = name.substringBeforeLast(':')
+        val locale = parseLocale(name.substringAfterLast(':'))
+        bundleFingerprint(resolver.resolveExactPropertyResourceBundle(baseName, locale))
+      }
+      else -> throw IllegalArgumentException("Unknown symbol: $symbol")
+    }
+  }
+
+  companion object {
+    private const val CLASS_SYMBOL = 'c'
+
+    private const val CLASS_BODY_SYMBOL = 'm'
+
+    private const val CLASS_PRESENCE_SYMBOL = 'h'
+
+    private const val PACKAGE_PRESENCE_SYMBOL = 'p'
+
+    private const val BUNDLE_SYMBOL = 'b'
+
+    private const val NOT_FOUND_FINGERPRINT = 0L
+
+    private const val PRESENT_FINGERPRINT = 1L
+
+    private val hashFunction = Hashing.murmur3_128()
+
+    fun classSymbol(className: String) = "$CLASS_SYMBOL:$className"
+
+    fun classBodySymbol(className: String) = "$CLASS_BODY_SYMBOL:$className"
+
+    fun classPresenceSymbol(className: String) = "$CLASS_PRESENCE_SYMBOL:$className"
+
+    fun packagePresenceSymbol(packageName: String) = "$PACKAGE_PRESENCE_SYMBOL:$packageName"
+
+    fun bundleSymbol(baseName: String, locale: Locale) = "$BUNDLE_SYMBOL:$baseName:$locale"
+
+    private fun parseLocale(locale: String): Locale {
+      val parts = locale.split('_', limit = 3)
+      return Locale(parts[0], parts.getOrElse(1) { "" }, parts.getOrElse(2) { "" })
+    }
+
+    fun presenceFingerprint(present: Boolean) = if (present) PRESENT_FINGERPRINT else NOT_FOUND_FINGERPRINT
+
+    fun classFingerprint(resolutionResult: ResolutionResult<ClassNode>): Long =
+      when (resolutionResult) {
+        is ResolutionResult.Found -> hashFunction.newHasher()
+          .putString(getOriginKind(resolutionResult.fileOrigin), Charsets.UTF_8)
+          .putClassNode(resolutionResult.value)
+          .hash().asLong()
+        is ResolutionResult.Invalid -> failureFingerprint("invalid", resolutionResult.message)
+        is ResolutionResult.FailedToRead -> failureFingerprint("failed", resolutionResult.reason)
+        ResolutionResult.NotFound -> NOT_FOUND_FINGERPRINT
+      }
+
+    fun classBodyFingerprint(resolutionResult: ResolutionResult<ClassNode>): Long =
+      when (resolutionResult) {
+        is ResolutionResult.Found -> try {
+          val classWriter = ClassWriter(0)
+          resolutionResult.value.accept(classWriter)
+          hashFunction.hashBytes(classWriter.toByteArray()).asLong()
+        } catch (e: Exception) {
+          failureFingerprint("unwritable", e.javaClass.name)
+        }
+        is ResolutionResult.Invalid -> failureFingerprint("invalid", resolutionResult.message)
+        is ResolutionResult.FailedToRead -> failureFingerprint("failed", resolutionResult.reason)
+        ResolutionResult.NotFound -> NOT_FOUND_FINGERPRINT
+      }
+
+    fun bundleFingerprint(resolutionResult: ResolutionResult<PropertyResourceBundle>): Long =
+      when (resolutionResult) {
+        is ResolutionResult.Found -> {
+          val bundle = resolutionResult.value
+          val hasher = hashFunction.newHasher()
+          for (key in bundle.keySet().sorted()) {
+            hasher.putNullableString(key).putNullableString(bundle.getObject(key)?.toString())
+          }
+          hasher.hash().asLong()
+        }
+        is ResolutionResult.Invalid -> failureFingerprint("invalid", resolutionResult.message)
+        is ResolutionResult.FailedToRead -> failureFingerprint("failed", resolutionResult.reason)
+        ResolutionResult.NotFound -> NOT_FOUND_FINGERPRINT
+      }
+
+    private fun failureFingerprint(kind: String, reason: String) =
+      hashFunction.newHasher().putNullableString(kind).putNullableString(reason).hash().asLong()
+
+    /**
+     * Returns the kind of the origin that the verification distinguishes:
+     * the plugin that contains the class, the IDE, or the JDK.
+     */
+    private fun getOriginKind(fileOrigin: FileOrigin): String {
+      val pluginOrigin = fileOrigin.findOriginOfType<PluginFileOrigin>()
+      if (pluginOrigin != null) {
+        return "plugin:" + pluginOrigin.idePlugin.pluginId + ":" + pluginOrigin.idePlugin.pluginVersion
+      }
+      if (fileOrigin.findOriginOfType<IdeFileOrigin>() != null) {
+        return "ide"
+      }
+      if (fileOrigin.findOriginOfType<JdkFileOrigin>() != null) {
+        return "jdk"
+      }
+      return fileOrigin.javaClass.name
+    }
+
+    private fun Hasher.putNullableString(value: String?): Hasher =
+      if (value == null) putInt(-1) else putInt(value.length).putString(value, Charsets.UTF_8)
+
+    private fun Hasher.putStrings(values: List<String>?): Hasher {
+      putInt(values?.size ?: -1)
+      values?.forEach { putNullableString(it) }
+      return this
+    }
+
+    private fun Hasher.putClassNode(classNode: ClassNode): Hasher {
+      putInt(classNode.access)
+      putNullableString(classNode.name)
+      putNullableString(classNode.signature)
+      putNullableString(classNode.superName)
+      putStrings(classNode.interfaces)
+      putNullableString(classNode.outerClass)
+      putNullableString(classNode.outerMethod)
+      putNullableString(classNode.outerMethodDesc)
+      putNullableString(classNode.nestHostClass)
+      putStrings(classNode.nestMembers)
+      putInt(classNode.innerClasses.size)
+      for (innerClass in classNode.innerClasses) {
+        putInt(innerClass.access)
+        putNullableString(innerClass.name)
+        putNullableString(innerClass.outerName)
+        putNullableString(innerClass.innerName)
+      }
+      putAnnotations(classNode.visibleAnnotations)
+      putAnnotations(classNode.invisibleAnnotations)
+
+      putInt(classNode.fields.size)
+      for (field in classNode.fields) {
+        putInt(field.access)
+        putNullableString(field.name)
+        putNullableString(field.desc)
+        putNullableString(field.signature)
+        putNullableString(field.value?.toString())
+        putAnnotations(field.visibleAnnotations)
+        putAnnotations(field.invisibleAnnotations)
+      }
+
+      putInt(classNode.methods.size)
+      for (method in classNode.methods) {
+        putInt(method.access)
+        putNullableString(method.name)
+        putNullableString(method.desc)
+        putNullableString(method.signature)
+        putStrings(method.exceptions)
+        putAnnotations(method.visibleAnnotations)
+        putAnnotations(method.invisibleAnnotations)
+        putParameterAnnotations(method.visibleParameterAnnotations)
+        putParameterAnnotations(method.invisibleParameterAnnotations)
+        putParameterNames(method)
+        putAnnotationValue(method.annotationDefault)
+      }
+      return this
+    }
+
+    private fun Hasher.putParameterAnnotations(parameterAnnotations: Array<List<AnnotationNode>?>?) {
+      putInt(parameterAnnotations?.size ?: -1)
+      parameterAnnotations?.forEach { putAnnotations(it) }
+    }
+
+    /**
+     * Parameter names are used, for example, to detect default values of property keys,
+     * so names from both the `MethodParameters` attribute and the local variables table are hashed.
+     */
+    private fun Hasher.putParameterNames(method: MethodNode) {
+      putStrings(method.parameters?.map { it.name })
+      val parametersSlotsEnd = Type.getArgumentsAndReturnSizes(method.desc) shr 2
+      val parameterVariables = method.localVariables.orEmpty()
+        .filter { it.index < parametersSlotsEnd }
+        .sortedBy { it.index }
+      putInt(parameterVariables.size)
+      for (variable in parameterVariables) {
+        putInt(variable.index)
+        putNullableString(variable.name)
+      }
+    }
+
+    private fun Hasher.putAnnotations(annotations: List<AnnotationNode>?) {
+      putInt(annotations?.size ?: -1)
+      annotations?.forEach { putAnnotation(it) }
+    }
+
+    private fun Hasher.putAnnotation(annotation: AnnotationNode) {
+      putNullableString(annotation.desc)
+      putAnnotationValue(annotation.values)
+    }
+
+    private fun Hasher.putAnnotationValue(value: Any?) {
+      when (value) {
+        null -> putInt(-1)
+        is AnnotationNode -> putAnnotation(value)
+        is List<*> -> {
+          putInt(value.size)
+          value.forEach { putAnnotationValue(it) }
+        }
+        is Array<*> -> {
+          putInt(value.size)
+          value.forEach { putAnnotationValue(it) }
+        }
+        else -> putNullableString(value.toString())
+      }
+    }
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.pluginverifier.jdk
+
+import com.jetbrains.plugin.structure.base.utils.*
+import org.slf4j.LoggerFactory
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Persistent storage of indexes of JDK images (`<JDK>/lib/modules`) in [indexDirectory].
+ * An index maps names of all classes of the image to names of their modules.
+ *
+ * An index is reused as long as the image's path, size and modification time
+ * are equal to those recorded when the index was built.
+ *
+ * Indexes of images that were deleted or changed, for example along with IDEs bundling the JDK,
+ * are removed when the first cache of [indexDirectory] is created in this process.
+ */
+class JdkClassIndexCache(private val indexDirectory: Path) {
+
+  private companion object {
+    private val LOG = LoggerFactory.getLogger(JdkClassIndexCache::class.java)
+
+    private const val INDEX_FORMAT_VERSION = 1
+
+    private const val INDEX_SUFFIX = ".jdk-index"
+
+    private val cleanedDirectories: MutableSet<Path> = ConcurrentHashMap.newKeySet()
+  }
+
+  private data class ImageStamp(val path: String, val size: Long, val lastModified: Long)
+
+  init {
+    if (cleanedDirectories.add(indexDirectory.toAbsolutePath().normalize())) {
+      removeOutdatedIndexes()
+    }
+  }
+
+  /**
+   * Returns the index of [imagePath] saved in this cache,
+   * or builds the index with [indexBuilder] and saves it.
+   */
+  fun getOrBuild(imagePath: Path, indexBuilder: () -> Map<String, String>): Map<String, String> {
+    val realPath = imagePath.toRealPath()
+    val imageStamp = ImageStamp(realPath.toString(), Files.size(realPath), Files.getLastModifiedTime(realPath).toMillis())
+    val indexFile = indexDirectory.resolve(sha256(imageStamp.path) + INDEX_SUFFIX)
+    val savedIndex = readIndex(indexFile, imageStamp)
+    if (savedIndex != null) {
+      return savedIndex
+    }
+    val index = indexBuilder()
+    saveIndex(indexFile, imageStamp, index)
+    return index
+  }
+
+  private fun removeOutdatedIndexes() {
+    for (indexFile in indexDirectory.listFiles()) {
+      if (indexFile.simpleName.endsWith(INDEX_SUFFIX) && isOutdated(indexFile)) {
+        LOG.debug("Removing outdated JDK index $indexFile")
+        indexFile.deleteLogged()
+      }
+    }
+  }
+
+  private fun isOutdated(indexFile: Path): Boolean =
+    try {
+      DataInputStream(BufferedInputStream(Files.newInputStream(indexFile))).use { input ->
+        if (input.readInt() != INDEX_FORMAT_VERSION) {
+          return true
+        }
+        val imagePath = Paths.get(input.readString())
+        val size = input.readLong()
+        val lastModified = input.readLong()
+        !imagePath.exists() || Files.size(imagePath) != size || Files.getLastModifiedTime(imagePath).toMillis() != lastModified
+      }
+    } catch (e: Exception) {
+      e.rethrowIfInterrupted()
+      true
+    }
+
+  private fun sha256(string: String): String =
+    MessageDigest.getInstance("SHA-256").digest(string.toByteArray()).joinToString("") { "%02x".format(it) }
+
+  private fun readIndex(indexFile: Path, imageStamp: ImageStamp): Map<String, String>? {
+    if (!indexFile.exists()) {
+      return null
+    }
+    return try {
+      DataInputStream(BufferedInputStream(Files.newInputStream(indexFile))).use { input ->
+        if (input.readInt() != INDEX_FORMAT_VERSION) {
+          return null
+        }
+        val savedStamp = ImageStamp(input.readString(), input.readLong(), input.readLong())
+        if (savedStamp != imageStamp) {
+          return null
+        }
+        val classCount = input.readInt()
+        val classNameToModuleName = HashMap<String, String>(classCount * 4 / 3 + 1)
+        repeat(input.readInt()) {
+          val moduleName = input.readString()
+          repeat(input.readInt()) {
+            classNameToModuleName[input.readString()] = moduleName
+          }
+        }
+        classNameToModuleName
+      }
+    } catch (e: Exception) {
+      e.rethrowIfInterrupted()
+      LOG.info("Unable to read JDK index $indexFile of ${imageStamp.path}, it will be rebuilt: ${e.message}")
+      null
+    }
+  }
+
+  private fun saveIndex(indexFile: Path, imageStamp: ImageStamp, classNameToModuleName: Map<String, String>) {
+    try {
+      indexDirectory.createDir()
+    } catch (e: Exception) {
+      e.rethrowIfInterrupted()
+      LOG.info("Unable to create directory of JDK indexes $indexDirectory: ${e.message}")
+      return
+    }
+    val tempFile = Files.createTempFile(indexDirectory, indexFile.fileName.toString(), ".tmp")
+    try {
+      DataOutputStream(BufferedOutputStream(Files.newOutputStream(tempFile))).use { output ->
+        output.writeInt(INDEX_FORMAT_VERSION)
+        output.writeString(imageStamp.path)
+        output.writeLong(imageStamp.size)
+        output.writeLong(imageStamp.lastModified)
+        output.writeInt(classNameToModuleName.size)
+        val moduleToClasses = classNameToModuleName.keys.groupBy { classNameToModuleName.getValue(it) }
+        output.writeInt(moduleToClasses.size)
+        for ((moduleName, classNames) in moduleToClasses) {
+          output.writeString(moduleName)
+          output.writeInt(classNames.size)
+          classNames.forEach { output.writeString(it) }
+        }
+      }
+      Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+    } catch (e: Exception) {
+      e.rethrowIfInterrupted()
+      LOG.info("Unable to save JDK index $indexFile of ${imageStamp.path}: ${e.message}")
+    } finally {
+      tempFile.deleteQuietly()
+    }
+  }
+
+  private fun DataOutputStream.writeString(string: String) {
+    val bytes = string.toByteArray()
+    writeInt(bytes.size)
+    write(bytes)
+  }
+
+  private fun DataInputStream.readString(): String {
+    val bytes = ByteArray(readInt())
+    readFully(bytes)
+    return String(bytes)
+  }
+}
@@ -4,18 +4,29 @@
 
 package com.jetbrains.pluginverifier.jdk
 
+import com.google.common.cache.CacheStats
+import com.jetbrains.plugin.structure.classes.resolvers.CacheResolver
 import com.jetbrains.plugin.structure.classes.resolvers.Resolver
 import java.io.Closeable
 import java.nio.file.Path
 
 /**
  * Holder of class files of the JDK.
+ *
+ * Classes resolved by [jdkResolver] are usually cached in a [CacheResolver],
+ * which is shared by all verifications that use this JDK.
  */
 data class JdkDescriptor(
   val jdkPath: Path,
   val jdkResolver: Resolver,
   val jdkVersion: JdkVersion
 ) : Closeable {
+  /**
+   * Statistics of the shared JDK class cache, or `null` if [jdkResolver] is not cached.
+   */
+  val classCacheStats: CacheStats?
+    get() = (jdkResolver as? CacheResolver)?.cacheStats
+
   override fun toString(): String = jdkPath.toAbsolutePath().toString()
 
   override fun close() = jdkResolver.close()
@@ -5,6 +5,7 @@
 package com.jetbrains.pluginverifier.jdk
 
 import com.jetbrains.plugin.structure.base.utils.*
+import com.jetbrains.plugin.structure.classes.resolvers.CacheResolver
 import com.jetbrains.plugin.structure.classes.resolvers.CompositeResolver
 import com.jetbrains.plugin.structure.classes.resolvers.JdkFileOrigin
 import com.jetbrains.plugin.structure.classes.resolvers.Resolver
@@ -15,23 +16,35 @@ import java.nio.file.Path
 
 object JdkDescriptorCreator {
 
-  fun createBundledJdkDescriptor(ide: Ide, readMode: Resolver.ReadMode = Resolver.ReadMode.FULL): JdkDescriptor? {
+  private const val JDK_CLASS_CACHE_BYTES = 64L * 1024 * 1024
+
+  /**
+   * Creates [JdkDescriptor] of the JDK bundled to the [ide], if any.
+   * [indexDirectory], if specified, is used to persist indexes of JDK 9+ images.
+   */
+  fun createBundledJdkDescriptor(
+    ide: Ide,
+    readMode: Resolver.ReadMode = Resolver.ReadMode.FULL,
+    indexDirectory: Path? = null
+  ): JdkDescriptor? {
     val bundledJdkPath = listOf(
       ide.idePath.resolve("jbr"),
       ide.idePath.resolve("jre64")
     ).find { it.isDirectory } ?: return null
-    return createJdkDescriptor(bundledJdkPath, readMode, ide.version)
+    return createJdkDescriptor(bundledJdkPath, readMode, ide.version, indexDirectory)
   }
 
   fun createJdkDescriptor(
     jdkPath: Path,
-    readMode: Resolver.ReadMode = Resolver.ReadMode.FULL
-  ): JdkDescriptor = createJdkDescriptor(jdkPath, readMode, null)
+    readMode: Resolver.ReadMode = Resolver.ReadMode.FULL,
+    indexDirectory: Path? = null
+  ): JdkDescriptor = createJdkDescriptor(jdkPath, readMode, null, indexDirectory)
 
   private fun createJdkDescriptor(
     jdkPath: Path,
     readMode: Resolver.ReadMode,
-    bundledTo: IdeVersion?
+    bundledTo: IdeVersion?,
+    indexDirectory: Path?
   ): JdkDescriptor {
     val fullJavaVersion =
       readFullVersion(jdkPath)
@@ -44,7 +57,7 @@ object JdkDescriptorCreator {
     return if (jdkVersion.majorVersion < 9) {
       createPreJava9(jdkPath, readMode, jdkVersion)
     } else {
-      createJava9Plus(jdkPath, readMode, jdkVersion)
+      createJava9Plus(jdkPath, readMode, jdkVersion, indexDirectory)
     }
   }
 
@@ -79,9 +92,9 @@ object JdkDescriptorCreator {
     return null
   }
 
-  private fun createJava9Plus(jdkPath: Path, readMode: Resolver.ReadMode, jdkVersion: JdkVersion): JdkDescriptor {
-    val resolver = JdkJImageResolver(jdkPath, readMode)
-    return JdkDescriptor(jdkPath, resolver, jdkVersion)
+  private fun createJava9Plus(jdkPath: Path, readMode: Resolver.ReadMode, jdkVersion: JdkVersion, indexDirectory: Path?): JdkDescriptor {
+    val resolver = JdkJImageResolver(jdkPath, readMode, indexDirectory)
+    return JdkDescriptor(jdkPath, CacheResolver(resolver, maximumClassesBytes = JDK_CLASS_CACHE_BYTES, compactClasses = true), jdkVersion)
   }
 
   private fun createPreJava9(jdkPath: Path, readMode: Resolver.ReadMode, jdkVersion: JdkVersion): JdkDescriptor {
@@ -99,7 +112,7 @@ object JdkDescriptorCreator {
     }
 
     val jarResolver = CompositeResolver.create(buildJarOrZipFileResolvers(jars, readMode, JdkFileOrigin(jdkPath)))
-    return JdkDescriptor(jdkPath, jarResolver, jdkVersion)
+    return JdkDescriptor(jdkPath, CacheResolver(jarResolver, maximumClassesBytes = JDK_CLASS_CACHE_BYTES, compactClasses = true), jdkVersion)
   }
 
 }
@@ -20,8 +20,15 @@ import java.util.stream.Collectors
 
 /**
  * [Resolver] that reads class files from JImage corresponding to `<JDK>/lib/modules` file of JDK 9 and later.
+ *
+ * If [indexDirectory] is specified, the names of classes of the image are saved there,
+ * so the image is not walked again when a resolver of the same JDK is created.
  */
-class JdkJImageResolver(jdkPath: Path, override val readMode: ReadMode) : Resolver() {
+class JdkJImageResolver(
+  jdkPath: Path,
+  override val readMode: ReadMode,
+  indexDirectory: Path? = null
+) : Resolver() {
   private companion object {
 
     val JRT_SCHEME_URI: URI = URI.create("jrt:/")
@@ -40,8 +47,12 @@ class JdkJImageResolver(jdkPath: Path, override val readMode: ReadMode) : Resolv
   private val closeableResources = arrayListOf<Closeable>()
 
   init {
+    var imageJdkPath = jdkPath
     val fileSystem = try {
-      getOrCreateJrtFileSystem(jdkPath)
+      getExistingJrtFileSystem()?.also {
+        //The file system of the running JDK is used.
+        imageJdkPath = Paths.get(System.getProperty("java.home"))
+      } ?: createJrtFileSystem(jdkPath)
     } catch (e: Exception) {
       throw RuntimeException("Unable to read content from jrt:/ file system.", e)
     }
@@ -50,7 +61,20 @@ class JdkJImageResolver(jdkPath: Path, override val readMode: ReadMode) : Resolv
 
     modulesPath = fileSystem.getPath("/modules")
 
-    classNameToModuleName = Files.walk(modulesPath).use { stream ->
+    val imagePath = imageJdkPath.resolve("lib").resolve("modules")
+    classNameToModuleName = if (indexDirectory != null && imagePath.exists()) {
+      JdkClassIndexCache(indexDirectory).getOrBuild(imagePath) { walkModules() }
+    } else {
+      walkModules()
+    }
+
+    for (className in classNameToModuleName.keys) {
+      packageSet.addPackagesOfClass(className)
+    }
+  }
+
+  private fun walkModules(): Map<String, String> =
+    Files.walk(modulesPath).use { stream ->
       stream
         .filter { p -> p.fileName.toString().endsWith(".class") }
         .collect(
@@ -62,29 +86,27 @@ class JdkJImageResolver(jdkPath: Path, override val readMode: ReadMode) : Resolv
         )
     }
 
-    for (className in classNameToModuleName.keys) {
-      packageSet.addPackagesOfClass(className)
-    }
-  }
-
-  private fun getOrCreateJrtFileSystem(jdkPath: Path): FileSystem {
+  private fun getExistingJrtFileSystem(): FileSystem? =
     try {
-      return FileSystems.getFileSystem(JRT_SCHEME_URI)
+      FileSystems.getFileSystem(JRT_SCHEME_URI)
     } catch (e: Exception) {
-      val jrtJar = jdkPath.resolve("lib").resolve("jrt-fs.jar")
-      require(jrtJar.exists()) { "Invalid JDK: $jrtJar does not exist" }
-
-      val classLoader = URLClassLoader(arrayOf(jrtJar.toUri().toURL()))
-      return try {
-        val fileSystem = FileSystems.newFileSystem(JRT_SCHEME_URI, hashMapOf<String, Any>(), classLoader)
-        closeableResources += classLoader
-        fileSystem
-      } catch (e: FileSystemAlreadyExistsException) {
-        classLoader.closeLogged()
-
-        //File system might be already created concurrently. Try to get existing file system again.
-        FileSystems.getFileSystem(JRT_SCHEME_URI)
-      }
+      null
+    }
+
+  private fun createJrtFileSystem(jdkPath: Path): FileSystem {
+    val jrtJar = jdkPath.resolve("lib").resolve("jrt-fs.jar")
+    require(jrtJar.exists()) { "Invalid JDK: $jrtJar does not exist" }
+
+    val classLoader = URLClassLoader(arrayOf(jrtJar.toUri().toURL()))
+    return try {
+      val fileSystem = FileSystems.newFileSystem(JRT_SCHEME_URI, hashMapOf<String, Any>(), classLoader)
+      closeableResources += classLoader
+      fileSystem
+    } catch (e: FileSystemAlreadyExistsException) {
+      classLoader.closeLogged()
+
+      //File system might be already created concurrently. Try to get existing file system again.
+      FileSystems.getFileSystem(JRT_SCHEME_URI)
     }
   }
 
@@ -110,12 +132,14 @@ class JdkJImageResolver(jdkPath: Path, override val readMode: ReadMode) : Resolv
   override fun resolveClass(className: String): ResolutionResult<ClassNode> {
     val moduleName = classNameToModuleName[className]
     if (moduleName != null) {
-      val classPath = modulesPath.resolve(moduleName).resolve(className.replace("/", nameSeparator) + ".class")
-      return readClass(className, classPath)
+      return readClass(className, getClassPath(moduleName, className))
     }
     return ResolutionResult.NotFound
   }
 
+  private fun getClassPath(moduleName: String, className: String): Path =
+    modulesPath.resolve(moduleName).resolve(className.replace("/", nameSeparator) + ".class")
+
   private fun readClass(className: String, classPath: Path): ResolutionResult<ClassNode> =
     try {
       val classNode = readClassNode(className, classPath)
@@ -139,13 +163,10 @@ class JdkJImageResolver(jdkPath: Path, override val readMode: ReadMode) : Resolv
   override fun containsPackage(packageName: String) = packageSet.containsPackage(packageName)
 
   override fun processAllClasses(processor: (ResolutionResult<ClassNode>) -> Boolean): Boolean {
-    Files.walk(modulesPath).use { stream ->
-      for (classPath in stream.filter { it.fileName.toString().endsWith(".class") }) {
-        val className = getClassName(classPath)
-        val result = readClass(className, classPath)
-        if (!processor(result)) {
-          return false
-        }
+    for ((className, moduleName) in classNameToModuleName) {
+      val result = readClass(className, getClassPath(moduleName, className))
+      if (!processor(result)) {
+        return false
       }
     }
     return true
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.pluginverifier.reporting
+
+import com.jetbrains.pluginverifier.PluginVerificationResult
+import com.jetbrains.pluginverifier.PluginVerificationTarget
+import com.jetbrains.pluginverifier.repository.PluginInfo
+import org.slf4j.LoggerFactory
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
+import kotlin.concurrent.write
+
+/**
+ * Reportage that saves verification results by [delegate] on a dedicated writer thread,
+ * so that verification threads don't wait for the disk.
+ *
+ * At most [queueCapacity] results wait to be saved. When the queue is full,
+ * [reportVerificationResult] blocks until the writer catches up.
+ * The writer passes all results accumulated since its previous write
+ * to [PluginVerificationReportage.reportVerificationResults] at once.
+ * Verification stages and ignored plugins are passed to [delegate] immediately.
+ *
+ * If the [delegate] fails to save results, the remaining results are discarded,
+ * and the failure is rethrown by subsequent [reportVerificationResult] and by [close].
+ * Results reported concurrently with [close] are either saved or rejected, but never lost.
+ * If a thread is interrupted while waiting for space in the queue, its result is not saved
+ * and the interrupted status of the thread is restored.
+ */
+class AsyncPluginVerificationReportage(
+  private val delegate: PluginVerificationReportage,
+  queueCapacity: Int = DEFAULT_QUEUE_CAPACITY
+) : PluginVerificationReportage {
+
+  companion object {
+    private val LOG = LoggerFactory.getLogger(AsyncPluginVerificationReportage::class.java)
+
+    const val DEFAULT_QUEUE_CAPACITY = 64
+
+    private val END_OF_RESULTS = Any()
+  }
+
+  private val queue = ArrayBlockingQueue<Any>(queueCapacity)
+
+  private val writerThread = Thread({ writeResults() }, "verification-results-writer").apply {
+    isDaemon = true
+    start()
+  }
+
+  /**
+   * Reporting threads hold the read lock while putting results to the queue,
+   * so that [close] puts the end of results after all of them.
+   */
+  private val closeLock = ReentrantReadWriteLock()
+
+  private var isClosed = false
+
+  @Volatile
+  private var writeError: Throwable? = null
+
+  override fun logVerificationStage(stageMessage: String) {
+    delegate.logVerificationStage(stageMessage)
+  }
+
+  override fun logPluginVerificationIgnored(pluginInfo: PluginInfo, verificationTarget: PluginVerificationTarget, reason: String) {
+    delegate.logPluginVerificationIgnored(pluginInfo, verificationTarget, reason)
+  }
+
+  override fun reportVerificationResult(pluginVerificationResult: PluginVerificationResult) {
+    checkNoWriteError()
+    closeLock.read {
+      check(!isClosed) { "Reportage is closed" }
+      try {
+        while (!queue.offer(pluginVerificationResult, 1, TimeUnit.SECONDS)) {
+          checkNoWriteError()
+          check(writerThread.isAlive) { "Writer of verification results has stopped" }
+        }
+      } catch (ie: InterruptedException) {
+        Thread.currentThread().interrupt()
+        LOG.info("Verification result of ${pluginVerificationResult.plugin} is not saved because of interruption")
+      }
+    }
+  }
+
+  private fun checkNoWriteError() {
+    val error = writeError
+    if (error != null) {
+      throw IllegalStateException("Failed to save verification results", error)
+    }
+  }
+
+  private fun writeResults() {
+    val batch = arrayListOf<Any>()
+    while (true) {
+      batch += queue.take()
+      queue.drainTo(batch)
+      val endOfResults = batch.indexOf(END_OF_RESULTS)
+      val results = (if (endOfResults < 0) batch else batch.subList(0, endOfResults)).map { it as PluginVerificationResult }
+      if (results.isNotEmpty() && writeError == null) {
+        try {
+          delegate.reportVerificationResults(results)
+        } catch (e: Throwable) {
+          LOG.error("Failed to save verification results of ${results.size} plugins", e)
+          writeError = e
+        }
+      }
+      if (endOfResults >= 0) {
+        return
+      }
+      batch.clear()
+    }
+  }
+
+  /**
+   * Waits until all reported results are saved and closes the [delegate].
+   * Throws an exception if some results have not been saved.
+   */
+  override fun close() {
+    closeLock.write {
+      if (isClosed) {
+        return
+      }
+      isClosed = true
+      try {
+        while (writerThread.isAlive && !queue.offer(END_OF_RESULTS, 1, TimeUnit.SECONDS)) {
+          //Wait for the writer to take some results.
+        }
+        writerThread.join()
+      } catch (ie: InterruptedException) {
+        Thread.currentThread().interrupt()
+        LOG.info("Some verification results may not be saved because of interruption")
+      } finally {
+        delegate.close()
+      }
+    }
+    checkNoWriteError()
+  }
+}
@@ -4,7 +4,9 @@
 
 package com.jetbrains.pluginverifier.reporting
 
+import com.jetbrains.plugin.structure.base.utils.closeAll
 import com.jetbrains.plugin.structure.base.utils.closeLogged
+import com.jetbrains.plugin.structure.base.utils.create
 import com.jetbrains.plugin.structure.base.utils.replaceInvalidFileNameCharacters
 import com.jetbrains.pluginverifier.PluginVerificationResult
 import com.jetbrains.pluginverifier.PluginVerificationTarget
@@ -15,6 +17,8 @@ import com.jetbrains.pluginverifier.reporting.ignoring.*
 import com.jetbrains.pluginverifier.repository.PluginInfo
 import com.jetbrains.pluginverifier.repository.repositories.marketplace.UpdateInfo
 import org.slf4j.LoggerFactory
+import java.io.Writer
+import java.nio.file.Files
 import java.nio.file.Path
 import java.nio.file.Paths
 
@@ -43,18 +47,34 @@ import java.nio.file.Paths
  *             com.third.plugin/
  *                 ...
  * ```
+ *
+ * If [singleResultsFile] is `true`, results of all plugins verified against a target
+ * are appended to one `<IDE>/verification-results.txt` file instead of the `plugins/` directories,
+ * which avoids creating thousands of small files. Results reported at once are written
+ * and flushed together, and failures to write them are rethrown. Ignored problems are written
+ * to the same file along with the results instead of being collected to `all-ignored-problems.txt`.
  */
-class DirectoryBasedPluginVerificationReportage(private val targetDirectoryProvider: (PluginVerificationTarget) -> Path) : PluginVerificationReportage {
+class DirectoryBasedPluginVerificationReportage(
+  private val singleResultsFile: Boolean = false,
+  private val targetDirectoryProvider: (PluginVerificationTarget) -> Path
+) : PluginVerificationReportage {
 
   private val verificationLogger = LoggerFactory.getLogger("verification")
   private val messageReporters = listOf(LogReporter<String>(verificationLogger))
   private val ignoredPluginsReporters = listOf(IgnoredPluginsReporter(targetDirectoryProvider))
   private val allIgnoredProblemsReporter = AllIgnoredProblemsReporter(targetDirectoryProvider)
+  private val targetToResultsWriter = hashMapOf<PluginVerificationTarget, Writer>()
 
   override fun close() {
-    messageReporters.forEach { it.closeLogged() }
-    ignoredPluginsReporters.forEach { it.closeLogged() }
-    allIgnoredProblemsReporter.closeLogged()
+    try {
+      synchronized(this) {
+        targetToResultsWriter.values.toList().closeAll()
+      }
+    } finally {
+      messageReporters.forEach { it.closeLogged() }
+      ignoredPluginsReporters.forEach { it.closeLogged() }
+      allIgnoredProblemsReporter.closeLogged()
+    }
   }
 
   override fun logVerificationStage(stageMessage: String) {
@@ -93,46 +113,105 @@ class DirectoryBasedPluginVerificationReportage(private val targetDirectoryProvi
 
   private fun <T> Reporter<T>.useReporter(ts: Iterable<T>) = use { ts.forEach { t -> report(t) } }
 
-  @Synchronized
   override fun reportVerificationResult(pluginVerificationResult: PluginVerificationResult) {
-    with(pluginVerificationResult) {
-      val directory = targetDirectoryProvider(verificationTarget)
-        .resolve("plugins")
-        .resolve(createPluginVerificationDirectory(plugin))
-
-      reportVerificationDetails(directory, "verification-verdict.txt", listOf(pluginVerificationResult)) { it.verificationVerdict }
-
-      return when (this) {
-        is PluginVerificationResult.Verified -> {
-          reportVerificationDetails(directory, "warnings.txt", compatibilityWarnings)
-          reportVerificationDetails(directory, "compatibility-problems.txt", compatibilityProblems)
-          reportVerificationDetails(directory, "dependencies.txt", listOf(dependenciesGraph)) { DependenciesGraphPrettyPrinter(it).prettyPresentation() }
-          reportVerificationDetails(directory, "deprecated-usages.txt", deprecatedUsages)
-          reportVerificationDetails(directory, "experimental-api-usages.txt", experimentalApiUsages)
-          reportVerificationDetails(directory, "internal-api-usages.txt", internalApiUsages)
-          reportVerificationDetails(directory, "override-only-usages.txt", overrideOnlyMethodUsages)
-          reportVerificationDetails(directory, "non-extendable-api-usages.txt", nonExtendableApiUsages)
-          reportVerificationDetails(directory, "plugin-structure-warnings.txt", pluginStructureWarnings)
-
-          val problemIgnoredEvents = ignoredProblems.map { ProblemIgnoredEvent(plugin, verificationTarget, it.key, it.value) }
-          problemIgnoredEvents.forEach { allIgnoredProblemsReporter.report(it) }
-          IgnoredProblemsReporter(directory, verificationTarget).useReporter(problemIgnoredEvents)
-        }
-        is PluginVerificationResult.InvalidPlugin -> {
-          reportVerificationDetails(directory, "plugin-structure-errors.txt", pluginStructureErrors)
-        }
-        is PluginVerificationResult.NotFound -> Unit
-        is PluginVerificationResult.FailedToDownload -> Unit
+    reportVerificationResults(listOf(pluginVerificationResult))
+  }
+
+  @Synchronized
+  override fun reportVerificationResults(pluginVerificationResults: List<PluginVerificationResult>) {
+    val targetToResultsText = linkedMapOf<PluginVerificationTarget, StringBuilder>()
+    for (pluginVerificationResult in pluginVerificationResults) {
+      val details = linkedMapOf<String, List<String>>()
+      val problemIgnoredEvents = collectDetails(pluginVerificationResult, details)
+
+      if (singleResultsFile) {
+        val resultsText = targetToResultsText.getOrPut(pluginVerificationResult.verificationTarget) { StringBuilder() }
+        appendResult(resultsText, pluginVerificationResult, details, problemIgnoredEvents)
+      } else {
+        problemIgnoredEvents.forEach { allIgnoredProblemsReporter.report(it) }
+        saveToPluginDirectory(pluginVerificationResult, details, problemIgnoredEvents)
+      }
+    }
+    for ((verificationTarget, resultsText) in targetToResultsText) {
+      val resultsWriter = targetToResultsWriter.getOrPut(verificationTarget) {
+        Files.newBufferedWriter(targetDirectoryProvider(verificationTarget).resolve("verification-results.txt").create())
+      }
+      resultsWriter.write(resultsText.toString())
+      resultsWriter.flush()
+    }
+  }
+
+  /**
+   * Fills [details] with sections of the result and returns ignored problems.
+   */
+  private fun collectDetails(
+    pluginVerificationResult: PluginVerificationResult,
+    details: MutableMap<String, List<String>>
+  ): List<ProblemIgnoredEvent> = with(pluginVerificationResult) {
+    details["verification-verdict.txt"] = listOf(verificationVerdict)
+    when (this) {
+      is PluginVerificationResult.Verified -> {
+        details["warnings.txt"] = compatibilityWarnings.map { it.toString() }
+        details["compatibility-problems.txt"] = compatibilityProblems.map { it.toString() }
+        details["dependencies.txt"] = listOf(DependenciesGraphPrettyPrinter(dependenciesGraph).prettyPresentation())
+        details["deprecated-usages.txt"] = deprecatedUsages.map { it.toString() }
+        details["experimental-api-usages.txt"] = experimentalApiUsages.map { it.toString() }
+        details["internal-api-usages.txt"] = internalApiUsages.map { it.toString() }
+        details["override-only-usages.txt"] = overrideOnlyMethodUsages.map { it.toString() }
+        details["non-extendable-api-usages.txt"] = nonExtendableApiUsages.map { it.toString() }
+        details["plugin-structure-warnings.txt"] = pluginStructureWarnings.map { it.toString() }
+        ignoredProblems.map { ProblemIgnoredEvent(plugin, verificationTarget, it.key, it.value) }
+      }
+      is PluginVerificationResult.InvalidPlugin -> {
+        details["plugin-structure-errors.txt"] = pluginStructureErrors.map { it.toString() }
+        emptyList()
       }
+      is PluginVerificationResult.NotFound -> emptyList()
+      is PluginVerificationResult.FailedToDownload -> emptyList()
+    }
+  }
+
+  private fun saveToPluginDirectory(
+    pluginVerificationResult: PluginVerificationResult,
+    details: Map<String, List<String>>,
+    problemIgnoredEvents: List<ProblemIgnoredEvent>
+  ) {
+    val directory = targetDirectoryProvider(pluginVerificationResult.verificationTarget)
+      .resolve("plugins")
+      .resolve(createPluginVerificationDirectory(pluginVerificationResult.plugin))
+
+    for ((fileName, lines) in details) {
+      FileReporter<String>(directory.resolve(fileName)).useReporter(lines)
     }
+    IgnoredProblemsReporter(directory, pluginVerificationResult.verificationTarget).useReporter(problemIgnoredEvents)
   }
 
-  private fun <T> reportVerificationDetails(
-    directory: Path,
-    fileName: String,
-    content: Iterable<T>,
-    lineProvider: (T) -> String = { it.toString() }
+  /**
+   * Appends the sections of the result, to be saved to `<verification-target>/verification-results.txt`:
+   * ```
+   * ==== com.plugin.one 1.0 ====
+   * --- verification-verdict ---
+   * Compatible
+   * --- compatibility-problems ---
+   * ...
+   * ```
+   */
+  private fun appendResult(
+    resultsText: StringBuilder,
+    pluginVerificationResult: PluginVerificationResult,
+    details: Map<String, List<String>>,
+    problemIgnoredEvents: List<ProblemIgnoredEvent>
   ) {
-    FileReporter(directory.resolve(fileName), lineProvider).useReporter(content)
+    resultsText.appendln("==== ${pluginVerificationResult.plugin} ====")
+    for ((fileName, lines) in details) {
+      if (lines.isNotEmpty()) {
+        resultsText.appendln("--- ${fileName.removeSuffix(".txt")} ---")
+        lines.forEach { resultsText.appendln(it) }
+      }
+    }
+    if (problemIgnoredEvents.isNotEmpty()) {
+      resultsText.appendln("--- ignored-problems ---")
+      resultsText.appendln(AllIgnoredProblemsReporter.formatManyIgnoredProblems(pluginVerificationResult.verificationTarget, problemIgnoredEvents))
+    }
   }
-}
\ No newline at end of file
+}
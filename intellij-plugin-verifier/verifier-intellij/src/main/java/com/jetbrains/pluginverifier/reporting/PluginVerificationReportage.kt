@@ -29,4 +29,12 @@ interface PluginVerificationReportage : Closeable {
    */
   fun reportVerificationResult(pluginVerificationResult: PluginVerificationResult)
 
+  /**
+   * Report several verification results in the given order.
+   * Implementations may save them at once.
+   */
+  fun reportVerificationResults(pluginVerificationResults: List<PluginVerificationResult>) {
+    pluginVerificationResults.forEach { reportVerificationResult(it) }
+  }
+
 }
\ No newline at end of file
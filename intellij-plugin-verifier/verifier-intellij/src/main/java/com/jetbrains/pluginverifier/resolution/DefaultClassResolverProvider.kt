@@ -12,60 +12,71 @@ import com.jetbrains.pluginverifier.createPluginResolver
 import com.jetbrains.pluginverifier.dependencies.DependenciesGraphBuilder
 import com.jetbrains.pluginverifier.dependencies.resolution.DependencyFinder
 import com.jetbrains.pluginverifier.ide.IdeDescriptor
+import com.jetbrains.pluginverifier.metrics.VerificationMetrics
+import com.jetbrains.pluginverifier.metrics.VerificationStage
+import com.jetbrains.pluginverifier.metrics.measureStage
 import com.jetbrains.pluginverifier.plugin.PluginDetails
 import com.jetbrains.pluginverifier.plugin.PluginDetailsCache
 import com.jetbrains.pluginverifier.verifiers.packages.PackageFilter
 import com.jetbrains.pluginverifier.verifiers.resolution.caching
 import java.io.Closeable
 
+/**
+ * Provides resolvers of the plugin classes, the IDE, the JDK and the plugin dependencies.
+ *
+ * Time spent building the dependencies graph and creating the resolvers is recorded to [metrics].
+ */
 class DefaultClassResolverProvider(
   private val dependencyFinder: DependencyFinder,
   private val ideDescriptor: IdeDescriptor,
-  private val externalClassesPackageFilter: PackageFilter
+  private val externalClassesPackageFilter: PackageFilter,
+  private val metrics: VerificationMetrics = VerificationMetrics.NoOp
 ) : ClassResolverProvider {
 
   override fun provide(checkedPluginDetails: PluginDetails): ClassResolverProvider.Result {
     val closeableResources = arrayListOf<Closeable>()
     closeableResources.closeOnException {
-      val pluginResolver = checkedPluginDetails.pluginClassesLocations.createPluginResolver()
-
-      val (dependenciesGraph, dependenciesResults) =
+      val (dependenciesGraph, dependenciesResults) = metrics.measureStage(VerificationStage.DEPENDENCIES_GRAPH) {
         DependenciesGraphBuilder(dependencyFinder).buildDependenciesGraph(checkedPluginDetails.idePlugin, ideDescriptor.ide)
+      }
 
       closeableResources += dependenciesResults
 
-      val dependenciesClassResolver = createDependenciesResolver(dependenciesResults)
+      return metrics.measureStage(VerificationStage.RESOLVERS_CONSTRUCTION) {
+        val pluginResolver = checkedPluginDetails.pluginClassesLocations.createPluginResolver()
 
-      val resolver = CompositeResolver.create(
-        pluginResolver,
-        ideDescriptor.jdkDescriptor.jdkResolver,
-        ideDescriptor.ideResolver,
-        dependenciesClassResolver
-      ).caching()
-      return ClassResolverProvider.Result(pluginResolver, resolver, dependenciesGraph, closeableResources)
+        val dependenciesClassResolver = createDependenciesResolver(dependenciesResults)
+
+        val resolver = CompositeResolver.create(
+          pluginResolver,
+          ideDescriptor.jdkDescriptor.jdkResolver,
+          ideDescriptor.ideResolver,
+          dependenciesClassResolver
+        ).caching()
+        ClassResolverProvider.Result(pluginResolver, resolver, dependenciesGraph, closeableResources)
+      }
     }
   }
 
   override fun provideExternalClassesPackageFilter() = externalClassesPackageFilter
 
   private fun createDependenciesResolver(results: List<DependencyFinder.Result>): Resolver {
+    val resolverCache = ideDescriptor.dependenciesResolverCache
     val resolvers = arrayListOf<Resolver>()
-    resolvers.closeOnException {
-      for (result in results) {
-        if (result is DependencyFinder.Result.DetailsProvided) {
-          val cacheResult = result.pluginDetailsCacheResult
-          if (cacheResult is PluginDetailsCache.Result.Provided) {
-            val resolver = try {
-              cacheResult.pluginDetails.pluginClassesLocations.createPluginResolver()
-            } catch (e: Exception) {
-              e.rethrowIfInterrupted()
-              continue
-            }
-            resolvers.add(resolver)
+    for (result in results) {
+      if (result is DependencyFinder.Result.DetailsProvided) {
+        val cacheResult = result.pluginDetailsCacheResult
+        if (cacheResult is PluginDetailsCache.Result.Provided) {
+          val resolver = try {
+            resolverCache.getPluginResolver(cacheResult.pluginDetails.pluginClassesLocations)
+          } catch (e: Exception) {
+            e.rethrowIfInterrupted()
+            continue
           }
+          resolvers.add(resolver)
         }
       }
-      return CompositeResolver.create(resolvers)
     }
+    return resolverCache.getCombinedResolver(resolvers)
   }
 }
\ No newline at end of file
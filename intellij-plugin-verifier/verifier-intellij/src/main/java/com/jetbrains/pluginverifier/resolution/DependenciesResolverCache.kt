@@ -0,0 +1,74 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.pluginverifier.resolution
+
+import com.jetbrains.plugin.structure.classes.resolvers.CompositeResolver
+import com.jetbrains.plugin.structure.classes.resolvers.Resolver
+import com.jetbrains.plugin.structure.intellij.classes.plugin.IdePluginClassesLocations
+import com.jetbrains.pluginverifier.createPluginResolver
+import java.util.*
+
+/**
+ * Cache of resolvers of plugin dependencies shared by verifications against one IDE.
+ *
+ * Most plugins depend on the same few bundled plugins, so resolvers of their classes,
+ * and resolvers combining the same sets of dependencies, are created once and reused.
+ *
+ * Resolvers of a plugin are cached until its [IdePluginClassesLocations] are closed,
+ * and then the resolvers combining them are dropped too.
+ * The cached resolvers are owned by the classes locations and must not be closed.
+ */
+class DependenciesResolverCache(private val maxCombinedResolvers: Int = DEFAULT_MAX_COMBINED_RESOLVERS) {
+
+  companion object {
+    const val DEFAULT_MAX_COMBINED_RESOLVERS = 64
+  }
+
+  private val pluginResolvers = WeakHashMap<IdePluginClassesLocations, Resolver>()
+
+  private val combinedResolvers = object : LinkedHashMap<List<Resolver>, Resolver>(16, 0.75f, true) {
+    override fun removeEldestEntry(eldest: MutableMap.MutableEntry<List<Resolver>, Resolver>) = size > maxCombinedResolvers
+  }
+
+  /**
+   * Returns the resolver of classes of the plugin with [classesLocations].
+   */
+  @Synchronized
+  fun getPluginResolver(classesLocations: IdePluginClassesLocations): Resolver {
+    val cachedResolver = pluginResolvers[classesLocations]
+    if (cachedResolver != null) {
+      return cachedResolver
+    }
+    val resolver = classesLocations.createPluginResolver()
+    if (classesLocations.addCloseListener { releasePluginResolver(classesLocations) }) {
+      pluginResolvers[classesLocations] = resolver
+    }
+    return resolver
+  }
+
+  @Synchronized
+  private fun releasePluginResolver(classesLocations: IdePluginClassesLocations) {
+    val resolver = pluginResolvers.remove(classesLocations) ?: return
+    combinedResolvers.keys.removeIf { resolver in it }
+  }
+
+  /**
+   * Returns the resolver combining [resolvers] in the given order.
+   *
+   * The combination is cached only if all [resolvers] are cached by [getPluginResolver].
+   */
+  @Synchronized
+  fun getCombinedResolver(resolvers: List<Resolver>): Resolver {
+    val cachedResolver = combinedResolvers[resolvers]
+    if (cachedResolver != null) {
+      return cachedResolver
+    }
+    val combinedResolver = CompositeResolver.create(resolvers)
+    if (resolvers.all { it in pluginResolvers.values }) {
+      combinedResolvers[resolvers.toList()] = combinedResolver
+    }
+    return combinedResolver
+  }
+}
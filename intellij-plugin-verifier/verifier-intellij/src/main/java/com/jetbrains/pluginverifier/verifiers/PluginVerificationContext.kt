@@ -14,6 +14,7 @@ import com.jetbrains.pluginverifier.PluginVerificationDescriptor
 import com.jetbrains.pluginverifier.analysis.ReachabilityGraph
 import com.jetbrains.pluginverifier.analysis.buildClassReachabilityGraph
 import com.jetbrains.pluginverifier.dependencies.DependenciesGraph
+import com.jetbrains.pluginverifier.incremental.IncrementalVerificationSession
 import com.jetbrains.pluginverifier.results.location.ClassLocation
 import com.jetbrains.pluginverifier.results.problems.ClassNotFoundProblem
 import com.jetbrains.pluginverifier.results.problems.CompatibilityProblem
@@ -45,6 +46,15 @@ import com.jetbrains.pluginverifier.warnings.NoExplicitDependencyOnJavaPluginWar
 import com.jetbrains.pluginverifier.warnings.PluginStructureWarning
 import com.jetbrains.pluginverifier.warnings.WarningRegistrar
 
+/**
+ * Context of verification of [idePlugin].
+ *
+ * Registration of problems, warnings and API usages is synchronized,
+ * so classes of the plugin may be verified concurrently.
+ *
+ * Registrations made while verifying a class are also reported to [incrementalVerificationSession], if any,
+ * so that the class is verified again in the next verification of the plugin.
+ */
 data class PluginVerificationContext(
   val idePlugin: IdePlugin,
   val verificationDescriptor: PluginVerificationDescriptor,
@@ -65,6 +75,8 @@ data class PluginVerificationContext(
   override val classResolver
     get() = allResolver
 
+  internal var incrementalVerificationSession: IncrementalVerificationSession? = null
+
   override val apiUsageProcessors: List<ApiUsageProcessor> =
     listOf(
       DeprecatedApiUsageProcessor(this),
@@ -96,39 +108,53 @@ data class PluginVerificationContext(
   override val warningRegistrar
     get() = this
 
+  @Synchronized
   override fun registerProblem(problem: CompatibilityProblem) {
     compatibilityProblems += problem
+    incrementalVerificationSession?.recordRegistration()
   }
 
+  @Synchronized
   override fun registerDeprecatedUsage(deprecatedApiUsage: DeprecatedApiUsage) {
     val deprecatedElementHost = deprecatedApiUsage.apiElement.containingClass
     val usageHostClass = deprecatedApiUsage.usageLocation.containingClass
     if (deprecatedApiUsage is DiscouragingJdkClassUsage || shouldIndexDeprecatedClass(usageHostClass, deprecatedElementHost)) {
       deprecatedUsages += deprecatedApiUsage
+      incrementalVerificationSession?.recordRegistration()
     }
   }
 
+  @Synchronized
   override fun registerExperimentalApiUsage(experimentalApiUsage: ExperimentalApiUsage) {
     val elementHostClass = experimentalApiUsage.apiElement.containingClass
     val usageHostClass = experimentalApiUsage.usageLocation.containingClass
     if (shouldIndexDeprecatedClass(usageHostClass, elementHostClass)) {
       experimentalApiUsages += experimentalApiUsage
+      incrementalVerificationSession?.recordRegistration()
     }
   }
 
+  @Synchronized
   override fun registerInternalApiUsage(internalApiUsage: InternalApiUsage) {
     internalApiUsages += internalApiUsage
+    incrementalVerificationSession?.recordRegistration()
   }
 
+  @Synchronized
   override fun registerNonExtendableApiUsage(nonExtendableApiUsage: NonExtendableApiUsage) {
     nonExtendableApiUsages += nonExtendableApiUsage
+    incrementalVerificationSession?.recordRegistration()
   }
 
+  @Synchronized
   override fun registerOverrideOnlyMethodUsage(overrideOnlyMethodUsage: OverrideOnlyMethodUsage) {
     overrideOnlyMethodUsages += overrideOnlyMethodUsage
+    incrementalVerificationSession?.recordRegistration()
   }
 
+  @Synchronized
   override fun registerJavaPluginClassUsage(javaPluginClassUsage: JavaPluginClassUsage) {
+    incrementalVerificationSession?.recordRegistration()
     if (idePlugin.dependencies.none { it.id == "com.intellij.modules.java" || it.id == "com.intellij.java" }) {
       val noJavaDependencyWarning = compatibilityWarnings.filterIsInstance<NoExplicitDependencyOnJavaPluginWarning>().firstOrNull()
         ?: NoExplicitDependencyOnJavaPluginWarning().also { compatibilityWarnings += it }
@@ -136,10 +162,13 @@ data class PluginVerificationContext(
     }
   }
 
+  @Synchronized
   override fun registerCompatibilityWarning(warning: CompatibilityWarning) {
     compatibilityWarnings += warning
+    incrementalVerificationSession?.recordRegistration()
   }
 
+  @Synchronized
   fun registerPluginStructureWarning(warning: PluginStructureWarning) {
     pluginStructureWarnings += warning
   }
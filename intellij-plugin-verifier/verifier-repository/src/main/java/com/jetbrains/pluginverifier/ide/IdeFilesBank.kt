@@ -4,9 +4,11 @@
 
 package com.jetbrains.pluginverifier.ide
 
+import com.jetbrains.plugin.structure.base.utils.deleteLogged
 import com.jetbrains.plugin.structure.base.utils.isDirectory
 import com.jetbrains.plugin.structure.base.utils.rethrowIfInterrupted
 import com.jetbrains.plugin.structure.base.utils.simpleName
+import com.jetbrains.plugin.structure.classes.resolvers.JarFileIndexCache
 import com.jetbrains.plugin.structure.intellij.version.IdeVersion
 import com.jetbrains.pluginverifier.ide.IdeFilesBank.Result.Found
 import com.jetbrains.pluginverifier.ide.repositories.IdeRepository
@@ -25,18 +27,27 @@ import java.nio.file.Path
  * Each IDE is identified by its [IdeVersion] and can be locked for the use time
  * to avoid use-remove conflicts when one thread uses the IDE build and another
  * thread deletes it.
+ *
+ * Indexes of jars of removed IDEs are removed from [jarIndexCache].
  */
 class IdeFilesBank(
   private val bankDirectory: Path,
   ideRepository: IdeRepository,
-  diskSpaceSetting: DiskSpaceSetting
+  diskSpaceSetting: DiskSpaceSetting,
+  private val jarIndexCache: JarFileIndexCache? = null
 ) {
 
   private val ideFilesRepository = FileRepository(
     IdeDownloadProvider(bankDirectory, ideRepository),
-    LruFileSizeSweepPolicy(diskSpaceSetting)
+    LruFileSizeSweepPolicy(diskSpaceSetting),
+    fileDisposer = { deleteIde(it) }
   ).addInitialFilesFrom(bankDirectory) { getIdeVersionByPath(it) }
 
+  private fun deleteIde(ideFile: Path) {
+    ideFile.deleteLogged()
+    jarIndexCache?.removeOutdatedIndexes()
+  }
+
   private fun getIdeVersionByPath(file: Path) =
     if (file.isDirectory) {
       IdeVersion.createIdeVersionIfValid(file.simpleName)
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.pluginverifier.metrics
+
+/**
+ * Listener of verification metrics: durations of [stages] [VerificationStage],
+ * numbers of resolved and read classes and statistics of class caches.
+ *
+ * Implementations must be thread safe because verifications run concurrently.
+ */
+interface VerificationMetrics {
+
+  fun recordStageDuration(stage: VerificationStage, durationNanos: Long)
+
+  /**
+   * Records that a verification has looked up [resolvedClasses] classes,
+   * of which [readClasses] were missing in the verification's own cache and were read from the underlying resolvers.
+   */
+  fun recordClassResolution(resolvedClasses: Long, readClasses: Long)
+
+  /**
+   * Records the current cumulative statistics of a long-lived [cache] of kind [cacheKind], such as "IDE" or "JDK".
+   * Statistics of all caches of the same kind are summed up. The [cache] is used only to tell caches apart
+   * and must not be retained, so that statistics of released caches don't accumulate.
+   */
+  fun recordCacheStatistics(cacheKind: String, cache: Any, hitCount: Long, missCount: Long, evictionCount: Long)
+
+  /**
+   * Metrics that are not recorded anywhere.
+   */
+  object NoOp : VerificationMetrics {
+    override fun recordStageDuration(stage: VerificationStage, durationNanos: Long) = Unit
+
+    override fun recordClassResolution(resolvedClasses: Long, readClasses: Long) = Unit
+
+    override fun recordCacheStatistics(cacheKind: String, cache: Any, hitCount: Long, missCount: Long, evictionCount: Long) = Unit
+  }
+}
+
+/**
+ * Executes [block] and records its duration as the duration of the [stage].
+ */
+inline fun <T> VerificationMetrics.measureStage(stage: VerificationStage, block: () -> T): T {
+  val startNanos = System.nanoTime()
+  try {
+    return block()
+  } finally {
+    recordStageDuration(stage, System.nanoTime() - startNanos)
+  }
+}
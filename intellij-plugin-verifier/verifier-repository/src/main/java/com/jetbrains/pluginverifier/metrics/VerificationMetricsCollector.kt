@@ -0,0 +1,175 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.pluginverifier.metrics
+
+import com.google.gson.GsonBuilder
+import com.google.gson.JsonObject
+import java.util.*
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * [VerificationMetrics] that accumulates all recorded metrics in memory.
+ *
+ * Accumulated metrics can be exported in the Prometheus text format by [toPrometheusText] or as JSON by [toJson].
+ *
+ * Cache statistics are accumulated per cache kind: the latest statistics of every cache are kept with a weak reference
+ * to the cache, and only the growth since the previous record is added to the statistics of its kind.
+ * Thus the number of reported caches doesn't grow with the number of IDEs and JDKs verified against.
+ */
+class VerificationMetricsCollector : VerificationMetrics {
+
+  private val stageTimers = EnumMap<VerificationStage, StageTimer>(VerificationStage::class.java).apply {
+    VerificationStage.values().forEach { put(it, StageTimer()) }
+  }
+
+  private val resolvedClasses = LongAdder()
+
+  private val readClasses = LongAdder()
+
+  private val cacheStatistics = hashMapOf<String, CacheStatistics>()
+
+  private val latestCacheStatistics = WeakHashMap<Any, CacheStatistics>()
+
+  override fun recordStageDuration(stage: VerificationStage, durationNanos: Long) {
+    stageTimers.getValue(stage).record(durationNanos)
+  }
+
+  override fun recordClassResolution(resolvedClasses: Long, readClasses: Long) {
+    this.resolvedClasses.add(resolvedClasses)
+    this.readClasses.add(readClasses)
+  }
+
+  override fun recordCacheStatistics(cacheKind: String, cache: Any, hitCount: Long, missCount: Long, evictionCount: Long) {
+    val statistics = CacheStatistics(hitCount, missCount, evictionCount)
+    synchronized(cacheStatistics) {
+      val previous = latestCacheStatistics.put(cache, statistics) ?: CacheStatistics(0, 0, 0)
+      val total = cacheStatistics[cacheKind] ?: CacheStatistics(0, 0, 0)
+      cacheStatistics[cacheKind] = CacheStatistics(
+        total.hitCount + maxOf(0, hitCount - previous.hitCount),
+        total.missCount + maxOf(0, missCount - previous.missCount),
+        total.evictionCount + maxOf(0, evictionCount - previous.evictionCount)
+      )
+    }
+  }
+
+  fun getStageStatistics(stage: VerificationStage): StageStatistics =
+    stageTimers.getValue(stage).getStatistics()
+
+  fun getResolvedClassesCount(): Long = resolvedClasses.sum()
+
+  fun getReadClassesCount(): Long = readClasses.sum()
+
+  fun getCacheStatistics(): Map<String, CacheStatistics> = synchronized(cacheStatistics) { cacheStatistics.toSortedMap() }
+
+  /**
+   * Returns the metrics in the [Prometheus text format](https://prometheus.io/docs/instrumenting/exposition_formats/).
+   */
+  fun toPrometheusText(): String = buildString {
+    appendMetricHeader("plugin_verifier_stage_duration_seconds", "summary", "Time spent in verification stages.")
+    for (stage in VerificationStage.values()) {
+      val statistics = getStageStatistics(stage)
+      appendSample("plugin_verifier_stage_duration_seconds_count", "stage", stage.metricName, statistics.count)
+      appendSample("plugin_verifier_stage_duration_seconds_sum", "stage", stage.metricName, statistics.totalNanos.toSeconds())
+    }
+    appendMetricHeader("plugin_verifier_stage_duration_max_seconds", "gauge", "The longest duration of verification stages.")
+    for (stage in VerificationStage.values()) {
+      appendSample("plugin_verifier_stage_duration_max_seconds", "stage", stage.metricName, getStageStatistics(stage).maxNanos.toSeconds())
+    }
+
+    appendMetricHeader("plugin_verifier_resolved_classes_total", "counter", "Classes looked up by verifications.")
+    appendSample("plugin_verifier_resolved_classes_total", null, null, getResolvedClassesCount())
+    appendMetricHeader("plugin_verifier_read_classes_total", "counter", "Classes missing in caches of verifications and read from the underlying resolvers.")
+    appendSample("plugin_verifier_read_classes_total", null, null, getReadClassesCount())
+
+    val caches = getCacheStatistics()
+    if (caches.isNotEmpty()) {
+      appendMetricHeader("plugin_verifier_cache_hits_total", "counter", "Hits of shared class caches.")
+      caches.forEach { (name, statistics) -> appendSample("plugin_verifier_cache_hits_total", "cache", name, statistics.hitCount) }
+      appendMetricHeader("plugin_verifier_cache_misses_total", "counter", "Misses of shared class caches.")
+      caches.forEach { (name, statistics) -> appendSample("plugin_verifier_cache_misses_total", "cache", name, statistics.missCount) }
+      appendMetricHeader("plugin_verifier_cache_evictions_total", "counter", "Evictions from shared class caches.")
+      caches.forEach { (name, statistics) -> appendSample("plugin_verifier_cache_evictions_total", "cache", name, statistics.evictionCount) }
+      appendMetricHeader("plugin_verifier_cache_hit_ratio", "gauge", "Ratio of hits of shared class caches.")
+      caches.forEach { (name, statistics) -> appendSample("plugin_verifier_cache_hit_ratio", "cache", name, statistics.hitRate) }
+    }
+  }
+
+  fun toJson(): String {
+    val stages = JsonObject()
+    for (stage in VerificationStage.values()) {
+      val statistics = getStageStatistics(stage)
+      stages.add(stage.metricName, JsonObject().apply {
+        addProperty("count", statistics.count)
+        addProperty("totalSeconds", statistics.totalNanos.toSeconds())
+        addProperty("maxSeconds", statistics.maxNanos.toSeconds())
+      })
+    }
+    val classes = JsonObject().apply {
+      addProperty("resolved", getResolvedClassesCount())
+      addProperty("read", getReadClassesCount())
+    }
+    val caches = JsonObject()
+    for ((name, statistics) in getCacheStatistics()) {
+      caches.add(name, JsonObject().apply {
+        addProperty("hits", statistics.hitCount)
+        addProperty("misses", statistics.missCount)
+        addProperty("evictions", statistics.evictionCount)
+        addProperty("hitRate", statistics.hitRate)
+      })
+    }
+    val metrics = JsonObject().apply {
+      add("stages", stages)
+      add("classes", classes)
+      add("caches", caches)
+    }
+    return GsonBuilder().setPrettyPrinting().create().toJson(metrics)
+  }
+
+  private fun StringBuilder.appendMetricHeader(name: String, type: String, help: String) {
+    append("# HELP ").append(name).append(' ').append(help).append('\n')
+    append("# TYPE ").append(name).append(' ').append(type).append('\n')
+  }
+
+  private fun StringBuilder.appendSample(name: String, labelName: String?, labelValue: String?, value: Number) {
+    append(name)
+    if (labelName != null && labelValue != null) {
+      append('{').append(labelName).append("=\"").append(escapeLabelValue(labelValue)).append("\"}")
+    }
+    append(' ').append(value).append('\n')
+  }
+
+  private fun escapeLabelValue(value: String) =
+    value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n")
+
+  private fun Long.toSeconds(): Double = this.toDouble() / TimeUnit.SECONDS.toNanos(1)
+
+  data class StageStatistics(val count: Long, val totalNanos: Long, val maxNanos: Long)
+
+  data class CacheStatistics(val hitCount: Long, val missCount: Long, val evictionCount: Long) {
+    val hitRate: Double
+      get() {
+        val requestCount = hitCount + missCount
+        return if (requestCount == 0L) 1.0 else hitCount.toDouble() / requestCount
+      }
+  }
+
+  private class StageTimer {
+    private val count = LongAdder()
+
+    private val totalNanos = LongAdder()
+
+    private val maxNanos = AtomicLong()
+
+    fun record(durationNanos: Long) {
+      count.increment()
+      totalNanos.add(durationNanos)
+      maxNanos.accumulateAndGet(durationNanos) { max, duration -> maxOf(max, duration) }
+    }
+
+    fun getStatistics() = StageStatistics(count.sum(), totalNanos.sum(), maxNanos.get())
+  }
+}
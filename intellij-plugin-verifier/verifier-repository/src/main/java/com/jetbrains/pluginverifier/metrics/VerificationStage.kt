@@ -0,0 +1,50 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.pluginverifier.metrics
+
+/**
+ * Stages of a plugin verification whose durations are recorded in [VerificationMetrics].
+ */
+enum class VerificationStage(val metricName: String) {
+  /**
+   * Obtaining the plugin file, either downloaded or cached locally.
+   */
+  DOWNLOAD("download"),
+
+  /**
+   * Creating the plugin from its file, including extraction of the descriptors from `.zip`-ped plugins.
+   */
+  DESCRIPTOR_PARSING("descriptor_parsing"),
+
+  /**
+   * Extracting and indexing class files of the plugin.
+   */
+  EXTRACT("extract"),
+
+  /**
+   * Building the graph of the plugin dependencies.
+   */
+  DEPENDENCIES_GRAPH("dependencies_graph"),
+
+  /**
+   * Creating class resolvers of the plugin and its dependencies.
+   */
+  RESOLVERS_CONSTRUCTION("resolvers_construction"),
+
+  /**
+   * Verifying bytecode of the plugin classes.
+   */
+  BYTECODE_VERIFICATION("bytecode_verification"),
+
+  /**
+   * Post-processing and filtering the found problems.
+   */
+  POST_PROCESSING("post_processing"),
+
+  /**
+   * Reporting the verification result.
+   */
+  REPORTING("reporting")
+}
@@ -124,7 +124,7 @@ private fun <T, R> Call<T>.executeWithInterruptionCheck(
 }
 
 /**
- * Copies [inputStream] to [destinationFile].
+ * Copies [inputStream] to [destinationFile], or to its end if [append] is `true`.
  * Updates the copying [progress].
  * Closes the [inputStream] on completion.
  * Throws [InterruptedException] if the copying
@@ -135,6 +135,7 @@ fun copyInputStreamToFileWithProgress(
   inputStream: InputStream,
   expectedSize: Long,
   destinationFile: Path,
+  append: Boolean = false,
   progress: (Double) -> Unit
 ) {
   val buffer = ByteArray(DEFAULT_BUFFER_SIZE)
@@ -146,7 +147,7 @@ fun copyInputStreamToFileWithProgress(
       destinationFile,
       StandardOpenOption.CREATE,
       StandardOpenOption.WRITE,
-      StandardOpenOption.TRUNCATE_EXISTING
+      if (append) StandardOpenOption.APPEND else StandardOpenOption.TRUNCATE_EXISTING
     ).buffered().use { output ->
       checkIfInterrupted()
       var count: Long = 0
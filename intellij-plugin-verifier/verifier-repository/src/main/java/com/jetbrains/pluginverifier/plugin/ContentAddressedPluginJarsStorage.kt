@@ -0,0 +1,148 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package com.jetbrains.pluginverifier.plugin
+
+import com.google.common.hash.Hashing
+import com.jetbrains.plugin.structure.base.utils.*
+import com.jetbrains.plugin.structure.classes.resolvers.JarFileIndexCache
+import com.jetbrains.plugin.structure.classes.utils.readZipCentralDirectory
+import com.jetbrains.plugin.structure.intellij.classes.plugin.PluginJarsStorage
+import com.jetbrains.pluginverifier.repository.cleanup.DiskSpaceSetting
+import com.jetbrains.pluginverifier.repository.cleanup.LruFileSizeSweepPolicy
+import com.jetbrains.pluginverifier.repository.files.FileLock
+import com.jetbrains.pluginverifier.repository.files.FileRepository
+import com.jetbrains.pluginverifier.repository.files.FileRepositoryResult
+import com.jetbrains.pluginverifier.repository.provider.ProvideResult
+import com.jetbrains.pluginverifier.repository.provider.ResourceProvider
+import org.slf4j.LoggerFactory
+import java.io.Closeable
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * [PluginJarsStorage] that keeps jars in [storageDirectory] under names derived from their content,
+ * so a library bundled by many plugins, or by many versions of a plugin, is stored and indexed once.
+ *
+ * The content of a jar is identified by its size and SHA-256 of its zip central directory,
+ * which lists names, sizes and CRC-32 of all the entries, so the whole jar is not read.
+ * Only if the central directory can't be located, SHA-256 of the whole jar is used.
+ *
+ * Each shared jar is locked while at least one extracted plugin links to it.
+ * Unused jars are kept for subsequent plugins and the least recently used ones are removed
+ * when the storage exceeds [diskSpaceSetting], along with their indexes. Jars and their indexes survive restarts.
+ */
+class ContentAddressedPluginJarsStorage(
+  private val storageDirectory: Path,
+  diskSpaceSetting: DiskSpaceSetting
+) : PluginJarsStorage {
+
+  private companion object {
+    private val LOG = LoggerFactory.getLogger(ContentAddressedPluginJarsStorage::class.java)
+
+    private const val JAR_EXTENSION = "jar"
+
+    private const val INDEXES_DIRECTORY = ".indexes"
+  }
+
+  /**
+   * Jars being shared at the moment, by keys of their content.
+   * Used to provide the content of a jar that is not stored yet.
+   */
+  private val pendingJars = ConcurrentHashMap<String, Path>()
+
+  private val fileRepository = FileRepository(
+    StoredJarProvider(),
+    LruFileSizeSweepPolicy(diskSpaceSetting),
+    "shared-plugin-jars",
+    fileDisposer = { deleteStoredJar(it) }
+  )
+
+  override val jarIndexCache: JarFileIndexCache
+
+  init {
+    storageDirectory.createDir()
+    val indexesDirectory = storageDirectory.resolve(INDEXES_DIRECTORY)
+    for (file in storageDirectory.listFiles()) {
+      if (file.extension == JAR_EXTENSION) {
+        fileRepository.add(file.nameWithoutExtension, file)
+      } else if (file != indexesDirectory) {
+        file.deleteLogged()
+      }
+    }
+    jarIndexCache = JarFileIndexCache(indexesDirectory)
+  }
+
+  private fun deleteStoredJar(storedJar: Path) {
+    jarIndexCache.remove(storedJar)
+    storedJar.deleteLogged()
+  }
+
+  override fun share(jar: Path): Closeable? {
+    val storedJarLock = try {
+      getStoredJar(jar)
+    } catch (e: Exception) {
+      e.rethrowIfInterrupted()
+      LOG.info("Unable to share $jar: ${e.message}")
+      null
+    } ?: return null
+
+    return try {
+      Files.delete(jar)
+      Files.createSymbolicLink(jar, storedJarLock.file)
+      storedJarLock
+    } catch (e: Exception) {
+      e.rethrowIfInterrupted()
+      //Symbolic links may be not supported by the file system. Keep the plugin's own copy.
+      LOG.debug("Unable to link $jar to ${storedJarLock.file}", e)
+      storedJarLock.use {
+        if (!jar.exists()) {
+          Files.copy(storedJarLock.file, jar)
+        }
+      }
+      null
+    }
+  }
+
+  private fun getStoredJar(jar: Path): FileLock? {
+    val contentKey = getContentKey(jar)
+    pendingJars[contentKey] = jar
+    val result = try {
+      fileRepository.getFile(contentKey)
+    } finally {
+      pendingJars.remove(contentKey, jar)
+    }
+    return when (result) {
+      is FileRepositoryResult.Found -> result.lockedFile
+      is FileRepositoryResult.NotFound -> null
+      is FileRepositoryResult.Failed -> throw IOException(result.reason, result.error)
+    }
+  }
+
+  private fun getContentKey(jar: Path): String {
+    val centralDirectory = readZipCentralDirectory(jar)
+      ?: return com.google.common.io.Files.asByteSource(jar.toFile()).hash(Hashing.sha256()).toString()
+    return Files.size(jar).toString() + "-" + Hashing.sha256().hashBytes(centralDirectory).toString()
+  }
+
+  private inner class StoredJarProvider : ResourceProvider<String, Path> {
+    override fun provide(key: String): ProvideResult<Path> {
+      val storedJar = storageDirectory.resolve("$key.$JAR_EXTENSION")
+      if (!storedJar.exists()) {
+        val jar = pendingJars[key] ?: return ProvideResult.NotFound("No jar with content key $key")
+        val tempFile = Files.createTempFile(storageDirectory, key, ".tmp")
+        try {
+          Files.copy(jar, tempFile, StandardCopyOption.REPLACE_EXISTING)
+          Files.move(tempFile, storedJar, StandardCopyOption.ATOMIC_MOVE)
+        } finally {
+          tempFile.deleteQuietly()
+        }
+      }
+      return ProvideResult.Provided(storedJar)
+    }
+  }
+}
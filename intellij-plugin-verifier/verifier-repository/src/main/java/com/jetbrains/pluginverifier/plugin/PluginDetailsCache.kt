@@ -5,6 +5,9 @@
 package com.jetbrains.pluginverifier.plugin
 
 import com.jetbrains.plugin.structure.base.plugin.PluginProblem
+import com.jetbrains.pluginverifier.metrics.VerificationMetrics
+import com.jetbrains.pluginverifier.metrics.VerificationStage
+import com.jetbrains.pluginverifier.metrics.measureStage
 import com.jetbrains.pluginverifier.repository.PluginInfo
 import com.jetbrains.pluginverifier.repository.cache.ResourceCacheEntry
 import com.jetbrains.pluginverifier.repository.cache.ResourceCacheEntryResult
@@ -22,16 +25,19 @@ import java.io.Closeable
  * as it requires downloading the plugin, reading its class files and registering a file lock.
  *
  * The cache must be [closed] [close] on the application shutdown to free all the details.
+ *
+ * Time spent obtaining plugin files is recorded to [metrics], which are also used by verifications of the cached plugins.
  */
 class PluginDetailsCache(
   cacheSize: Int,
   val pluginFileProvider: PluginFileProvider,
-  val pluginDetailsProvider: PluginDetailsProvider
+  val pluginDetailsProvider: PluginDetailsProvider,
+  val metrics: VerificationMetrics = VerificationMetrics.NoOp
 ) : Closeable {
 
   private val internalCache = createSizeLimitedResourceCache(
     cacheSize,
-    PluginDetailsResourceProvider(pluginFileProvider, pluginDetailsProvider),
+    PluginDetailsResourceProvider(pluginFileProvider, pluginDetailsProvider, metrics),
     { it.close() },
     "PluginDetailsCache"
   )
@@ -127,7 +133,8 @@ class PluginDetailsCache(
  */
 private class PluginDetailsResourceProvider(
   val pluginFileProvider: PluginFileProvider,
-  val pluginDetailsProvider: PluginDetailsProvider
+  val pluginDetailsProvider: PluginDetailsProvider,
+  val metrics: VerificationMetrics
 ) : ResourceProvider<PluginInfo, PluginDetailsProvider.Result> {
 
   override fun provide(key: PluginInfo) = when (key) {
@@ -137,7 +144,8 @@ private class PluginDetailsResourceProvider(
   }
 
   private fun provideFileAndDetails(pluginInfo: PluginInfo): ProvideResult<PluginDetailsProvider.Result> {
-    return with(pluginFileProvider.getPluginFile(pluginInfo)) {
+    val pluginFileResult = metrics.measureStage(VerificationStage.DOWNLOAD) { pluginFileProvider.getPluginFile(pluginInfo) }
+    return with(pluginFileResult) {
       when (this) {
         is PluginFileProvider.Result.Found -> {
           val pluginDetailsResult = pluginDetailsProvider.providePluginDetails(pluginInfo, pluginFileLock)
@@ -12,8 +12,12 @@ import com.jetbrains.plugin.structure.base.utils.closeOnException
 import com.jetbrains.plugin.structure.base.utils.rethrowIfInterrupted
 import com.jetbrains.plugin.structure.intellij.classes.locator.CompileServerExtensionKey
 import com.jetbrains.plugin.structure.intellij.classes.plugin.IdePluginClassesFinder
+import com.jetbrains.plugin.structure.intellij.classes.plugin.PluginJarsStorage
 import com.jetbrains.plugin.structure.intellij.plugin.IdePlugin
 import com.jetbrains.plugin.structure.intellij.plugin.IdePluginManager
+import com.jetbrains.pluginverifier.metrics.VerificationMetrics
+import com.jetbrains.pluginverifier.metrics.VerificationStage
+import com.jetbrains.pluginverifier.metrics.measureStage
 import com.jetbrains.pluginverifier.repository.PluginInfo
 import com.jetbrains.pluginverifier.repository.files.FileLock
 import com.jetbrains.pluginverifier.repository.repositories.local.LocalPluginInfo
@@ -22,8 +26,17 @@ import java.nio.file.Path
 /**
  * Main implementation of the [PluginDetailsProvider] that
  * uses the [extractDirectory] for extracting `.zip`-ped plugins.
+ *
+ * If [pluginJarsStorage] is specified, library jars of extracted plugins
+ * are shared with other plugins bundling identical jars.
+ *
+ * Time spent creating plugins and reading their classes is recorded to [metrics].
  */
-class PluginDetailsProviderImpl(private val extractDirectory: Path) : PluginDetailsProvider {
+class PluginDetailsProviderImpl(
+  private val extractDirectory: Path,
+  private val pluginJarsStorage: PluginJarsStorage? = null,
+  private val metrics: VerificationMetrics = VerificationMetrics.NoOp
+) : PluginDetailsProvider {
   private val idePluginManager = IdePluginManager.createManager(extractDirectory)
 
   @Throws(IllegalArgumentException::class)
@@ -45,7 +58,7 @@ class PluginDetailsProviderImpl(private val extractDirectory: Path) : PluginDeta
     pluginFile: Path,
     pluginFileLock: FileLock?,
     pluginInfo: PluginInfo?
-  ) = with(idePluginManager.createPlugin(pluginFile)) {
+  ) = with(metrics.measureStage(VerificationStage.DESCRIPTOR_PARSING) { idePluginManager.createPlugin(pluginFile) }) {
     when (this) {
       is PluginCreationSuccess -> {
         readPluginClasses(
@@ -74,7 +87,13 @@ class PluginDetailsProviderImpl(private val extractDirectory: Path) : PluginDeta
   ): PluginDetailsProvider.Result {
 
     val pluginClassesLocations = try {
-      IdePluginClassesFinder.findPluginClasses(idePlugin, additionalKeys = listOf(CompileServerExtensionKey))
+      metrics.measureStage(VerificationStage.EXTRACT) {
+        IdePluginClassesFinder.findPluginClasses(
+          idePlugin,
+          additionalKeys = listOf(CompileServerExtensionKey),
+          jarsStorage = pluginJarsStorage
+        )
+      }
     } catch (e: Exception) {
       e.rethrowIfInterrupted()
       return PluginDetailsProvider.Result.Failed("Unable to read class files of plugin $pluginInfo", e)
@@ -14,8 +14,10 @@ import retrofit2.Call
 import retrofit2.Response
 import retrofit2.Retrofit
 import retrofit2.http.GET
+import retrofit2.http.Header
 import retrofit2.http.Streaming
 import retrofit2.http.Url
+import java.io.IOException
 import java.net.URL
 import java.nio.file.Files
 import java.nio.file.Path
@@ -23,10 +25,23 @@ import java.util.concurrent.TimeUnit
 
 /**
  * [Downloader] of files for URLs provided with [urlProvider].
+ *
+ * If the connection breaks while a file is being downloaded over HTTP,
+ * the download is resumed up to [maxResumeAttempts] times from the already received
+ * byte using the `Range` request header. If the server doesn't support ranges or responds
+ * with a range not starting at that byte, the file is downloaded again from the beginning.
+ * The length of the downloaded file is checked against the length reported by the server.
  */
-class UrlDownloader<in K>(private val urlProvider: (K) -> URL?) : Downloader<K> {
+class UrlDownloader<in K>(
+  private val urlProvider: (K) -> URL?,
+  private val maxResumeAttempts: Int
+) : Downloader<K> {
+
+  constructor(urlProvider: (K) -> URL?) : this(urlProvider, DEFAULT_MAX_RESUME_ATTEMPTS)
 
   private companion object {
+    private const val DEFAULT_MAX_RESUME_ATTEMPTS = 3
+    private const val PARTIAL_CONTENT_CODE = 206
     private const val FILENAME = "filename="
     private const val FILE_PROTOCOL = "file"
     private const val HTTP_PROTOCOL = "http"
@@ -135,7 +150,7 @@ class UrlDownloader<in K>(private val urlProvider: (K) -> URL?) : Downloader<K>
     val downloadedTempFile = Files.createTempFile(tempDirectory, "", ".$extension")
     return try {
       LOG.debug("Downloading $key to $downloadedTempFile")
-      copyResponseTo(response, downloadedTempFile)
+      copyResponseWithResumeTo(downloadUrl, response, downloadedTempFile)
       DownloadResult.Downloaded(downloadedTempFile, extension, false)
     } catch (e: Throwable) {
       downloadedTempFile.deleteLogged()
@@ -143,11 +158,64 @@ class UrlDownloader<in K>(private val urlProvider: (K) -> URL?) : Downloader<K>
     }
   }
 
-  private fun copyResponseTo(response: Response<ResponseBody>, file: Path) {
+  private fun copyResponseWithResumeTo(downloadUrl: URL, initialResponse: Response<ResponseBody>, file: Path) {
+    var response = initialResponse
+    var totalLength = initialResponse.body()!!.contentLength()
+    var append = false
+    var resumeAttempt = 0
+    while (true) {
+      try {
+        copyResponseTo(response, file, append)
+        checkDownloadedLength(file, totalLength)
+        return
+      } catch (e: IOException) {
+        e.rethrowIfInterrupted()
+        if (resumeAttempt >= maxResumeAttempts) {
+          throw e
+        }
+        resumeAttempt++
+        val receivedBytes = Files.size(file)
+        LOG.debug("Download of $downloadUrl has broken after $receivedBytes bytes, resuming (attempt $resumeAttempt of $maxResumeAttempts)", e)
+        response = downloadConnector.downloadRange(downloadUrl.toExternalForm(), "bytes=$receivedBytes-").executeSuccessfully()
+        append = response.code() == PARTIAL_CONTENT_CODE && response.isContentRangeMatching(receivedBytes, totalLength)
+        if (!append) {
+          response.body()?.close()
+          LOG.debug("Server has not resumed download of $downloadUrl from byte $receivedBytes, downloading it from the beginning")
+          response = downloadConnector.download(downloadUrl.toExternalForm()).executeSuccessfully()
+          totalLength = response.body()!!.contentLength()
+        }
+      }
+    }
+  }
+
+  /**
+   * Checks that the response is a part of the same file starting at [position].
+   * The Content-Range header has the form `bytes <first>-<last>/<total length or *>`.
+   */
+  private fun Response<ResponseBody>.isContentRangeMatching(position: Long, totalLength: Long): Boolean {
+    val contentRange = headers().get("Content-Range") ?: return false
+    val range = contentRange.removePrefix("bytes ").trim()
+    if (range.substringBefore("-").trim().toLongOrNull() != position) {
+      return false
+    }
+    val rangeTotalLength = range.substringAfter("/", "*").trim()
+    return totalLength < 0 || rangeTotalLength == "*" || rangeTotalLength.toLongOrNull() == totalLength
+  }
+
+  private fun checkDownloadedLength(file: Path, totalLength: Long) {
+    if (totalLength >= 0) {
+      val downloadedLength = Files.size(file)
+      if (downloadedLength != totalLength) {
+        throw IOException("Downloaded $downloadedLength bytes but expected $totalLength bytes")
+      }
+    }
+  }
+
+  private fun copyResponseTo(response: Response<ResponseBody>, file: Path, append: Boolean) {
     checkIfInterrupted()
     response.body().use { responseBody ->
       val expectedSize = responseBody!!.contentLength()
-      copyInputStreamToFileWithProgress(responseBody.byteStream(), expectedSize, file) { }
+      copyInputStreamToFileWithProgress(responseBody.byteStream(), expectedSize, file, append) { }
     }
   }
 
@@ -155,6 +223,10 @@ class UrlDownloader<in K>(private val urlProvider: (K) -> URL?) : Downloader<K>
     @Streaming
     @GET
     fun download(@Url url: String): Call<ResponseBody>
+
+    @Streaming
+    @GET
+    fun downloadRange(@Url url: String, @Header("Range") range: String): Call<ResponseBody>
   }
 
 }
\ No newline at end of file
@@ -6,6 +6,7 @@ package com.jetbrains.pluginverifier.repository.resources
 
 import com.jetbrains.plugin.structure.base.utils.rethrowIfInterrupted
 import org.slf4j.Logger
+import java.util.concurrent.ConcurrentHashMap
 
 /**
  * Data structure that maintains a set of registered resources and their total weights.
@@ -14,6 +15,9 @@ import org.slf4j.Logger
  * typically equal zero in the units of chosen weights domain, the [weigher] used to assign
  * weights of the resources in a controlled way and the [disposer] used to deallocate
  * the resources being removed.
+ *
+ * Resources by different keys may be added and removed concurrently.
+ * Concurrent modifications by the same key must be synchronized by the caller.
  */
 internal class RepositoryResourcesRegistrar<R, K, W : ResourceWeight<W>>(
   initWeight: W,
@@ -22,9 +26,12 @@ internal class RepositoryResourcesRegistrar<R, K, W : ResourceWeight<W>>(
   private val logger: Logger
 ) {
 
+  @Volatile
   private var _totalWeight: W = initWeight
 
-  private val _resources = hashMapOf<K, ResourceInfo<R, W>>()
+  private val totalWeightLock = Any()
+
+  private val _resources = ConcurrentHashMap<K, ResourceInfo<R, W>>()
 
   val totalWeight: W
     get() = _totalWeight
@@ -43,15 +50,18 @@ internal class RepositoryResourcesRegistrar<R, K, W : ResourceWeight<W>>(
    */
   fun addResource(key: K, resource: R): Boolean {
     try {
-      if (key in _resources) {
+      if (_resources.containsKey(key)) {
         logger.debugMaybe { "add($key): the $resource is already available. Disposing the duplicate resource." }
         safeDispose(key, resource)
         return false
       }
 
       val resourceWeight = weigher(resource)
-      _totalWeight += resourceWeight
-      logger.debugMaybe { "add($key): adding the $resource of weight $resourceWeight. Total weight: $_totalWeight" }
+      val totalWeight = synchronized(totalWeightLock) {
+        _totalWeight += resourceWeight
+        _totalWeight
+      }
+      logger.debugMaybe { "add($key): adding the $resource of weight $resourceWeight. Total weight: $totalWeight" }
       _resources[key] = ResourceInfo(resource, resourceWeight)
       return true
     } catch (e: Throwable) {
@@ -62,18 +72,20 @@ internal class RepositoryResourcesRegistrar<R, K, W : ResourceWeight<W>>(
 
   fun getAllKeys() = _resources.keys.toSet()
 
-  fun has(key: K) = key in _resources
+  fun has(key: K) = _resources.containsKey(key)
 
   fun get(key: K) = _resources[key]
 
   fun removeResource(key: K) {
-    check(key in _resources)
-    val resourceInfo = _resources[key]!!
+    val resourceInfo = _resources.remove(key)
+    checkNotNull(resourceInfo)
     val resource = resourceInfo.resource
     val weight = resourceInfo.weight
-    _totalWeight -= weight
-    logger.debugMaybe { "remove($key): removing the $resource of weight $weight. Total weight: $_totalWeight" }
-    _resources.remove(key)
+    val totalWeight = synchronized(totalWeightLock) {
+      _totalWeight -= weight
+      _totalWeight
+    }
+    logger.debugMaybe { "remove($key): removing the $resource of weight $weight. Total weight: $totalWeight" }
     safeDispose(key, resource)
   }
 
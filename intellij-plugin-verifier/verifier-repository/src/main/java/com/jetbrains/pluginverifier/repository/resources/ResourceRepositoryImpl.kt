@@ -15,13 +15,21 @@ import org.slf4j.LoggerFactory
 import java.time.Clock
 import java.time.Instant
 import java.util.concurrent.CancellationException
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.ExecutionException
 import java.util.concurrent.FutureTask
+import java.util.concurrent.atomic.AtomicLong
 
 /**
  * The implementation of the [resource repository] [ResourceRepository]
  * that can be safely used in a concurrent environment
  * where the resources can be added, accessed and removed by multiple threads.
+ *
+ * State of each key (resource, locks, removal and providing) is guarded by
+ * one of the [lock stripes] [stripeLocks] chosen by the key's hash code,
+ * so threads working with different keys rarely contend with each other.
+ * A thread never holds more than one stripe at a time.
+ * Eviction is performed under a separate [cleanupLock].
  */
 class ResourceRepositoryImpl<R, K, W : ResourceWeight<W>>(
   private val evictionPolicy: EvictionPolicy<R, K, W>,
@@ -32,23 +40,33 @@ class ResourceRepositoryImpl<R, K, W : ResourceWeight<W>>(
   disposer: (R) -> Unit,
   private val presentableName: String = "ResourceRepository"
 ) : ResourceRepository<R, K, W> {
+
+  private companion object {
+    private const val STRIPES_NUMBER = 64
+  }
+
   private val logger: Logger = LoggerFactory.getLogger(presentableName)
 
   private val resourcesRegistrar = RepositoryResourcesRegistrar<R, K, W>(initialWeight, weigher, disposer, logger)
 
-  private var nextLockId = 0L
+  private val stripeLocks = Array(STRIPES_NUMBER) { Any() }
+
+  private val cleanupLock = Any()
 
-  private val key2Locks = hashMapOf<K, MutableSet<ResourceLockImpl<R, K, W>>>()
+  private val nextLockId = AtomicLong()
 
-  private val removeQueue = hashSetOf<K>()
+  private val key2Locks = ConcurrentHashMap<K, MutableSet<ResourceLockImpl<R, K, W>>>()
 
-  private val additionTasks = hashMapOf<K, FutureTask<ProvideResult<R>>>()
+  private val removeQueue: MutableSet<K> = ConcurrentHashMap.newKeySet()
 
-  private val additionWaitingThreads = hashMapOf<K, Int>()
+  private val additionTasks = ConcurrentHashMap<K, FutureTask<ProvideResult<R>>>()
 
-  private val statistics = hashMapOf<K, UsageStatistic>()
+  private val additionWaitingThreads = ConcurrentHashMap<K, Int>()
+
+  private val statistics = ConcurrentHashMap<K, UsageStatistic>()
+
+  private fun stripeLock(key: K): Any = stripeLocks[(key.hashCode() and Int.MAX_VALUE) % STRIPES_NUMBER]
 
-  @Synchronized
   override fun add(key: K, resource: R) =
     try {
       addResource(key, resource)
@@ -63,52 +81,60 @@ class ResourceRepositoryImpl<R, K, W : ResourceWeight<W>>(
    * may be awaited, which can lead to its eviction
    * and invalid resource locking.
    */
-  @Synchronized
-  private fun addResource(key: K, resource: R): Boolean {
+  private fun addResource(key: K, resource: R): Boolean = synchronized(stripeLock(key)) {
     if (resourcesRegistrar.addResource(key, resource)) {
-      check(key !in statistics)
+      check(!statistics.containsKey(key))
       updateUsageStatistics(key)
       return true
     }
     return false
   }
 
-  @Synchronized
-  override fun getAllExistingKeys() = resourcesRegistrar.getAllKeys().toSet()
+  override fun getAllExistingKeys() = resourcesRegistrar.getAllKeys()
 
-  @Synchronized
   override fun has(key: K) = resourcesRegistrar.has(key)
 
-  @Synchronized
   override fun isLockedOrBeingProvided(key: K) = isLockedKey(key) || isBeingProvided(key)
 
-  @Synchronized
-  override fun remove(key: K): Boolean = when {
-    isLockedOrBeingProvided(key) -> {
-      logger.debugMaybe { "remove($key): the resource is locked or is being provided, enqueue for removing later." }
-      removeQueue.add(key)
-      false
-    }
-    resourcesRegistrar.has(key) -> {
-      logger.debugMaybe { "remove($key): the resource is not locked, deleting now" }
-      doRemove(key)
+  override fun remove(key: K): Boolean {
+    if (removeOrEnqueue(key)) {
       cleanup()
-      true
+      return true
+    }
+    return false
+  }
+
+  /**
+   * Removes the resource by [key] if it is not locked,
+   * otherwise enqueues it for removing when the last lock is released.
+   */
+  private fun removeOrEnqueue(key: K): Boolean = synchronized(stripeLock(key)) {
+    when {
+      isLockedOrBeingProvided(key) -> {
+        logger.debugMaybe { "remove($key): the resource is locked or is being provided, enqueue for removing later." }
+        removeQueue.add(key)
+        false
+      }
+      resourcesRegistrar.has(key) -> {
+        logger.debugMaybe { "remove($key): the resource is not locked, deleting now" }
+        doRemove(key)
+        true
+      }
+      else -> false
     }
-    else -> false
   }
 
-  @Synchronized
   override fun removeAll() {
     getAllExistingKeys().forEach { remove(it) }
   }
 
-  @Synchronized
   private fun isLockedKey(key: K) = key2Locks.containsKey(key)
 
-  @Synchronized
   private fun isBeingProvided(key: K) = additionTasks.containsKey(key)
 
+  /**
+   * Must be called under the [stripe lock] [stripeLock] of the [key].
+   */
   private fun updateUsageStatistics(key: K): Instant {
     val now = clock.instant()
     val usageStatistic = statistics.getOrPut(key) {
@@ -119,44 +145,45 @@ class ResourceRepositoryImpl<R, K, W : ResourceWeight<W>>(
     return now
   }
 
-  @Synchronized
-  private fun registerLock(key: K): ResourceLock<R, W> {
-    check(resourcesRegistrar.has(key))
-    val resourceInfo = resourcesRegistrar.get(key)!!
+  private fun registerLock(key: K): ResourceLock<R, W> = synchronized(stripeLock(key)) {
+    val resourceInfo = checkNotNull(resourcesRegistrar.get(key))
     val now = updateUsageStatistics(key)
-    val lockId = nextLockId++
+    val lockId = nextLockId.getAndIncrement()
     val lock = ResourceLockImpl(now, resourceInfo, key, lockId, this)
     logger.debugMaybe { "get($key): lock is registered $lock " }
     key2Locks.getOrPut(key) { hashSetOf() }.add(lock)
     return lock
   }
 
-  @Synchronized
   internal fun releaseLock(lock: ResourceLockImpl<R, K, W>) {
     val key = lock.key
-    val resourceLocks = key2Locks[key]
-    if (resourceLocks != null) {
-      logger.debugMaybe { "releasing lock $lock" }
-      resourceLocks.remove(lock)
-      if (resourceLocks.isEmpty()) {
-        key2Locks.remove(key)
-
-        if (key in removeQueue) {
-          if (isBeingProvided(key)) {
-            logger.debugMaybe { "hand over removing of the $key to another thread waiting for this key" }
-          } else {
-            logger.debugMaybe { "removing the $key as it is enqueued for removing and it has been just released" }
-            removeQueue.remove(key)
-            doRemove(key)
+    synchronized(stripeLock(key)) {
+      val resourceLocks = key2Locks[key]
+      if (resourceLocks != null) {
+        logger.debugMaybe { "releasing lock $lock" }
+        resourceLocks.remove(lock)
+        if (resourceLocks.isEmpty()) {
+          key2Locks.remove(key)
+
+          if (key in removeQueue) {
+            if (isBeingProvided(key)) {
+              logger.debugMaybe { "hand over removing of the $key to another thread waiting for this key" }
+            } else {
+              logger.debugMaybe { "removing the $key as it is enqueued for removing and it has been just released" }
+              removeQueue.remove(key)
+              doRemove(key)
+            }
           }
         }
+      } else {
+        logger.debugMaybe { "attempt to release an unregistered lock $lock" }
       }
-    } else {
-      logger.debugMaybe { "attempt to release an unregistered lock $lock" }
     }
   }
 
-  @Synchronized
+  /**
+   * Must be called under the [stripe lock] [stripeLock] of the [key].
+   */
   private fun doRemove(key: K) {
     check(!isBeingProvided(key))
     resourcesRegistrar.removeResource(key)
@@ -166,7 +193,7 @@ class ResourceRepositoryImpl<R, K, W : ResourceWeight<W>>(
   @Throws(InterruptedException::class)
   private fun getOrWait(key: K): ResourceRepositoryResult<R, W> {
     checkIfInterrupted()
-    val (fetchTask, runInCurrentThread) = synchronized(this) {
+    val (fetchTask, runInCurrentThread) = synchronized(stripeLock(key)) {
       if (resourcesRegistrar.has(key)) {
         val lock = registerLock(key)
         logger.debugMaybe { "get($key): the resource is available and a lock is registered $lock" }
@@ -209,9 +236,9 @@ class ResourceRepositoryImpl<R, K, W : ResourceWeight<W>>(
       }
       return provideResult.registerLockIfProvided(key)
     } finally {
-      synchronized(this) {
-        additionWaitingThreads.compute(key) { _, v -> if (v!! == 1) null else (v - 1) }
-        if (!additionWaitingThreads.containsKey(key)) {
+      synchronized(stripeLock(key)) {
+        val stillWaiting = additionWaitingThreads.compute(key) { _, v -> if (v!! == 1) null else (v - 1) } != null
+        if (!stillWaiting) {
           additionTasks.remove(key)
         }
       }
@@ -232,30 +259,38 @@ class ResourceRepositoryImpl<R, K, W : ResourceWeight<W>>(
     is ProvideResult.Failed<R> -> ResourceRepositoryResult.Failed(reason, error)
   }
 
-  @Synchronized
   override fun getAvailableResources() =
-    resourcesRegistrar.resources.map { (key, resourceInfo) ->
-      AvailableResource(key, resourceInfo, statistics[key]!!, isLockedKey(key))
+    resourcesRegistrar.resources.mapNotNull { (key, resourceInfo) ->
+      val usageStatistic = statistics[key]
+      if (usageStatistic != null) {
+        AvailableResource(key, resourceInfo, usageStatistic, isLockedKey(key))
+      } else {
+        null
+      }
     }
 
-  @Synchronized
   override fun cleanup() {
-    if (evictionPolicy.isNecessary(resourcesRegistrar.totalWeight)) {
-      val availableResources = getAvailableResources()
-
-      val evictionInfo = EvictionInfo(resourcesRegistrar.totalWeight, availableResources)
-      val resourcesForEviction = evictionPolicy.selectResourcesForEviction(evictionInfo)
-
-      if (resourcesForEviction.isNotEmpty()) {
-        val disposedTotalWeight = resourcesForEviction.map { it.resourceInfo.weight }.reduce { acc, weight -> acc + weight }
-        logger.debugMaybe {
-          "It's time to evict unused resources. " +
-            "Total weight: ${resourcesRegistrar.totalWeight}. " +
-            "${resourcesForEviction.size} " + "resource".pluralize(resourcesForEviction.size) +
-            " will be evicted with total weight $disposedTotalWeight"
-        }
-        for (resource in resourcesForEviction) {
-          remove(resource.key)
+    if (!evictionPolicy.isNecessary(resourcesRegistrar.totalWeight)) {
+      return
+    }
+    synchronized(cleanupLock) {
+      if (evictionPolicy.isNecessary(resourcesRegistrar.totalWeight)) {
+        val availableResources = getAvailableResources()
+
+        val evictionInfo = EvictionInfo(resourcesRegistrar.totalWeight, availableResources)
+        val resourcesForEviction = evictionPolicy.selectResourcesForEviction(evictionInfo)
+
+        if (resourcesForEviction.isNotEmpty()) {
+          val disposedTotalWeight = resourcesForEviction.map { it.resourceInfo.weight }.reduce { acc, weight -> acc + weight }
+          logger.debugMaybe {
+            "It's time to evict unused resources. " +
+              "Total weight: ${resourcesRegistrar.totalWeight}. " +
+              "${resourcesForEviction.size} " + "resource".pluralize(resourcesForEviction.size) +
+              " will be evicted with total weight $disposedTotalWeight"
+          }
+          for (resource in resourcesForEviction) {
+            removeOrEnqueue(resource.key)
+          }
         }
       }
     }
@@ -0,0 +1,90 @@
+package com.jetbrains.pluginverifier.metrics
+
+import com.google.gson.JsonParser
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class VerificationMetricsCollectorTest {
+  @Test
+  fun `stage durations are accumulated`() {
+    val metrics = VerificationMetricsCollector()
+    metrics.recordStageDuration(VerificationStage.BYTECODE_VERIFICATION, 100)
+    metrics.recordStageDuration(VerificationStage.BYTECODE_VERIFICATION, 300)
+    metrics.recordStageDuration(VerificationStage.BYTECODE_VERIFICATION, 200)
+
+    assertEquals(
+      VerificationMetricsCollector.StageStatistics(3, 600, 300),
+      metrics.getStageStatistics(VerificationStage.BYTECODE_VERIFICATION)
+    )
+    assertEquals(
+      VerificationMetricsCollector.StageStatistics(0, 0, 0),
+      metrics.getStageStatistics(VerificationStage.DOWNLOAD)
+    )
+  }
+
+  @Test
+  fun `stage duration is recorded when the measured block fails`() {
+    val metrics = VerificationMetricsCollector()
+    try {
+      metrics.measureStage(VerificationStage.EXTRACT) { throw IllegalStateException() }
+    } catch (e: IllegalStateException) {
+    }
+    assertEquals(1, metrics.getStageStatistics(VerificationStage.EXTRACT).count)
+  }
+
+  @Test
+  fun `prometheus text`() {
+    val metrics = VerificationMetricsCollector()
+    val ideCache = Any()
+    metrics.recordStageDuration(VerificationStage.DOWNLOAD, TimeUnit.MILLISECONDS.toNanos(1500))
+    metrics.recordClassResolution(10, 4)
+    metrics.recordClassResolution(5, 1)
+    metrics.recordCacheStatistics("IDE \"IU-201.1\"", ideCache, 1, 1, 0)
+    metrics.recordCacheStatistics("IDE \"IU-201.1\"", ideCache, 3, 1, 0)
+
+    val lines = metrics.toPrometheusText().lines()
+    assertTrue("# TYPE plugin_verifier_stage_duration_seconds summary" in lines)
+    assertTrue("plugin_verifier_stage_duration_seconds_count{stage=\"download\"} 1" in lines)
+    assertTrue("plugin_verifier_stage_duration_seconds_sum{stage=\"download\"} 1.5" in lines)
+    assertTrue("plugin_verifier_stage_duration_seconds_count{stage=\"reporting\"} 0" in lines)
+    assertTrue("plugin_verifier_resolved_classes_total 15" in lines)
+    assertTrue("plugin_verifier_read_classes_total 5" in lines)
+    assertTrue("plugin_verifier_cache_hits_total{cache=\"IDE \\\"IU-201.1\\\"\"} 3" in lines)
+    assertTrue("plugin_verifier_cache_hit_ratio{cache=\"IDE \\\"IU-201.1\\\"\"} 0.75" in lines)
+  }
+
+  @Test
+  fun `statistics of caches of the same kind are summed up`() {
+    val metrics = VerificationMetricsCollector()
+    val firstCache = Any()
+    val secondCache = Any()
+    metrics.recordCacheStatistics("IDE", firstCache, 5, 5, 1)
+    metrics.recordCacheStatistics("IDE", secondCache, 2, 1, 0)
+    metrics.recordCacheStatistics("IDE", firstCache, 8, 6, 1)
+
+    assertEquals(
+      mapOf("IDE" to VerificationMetricsCollector.CacheStatistics(10, 7, 1)),
+      metrics.getCacheStatistics()
+    )
+  }
+
+  @Test
+  fun json() {
+    val metrics = VerificationMetricsCollector()
+    metrics.recordStageDuration(VerificationStage.REPORTING, TimeUnit.MILLISECONDS.toNanos(250))
+    metrics.recordClassResolution(7, 2)
+    metrics.recordCacheStatistics("JDK", Any(), 9, 1, 3)
+
+    val json = JsonParser().parse(metrics.toJson()).asJsonObject
+    val reporting = json.getAsJsonObject("stages").getAsJsonObject("reporting")
+    assertEquals(1, reporting.get("count").asLong)
+    assertEquals(0.25, reporting.get("totalSeconds").asDouble, 1e-9)
+    assertEquals(7, json.getAsJsonObject("classes").get("resolved").asLong)
+    assertEquals(2, json.getAsJsonObject("classes").get("read").asLong)
+    val jdkCache = json.getAsJsonObject("caches").getAsJsonObject("JDK")
+    assertEquals(3, jdkCache.get("evictions").asLong)
+    assertEquals(0.9, jdkCache.get("hitRate").asDouble, 1e-9)
+  }
+}
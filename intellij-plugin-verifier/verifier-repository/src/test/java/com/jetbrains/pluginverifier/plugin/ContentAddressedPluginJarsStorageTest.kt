@@ -0,0 +1,134 @@
+package com.jetbrains.pluginverifier.plugin
+
+import com.jetbrains.plugin.structure.base.utils.contentBuilder.buildZipFile
+import com.jetbrains.plugin.structure.base.utils.createDir
+import com.jetbrains.plugin.structure.base.utils.listFiles
+import com.jetbrains.plugin.structure.base.utils.readText
+import com.jetbrains.plugin.structure.base.utils.writeText
+import com.jetbrains.plugin.structure.classes.resolvers.JarFileIndex
+import com.jetbrains.pluginverifier.repository.cleanup.DiskSpaceSetting
+import com.jetbrains.pluginverifier.repository.cleanup.SpaceAmount
+import org.junit.Assert.*
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.nio.file.Files
+
+class ContentAddressedPluginJarsStorageTest {
+
+  @Rule
+  @JvmField
+  val tempFolder = TemporaryFolder()
+
+  @Test
+  fun `identical jars of different plugins are stored once`() {
+    val storageDirectory = tempFolder.newFolder().toPath()
+    val storage = ContentAddressedPluginJarsStorage(storageDirectory, DiskSpaceSetting(SpaceAmount.ofMegabytes(100)))
+
+    val firstJar = tempFolder.newFolder().toPath().resolve("lib").createDir().resolve("library-1.0.jar")
+    val secondJar = tempFolder.newFolder().toPath().resolve("lib").createDir().resolve("library.jar")
+    val otherJar = tempFolder.newFolder().toPath().resolve("lib").createDir().resolve("other.jar")
+    firstJar.writeText("library")
+    secondJar.writeText("library")
+    otherJar.writeText("other")
+
+    val handles = listOf(firstJar, secondJar, otherJar).map { storage.share(it)!! }
+
+    assertTrue(Files.isSymbolicLink(firstJar))
+    assertTrue(Files.isSymbolicLink(secondJar))
+    assertEquals(firstJar.toRealPath(), secondJar.toRealPath())
+    assertNotEquals(firstJar.toRealPath(), otherJar.toRealPath())
+    assertEquals("library", secondJar.readText())
+    assertEquals(2, storageDirectory.listFiles().count { it.toString().endsWith(".jar") })
+
+    handles.forEach { it.close() }
+
+    val reopenedStorage = ContentAddressedPluginJarsStorage(storageDirectory, DiskSpaceSetting(SpaceAmount.ofMegabytes(100)))
+    val thirdJar = tempFolder.newFolder().toPath().resolve("library.jar")
+    thirdJar.writeText("library")
+    reopenedStorage.share(thirdJar)!!.use {
+      assertEquals(firstJar.toRealPath(), thirdJar.toRealPath())
+    }
+  }
+
+  @Test
+  fun `zip jars are identified by their central directories`() {
+    val storageDirectory = tempFolder.newFolder().toPath()
+    val storage = ContentAddressedPluginJarsStorage(storageDirectory, DiskSpaceSetting(SpaceAmount.ofMegabytes(100)))
+
+    val firstJar = buildZipFile(tempFolder.newFolder().toPath().resolve("library.jar")) {
+      file("library/Some.class", "some")
+    }
+    val copiedJar = tempFolder.newFolder().toPath().resolve("library.jar")
+    Files.copy(firstJar, copiedJar)
+    val otherJar = buildZipFile(tempFolder.newFolder().toPath().resolve("library.jar")) {
+      file("library/Some.class", "other")
+    }
+
+    val handles = listOf(firstJar, copiedJar, otherJar).map { storage.share(it)!! }
+    assertEquals(firstJar.toRealPath(), copiedJar.toRealPath())
+    assertNotEquals(firstJar.toRealPath(), otherJar.toRealPath())
+    assertEquals(2, storageDirectory.listFiles().count { it.toString().endsWith(".jar") })
+    handles.forEach { it.close() }
+  }
+
+  @Test
+  fun `jar of two plugin versions is stored and indexed once`() {
+    val storageDirectory = tempFolder.newFolder().toPath()
+    val storage = ContentAddressedPluginJarsStorage(storageDirectory, DiskSpaceSetting(SpaceAmount.ofMegabytes(100)))
+
+    val oldVersionJar = tempFolder.newFolder("plugin-1.0").toPath().resolve("lib").createDir().resolve("plugin.jar")
+    val newVersionJar = tempFolder.newFolder("plugin-1.1").toPath().resolve("lib").createDir().resolve("plugin.jar")
+    oldVersionJar.writeText("unchanged content")
+    newVersionJar.writeText("unchanged content")
+
+    storage.share(oldVersionJar)!!.use {
+      storage.share(newVersionJar)!!.use {
+        assertEquals(oldVersionJar.toRealPath(), newVersionJar.toRealPath())
+        assertEquals(1, storageDirectory.listFiles().count { it.toString().endsWith(".jar") })
+
+        var builtIndexes = 0
+        for (jar in listOf(oldVersionJar, newVersionJar)) {
+          val index = storage.jarIndexCache.getOrBuild(jar) {
+            builtIndexes++
+            JarFileIndex(setOf("plugin/Some"), emptySet(), emptyMap(), emptyMap())
+          }
+          assertEquals(setOf("plugin/Some"), index.classes)
+        }
+        assertEquals(1, builtIndexes)
+        assertEquals(1, storage.jarIndexCache.indexDirectory.listFiles().size)
+      }
+    }
+  }
+
+  @Test
+  fun `evicted jar is removed along with its index`() {
+    val storageDirectory = tempFolder.newFolder().toPath()
+    val storage = ContentAddressedPluginJarsStorage(storageDirectory, DiskSpaceSetting(SpaceAmount.ofBytes(1000)))
+    val indexDirectory = storage.jarIndexCache.indexDirectory
+
+    val firstJar = tempFolder.newFolder().toPath().resolve("first.jar")
+    firstJar.writeText("a".repeat(500))
+    val storedFirstJar = storage.share(firstJar)!!.use {
+      storage.jarIndexCache.getOrBuild(firstJar) { JarFileIndex(emptySet(), emptySet(), emptyMap(), emptyMap()) }
+      firstJar.toRealPath()
+    }
+    assertEquals(1, indexDirectory.listFiles().size)
+
+    val secondJar = tempFolder.newFolder().toPath().resolve("second.jar")
+    secondJar.writeText("b".repeat(500))
+    storage.share(secondJar)!!.use {
+      storage.jarIndexCache.getOrBuild(secondJar) { JarFileIndex(emptySet(), emptySet(), emptyMap(), emptyMap()) }
+    }
+
+    assertFalse(Files.exists(storedFirstJar))
+    assertEquals(listOf(secondJar.toRealPath()), storageDirectory.listFiles().filter { it.toString().endsWith(".jar") })
+    assertEquals(1, indexDirectory.listFiles().size)
+    var indexBuilt = false
+    storage.jarIndexCache.getOrBuild(secondJar) {
+      indexBuilt = true
+      JarFileIndex(emptySet(), emptySet(), emptyMap(), emptyMap())
+    }
+    assertFalse(indexBuilt)
+  }
+}
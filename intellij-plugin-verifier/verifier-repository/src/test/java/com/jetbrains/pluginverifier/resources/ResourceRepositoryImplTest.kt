@@ -11,6 +11,9 @@ import org.junit.Assert.*
 import org.junit.Test
 import java.io.Closeable
 import java.time.Clock
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicInteger
 
 class ResourceRepositoryImplTest {
@@ -140,4 +143,42 @@ class ResourceRepositoryImplTest {
     assertFalse(resourceRepository.has(key))
   }
 
-}
\ No newline at end of file
+  @Test
+  fun `resources locked by concurrent threads are not evicted`() {
+    val maximumSize = 8
+    val lockedKeys = ConcurrentHashMap<Int, AtomicInteger>()
+    val evictedLockedKeys = ConcurrentHashMap.newKeySet<Int>()
+    val resourceRepository = createSizedResourceRepository(maximumSize) { key ->
+      Closeable {
+        if (lockedKeys[key]?.get() ?: 0 > 0) {
+          evictedLockedKeys.add(key)
+        }
+      }
+    }
+
+    val executor = Executors.newFixedThreadPool(8)
+    try {
+      val futures = (0 until 8).map { thread ->
+        executor.submit {
+          for (i in 0 until 2000) {
+            val key = (thread * 31 + i) % 64
+            val lock = (resourceRepository.get(key) as ResourceRepositoryResult.Found).lockedResource
+            val counter = lockedKeys.computeIfAbsent(key) { AtomicInteger() }
+            counter.incrementAndGet()
+            assertTrue(resourceRepository.has(key))
+            counter.decrementAndGet()
+            lock.release()
+          }
+        }
+      }
+      futures.forEach { it.get() }
+    } finally {
+      executor.shutdownNow()
+      executor.awaitTermination(1, TimeUnit.MINUTES)
+    }
+
+    assertTrue(evictedLockedKeys.isEmpty())
+    assertTrue(resourceRepository.getAllExistingKeys().size <= maximumSize)
+  }
+
+}
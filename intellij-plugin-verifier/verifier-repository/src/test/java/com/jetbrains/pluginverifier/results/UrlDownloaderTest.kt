@@ -3,12 +3,20 @@ package com.jetbrains.pluginverifier.results
 import com.jetbrains.plugin.structure.base.utils.*
 import com.jetbrains.pluginverifier.repository.downloader.DownloadResult
 import com.jetbrains.pluginverifier.repository.downloader.UrlDownloader
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
 import org.junit.Assert
+import org.junit.Assert.assertArrayEquals
 import org.junit.Assert.assertEquals
 import org.junit.Rule
 import org.junit.Test
 import org.junit.rules.TemporaryFolder
+import java.net.InetSocketAddress
+import java.net.URL
+import java.nio.file.Files
 import java.nio.file.Path
+import java.util.*
+import java.util.concurrent.CopyOnWriteArrayList
 
 class UrlDownloaderTest {
 
@@ -59,4 +67,93 @@ class UrlDownloaderTest {
     assertEquals(original.extension, downloadedFileOrDirectory.extension)
     return downloadedFileOrDirectory
   }
-}
\ No newline at end of file
+
+  @Test
+  fun `broken download is resumed from the received byte`() {
+    val content = Random(42).let { random -> ByteArray(100_000).also { random.nextBytes(it) } }
+    val requestedRanges = CopyOnWriteArrayList<String>()
+    withBreakingServer(content, supportsRanges = true, requestedRanges = requestedRanges) { url ->
+      assertArrayEquals(content, downloadByUrl(url))
+    }
+    assertEquals(listOf("bytes=${content.size / 2}-"), requestedRanges)
+  }
+
+  @Test
+  fun `broken download is restarted if the server doesn't support ranges`() {
+    val content = Random(42).let { random -> ByteArray(100_000).also { random.nextBytes(it) } }
+    withBreakingServer(content, supportsRanges = false, requestedRanges = CopyOnWriteArrayList()) { url ->
+      assertArrayEquals(content, downloadByUrl(url))
+    }
+  }
+
+  @Test
+  fun `broken download is restarted if the server responds with another range`() {
+    val content = Random(42).let { random -> ByteArray(100_000).also { random.nextBytes(it) } }
+    val requestedRanges = CopyOnWriteArrayList<String>()
+    withBreakingServer(content, supportsRanges = true, requestedRanges = requestedRanges, ignoresRangeStart = true) { url ->
+      assertArrayEquals(content, downloadByUrl(url))
+    }
+    assertEquals(listOf("bytes=${content.size / 2}-"), requestedRanges)
+  }
+
+  private fun downloadByUrl(url: URL): ByteArray {
+    val urlDownloader = UrlDownloader<Int> { url }
+    val downloadResult = urlDownloader.download(0, tempFolder.newFolder().toPath()) as DownloadResult.Downloaded
+    return Files.readAllBytes(downloadResult.downloadedFileOrDirectory)
+  }
+
+  /**
+   * Starts a local HTTP server that breaks the connection
+   * in the middle of the first response with the [content].
+   * If [ignoresRangeStart] is `true`, requested ranges are responded from the first byte.
+   */
+  private fun withBreakingServer(
+    content: ByteArray,
+    supportsRanges: Boolean,
+    requestedRanges: MutableList<String>,
+    ignoresRangeStart: Boolean = false,
+    action: (URL) -> Unit
+  ) {
+    var isFirstRequest = true
+    val server = HttpServer.create(InetSocketAddress("localhost", 0), 0)
+    server.createContext("/plugin.zip") { exchange ->
+      val range = exchange.requestHeaders.getFirst("Range")
+      if (range != null) {
+        requestedRanges += range
+      }
+      when {
+        isFirstRequest -> {
+          isFirstRequest = false
+          exchange.sendResponseHeaders(200, content.size.toLong())
+          exchange.responseBody.write(content, 0, content.size / 2)
+          exchange.responseBody.flush()
+          exchange.closeAbruptly()
+        }
+        range != null && supportsRanges -> {
+          val start = if (ignoresRangeStart) 0 else range.removePrefix("bytes=").removeSuffix("-").toInt()
+          exchange.responseHeaders.add("Content-Range", "bytes $start-${content.size - 1}/${content.size}")
+          exchange.sendResponseHeaders(206, (content.size - start).toLong())
+          exchange.responseBody.use { it.write(content, start, content.size - start) }
+        }
+        else -> {
+          exchange.sendResponseHeaders(200, content.size.toLong())
+          exchange.responseBody.use { it.write(content) }
+        }
+      }
+    }
+    server.start()
+    try {
+      action(URL("http://localhost:${server.address.port}/plugin.zip"))
+    } finally {
+      server.stop(0)
+    }
+  }
+
+  private fun HttpExchange.closeAbruptly() {
+    try {
+      close()
+    } catch (e: Exception) {
+      //The declared content length has not been written.
+    }
+  }
+}
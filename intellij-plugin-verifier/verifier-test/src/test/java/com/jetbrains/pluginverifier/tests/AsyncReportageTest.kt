@@ -0,0 +1,185 @@
+package com.jetbrains.pluginverifier.tests
+
+import com.jetbrains.plugin.structure.base.utils.readText
+import com.jetbrains.plugin.structure.intellij.version.IdeVersion
+import com.jetbrains.pluginverifier.PluginVerificationResult
+import com.jetbrains.pluginverifier.PluginVerificationTarget
+import com.jetbrains.pluginverifier.jdk.JdkVersion
+import com.jetbrains.pluginverifier.reporting.AsyncPluginVerificationReportage
+import com.jetbrains.pluginverifier.reporting.DirectoryBasedPluginVerificationReportage
+import com.jetbrains.pluginverifier.reporting.PluginVerificationReportage
+import com.jetbrains.pluginverifier.repository.PluginInfo
+import com.jetbrains.pluginverifier.tests.mocks.createMockPluginInfo
+import org.junit.Assert.*
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.IOException
+import java.nio.file.Files
+import java.util.*
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class AsyncReportageTest {
+
+  @Rule
+  @JvmField
+  val temporaryFolder = TemporaryFolder()
+
+  private val verificationTarget = PluginVerificationTarget.IDE(IdeVersion.createIdeVersion("IU-201.1"), JdkVersion("1.8", null))
+
+  private val otherVerificationTarget = PluginVerificationTarget.IDE(IdeVersion.createIdeVersion("IU-201.2"), JdkVersion("1.8", null))
+
+  private fun notFound(pluginId: String, target: PluginVerificationTarget = verificationTarget) =
+    PluginVerificationResult.NotFound(createMockPluginInfo(pluginId, "1.0"), target, "reason of $pluginId")
+
+  private open class RecordingReportage : PluginVerificationReportage {
+    val batches: MutableList<List<String>> = Collections.synchronizedList(arrayListOf<List<String>>())
+
+    @Volatile
+    var isClosed = false
+
+    val reportedPlugins: List<String>
+      get() = batches.flatten()
+
+    override fun logVerificationStage(stageMessage: String) = Unit
+
+    override fun logPluginVerificationIgnored(pluginInfo: PluginInfo, verificationTarget: PluginVerificationTarget, reason: String) = Unit
+
+    override fun reportVerificationResult(pluginVerificationResult: PluginVerificationResult) {
+      reportVerificationResults(listOf(pluginVerificationResult))
+    }
+
+    override fun reportVerificationResults(pluginVerificationResults: List<PluginVerificationResult>) {
+      batches += pluginVerificationResults.map { it.plugin.pluginId }
+    }
+
+    override fun close() {
+      isClosed = true
+    }
+  }
+
+  @Test
+  fun `results are saved in order of reporting and before closing`() {
+    val delegate = object : RecordingReportage() {
+      override fun reportVerificationResults(pluginVerificationResults: List<PluginVerificationResult>) {
+        Thread.sleep(1)
+        super.reportVerificationResults(pluginVerificationResults)
+      }
+
+      override fun close() {
+        assertEquals(100, reportedPlugins.size)
+        super.close()
+      }
+    }
+    val pluginIds = (1..100).map { "plugin$it" }
+    AsyncPluginVerificationReportage(delegate, 4).use { reportage ->
+      pluginIds.forEach { reportage.reportVerificationResult(notFound(it)) }
+    }
+    assertEquals(pluginIds, delegate.reportedPlugins)
+    assertTrue(delegate.isClosed)
+  }
+
+  @Test
+  fun `results reported while writing are saved in one batch`() {
+    val writeStarted = CountDownLatch(1)
+    val continueWriting = CountDownLatch(1)
+    val delegate = object : RecordingReportage() {
+      override fun reportVerificationResults(pluginVerificationResults: List<PluginVerificationResult>) {
+        writeStarted.countDown()
+        assertTrue(continueWriting.await(1, TimeUnit.MINUTES))
+        super.reportVerificationResults(pluginVerificationResults)
+      }
+    }
+    AsyncPluginVerificationReportage(delegate).use { reportage ->
+      reportage.reportVerificationResult(notFound("first"))
+      assertTrue(writeStarted.await(1, TimeUnit.MINUTES))
+      (1..10).forEach { reportage.reportVerificationResult(notFound("plugin$it")) }
+      continueWriting.countDown()
+    }
+    assertEquals(listOf(listOf("first"), (1..10).map { "plugin$it" }), delegate.batches)
+  }
+
+  @Test
+  fun `failure to save results is rethrown`() {
+    val failure = IOException("No space left on device")
+    val delegate = object : RecordingReportage() {
+      override fun reportVerificationResults(pluginVerificationResults: List<PluginVerificationResult>) {
+        throw failure
+      }
+    }
+    val reportage = AsyncPluginVerificationReportage(delegate)
+    reportage.reportVerificationResult(notFound("first"))
+
+    var reportException: IllegalStateException? = null
+    for (attempt in 1..1000) {
+      reportException = catchIllegalState { reportage.reportVerificationResult(notFound("next")) }
+      if (reportException != null) {
+        break
+      }
+      Thread.sleep(10)
+    }
+    assertSame(failure, reportException?.cause)
+    assertSame(failure, catchIllegalState { reportage.close() }?.cause)
+    assertTrue(delegate.isClosed)
+  }
+
+  private fun catchIllegalState(action: () -> Unit): IllegalStateException? =
+    try {
+      action()
+      null
+    } catch (e: IllegalStateException) {
+      e
+    }
+
+  @Test
+  fun `results of all targets are appended to single files`() {
+    val verificationDirectory = temporaryFolder.newFolder().toPath()
+    val directoryReportage = DirectoryBasedPluginVerificationReportage(true) { verificationDirectory.resolve(it.toString()) }
+    AsyncPluginVerificationReportage(directoryReportage).use { reportage ->
+      reportage.reportVerificationResult(notFound("one"))
+      reportage.reportVerificationResult(notFound("two", otherVerificationTarget))
+      reportage.reportVerificationResult(notFound("three"))
+    }
+
+    val results = verificationDirectory.resolve(verificationTarget.toString()).resolve("verification-results.txt").readText()
+    assertEquals(
+      """
+      ==== one 1.0 ====
+      --- verification-verdict ---
+      Plugin is not found: reason of one
+      ==== three 1.0 ====
+      --- verification-verdict ---
+      Plugin is not found: reason of three
+      """.trimIndent(),
+      results.trim()
+    )
+    val otherResults = verificationDirectory.resolve(otherVerificationTarget.toString()).resolve("verification-results.txt").readText()
+    assertTrue(otherResults.startsWith("==== two 1.0 ===="))
+  }
+
+  @Test
+  fun `batch of results is flushed to single file at once`() {
+    val verificationDirectory = temporaryFolder.newFolder().toPath()
+    val resultsFile = verificationDirectory.resolve(verificationTarget.toString()).resolve("verification-results.txt")
+    DirectoryBasedPluginVerificationReportage(true) { verificationDirectory.resolve(it.toString()) }.use { reportage ->
+      reportage.reportVerificationResults((1..3).map { notFound("plugin$it") })
+      val flushedText = resultsFile.readText()
+      assertEquals((1..3).map { "==== plugin$it 1.0 ====" }, flushedText.lines().filter { it.startsWith("====") })
+    }
+  }
+
+  @Test
+  fun `failure to write single file is rethrown`() {
+    val verificationDirectory = temporaryFolder.newFolder().toPath()
+    val targetDirectory = verificationDirectory.resolve(verificationTarget.toString())
+    Files.createDirectories(targetDirectory.resolve("verification-results.txt"))
+    DirectoryBasedPluginVerificationReportage(true) { targetDirectory }.use { reportage ->
+      try {
+        reportage.reportVerificationResult(notFound("one"))
+        fail()
+      } catch (e: IOException) {
+      }
+    }
+  }
+}
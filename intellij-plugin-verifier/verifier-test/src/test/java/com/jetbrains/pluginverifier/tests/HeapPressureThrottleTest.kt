@@ -0,0 +1,67 @@
+package com.jetbrains.pluginverifier.tests
+
+import com.jetbrains.pluginverifier.HeapPressureThrottle
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class HeapPressureThrottleTest {
+
+  @Test
+  fun `one action is always let through under pressure`() {
+    val throttle = HeapPressureThrottle { true }
+    assertEquals(1, throttle.runThrottled { 1 })
+    assertEquals(2, throttle.runThrottled { 2 })
+  }
+
+  @Test
+  fun `actions wait for running action under pressure`() {
+    val throttle = HeapPressureThrottle { true }
+    val executor = Executors.newFixedThreadPool(2)
+    try {
+      val firstStarted = CountDownLatch(1)
+      val firstReleased = CountDownLatch(1)
+      val secondStarted = CountDownLatch(1)
+      val first = executor.submit {
+        throttle.runThrottled {
+          firstStarted.countDown()
+          firstReleased.await()
+        }
+      }
+      assertTrue(firstStarted.await(10, TimeUnit.SECONDS))
+      val second = executor.submit { throttle.runThrottled { secondStarted.countDown() } }
+
+      assertFalse(secondStarted.await(500, TimeUnit.MILLISECONDS))
+      firstReleased.countDown()
+      assertTrue(secondStarted.await(10, TimeUnit.SECONDS))
+      first.get(10, TimeUnit.SECONDS)
+      second.get(10, TimeUnit.SECONDS)
+    } finally {
+      executor.shutdownNow()
+    }
+  }
+
+  @Test
+  fun `actions run concurrently without pressure`() {
+    val throttle = HeapPressureThrottle { false }
+    val executor = Executors.newFixedThreadPool(3)
+    try {
+      val allStarted = CountDownLatch(3)
+      val futures = (1..3).map {
+        executor.submit {
+          throttle.runThrottled {
+            allStarted.countDown()
+            assertTrue(allStarted.await(10, TimeUnit.SECONDS))
+          }
+        }
+      }
+      futures.forEach { it.get(10, TimeUnit.SECONDS) }
+    } finally {
+      executor.shutdownNow()
+    }
+  }
+}
@@ -0,0 +1,375 @@
+package com.jetbrains.pluginverifier.tests
+
+import com.jetbrains.plugin.structure.base.plugin.PluginCreationSuccess
+import com.jetbrains.plugin.structure.base.utils.contentBuilder.ContentBuilder
+import com.jetbrains.plugin.structure.base.utils.contentBuilder.buildDirectory
+import com.jetbrains.plugin.structure.base.utils.contentBuilder.buildZipFile
+import com.jetbrains.plugin.structure.ide.Ide
+import com.jetbrains.plugin.structure.ide.IdeManager
+import com.jetbrains.plugin.structure.intellij.plugin.IdePlugin
+import com.jetbrains.plugin.structure.intellij.plugin.IdePluginManager
+import com.jetbrains.pluginverifier.PluginVerificationResult
+import com.jetbrains.pluginverifier.incremental.IncrementalVerificationCache
+import com.jetbrains.pluginverifier.results.problems.MethodNotFoundProblem
+import com.jetbrains.pluginverifier.results.problems.OverridingFinalMethodProblem
+import com.jetbrains.pluginverifier.verifiers.filter.ClassFilter
+import com.jetbrains.pluginverifier.verifiers.resolution.ClassFile
+import net.bytebuddy.ByteBuddy
+import net.bytebuddy.description.annotation.AnnotationDescription
+import net.bytebuddy.description.modifier.MethodManifestation
+import net.bytebuddy.description.modifier.Visibility
+import net.bytebuddy.dynamic.DynamicType
+import net.bytebuddy.implementation.ExceptionMethod
+import net.bytebuddy.implementation.MethodCall
+import net.bytebuddy.implementation.StubMethod
+import net.bytebuddy.matcher.ElementMatchers
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.util.*
+
+class IncrementalVerificationTest {
+
+  @Rule
+  @JvmField
+  val temporaryFolder = TemporaryFolder()
+
+  private val pluginClasses = setOf("usage/UsesApi", "usage/UsesOther", "usage/Derived", "usage/OtherDerived", "usage/Standalone")
+
+  private class RecordingClassFilter : ClassFilter {
+    val verifiedClasses: MutableSet<String> = Collections.synchronizedSet(hashSetOf())
+
+    override fun shouldVerify(classFile: ClassFile): Boolean {
+      verifiedClasses += classFile.name
+      return true
+    }
+  }
+
+  /**
+   * IDE 1.0
+   * ```
+   *   public class ide.Api { public void foo() { } }
+   *   public class ide.Other { public void bar() { } }
+   *   public class ide.Root { public void m() { } }
+   *   public class ide.Base extends ide.Root { }
+   * ```
+   *
+   * IDE 2.0 is the same, but `Api.foo()` is removed and `Root.m()` is final.
+   *
+   * IDE 3.0 is the same as IDE 1.0, but `Other` has one more method `baz()`.
+   *
+   * Plugin
+   * ```
+   *   public class usage.UsesApi { public void run(ide.Api api) { api.foo(); } }
+   *   public class usage.UsesOther { public void run(ide.Other other) { other.bar(); } }
+   *   public class usage.Derived extends ide.Base { public void m() { } }
+   *   public class usage.OtherDerived extends ide.Base { public void m() { } }
+   *   public class usage.Standalone { public void run() { } }
+   * ```
+   */
+  private class TestClasses {
+    val apiV1 = createClass("ide.Api", "foo")
+
+    val apiV2 = createClass("ide.Api")
+
+    val other = createClass("ide.Other", "bar")
+
+    val otherV3 = createClass("ide.Other", "bar", "baz")
+
+    val rootV1: DynamicType.Unloaded<*> = ByteBuddy()
+      .subclass(Any::class.java)
+      .name("ide.Root")
+      .defineMethod("m", Void.TYPE, Visibility.PUBLIC)
+      .intercept(StubMethod.INSTANCE)
+      .make()
+
+    val rootV2: DynamicType.Unloaded<*> = ByteBuddy()
+      .subclass(Any::class.java)
+      .name("ide.Root")
+      .defineMethod("m", Void.TYPE, Visibility.PUBLIC, MethodManifestation.FINAL)
+      .intercept(StubMethod.INSTANCE)
+      .make()
+
+    val base: DynamicType.Unloaded<*> = ByteBuddy()
+      .subclass(rootV1.typeDescription)
+      .name("ide.Base")
+      .make()
+
+    val pluginClasses = listOf(
+      createInvokingClass("usage.UsesApi", apiV1, "foo"),
+      createInvokingClass("usage.UsesOther", other, "bar"),
+      createDerivedClass("usage.Derived"),
+      createDerivedClass("usage.OtherDerived"),
+      createClass("usage.Standalone", "run")
+    )
+
+    private fun createClass(name: String, vararg methods: String): DynamicType.Unloaded<*> {
+      var builder: DynamicType.Builder<*> = ByteBuddy().subclass(Any::class.java).name(name)
+      for (method in methods) {
+        builder = builder.defineMethod(method, Void.TYPE, Visibility.PUBLIC).intercept(StubMethod.INSTANCE)
+      }
+      return builder.make()
+    }
+
+    private fun createInvokingClass(name: String, invokedClass: DynamicType.Unloaded<*>, invokedMethod: String): DynamicType.Unloaded<*> {
+      val method = invokedClass.typeDescription.declaredMethods.filter(ElementMatchers.named(invokedMethod)).only
+      return ByteBuddy()
+        .subclass(Any::class.java)
+        .name(name)
+        .defineMethod("run", Void.TYPE, Visibility.PUBLIC)
+        .withParameters(invokedClass.typeDescription)
+        .intercept(MethodCall.invoke(method).onArgument(0))
+        .make()
+    }
+
+    private fun createDerivedClass(name: String): DynamicType.Unloaded<*> =
+      ByteBuddy()
+        .subclass(base.typeDescription)
+        .name(name)
+        .defineMethod("m", Void.TYPE, Visibility.PUBLIC)
+        .intercept(StubMethod.INSTANCE)
+        .make()
+  }
+
+  @Test
+  fun `results with up to date records are the same as results of full verification`() {
+    val testClasses = TestClasses()
+    val ide = buildIde("IU-192.2", testClasses.apiV2, testClasses.other, testClasses.rootV2, testClasses.base)
+    val idePlugin = buildIdePlugin(testClasses.pluginClasses)
+
+    val fullResult = runVerification(ide, idePlugin, null)
+    assertEquals(
+      setOf(MethodNotFoundProblem::class.java, OverridingFinalMethodProblem::class.java),
+      fullResult.result.compatibilityProblems.mapTo(hashSetOf()) { it.javaClass }
+    )
+
+    val cache = IncrementalVerificationCache()
+    val firstResult = runVerification(ide, idePlugin, cache)
+    assertEquals(pluginClasses, firstResult.verifiedClasses)
+    assertSameResults(fullResult.result, firstResult.result)
+
+    //Classes with problems are not recorded and are verified again.
+    val secondResult = runVerification(ide, idePlugin, cache)
+    assertEquals(setOf("usage/UsesApi", "usage/Derived", "usage/OtherDerived"), secondResult.verifiedClasses)
+    assertSameResults(fullResult.result, secondResult.result)
+  }
+
+  @Test
+  fun `records of several targets verified at once are kept for each target`() {
+    val testClasses = TestClasses()
+    val ides = listOf(
+      buildIde("IU-192.1", testClasses.apiV1, testClasses.other, testClasses.rootV1, testClasses.base),
+      buildIde("IU-192.3", testClasses.apiV1, testClasses.otherV3, testClasses.rootV1, testClasses.base)
+    )
+    val idePlugin = buildIdePlugin(testClasses.pluginClasses)
+
+    val cache = IncrementalVerificationCache()
+    assertEquals(pluginClasses, verifyAgainstAllTargets(ides, idePlugin, cache))
+    assertEquals(emptySet<String>(), verifyAgainstAllTargets(ides, idePlugin, cache))
+  }
+
+  @Test
+  fun `only classes depending on changed IDE classes are verified again`() {
+    val testClasses = TestClasses()
+    val oldIde = buildIde("IU-192.1", testClasses.apiV1, testClasses.other, testClasses.rootV1, testClasses.base)
+    val newIde = buildIde("IU-192.2", testClasses.apiV2, testClasses.other, testClasses.rootV2, testClasses.base)
+    val idePlugin = buildIdePlugin(testClasses.pluginClasses)
+
+    val cache = IncrementalVerificationCache()
+    val oldResult = runVerification(oldIde, idePlugin, cache)
+    assertEquals(pluginClasses, oldResult.verifiedClasses)
+    assertTrue(oldResult.result.compatibilityProblems.isEmpty())
+
+    val newResult = runVerification(newIde, idePlugin, cache)
+    assertEquals(setOf("usage/UsesApi", "usage/Derived", "usage/OtherDerived"), newResult.verifiedClasses)
+    assertSameResults(runVerification(newIde, idePlugin, null).result, newResult.result)
+  }
+
+  @Test
+  fun `records saved to the directory are used by the next run`() {
+    val testClasses = TestClasses()
+    val oldIde = buildIde("IU-192.1", testClasses.apiV1, testClasses.other, testClasses.rootV1, testClasses.base)
+    val newIde = buildIde("IU-192.2", testClasses.apiV2, testClasses.other, testClasses.rootV2, testClasses.base)
+    val idePlugin = buildIdePlugin(testClasses.pluginClasses)
+    val recordsDirectory = temporaryFolder.newFolder().toPath()
+
+    assertEquals(pluginClasses, runVerification(oldIde, idePlugin, IncrementalVerificationCache(recordsDirectory)).verifiedClasses)
+
+    val newResult = runVerification(newIde, idePlugin, IncrementalVerificationCache(recordsDirectory))
+    assertEquals(setOf("usage/UsesApi", "usage/Derived", "usage/OtherDerived"), newResult.verifiedClasses)
+    assertSameResults(runVerification(newIde, idePlugin, null).result, newResult.result)
+  }
+
+  @Test
+  fun `records saved with another configuration are discarded`() {
+    val testClasses = TestClasses()
+    val ide = buildIde("IU-192.1", testClasses.apiV1, testClasses.other, testClasses.rootV1, testClasses.base)
+    val idePlugin = buildIdePlugin(testClasses.pluginClasses)
+    val recordsDirectory = temporaryFolder.newFolder().toPath()
+    val oldVerifierKey = IncrementalVerificationCache.getConfigurationKey("1.0", emptyList(), emptyList())
+    val newVerifierKey = IncrementalVerificationCache.getConfigurationKey("1.1", emptyList(), emptyList())
+
+    assertEquals(pluginClasses, runVerification(ide, idePlugin, IncrementalVerificationCache(recordsDirectory, configurationKey = oldVerifierKey)).verifiedClasses)
+    assertEquals(pluginClasses, runVerification(ide, idePlugin, IncrementalVerificationCache(recordsDirectory, configurationKey = newVerifierKey)).verifiedClasses)
+  }
+
+  @Test
+  fun `changed classes of a plugin with the same version are verified again`() {
+    val testClasses = TestClasses()
+    val ide = buildIde("IU-192.1", testClasses.apiV1, testClasses.other, testClasses.rootV1, testClasses.base)
+    val changedStandalone = ByteBuddy()
+      .subclass(Any::class.java)
+      .name("usage.Standalone")
+      .defineMethod("run", Void.TYPE, Visibility.PUBLIC)
+      .intercept(ExceptionMethod.throwing(IllegalStateException::class.java))
+      .make()
+    val idePlugin = buildIdePlugin(testClasses.pluginClasses)
+    val changedIdePlugin = buildIdePlugin(testClasses.pluginClasses.dropLast(1) + changedStandalone, "changed-plugin.jar")
+    val recordsDirectory = temporaryFolder.newFolder().toPath()
+
+    assertEquals(pluginClasses, runVerification(ide, idePlugin, IncrementalVerificationCache(recordsDirectory)).verifiedClasses)
+    assertEquals(setOf("usage/Standalone"), runVerification(ide, changedIdePlugin, IncrementalVerificationCache(recordsDirectory)).verifiedClasses)
+  }
+
+  /**
+   * IDE 1.0
+   * ```
+   *   public class ide.Named { public void take(String value) { } }
+   *   public class ide.Annotated { public void take(String value) { } }
+   * ```
+   *
+   * IDE 2.0 is the same, but the parameter of `Named.take` is renamed and the parameter of `Annotated.take` is annotated.
+   *
+   * Plugin
+   * ```
+   *   public class usage.UsesNamed { public void run(ide.Named named) { named.take("x"); } }
+   *   public class usage.UsesAnnotated { public void run(ide.Annotated annotated) { annotated.take("x"); } }
+   *   public class usage.Standalone { public void run() { } }
+   * ```
+   */
+  @Test
+  fun `classes depending on changed parameters of IDE methods are verified again`() {
+    val namedV1 = createClassWithParameter("ide.Named", "value")
+    val namedV2 = createClassWithParameter("ide.Named", "renamed")
+    val annotatedV1 = createClassWithParameter("ide.Annotated", "value")
+    val annotatedV2 = createClassWithParameter("ide.Annotated", "value", AnnotationDescription.Builder.ofType(java.lang.Deprecated::class.java).build())
+
+    val oldIde = buildIde("IU-192.1", namedV1, annotatedV1)
+    val newIde = buildIde("IU-192.2", namedV2, annotatedV2)
+    val idePlugin = buildIdePlugin(
+      listOf(
+        createInvokingClass("usage.UsesNamed", namedV1),
+        createInvokingClass("usage.UsesAnnotated", annotatedV1),
+        ByteBuddy().subclass(Any::class.java).name("usage.Standalone").make()
+      )
+    )
+
+    val cache = IncrementalVerificationCache()
+    assertEquals(setOf("usage/UsesNamed", "usage/UsesAnnotated", "usage/Standalone"), runVerification(oldIde, idePlugin, cache).verifiedClasses)
+    assertEquals(emptySet<String>(), runVerification(oldIde, idePlugin, cache).verifiedClasses)
+    assertEquals(setOf("usage/UsesNamed", "usage/UsesAnnotated"), runVerification(newIde, idePlugin, cache).verifiedClasses)
+  }
+
+  private fun createClassWithParameter(name: String, parameterName: String, vararg annotations: AnnotationDescription) =
+    ByteBuddy()
+      .subclass(Any::class.java)
+      .name(name)
+      .defineMethod("take", Void.TYPE, Visibility.PUBLIC)
+      .withParameter(String::class.java, parameterName)
+      .annotateParameter(*annotations)
+      .intercept(StubMethod.INSTANCE)
+      .make()
+
+  private fun createInvokingClass(name: String, invokedClass: DynamicType.Unloaded<*>): DynamicType.Unloaded<*> {
+    val method = invokedClass.typeDescription.declaredMethods.filter(ElementMatchers.named("take")).only
+    return ByteBuddy()
+      .subclass(Any::class.java)
+      .name(name)
+      .defineMethod("run", Void.TYPE, Visibility.PUBLIC)
+      .withParameters(invokedClass.typeDescription)
+      .intercept(MethodCall.invoke(method).onArgument(0).with("x"))
+      .make()
+  }
+
+  private class TestVerification(val result: PluginVerificationResult.Verified, val verifiedClasses: Set<String>)
+
+  private fun runVerification(ide: Ide, idePlugin: IdePlugin, cache: IncrementalVerificationCache?): TestVerification {
+    val classFilter = RecordingClassFilter()
+    val result = VerificationRunner().runPluginVerification(ide, idePlugin, listOf(classFilter), cache)
+    return TestVerification(result as PluginVerificationResult.Verified, classFilter.verifiedClasses.toSet())
+  }
+
+  private fun verifyAgainstAllTargets(ides: List<Ide>, idePlugin: IdePlugin, cache: IncrementalVerificationCache): Set<String> {
+    val classFilter = RecordingClassFilter()
+    VerificationRunner().runPluginVerification(ides, idePlugin, listOf(classFilter), cache)
+    return classFilter.verifiedClasses.toSet()
+  }
+
+  private fun assertSameResults(expected: PluginVerificationResult.Verified, actual: PluginVerificationResult.Verified) {
+    assertEquals(expected.compatibilityProblems, actual.compatibilityProblems)
+    assertEquals(expected.compatibilityWarnings, actual.compatibilityWarnings)
+    assertEquals(expected.deprecatedUsages, actual.deprecatedUsages)
+    assertEquals(expected.experimentalApiUsages, actual.experimentalApiUsages)
+    assertEquals(expected.internalApiUsages, actual.internalApiUsages)
+    assertEquals(expected.nonExtendableApiUsages, actual.nonExtendableApiUsages)
+    assertEquals(expected.overrideOnlyMethodUsages, actual.overrideOnlyMethodUsages)
+  }
+
+  private fun ContentBuilder.classes(classes: List<DynamicType.Unloaded<*>>) {
+    for ((packageName, packageClasses) in classes.groupBy { it.typeDescription.name.substringBeforeLast('.') }) {
+      dir(packageName) {
+        for (dynamicType in packageClasses) {
+          file(dynamicType.typeDescription.name.substringAfterLast('.') + ".class", dynamicType.bytes)
+        }
+      }
+    }
+  }
+
+  private fun buildIdePlugin(classes: List<DynamicType.Unloaded<*>>, fileName: String = "plugin.jar"): IdePlugin {
+    val pluginFile = buildZipFile(temporaryFolder.newFile(fileName).toPath()) {
+      classes(classes)
+      dir("META-INF") {
+        file("plugin.xml") {
+          """
+            <idea-plugin>
+              <id>someId</id>
+              <name>someName</name>
+              <version>someVersion</version>
+              ""<vendor email="vendor.com" url="url">vendor</vendor>""
+              <description>this description is looooooooooong enough</description>
+              <change-notes>these change-notes are looooooooooong enough</change-notes>
+              <idea-version since-build="131.1"/>
+            </idea-plugin>
+            """.trimIndent()
+        }
+      }
+    }
+    return (IdePluginManager.createManager().createPlugin(pluginFile) as PluginCreationSuccess).plugin
+  }
+
+  private fun buildIde(version: String, vararg classes: DynamicType.Unloaded<*>): Ide {
+    val ideaDirectory = buildDirectory(temporaryFolder.newFolder().toPath()) {
+      file("build.txt", version)
+      dir("lib") {
+        zip("idea.jar") {
+          classes(classes.toList())
+          dir("META-INF") {
+            file("plugin.xml") {
+              """
+                <idea-plugin>
+                  <id>com.intellij</id>
+                  <name>IDEA CORE</name>
+                  <version>1.0</version>
+                  <module value="com.intellij.modules.all"/>
+                </idea-plugin>
+                """.trimIndent()
+            }
+          }
+        }
+      }
+    }
+    return IdeManager.createManager().createIde(ideaDirectory)
+  }
+}
@@ -0,0 +1,248 @@
+package com.jetbrains.pluginverifier.tests
+
+import com.jetbrains.plugin.structure.base.plugin.PluginCreationSuccess
+import com.jetbrains.plugin.structure.base.utils.contentBuilder.ContentBuilder
+import com.jetbrains.plugin.structure.base.utils.contentBuilder.buildDirectory
+import com.jetbrains.plugin.structure.base.utils.contentBuilder.buildZipFile
+import com.jetbrains.plugin.structure.ide.Ide
+import com.jetbrains.plugin.structure.ide.IdeManager
+import com.jetbrains.plugin.structure.intellij.plugin.IdePlugin
+import com.jetbrains.plugin.structure.intellij.plugin.IdePluginManager
+import com.jetbrains.pluginverifier.PluginVerificationResult
+import com.jetbrains.pluginverifier.results.problems.MethodNotFoundProblem
+import com.jetbrains.pluginverifier.usages.deprecated.DeprecatedMethodOverridden
+import com.jetbrains.pluginverifier.usages.nonExtendable.NonExtendableTypeInherited
+import com.jetbrains.pluginverifier.verifiers.filter.ClassFilter
+import com.jetbrains.pluginverifier.verifiers.resolution.ClassFile
+import net.bytebuddy.ByteBuddy
+import net.bytebuddy.description.annotation.AnnotationDescription
+import net.bytebuddy.description.modifier.Visibility
+import net.bytebuddy.dynamic.DynamicType
+import net.bytebuddy.implementation.MethodCall
+import net.bytebuddy.implementation.StubMethod
+import net.bytebuddy.matcher.ElementMatchers
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ForkJoinWorkerThread
+import java.util.concurrent.TimeUnit
+
+class MultiTargetVerificationTest {
+
+  @Rule
+  @JvmField
+  val temporaryFolder = TemporaryFolder()
+
+  /**
+   * IDE 192.1
+   * ```
+   *   public class ide.Base { public void m() { } }
+   *   public class ide.Api { public void foo() { } }
+   * ```
+   *
+   * IDE 192.2
+   * ```
+   *   @ApiStatus.NonExtendable public class ide.Base { @Deprecated public void m() { } }
+   *   public class ide.Api { }
+   * ```
+   *
+   * Plugin
+   * ```
+   *   public class usage.Derived extends ide.Base { public void m() { } }
+   *   public class usage.UsesApi { public void run(ide.Api api) { api.foo(); } }
+   * ```
+   */
+  private class TestClasses {
+    private val nonExtendable = ByteBuddy()
+      .makeAnnotation()
+      .name("org.jetbrains.annotations.ApiStatus\$NonExtendable")
+      .make()
+
+    val baseV1: DynamicType.Unloaded<*> = ByteBuddy()
+      .subclass(Any::class.java)
+      .name("ide.Base")
+      .defineMethod("m", Void.TYPE, Visibility.PUBLIC)
+      .intercept(StubMethod.INSTANCE)
+      .make()
+
+    val baseV2: DynamicType.Unloaded<*> = ByteBuddy()
+      .subclass(Any::class.java)
+      .name("ide.Base")
+      .annotateType(AnnotationDescription.Builder.ofType(nonExtendable.typeDescription).build())
+      .defineMethod("m", Void.TYPE, Visibility.PUBLIC)
+      .intercept(StubMethod.INSTANCE)
+      .annotateMethod(AnnotationDescription.Builder.ofType(java.lang.Deprecated::class.java).build())
+      .make()
+
+    val apiV1: DynamicType.Unloaded<*> = ByteBuddy()
+      .subclass(Any::class.java)
+      .name("ide.Api")
+      .defineMethod("foo", Void.TYPE, Visibility.PUBLIC)
+      .intercept(StubMethod.INSTANCE)
+      .make()
+
+    val apiV2: DynamicType.Unloaded<*> = ByteBuddy()
+      .subclass(Any::class.java)
+      .name("ide.Api")
+      .make()
+
+    val pluginClasses: List<DynamicType.Unloaded<*>> = listOf(
+      ByteBuddy()
+        .subclass(baseV1.typeDescription)
+        .name("usage.Derived")
+        .defineMethod("m", Void.TYPE, Visibility.PUBLIC)
+        .intercept(StubMethod.INSTANCE)
+        .make(),
+      ByteBuddy()
+        .subclass(Any::class.java)
+        .name("usage.UsesApi")
+        .defineMethod("run", Void.TYPE, Visibility.PUBLIC)
+        .withParameters(apiV1.typeDescription)
+        .intercept(MethodCall.invoke(apiV1.typeDescription.declaredMethods.filter(ElementMatchers.named("foo")).only).onArgument(0))
+        .make()
+    )
+  }
+
+  @Test
+  fun `verification against several targets gives the same results as separate verifications`() {
+    val testClasses = TestClasses()
+    val ides = buildIdes(testClasses)
+    val idePlugin = buildIdePlugin(testClasses.pluginClasses)
+
+    val results = VerificationRunner().runPluginVerification(ides, idePlugin).map { it as PluginVerificationResult.Verified }
+    assertResultsOfTargets(results)
+    for ((ide, result) in ides.zip(results)) {
+      assertSameResults(VerificationRunner().runPluginVerification(ide, idePlugin) as PluginVerificationResult.Verified, result)
+    }
+  }
+
+  @Test
+  fun `parallel verification against several targets gives the same results as separate verifications`() {
+    val testClasses = TestClasses()
+    val ides = buildIdes(testClasses)
+    //Plugins with at least 1000 classes are verified in parallel.
+    val fillerClasses = (1..1000).map { ByteBuddy().subclass(Any::class.java).name("filler.Filler$it").make() }
+    val idePlugin = buildIdePlugin(testClasses.pluginClasses + fillerClasses)
+
+    val forkJoinPool = ForkJoinPool(4)
+    try {
+      val parallelFilter = ParallelVerificationFilter()
+      val results = VerificationRunner()
+        .runPluginVerification(ides, idePlugin, listOf(parallelFilter), classesVerificationPool = forkJoinPool)
+        .map { it as PluginVerificationResult.Verified }
+      assertTrue(parallelFilter.verifiedInParallel)
+      assertResultsOfTargets(results)
+      for ((ide, result) in ides.zip(results)) {
+        val singleTargetResult = VerificationRunner()
+          .runPluginVerification(listOf(ide), idePlugin, classesVerificationPool = forkJoinPool)
+          .single()
+        assertSameResults(singleTargetResult as PluginVerificationResult.Verified, result)
+      }
+    } finally {
+      forkJoinPool.shutdown()
+      forkJoinPool.awaitTermination(1, TimeUnit.MINUTES)
+    }
+  }
+
+  private class ParallelVerificationFilter : ClassFilter {
+    @Volatile
+    var verifiedInParallel = true
+
+    override fun shouldVerify(classFile: ClassFile): Boolean {
+      if (Thread.currentThread() !is ForkJoinWorkerThread) {
+        verifiedInParallel = false
+      }
+      return true
+    }
+  }
+
+  private fun assertResultsOfTargets(results: List<PluginVerificationResult.Verified>) {
+    val (oldResult, newResult) = results
+    assertEquals("IU-192.1", oldResult.verificationTarget.toString())
+    assertEquals("IU-192.2", newResult.verificationTarget.toString())
+
+    assertTrue(oldResult.compatibilityProblems.isEmpty())
+    assertTrue(oldResult.deprecatedUsages.isEmpty())
+    assertTrue(oldResult.nonExtendableApiUsages.isEmpty())
+
+    assertEquals(listOf(MethodNotFoundProblem::class.java), newResult.compatibilityProblems.map { it.javaClass })
+    assertEquals(listOf(DeprecatedMethodOverridden::class.java), newResult.deprecatedUsages.map { it.javaClass })
+    assertEquals(listOf(NonExtendableTypeInherited::class.java), newResult.nonExtendableApiUsages.map { it.javaClass })
+  }
+
+  private fun assertSameResults(expected: PluginVerificationResult.Verified, actual: PluginVerificationResult.Verified) {
+    assertEquals(expected.verificationTarget, actual.verificationTarget)
+    assertEquals(expected.compatibilityProblems, actual.compatibilityProblems)
+    assertEquals(expected.compatibilityWarnings, actual.compatibilityWarnings)
+    assertEquals(expected.deprecatedUsages, actual.deprecatedUsages)
+    assertEquals(expected.experimentalApiUsages, actual.experimentalApiUsages)
+    assertEquals(expected.internalApiUsages, actual.internalApiUsages)
+    assertEquals(expected.nonExtendableApiUsages, actual.nonExtendableApiUsages)
+    assertEquals(expected.overrideOnlyMethodUsages, actual.overrideOnlyMethodUsages)
+    assertEquals(expected.dynamicPluginStatus, actual.dynamicPluginStatus)
+  }
+
+  private fun buildIdes(testClasses: TestClasses): List<Ide> = listOf(
+    buildIde("IU-192.1", testClasses.baseV1, testClasses.apiV1),
+    buildIde("IU-192.2", testClasses.baseV2, testClasses.apiV2)
+  )
+
+  private fun ContentBuilder.classes(classes: List<DynamicType.Unloaded<*>>) {
+    for ((packageName, packageClasses) in classes.groupBy { it.typeDescription.name.substringBeforeLast('.') }) {
+      dir(packageName) {
+        for (dynamicType in packageClasses) {
+          file(dynamicType.typeDescription.name.substringAfterLast('.') + ".class", dynamicType.bytes)
+        }
+      }
+    }
+  }
+
+  private fun buildIdePlugin(classes: List<DynamicType.Unloaded<*>>): IdePlugin {
+    val pluginFile = buildZipFile(temporaryFolder.newFile("plugin.jar").toPath()) {
+      classes(classes)
+      dir("META-INF") {
+        file("plugin.xml") {
+          """
+            <idea-plugin>
+              <id>someId</id>
+              <name>someName</name>
+              <version>someVersion</version>
+              ""<vendor email="vendor.com" url="url">vendor</vendor>""
+              <description>this description is looooooooooong enough</description>
+              <change-notes>these change-notes are looooooooooong enough</change-notes>
+              <idea-version since-build="131.1"/>
+            </idea-plugin>
+            """.trimIndent()
+        }
+      }
+    }
+    return (IdePluginManager.createManager().createPlugin(pluginFile) as PluginCreationSuccess).plugin
+  }
+
+  private fun buildIde(version: String, vararg classes: DynamicType.Unloaded<*>): Ide {
+    val ideaDirectory = buildDirectory(temporaryFolder.newFolder().toPath()) {
+      file("build.txt", version)
+      dir("lib") {
+        zip("idea.jar") {
+          classes(classes.toList())
+          dir("META-INF") {
+            file("plugin.xml") {
+              """
+                <idea-plugin>
+                  <id>com.intellij</id>
+                  <name>IDEA CORE</name>
+                  <version>1.0</version>
+                  <module value="com.intellij.modules.all"/>
+                </idea-plugin>
+                """.trimIndent()
+            }
+          }
+        }
+      }
+    }
+    return IdeManager.createManager().createIde(ideaDirectory)
+  }
+}
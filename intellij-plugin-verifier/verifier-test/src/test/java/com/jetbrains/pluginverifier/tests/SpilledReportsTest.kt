@@ -0,0 +1,79 @@
+package com.jetbrains.pluginverifier.tests
+
+import com.jetbrains.plugin.structure.intellij.version.IdeVersion
+import com.jetbrains.pluginverifier.PluginVerificationResult
+import com.jetbrains.pluginverifier.PluginVerificationTarget
+import com.jetbrains.pluginverifier.jdk.JdkVersion
+import com.jetbrains.pluginverifier.output.SpilledTexts
+import com.jetbrains.pluginverifier.output.html.HtmlReportFragments
+import com.jetbrains.pluginverifier.output.stream.TextReportFragments
+import com.jetbrains.pluginverifier.tests.mocks.createMockPluginInfo
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.PrintWriter
+import java.io.StringWriter
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+class SpilledReportsTest {
+
+  private val verificationTarget = PluginVerificationTarget.IDE(IdeVersion.createIdeVersion("IU-201.1"), JdkVersion("1.8", null))
+
+  @Test
+  fun `spilled texts are read back`() {
+    SpilledTexts().use { spilledTexts ->
+      val first = spilledTexts.add("first")
+      val empty = spilledTexts.add("")
+      val nonAscii = spilledTexts.add("второй ☃")
+      assertEquals("второй ☃", spilledTexts.get(nonAscii))
+      assertEquals("", spilledTexts.get(empty))
+      assertEquals("first", spilledTexts.get(first))
+    }
+  }
+
+  @Test
+  fun `spilled texts are added concurrently`() {
+    SpilledTexts().use { spilledTexts ->
+      val executor = Executors.newFixedThreadPool(4)
+      try {
+        val handles = (0 until 100)
+          .map { index -> executor.submit(Callable { index to spilledTexts.add("text $index") }) }
+          .map { it.get() }
+        for ((index, handle) in handles) {
+          assertEquals("text $index", spilledTexts.get(handle))
+        }
+      } finally {
+        executor.shutdownNow()
+      }
+    }
+  }
+
+  @Test
+  fun `html fragments are grouped by plugin`() {
+    HtmlReportFragments(verificationTarget).use { fragments ->
+      fragments.addResult(notFound("one", "1.0", "reason one"))
+      fragments.addResult(notFound("two", "2.0", "reason two"))
+      fragments.addResult(notFound("one", "1.1", "reason three"))
+
+      val pluginFragments = fragments.getPluginFragments()
+      assertEquals(setOf("one", "two"), pluginFragments.keys)
+      assertEquals(listOf("1.0", "1.1"), pluginFragments.getValue("one").map { it.pluginVersion })
+      assertTrue(fragments.getHtml(pluginFragments.getValue("one")[1]).contains("reason three"))
+    }
+  }
+
+  @Test
+  fun `text report is printed in order of results`() {
+    TextReportFragments().use { fragments ->
+      fragments.addResult(notFound("one", "1.0", "reason"))
+      fragments.addResult(notFound("two", "2.0", "reason"))
+
+      val output = StringWriter().also { fragments.printTo(PrintWriter(it)) }.toString()
+      assertTrue(output.indexOf("Plugin one 1.0") in 0 until output.indexOf("Plugin two 2.0"))
+    }
+  }
+
+  private fun notFound(pluginId: String, version: String, reason: String) =
+    PluginVerificationResult.NotFound(createMockPluginInfo(pluginId, version), verificationTarget, reason)
+}
@@ -1,5 +1,6 @@
 package com.jetbrains.pluginverifier.tests
 
+import com.jetbrains.plugin.structure.base.utils.closeAll
 import com.jetbrains.plugin.structure.ide.Ide
 import com.jetbrains.plugin.structure.intellij.plugin.IdePlugin
 import com.jetbrains.pluginverifier.PluginVerificationDescriptor
@@ -7,6 +8,7 @@ import com.jetbrains.pluginverifier.PluginVerificationResult
 import com.jetbrains.pluginverifier.PluginVerifier
 import com.jetbrains.pluginverifier.dependencies.resolution.BundledPluginDependencyFinder
 import com.jetbrains.pluginverifier.ide.IdeDescriptor
+import com.jetbrains.pluginverifier.incremental.IncrementalVerificationCache
 import com.jetbrains.pluginverifier.options.CmdOpts
 import com.jetbrains.pluginverifier.options.OptionsParser
 import com.jetbrains.pluginverifier.plugin.PluginDetailsCache
@@ -18,13 +20,32 @@ import com.jetbrains.pluginverifier.repository.repositories.local.LocalPluginInf
 import com.jetbrains.pluginverifier.repository.repositories.marketplace.MarketplaceRepository
 import com.jetbrains.pluginverifier.resolution.DefaultClassResolverProvider
 import com.jetbrains.pluginverifier.tests.mocks.TestJdkDescriptorProvider
+import com.jetbrains.pluginverifier.verifiers.filter.ClassFilter
 import com.jetbrains.pluginverifier.verifiers.filter.DynamicallyLoadedFilter
 import java.net.URL
 import java.nio.file.Files
+import java.util.concurrent.ForkJoinPool
 
 class VerificationRunner {
 
-  fun runPluginVerification(ide: Ide, idePlugin: IdePlugin): PluginVerificationResult {
+  fun runPluginVerification(
+    ide: Ide,
+    idePlugin: IdePlugin,
+    classFilters: List<ClassFilter> = listOf(DynamicallyLoadedFilter()),
+    incrementalVerificationCache: IncrementalVerificationCache? = null
+  ): PluginVerificationResult = runPluginVerification(listOf(ide), idePlugin, classFilters, incrementalVerificationCache).single()
+
+  /**
+   * Verifies [idePlugin] against all the [ides] with one [PluginVerifier]
+   * and returns the results in the same order.
+   */
+  fun runPluginVerification(
+    ides: List<Ide>,
+    idePlugin: IdePlugin,
+    classFilters: List<ClassFilter> = listOf(DynamicallyLoadedFilter()),
+    incrementalVerificationCache: IncrementalVerificationCache? = null,
+    classesVerificationPool: ForkJoinPool? = null
+  ): List<PluginVerificationResult> {
     val tempDownloadDir = createTempDir().apply { deleteOnExit() }.toPath()
     val pluginFilesBank = PluginFilesBank.create(MarketplaceRepository(URL("https://unused.com")), tempDownloadDir, DiskSpaceSetting(SpaceAmount.ZERO_SPACE))
 
@@ -34,24 +55,35 @@ class VerificationRunner {
 
     val pluginDetailsProvider = PluginDetailsProviderImpl(tempFolder)
     val pluginDetailsCache = PluginDetailsCache(10, pluginFilesBank, pluginDetailsProvider)
-    return IdeDescriptor.create(ide.idePath, jdkPath, null, null).use { ideDescriptor ->
-      val externalClassesPackageFilter = OptionsParser.getExternalClassesPackageFilter(CmdOpts())
+    val pluginInfo = LocalPluginInfo(idePlugin)
+    val ideDescriptors = arrayListOf<IdeDescriptor>()
+    try {
+      val verificationDescriptors = ides.map { ide ->
+        val ideDescriptor = IdeDescriptor.create(ide.idePath, jdkPath, null, null)
+        ideDescriptors += ideDescriptor
+        val externalClassesPackageFilter = OptionsParser.getExternalClassesPackageFilter(CmdOpts())
 
-      val classResolverProvider = DefaultClassResolverProvider(
-        BundledPluginDependencyFinder(ide, pluginDetailsCache),
-        ideDescriptor,
-        externalClassesPackageFilter
-      )
-      val verificationDescriptor = PluginVerificationDescriptor.IDE(ideDescriptor, classResolverProvider, LocalPluginInfo(idePlugin))
+        val classResolverProvider = DefaultClassResolverProvider(
+          BundledPluginDependencyFinder(ide, pluginDetailsCache),
+          ideDescriptor,
+          externalClassesPackageFilter
+        )
+        PluginVerificationDescriptor.IDE(ideDescriptor, classResolverProvider, pluginInfo)
+      }
 
       val pluginVerifier = PluginVerifier(
-        verificationDescriptor,
+        verificationDescriptors.first(),
         emptyList(),
         pluginDetailsCache,
-        listOf(DynamicallyLoadedFilter())
+        classFilters,
+        incrementalVerificationCache = incrementalVerificationCache,
+        additionalVerificationDescriptors = verificationDescriptors.drop(1),
+        classesVerificationPool = classesVerificationPool
       )
-      pluginVerifier.loadPluginAndVerify()
+      return pluginVerifier.loadPluginAndVerifyAllTargets()
+    } finally {
+      ideDescriptors.closeAll()
     }
   }
 
-}
\ No newline at end of file
+}
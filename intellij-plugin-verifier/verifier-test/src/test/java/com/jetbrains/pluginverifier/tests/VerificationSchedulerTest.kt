@@ -0,0 +1,97 @@
+package com.jetbrains.pluginverifier.tests
+
+import com.jetbrains.plugin.structure.classes.resolvers.EmptyResolver
+import com.jetbrains.plugin.structure.intellij.version.IdeVersion
+import com.jetbrains.pluginverifier.PluginVerificationDescriptor
+import com.jetbrains.pluginverifier.PluginVerifier
+import com.jetbrains.pluginverifier.VerificationScheduler
+import com.jetbrains.pluginverifier.dependencies.resolution.DependencyFinder
+import com.jetbrains.pluginverifier.ide.IdeDescriptor
+import com.jetbrains.pluginverifier.jdk.JdkDescriptor
+import com.jetbrains.pluginverifier.jdk.JdkVersion
+import com.jetbrains.pluginverifier.plugin.PluginDetailsCache
+import com.jetbrains.pluginverifier.plugin.PluginDetailsProviderImpl
+import com.jetbrains.pluginverifier.plugin.PluginFilesBank
+import com.jetbrains.pluginverifier.repository.cleanup.DiskSpaceSetting
+import com.jetbrains.pluginverifier.repository.cleanup.SpaceAmount
+import com.jetbrains.pluginverifier.repository.repositories.local.LocalPluginInfo
+import com.jetbrains.pluginverifier.repository.repositories.marketplace.MarketplaceRepository
+import com.jetbrains.pluginverifier.resolution.DefaultClassResolverProvider
+import com.jetbrains.pluginverifier.tests.mocks.MockIde
+import com.jetbrains.pluginverifier.tests.mocks.MockIdePlugin
+import com.jetbrains.pluginverifier.verifiers.packages.DefaultPackageFilter
+import org.junit.Assert.assertEquals
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.net.URL
+import java.nio.file.Files
+import java.nio.file.Paths
+
+class VerificationSchedulerTest {
+
+  @Rule
+  @JvmField
+  val temporaryFolder = TemporaryFolder()
+
+  private val pluginDetailsCache by lazy {
+    val pluginFilesBank = PluginFilesBank.create(
+      MarketplaceRepository(URL("https://unused.com")),
+      temporaryFolder.newFolder().toPath(),
+      DiskSpaceSetting(SpaceAmount.ZERO_SPACE)
+    )
+    PluginDetailsCache(10, pluginFilesBank, PluginDetailsProviderImpl(temporaryFolder.newFolder().toPath()))
+  }
+
+  private val firstIde = createIdeDescriptor("IU-201.1")
+
+  private val secondIde = createIdeDescriptor("IU-201.2")
+
+  @Test
+  fun `verifications against the same target are grouped and ordered by plugin size, largest first`() {
+    val small = createVerifier(firstIde, "small", 100)
+    val large = createVerifier(firstIde, "large", 300)
+    val firstUnknown = createVerifier(firstIde, "firstUnknown", null)
+    val secondUnknown = createVerifier(firstIde, "secondUnknown", null)
+    val medium = createVerifier(secondIde, "medium", 200)
+
+    val scheduled = VerificationScheduler.schedule(listOf(medium, firstUnknown, small, secondUnknown, large))
+    assertEquals(
+      listOf("large", "small", "firstUnknown", "secondUnknown", "medium"),
+      scheduled.map { it.verificationDescriptor.checkedPlugin.pluginId }
+    )
+  }
+
+  @Test
+  fun `groups are ordered by total size of plugins`() {
+    val firstGroup = listOf(createVerifier(firstIde, "first", 150), createVerifier(firstIde, "second", 150))
+    val secondGroup = listOf(createVerifier(secondIde, "third", 200))
+
+    val scheduled = VerificationScheduler.schedule(secondGroup + firstGroup)
+    assertEquals(listOf("first", "second", "third"), scheduled.map { it.verificationDescriptor.checkedPlugin.pluginId })
+  }
+
+  private fun createVerifier(ideDescriptor: IdeDescriptor, pluginId: String, pluginSize: Int?): PluginVerifier {
+    val pluginFile = pluginSize?.let { Files.write(temporaryFolder.newFile("$pluginId.jar").toPath(), ByteArray(it)) }
+    val plugin = MockIdePlugin(pluginId = pluginId, pluginVersion = "1.0", originalFile = pluginFile)
+    val dependencyFinder = object : DependencyFinder {
+      override val presentableName
+        get() = "none"
+
+      override fun findPluginDependency(dependencyId: String, isModule: Boolean) = DependencyFinder.Result.NotFound("none")
+    }
+    val verificationDescriptor = PluginVerificationDescriptor.IDE(
+      ideDescriptor,
+      DefaultClassResolverProvider(dependencyFinder, ideDescriptor, DefaultPackageFilter(emptyList())),
+      LocalPluginInfo(plugin)
+    )
+    return PluginVerifier(verificationDescriptor, emptyList(), pluginDetailsCache, emptyList())
+  }
+
+  private fun createIdeDescriptor(ideVersion: String) = IdeDescriptor(
+    MockIde(IdeVersion.createIdeVersion(ideVersion)),
+    EmptyResolver,
+    JdkDescriptor(Paths.get(""), EmptyResolver, JdkVersion("1.8", null)),
+    null
+  )
+}
@@ -0,0 +1,132 @@
+package com.jetbrains.pluginverifier.tests.bytecode
+
+import com.jetbrains.plugin.structure.classes.resolvers.CompositeResolver
+import com.jetbrains.plugin.structure.classes.resolvers.FileOrigin
+import com.jetbrains.plugin.structure.classes.resolvers.FixedClassesResolver
+import com.jetbrains.plugin.structure.classes.resolvers.JarFileResolver
+import com.jetbrains.plugin.structure.classes.resolvers.Resolver
+import com.jetbrains.pluginverifier.ide.IdeDescriptor
+import com.jetbrains.pluginverifier.results.problems.CompatibilityProblem
+import com.jetbrains.pluginverifier.tests.findMockIdePath
+import com.jetbrains.pluginverifier.tests.findMockPluginJarPath
+import com.jetbrains.pluginverifier.tests.mocks.TestJdkDescriptorProvider
+import com.jetbrains.pluginverifier.usages.ApiUsageProcessor
+import com.jetbrains.pluginverifier.verifiers.BytecodeVerifier
+import com.jetbrains.pluginverifier.verifiers.ProblemRegistrar
+import com.jetbrains.pluginverifier.verifiers.VerificationContext
+import com.jetbrains.pluginverifier.verifiers.filter.ClassFilter
+import com.jetbrains.pluginverifier.verifiers.packages.DefaultPackageFilter
+import com.jetbrains.pluginverifier.verifiers.packages.PackageFilter
+import com.jetbrains.pluginverifier.verifiers.resolution.ClassFile
+import com.jetbrains.pluginverifier.warnings.CompatibilityWarning
+import com.jetbrains.pluginverifier.warnings.WarningRegistrar
+import org.junit.Assert.*
+import org.junit.Test
+import org.objectweb.asm.Opcodes
+import org.objectweb.asm.tree.ClassNode
+import java.util.*
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class ParallelBytecodeVerificationTest {
+
+  private object SomeFileOrigin : FileOrigin {
+    override val parent: FileOrigin? = null
+  }
+
+  @Test
+  fun `parallel verification of mock plugin finds the same problems as sequential verification`() {
+    val jdkPath = TestJdkDescriptorProvider.getJdkPathForTests()
+    IdeDescriptor.create(findMockIdePath(), jdkPath, null, null).use { ideDescriptor ->
+      JarFileResolver(findMockPluginJarPath(), Resolver.ReadMode.FULL, SomeFileOrigin).use { pluginResolver ->
+        val resolver = CompositeResolver.create(pluginResolver, ideDescriptor.ideResolver, ideDescriptor.jdkDescriptor.jdkResolver)
+        val classes = pluginResolver.allClasses
+
+        val sequentialContext = RecordingContext(resolver)
+        BytecodeVerifier().verify(classes, sequentialContext) {}
+
+        val parallelContext = RecordingContext(resolver)
+        val pool = ForkJoinPool(4)
+        try {
+          BytecodeVerifier().verify(classes, parallelContext, pool) {}
+        } finally {
+          pool.shutdownNow()
+        }
+
+        assertTrue(sequentialContext.problems.isNotEmpty())
+        assertEquals(sequentialContext.problems.toSet(), parallelContext.problems.toSet())
+      }
+    }
+  }
+
+  @Test
+  fun `failed parallel verification waits for running work units`() {
+    val classNodes = (0 until 500).map { index ->
+      ClassNode().also {
+        it.version = Opcodes.V1_8
+        it.access = Opcodes.ACC_PUBLIC
+        it.name = "org/test/Class$index"
+        it.superName = "java/lang/Object"
+      }
+    }
+    val resolver = FixedClassesResolver.create(classNodes, SomeFileOrigin)
+    val failingClass = "org/test/Class250"
+
+    val running = AtomicInteger()
+    val calls = AtomicInteger()
+    val classFilter = object : ClassFilter {
+      override fun shouldVerify(classFile: ClassFile): Boolean {
+        running.incrementAndGet()
+        calls.incrementAndGet()
+        try {
+          if (classFile.name == failingClass) {
+            throw IllegalStateException("Failed to verify $failingClass")
+          }
+          Thread.sleep(1)
+          return false
+        } finally {
+          running.decrementAndGet()
+        }
+      }
+    }
+
+    val pool = ForkJoinPool(4)
+    try {
+      val exception = try {
+        BytecodeVerifier(listOf(classFilter)).verify(resolver.allClasses, RecordingContext(resolver), pool) {}
+        null
+      } catch (e: IllegalStateException) {
+        e
+      }
+      assertEquals("Failed to verify $failingClass", exception?.message)
+      assertEquals(0, running.get())
+
+      val callsAfterFailure = calls.get()
+      Thread.sleep(100)
+      assertEquals(callsAfterFailure, calls.get())
+      assertTrue(callsAfterFailure < classNodes.size)
+    } finally {
+      pool.shutdownNow()
+      pool.awaitTermination(1, TimeUnit.MINUTES)
+    }
+  }
+
+  private class RecordingContext(override val classResolver: Resolver) : VerificationContext {
+    val problems: MutableList<CompatibilityProblem> = Collections.synchronizedList(arrayListOf())
+
+    override val externalClassesPackageFilter: PackageFilter = DefaultPackageFilter(emptyList())
+
+    override val problemRegistrar = object : ProblemRegistrar {
+      override fun registerProblem(problem: CompatibilityProblem) {
+        problems += problem
+      }
+    }
+
+    override val warningRegistrar = object : WarningRegistrar {
+      override fun registerCompatibilityWarning(warning: CompatibilityWarning) = Unit
+    }
+
+    override val apiUsageProcessors: List<ApiUsageProcessor> = emptyList()
+  }
+}
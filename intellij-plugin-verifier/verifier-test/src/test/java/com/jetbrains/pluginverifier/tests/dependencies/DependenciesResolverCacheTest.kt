@@ -0,0 +1,86 @@
+package com.jetbrains.pluginverifier.tests.dependencies
+
+import com.jetbrains.plugin.structure.classes.resolvers.FileOrigin
+import com.jetbrains.plugin.structure.classes.resolvers.FixedClassesResolver
+import com.jetbrains.plugin.structure.intellij.classes.locator.JarPluginKey
+import com.jetbrains.plugin.structure.intellij.classes.plugin.IdePluginClassesLocations
+import com.jetbrains.pluginverifier.resolution.DependenciesResolverCache
+import com.jetbrains.pluginverifier.tests.mocks.MockIdePlugin
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.Closeable
+
+class DependenciesResolverCacheTest {
+
+  private object TestFileOrigin : FileOrigin {
+    override val parent: FileOrigin? = null
+  }
+
+  private fun createClassesLocations(pluginId: String) = IdePluginClassesLocations(
+    MockIdePlugin(pluginId = pluginId),
+    Closeable { },
+    mapOf(JarPluginKey to listOf(FixedClassesResolver.create(emptyList(), TestFileOrigin)))
+  )
+
+  @Test
+  fun `resolvers of plugins and their combinations are reused`() {
+    val cache = DependenciesResolverCache()
+    val firstLocations = createClassesLocations("first")
+    val secondLocations = createClassesLocations("second")
+
+    val firstResolver = cache.getPluginResolver(firstLocations)
+    val secondResolver = cache.getPluginResolver(secondLocations)
+    assertSame(firstResolver, cache.getPluginResolver(firstLocations))
+    assertNotSame(firstResolver, secondResolver)
+
+    val combinedResolver = cache.getCombinedResolver(listOf(firstResolver, secondResolver))
+    assertSame(combinedResolver, cache.getCombinedResolver(listOf(firstResolver, secondResolver)))
+    assertNotSame(combinedResolver, cache.getCombinedResolver(listOf(secondResolver, firstResolver)))
+  }
+
+  @Test
+  fun `combinations of resolvers of closed locations are dropped`() {
+    val cache = DependenciesResolverCache()
+    val firstLocations = createClassesLocations("first")
+    val secondLocations = createClassesLocations("second")
+    val thirdLocations = createClassesLocations("third")
+    val firstResolver = cache.getPluginResolver(firstLocations)
+    val secondResolver = cache.getPluginResolver(secondLocations)
+    val thirdResolver = cache.getPluginResolver(thirdLocations)
+    val combinedResolver = cache.getCombinedResolver(listOf(firstResolver, secondResolver))
+    val otherCombinedResolver = cache.getCombinedResolver(listOf(secondResolver, thirdResolver))
+
+    firstLocations.close()
+
+    assertNotSame(combinedResolver, cache.getCombinedResolver(listOf(firstResolver, secondResolver)))
+    assertSame(otherCombinedResolver, cache.getCombinedResolver(listOf(secondResolver, thirdResolver)))
+
+    val reopenedLocations = createClassesLocations("first")
+    val reopenedResolver = cache.getPluginResolver(reopenedLocations)
+    assertNotSame(firstResolver, reopenedResolver)
+    val reopenedCombinedResolver = cache.getCombinedResolver(listOf(reopenedResolver, secondResolver))
+    assertSame(reopenedCombinedResolver, cache.getCombinedResolver(listOf(reopenedResolver, secondResolver)))
+  }
+
+  @Test
+  fun `resolvers of already closed locations are not cached`() {
+    val cache = DependenciesResolverCache()
+    val closedLocations = createClassesLocations("closed")
+    val otherLocations = createClassesLocations("other")
+    closedLocations.close()
+
+    val resolvers = listOf(cache.getPluginResolver(closedLocations), cache.getPluginResolver(otherLocations))
+    assertNotSame(cache.getCombinedResolver(resolvers), cache.getCombinedResolver(resolvers))
+  }
+
+  @Test
+  fun `close listeners are invoked once`() {
+    val locations = createClassesLocations("plugin")
+    var invocations = 0
+    assertTrue(locations.addCloseListener { invocations++ })
+    locations.close()
+    locations.close()
+    assertEquals(1, invocations)
+    assertFalse(locations.addCloseListener { invocations++ })
+  }
+}
@@ -0,0 +1,180 @@
+package com.jetbrains.pluginverifier.tests.filter
+
+import com.jetbrains.plugin.structure.classes.resolvers.FileOrigin
+import com.jetbrains.plugin.structure.classes.resolvers.FixedClassesResolver
+import com.jetbrains.pluginverifier.filtering.ProblemsFilter
+import com.jetbrains.pluginverifier.filtering.documented.*
+import com.jetbrains.pluginverifier.results.access.AccessType
+import com.jetbrains.pluginverifier.results.instruction.Instruction
+import com.jetbrains.pluginverifier.results.location.ClassLocation
+import com.jetbrains.pluginverifier.results.location.FieldLocation
+import com.jetbrains.pluginverifier.results.location.MethodLocation
+import com.jetbrains.pluginverifier.results.modifiers.Modifiers
+import com.jetbrains.pluginverifier.results.modifiers.Modifiers.Modifier.*
+import com.jetbrains.pluginverifier.results.problems.*
+import com.jetbrains.pluginverifier.results.reference.ClassReference
+import com.jetbrains.pluginverifier.results.reference.FieldReference
+import com.jetbrains.pluginverifier.results.reference.MethodReference
+import com.jetbrains.pluginverifier.verifiers.VerificationContext
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.objectweb.asm.Opcodes
+import org.objectweb.asm.tree.ClassNode
+import java.util.*
+
+/**
+ * Asserts that lookup of documented problems by index gives the same results
+ * as checking every documented problem.
+ */
+class DocumentedProblemsIndexTest : BaseDocumentedProblemsReportingTest() {
+
+  private object SomeFileOrigin : FileOrigin {
+    override val parent: FileOrigin? = null
+  }
+
+  private companion object {
+    const val BASE = "org/lib/Base"
+    const val DERIVED = "org/lib/sub/Derived"
+    const val PLUGIN_CLASS = "plugin/Impl"
+  }
+
+  private fun classLocation(className: String) = ClassLocation(className, null, Modifiers.of(PUBLIC), SomeFileOrigin)
+
+  private fun methodLocation(className: String, methodName: String) =
+    MethodLocation(classLocation(className), methodName, "()V", emptyList(), null, Modifiers.of(PUBLIC))
+
+  private val caller = methodLocation(PLUGIN_CLASS, "caller")
+
+  private fun methodNotFound(hostClass: String, methodName: String, descriptor: String) =
+    MethodNotFoundProblem(MethodReference(ClassReference(hostClass), methodName, descriptor), caller, Instruction.INVOKE_VIRTUAL, JAVA_LANG_OBJECT_HIERARCHY)
+
+  private fun fieldNotFound(hostClass: String, fieldName: String, descriptor: String) =
+    FieldNotFoundProblem(FieldReference(ClassReference(hostClass), fieldName, descriptor), caller, JAVA_LANG_OBJECT_HIERARCHY, Instruction.GET_FIELD)
+
+  private val problems: List<CompatibilityProblem> = listOf(
+    ClassNotFoundProblem(ClassReference("org/lib/Removed"), caller),
+    ClassNotFoundProblem(ClassReference("org/lib/removed/Some"), caller),
+    PackageNotFoundProblem("org/lib/removed/inner", emptySet()),
+    methodNotFound(DERIVED, "foo", "(Lorg/lib/Moved;)V"),
+    methodNotFound("org/lib/removed/Some", "bar", "()V"),
+    fieldNotFound(DERIVED, "x", "Lorg/lib/Removed;"),
+    fieldNotFound("org/lib/removed/Some", "y", "I"),
+    MethodNotImplementedProblem(methodLocation(BASE, "baz"), classLocation(DERIVED)),
+    IllegalMethodAccessProblem(
+      MethodReference(ClassReference(BASE), "hidden", "()V"),
+      methodLocation(BASE, "hidden"),
+      AccessType.PRIVATE,
+      caller,
+      Instruction.INVOKE_VIRTUAL
+    ),
+    OverridingFinalMethodProblem(methodLocation(BASE, "fin"), classLocation(PLUGIN_CLASS)),
+    IllegalFieldAccessProblem(
+      FieldReference(ClassReference(BASE), "z", "I"),
+      FieldLocation(classLocation(BASE), "z", "I", null, Modifiers.of(PRIVATE)),
+      caller,
+      Instruction.GET_FIELD,
+      AccessType.PRIVATE
+    ),
+    MissingPropertyReferenceProblem("some.key", "messages.SomeBundle", caller),
+    SuperClassBecameInterfaceProblem(classLocation(PLUGIN_CLASS), classLocation(BASE)),
+    methodNotFound("org/other/Some", "unrelated", "()V")
+  )
+
+  /**
+   * Documented problems of all types, including ones
+   * sharing names with the problems above but not documenting them.
+   */
+  private val documentedProblems: List<DocumentedProblem> = listOf(
+    DocClassRemoved("org/lib/Removed"),
+    DocClassRemoved("org/lib/Other"),
+    DocClassMovedToPackage("org/lib/Moved", "org/lib/moved"),
+    DocPackageRemoved("org/lib/removed"),
+    DocPackageRemoved("org/lib/rem"),
+    DocMethodRemoved(BASE, "foo"),
+    DocMethodRemoved("org/other/Host", "foo"),
+    DocMethodReturnTypeChanged(BASE, "baz"),
+    DocMethodVisibilityChanged(BASE, "hidden"),
+    DocMethodVisibilityChanged(DERIVED, "hidden"),
+    DocMethodMarkedFinal(BASE, "fin"),
+    DocFinalMethodInherited(DERIVED, BASE, "fin"),
+    DocMethodParameterTypeChanged(BASE, "baz"),
+    DocAbstractMethodAdded(BASE, "baz"),
+    DocFieldRemoved(BASE, "x"),
+    DocFieldTypeChanged(BASE, "x"),
+    DocFieldTypeChanged(BASE, "y"),
+    DocFieldVisibilityChanged(BASE, "z"),
+    DocPropertyRemoved("some.key", "messages.SomeBundle"),
+    DocPropertyRemoved("some.key", "messages.OtherBundle"),
+    DocMethodParameterMarkedWithAnnotation(BASE, "foo", "org/lib/Moved", "org/jetbrains/annotations/NotNull"),
+    DocClassTypeParameterAdded(BASE),
+    DocSuperclassChanged(DERIVED, BASE, "org/lib/NewBase"),
+    SuperClassBecameInterfaceDocumentation()
+  )
+
+  /**
+   * Documented problem of a type unknown to the index.
+   */
+  private class SuperClassBecameInterfaceDocumentation : DocumentedProblem {
+    override fun isDocumenting(problem: CompatibilityProblem, context: VerificationContext) =
+      problem is SuperClassBecameInterfaceProblem && problem.interfaze.className == BASE
+  }
+
+  private fun createContext(): VerificationContext {
+    fun classNode(className: String, superName: String) = ClassNode().apply {
+      version = Opcodes.V1_8
+      access = Opcodes.ACC_PUBLIC
+      name = className
+      this.superName = superName
+    }
+
+    val resolver = FixedClassesResolver.create(
+      listOf(classNode(BASE, "java/lang/Object"), classNode(DERIVED, BASE), classNode(PLUGIN_CLASS, DERIVED)),
+      SomeFileOrigin
+    )
+    return createSimpleVerificationContext(resolver)
+  }
+
+  private fun ProblemsFilter.isIgnored(problem: CompatibilityProblem, context: VerificationContext) =
+    shouldReportProblem(problem, context) is ProblemsFilter.Result.Ignore
+
+  @Test
+  fun `each documented problem ignores the same problems as without index`() {
+    val context = createContext()
+    for (documentedProblem in documentedProblems) {
+      val problemsFilter = DocumentedProblemsFilter(listOf(documentedProblem))
+      for (problem in problems) {
+        assertEquals(
+          "$documentedProblem for ${problem.shortDescription}",
+          documentedProblem.isDocumenting(problem, context),
+          problemsFilter.isIgnored(problem, context)
+        )
+      }
+    }
+  }
+
+  @Test
+  fun `all documented problems ignore the same problems as without index in any order`() {
+    val context = createContext()
+    val expectedIgnored = problems.map { problem -> documentedProblems.any { it.isDocumenting(problem, context) } }
+    assertEquals(listOf(true, true, true, true, true, true, true, true, true, true, true, true, true, false), expectedIgnored)
+
+    for (ordered in listOf(documentedProblems, documentedProblems.reversed(), documentedProblems.shuffled(Random(42)))) {
+      val problemsFilter = DocumentedProblemsFilter(ordered)
+      assertEquals(expectedIgnored, problems.map { problemsFilter.isIgnored(it, context) })
+    }
+  }
+
+  @Test
+  fun `every type of documented problem is checked`() {
+    val context = createContext()
+    val documentingTypes = documentedProblems
+      .filter { documentedProblem -> problems.any { documentedProblem.isDocumenting(it, context) } }
+      .map { it.javaClass.simpleName }
+      .toSet()
+    val validatingOnlyTypes = documentedProblems
+      .filter { it is NoOpValidatingDocumentedProblem }
+      .map { it.javaClass.simpleName }
+      .toSet()
+    assertEquals(documentedProblems.map { it.javaClass.simpleName }.toSet() - validatingOnlyTypes, documentingTypes)
+  }
+}
@@ -0,0 +1,195 @@
+package com.jetbrains.pluginverifier.tests.filter
+
+import com.jetbrains.plugin.structure.classes.resolvers.EmptyResolver
+import com.jetbrains.plugin.structure.classes.resolvers.FileOrigin
+import com.jetbrains.plugin.structure.intellij.version.IdeVersion
+import com.jetbrains.pluginverifier.PluginVerificationDescriptor
+import com.jetbrains.pluginverifier.dependencies.DependenciesGraph
+import com.jetbrains.pluginverifier.dependencies.DependencyNode
+import com.jetbrains.pluginverifier.dependencies.resolution.DependencyFinder
+import com.jetbrains.pluginverifier.filtering.IgnoreCondition
+import com.jetbrains.pluginverifier.filtering.IgnoredProblemsFilter
+import com.jetbrains.pluginverifier.filtering.ProblemsFilter
+import com.jetbrains.pluginverifier.ide.IdeDescriptor
+import com.jetbrains.pluginverifier.jdk.JdkDescriptor
+import com.jetbrains.pluginverifier.jdk.JdkVersion
+import com.jetbrains.pluginverifier.repository.repositories.local.LocalPluginInfo
+import com.jetbrains.pluginverifier.resolution.DefaultClassResolverProvider
+import com.jetbrains.pluginverifier.results.location.ClassLocation
+import com.jetbrains.pluginverifier.results.modifiers.Modifiers
+import com.jetbrains.pluginverifier.results.problems.ClassNotFoundProblem
+import com.jetbrains.pluginverifier.results.problems.CompatibilityProblem
+import com.jetbrains.pluginverifier.results.reference.ClassReference
+import com.jetbrains.pluginverifier.tests.mocks.MockIde
+import com.jetbrains.pluginverifier.tests.mocks.MockIdePlugin
+import com.jetbrains.pluginverifier.verifiers.PluginVerificationContext
+import com.jetbrains.pluginverifier.verifiers.packages.DefaultPackageFilter
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.nio.file.Paths
+
+/**
+ * Asserts that combined patterns of [IgnoredProblemsFilter] ignore the same problems
+ * by the same patterns as the patterns checked one by one in the configured order.
+ */
+class IgnoredProblemsFilterTest {
+
+  private object SomeFileOrigin : FileOrigin {
+    override val parent: FileOrigin? = null
+  }
+
+  private val ignoreConditions = listOf(
+    IgnoreCondition.parseCondition("some.plugin:1.0:access to unresolved class org\\.foo\\.Ba."),
+    IgnoreCondition.parseCondition("access to unresolved class org.foo.*"),
+    IgnoreCondition.parseCondition("some.plugin:access to unresolved class org.foo.Bar"),
+    IgnoreCondition.parseCondition("other.plugin:access to unresolved class org.foo.Bar"),
+    IgnoreCondition.parseCondition("::method .* is not found|access to unresolved class org\\.baz\\..*"),
+    IgnoreCondition.parseCondition("some.plugin::.*class (o)\\1.*"),
+    IgnoreCondition(null, null, Regex("Access to unresolved class org.qux.Exact")),
+    IgnoreCondition(null, null, Regex("ACCESS TO UNRESOLVED CLASS ORG.QUX.UPPER")),
+    IgnoreCondition("some.plugin", "2.0", Regex("Access to unresolved class org.qux.Lit[a]", RegexOption.LITERAL)),
+    IgnoreCondition.parseCondition("some.plugin:2.0:.*unresolved class org\\.qux\\.lit.*"),
+    IgnoreCondition.parseCondition("(?<kind>access) to unresolved class org\\.qux\\..*")
+  )
+
+  private val plugins = listOf(
+    MockIdePlugin(pluginId = "some.plugin", pluginVersion = "1.0"),
+    MockIdePlugin(pluginId = "some.plugin", pluginVersion = "2.0"),
+    MockIdePlugin(pluginId = "other.plugin", pluginVersion = "1.0"),
+    MockIdePlugin(pluginId = "third.plugin", pluginVersion = "1.0")
+  )
+
+  private val problems = listOf(
+    "org/foo/Bar",
+    "org/foo/Baz",
+    "org/baz/Some",
+    "org/qux/Exact",
+    "org/qux/Upper",
+    "org/qux/Lit[a]",
+    "org/qux/Other",
+    "ooze/Some",
+    "com/other/Some"
+  ).map { className ->
+    ClassNotFoundProblem(ClassReference(className), ClassLocation("plugin/Usage", null, Modifiers.of(Modifiers.Modifier.PUBLIC), SomeFileOrigin))
+  }
+
+  /**
+   * Checks the conditions one by one, as the filter did before the patterns were combined.
+   */
+  private fun findFirstMatchingPattern(conditions: List<IgnoreCondition>, problem: CompatibilityProblem, context: PluginVerificationContext): String? {
+    for ((pluginId, version, pattern) in conditions) {
+      if ((pluginId == null || pluginId == context.idePlugin.pluginId)
+        && (version == null || version == context.idePlugin.pluginVersion)
+        && problem.shortDescription.matches(pattern)
+      ) {
+        return pattern.pattern
+      }
+    }
+    return null
+  }
+
+  private fun ProblemsFilter.findIgnoringPattern(problem: CompatibilityProblem, context: PluginVerificationContext): String? =
+    when (val result = shouldReportProblem(problem, context)) {
+      is ProblemsFilter.Result.Ignore -> result.reason.removePrefix("the problem is ignored by RegExp pattern: \"").removeSuffix("\"")
+      ProblemsFilter.Result.Report -> null
+    }
+
+  @Test
+  fun `combined patterns ignore problems by the first matching pattern in any order`() {
+    val orders = listOf(
+      ignoreConditions,
+      ignoreConditions.reversed(),
+      ignoreConditions.drop(5) + ignoreConditions.take(5)
+    )
+    for (conditions in orders) {
+      val problemsFilter = IgnoredProblemsFilter(conditions)
+      for (plugin in plugins) {
+        val context = createContext(plugin)
+        for (problem in problems) {
+          assertEquals(
+            "${problem.shortDescription} of ${plugin.pluginId}:${plugin.pluginVersion}",
+            findFirstMatchingPattern(conditions, problem, context),
+            problemsFilter.findIgnoringPattern(problem, context)
+          )
+        }
+      }
+    }
+  }
+
+  @Test
+  fun `problems are ignored by patterns of the plugin`() {
+    val problemsFilter = IgnoredProblemsFilter(ignoreConditions)
+    val otherPluginPatterns = listOf(
+      "access to unresolved class org.foo.*",
+      "access to unresolved class org.foo.*",
+      "method .* is not found|access to unresolved class org\\.baz\\..*",
+      "Access to unresolved class org.qux.Exact",
+      "(?<kind>access) to unresolved class org\\.qux\\..*",
+      "(?<kind>access) to unresolved class org\\.qux\\..*",
+      "(?<kind>access) to unresolved class org\\.qux\\..*",
+      null,
+      null
+    )
+    val expected = mapOf(
+      "some.plugin:1.0" to listOf(
+        "access to unresolved class org\\.foo\\.Ba.",
+        "access to unresolved class org\\.foo\\.Ba.",
+        "method .* is not found|access to unresolved class org\\.baz\\..*",
+        "Access to unresolved class org.qux.Exact",
+        "(?<kind>access) to unresolved class org\\.qux\\..*",
+        "(?<kind>access) to unresolved class org\\.qux\\..*",
+        "(?<kind>access) to unresolved class org\\.qux\\..*",
+        ".*class (o)\\1.*",
+        null
+      ),
+      "some.plugin:2.0" to listOf(
+        "access to unresolved class org.foo.*",
+        "access to unresolved class org.foo.*",
+        "method .* is not found|access to unresolved class org\\.baz\\..*",
+        "Access to unresolved class org.qux.Exact",
+        "(?<kind>access) to unresolved class org\\.qux\\..*",
+        "Access to unresolved class org.qux.Lit[a]",
+        "(?<kind>access) to unresolved class org\\.qux\\..*",
+        ".*class (o)\\1.*",
+        null
+      ),
+      "other.plugin:1.0" to otherPluginPatterns,
+      "third.plugin:1.0" to otherPluginPatterns
+    )
+    for (plugin in plugins) {
+      val expectedPatterns = expected.getValue("${plugin.pluginId}:${plugin.pluginVersion}")
+      val context = createContext(plugin)
+      assertEquals(expectedPatterns, problems.map { problemsFilter.findIgnoringPattern(it, context) })
+    }
+  }
+
+  private fun createContext(plugin: MockIdePlugin): PluginVerificationContext {
+    val ideDescriptor = IdeDescriptor(
+      MockIde(IdeVersion.createIdeVersion("IU-201.1")),
+      EmptyResolver,
+      JdkDescriptor(Paths.get(""), EmptyResolver, JdkVersion("1.8", null)),
+      null
+    )
+    val dependencyFinder = object : DependencyFinder {
+      override val presentableName
+        get() = "none"
+
+      override fun findPluginDependency(dependencyId: String, isModule: Boolean) = DependencyFinder.Result.NotFound("none")
+    }
+    val packageFilter = DefaultPackageFilter(emptyList())
+    val verificationDescriptor = PluginVerificationDescriptor.IDE(
+      ideDescriptor,
+      DefaultClassResolverProvider(dependencyFinder, ideDescriptor, packageFilter),
+      LocalPluginInfo(plugin)
+    )
+    val verifiedNode = DependencyNode(plugin.pluginId!!, plugin.pluginVersion!!)
+    return PluginVerificationContext(
+      plugin,
+      verificationDescriptor,
+      EmptyResolver,
+      EmptyResolver,
+      packageFilter,
+      DependenciesGraph(verifiedNode, listOf(verifiedNode), emptyList(), emptyMap())
+    )
+  }
+}
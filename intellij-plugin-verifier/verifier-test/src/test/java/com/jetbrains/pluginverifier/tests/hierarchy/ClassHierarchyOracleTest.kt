@@ -0,0 +1,248 @@
+package com.jetbrains.pluginverifier.tests.hierarchy
+
+import com.jetbrains.plugin.structure.classes.resolvers.FileOrigin
+import com.jetbrains.plugin.structure.classes.resolvers.FixedClassesResolver
+import com.jetbrains.plugin.structure.classes.resolvers.ResolutionResult
+import com.jetbrains.plugin.structure.classes.resolvers.Resolver
+import com.jetbrains.pluginverifier.results.hierarchy.ClassHierarchy
+import com.jetbrains.pluginverifier.results.location.ClassLocation
+import com.jetbrains.pluginverifier.results.problems.ClassNotFoundProblem
+import com.jetbrains.pluginverifier.results.problems.CompatibilityProblem
+import com.jetbrains.pluginverifier.results.problems.IllegalClassAccessProblem
+import com.jetbrains.pluginverifier.results.reference.ClassReference
+import com.jetbrains.pluginverifier.usages.ApiUsageProcessor
+import com.jetbrains.pluginverifier.verifiers.ProblemRegistrar
+import com.jetbrains.pluginverifier.verifiers.VerificationContext
+import com.jetbrains.pluginverifier.verifiers.hierarchy.ClassHierarchyBuilder
+import com.jetbrains.pluginverifier.verifiers.hierarchy.ClassHierarchyOracle
+import com.jetbrains.pluginverifier.verifiers.isSubclassOf
+import com.jetbrains.pluginverifier.verifiers.packages.DefaultPackageFilter
+import com.jetbrains.pluginverifier.verifiers.packages.PackageFilter
+import com.jetbrains.pluginverifier.verifiers.resolution.ClassFile
+import com.jetbrains.pluginverifier.verifiers.resolution.ClassFileMember
+import com.jetbrains.pluginverifier.verifiers.resolution.ClassUsageType
+import com.jetbrains.pluginverifier.verifiers.resolution.resolveClassOrNull
+import com.jetbrains.pluginverifier.warnings.CompatibilityWarning
+import com.jetbrains.pluginverifier.warnings.WarningRegistrar
+import org.junit.Assert.*
+import org.junit.Test
+import org.objectweb.asm.Opcodes
+import org.objectweb.asm.tree.ClassNode
+import java.util.*
+
+class ClassHierarchyOracleTest {
+
+  private object SomeFileOrigin : FileOrigin {
+    override val parent: FileOrigin? = null
+  }
+
+  private fun classNode(
+    name: String,
+    superName: String? = "java/lang/Object",
+    interfaces: List<String> = emptyList(),
+    access: Int = Opcodes.ACC_PUBLIC
+  ) = ClassNode().also {
+    it.version = Opcodes.V1_8
+    it.access = access
+    it.name = name
+    it.superName = superName
+    it.interfaces = interfaces
+  }
+
+  private fun createResolver(vararg classes: ClassNode): Resolver =
+    FixedClassesResolver.create(classes.toList(), SomeFileOrigin)
+
+  private val ClassHierarchy.parentNames: List<String>
+    get() = listOfNotNull(superClass?.name) + superInterfaces.map { it.name }
+
+  @Test
+  fun `ancestors of resolved classes are memoized`() {
+    val resolver = createResolver(
+      classNode("java/lang/Object", null),
+      classNode("org/test/I", interfaces = listOf(), access = Opcodes.ACC_PUBLIC or Opcodes.ACC_INTERFACE or Opcodes.ACC_ABSTRACT),
+      classNode("org/test/A", interfaces = listOf("org/test/I")),
+      classNode("org/test/B", "org/test/A"),
+      classNode("org/test/C", "org/test/B")
+    )
+    val oracle = ClassHierarchyOracle.getOracle(resolver)
+    assertSame(oracle, ClassHierarchyOracle.getOracle(resolver))
+
+    assertTrue(oracle.isSubclassOf(resolver, listOf("org/test/B"), "org/test/I"))
+    assertTrue(oracle.isSubclassOf(resolver, listOf("org/test/B"), "org/test/B"))
+    assertFalse(oracle.isSubclassOf(resolver, listOf("org/test/A"), "org/test/B"))
+
+    val classC = resolver.resolveClassOrNull("org/test/C")!!
+    assertTrue(resolver.isSubclassOf(classC, "org/test/I"))
+
+    val hierarchy = oracle.getClassHierarchy(resolver, "org/test/C")!!
+    assertEquals(listOf("org/test/B"), hierarchy.parentNames)
+    val hierarchyOfA = hierarchy.superClass!!.superClass!!
+    assertEquals(listOf("java/lang/Object", "org/test/I"), hierarchyOfA.parentNames)
+    assertTrue(hierarchyOfA.superInterfaces.single().isInterface)
+    //Hierarchies are created anew, so that they are not shared between verifications.
+    val anotherHierarchyOfA = oracle.getClassHierarchy(resolver, "org/test/A")
+    assertEquals(hierarchyOfA, anotherHierarchyOfA)
+    assertNotSame(hierarchyOfA, anotherHierarchyOfA)
+  }
+
+  @Test
+  fun `unresolved parents are excluded from hierarchy`() {
+    val resolver = createResolver(
+      classNode("java/lang/Object", null),
+      classNode("org/test/A", "org/test/Missing", listOf("org/test/MissingInterface")),
+      classNode("org/test/B", "org/test/A")
+    )
+    val oracle = ClassHierarchyOracle.getOracle(resolver)
+
+    assertNull(oracle.getClassHierarchy(resolver, "org/test/Missing"))
+
+    val hierarchyOfA = oracle.getClassHierarchy(resolver, "org/test/B")!!.superClass!!
+    assertEquals(emptyList<String>(), hierarchyOfA.parentNames)
+
+    assertTrue(oracle.isSubclassOf(resolver, listOf("org/test/A"), "org/test/A"))
+    assertFalse(oracle.isSubclassOf(resolver, listOf("org/test/A"), "org/test/Missing"))
+    assertFalse(oracle.isSubclassOf(resolver, listOf("org/test/Missing"), "org/test/Missing"))
+  }
+
+  @Test
+  fun `cyclic hierarchies are traversed`() {
+    val resolver = createResolver(
+      classNode("org/test/A", "org/test/B"),
+      classNode("org/test/B", "org/test/A"),
+      classNode("org/test/C", "org/test/A")
+    )
+    val oracle = ClassHierarchyOracle.getOracle(resolver)
+
+    assertTrue(oracle.isSubclassOf(resolver, listOf("org/test/A"), "org/test/B"))
+    assertTrue(oracle.isSubclassOf(resolver, listOf("org/test/B"), "org/test/A"))
+    assertFalse(oracle.isSubclassOf(resolver, listOf("org/test/A"), "org/test/C"))
+
+    val hierarchy = oracle.getClassHierarchy(resolver, "org/test/C")!!
+    val hierarchyOfA = hierarchy.superClass!!
+    assertEquals("org/test/B", hierarchyOfA.superClass!!.name)
+    assertSame(hierarchyOfA, hierarchyOfA.superClass!!.superClass)
+  }
+
+  @Test
+  fun `classes of memoized hierarchies are reported to lookup listener`() {
+    val resolver = ListeningResolver(
+      createResolver(
+        classNode("java/lang/Object", null),
+        classNode("org/test/I", access = Opcodes.ACC_PUBLIC or Opcodes.ACC_INTERFACE or Opcodes.ACC_ABSTRACT),
+        classNode("org/test/A", "org/test/Missing", listOf("org/test/I")),
+        classNode("org/test/B", "org/test/A"),
+        classNode("org/test/C", "org/test/B")
+      )
+    )
+    val oracle = ClassHierarchyOracle.getOracle(resolver)
+    val hierarchyClasses = setOf("org/test/C", "org/test/B", "org/test/A", "org/test/I", "org/test/Missing", "java/lang/Object")
+
+    assertTrue(oracle.isSubclassOf(resolver, listOf("org/test/B"), "org/test/I"))
+    resolver.lookups.clear()
+    assertTrue(oracle.isSubclassOf(resolver, listOf("org/test/B"), "org/test/I"))
+    assertEquals(hierarchyClasses - "org/test/C", resolver.lookups)
+
+    resolver.lookups.clear()
+    oracle.getClassHierarchy(resolver, "org/test/C")
+    assertEquals(hierarchyClasses, resolver.lookups)
+  }
+
+  @Test
+  fun `problems and usages of all hierarchy links are reported by hierarchy builder`() {
+    val resolver = createResolver(
+      classNode("java/lang/Object", null),
+      classNode("org/test/Hidden", access = 0),
+      classNode("org/test/Visible", "org/test/Missing"),
+      classNode("org/other/Child", "org/test/Hidden"),
+      classNode("org/other/Other", "org/test/Visible")
+    )
+    //Memoize hierarchies before they are built, as the verification of other classes does.
+    val oracle = ClassHierarchyOracle.getOracle(resolver)
+    oracle.getClassHierarchy(resolver, "org/other/Child")
+    oracle.getClassHierarchy(resolver, "org/other/Other")
+
+    val context = RecordingContext(resolver)
+    val builder = ClassHierarchyBuilder(context)
+    val child = resolver.resolveClassOrNull("org/other/Child")!!
+    assertEquals("org/test/Hidden", builder.buildClassHierarchy(child).superClass!!.name)
+    builder.buildClassHierarchy(resolver.resolveClassOrNull("org/other/Other")!!)
+
+    val illegalAccess = context.problems.filterIsInstance<IllegalClassAccessProblem>().single()
+    assertEquals("org/test/Hidden", illegalAccess.unavailableClass.className)
+    assertEquals("org/other/Child", (illegalAccess.usage as ClassLocation).className)
+
+    val classNotFound = context.problems.filterIsInstance<ClassNotFoundProblem>().single()
+    assertEquals(ClassReference("org/test/Missing"), classNotFound.unresolved)
+    assertEquals(2, context.problems.size)
+
+    assertEquals(
+      listOf("org/other/Child" to "org/test/Hidden", "org/test/Hidden" to "java/lang/Object", "org/other/Other" to "org/test/Visible"),
+      context.classReferences
+    )
+  }
+
+  private class ListeningResolver(private val delegate: Resolver) : Resolver(), ClassHierarchyOracle.LookupListener {
+    val lookups = hashSetOf<String>()
+
+    override val readMode
+      get() = delegate.readMode
+
+    override val allClasses
+      get() = delegate.allClasses
+
+    override val allPackages
+      get() = delegate.allPackages
+
+    override val allBundleNameSet
+      get() = delegate.allBundleNameSet
+
+    override fun resolveClass(className: String) = delegate.resolveClass(className)
+
+    override fun resolveExactPropertyResourceBundle(baseName: String, locale: Locale) =
+      delegate.resolveExactPropertyResourceBundle(baseName, locale)
+
+    override fun containsClass(className: String) = delegate.containsClass(className)
+
+    override fun containsPackage(packageName: String) = delegate.containsPackage(packageName)
+
+    override fun processAllClasses(processor: (ResolutionResult<ClassNode>) -> Boolean) = delegate.processAllClasses(processor)
+
+    override fun close() = Unit
+
+    override fun classLookedUp(className: String) {
+      lookups += className
+    }
+  }
+
+  private class RecordingContext(override val classResolver: Resolver) : VerificationContext {
+    val problems = arrayListOf<CompatibilityProblem>()
+
+    val classReferences = arrayListOf<Pair<String, String>>()
+
+    override val externalClassesPackageFilter: PackageFilter = DefaultPackageFilter(emptyList())
+
+    override val problemRegistrar = object : ProblemRegistrar {
+      override fun registerProblem(problem: CompatibilityProblem) {
+        problems += problem
+      }
+    }
+
+    override val warningRegistrar = object : WarningRegistrar {
+      override fun registerCompatibilityWarning(warning: CompatibilityWarning) = Unit
+    }
+
+    override val apiUsageProcessors: List<ApiUsageProcessor> = listOf(
+      object : ApiUsageProcessor {
+        override fun processClassReference(
+          classReference: ClassReference,
+          resolvedClass: ClassFile,
+          context: VerificationContext,
+          referrer: ClassFileMember,
+          classUsageType: ClassUsageType
+        ) {
+          classReferences += referrer.containingClassFile.name to classReference.className
+        }
+      }
+    )
+  }
+}
@@ -0,0 +1,98 @@
+package com.jetbrains.pluginverifier.tests.jdk
+
+import com.jetbrains.plugin.structure.base.utils.listFiles
+import com.jetbrains.plugin.structure.classes.resolvers.Resolver
+import com.jetbrains.pluginverifier.jdk.JdkClassIndexCache
+import com.jetbrains.pluginverifier.jdk.JdkJImageResolver
+import org.junit.Assert.*
+import org.junit.Assume.assumeTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+
+class JdkClassIndexCacheTest {
+
+  @Rule
+  @JvmField
+  val temporaryFolder = TemporaryFolder()
+
+  private val classNameToModuleName = mapOf(
+    "java/lang/String" to "java.base",
+    "java/lang/Object" to "java.base",
+    "java/sql/Connection" to "java.sql"
+  )
+
+  private fun createImage(content: String): Path {
+    val imagePath = temporaryFolder.newFolder().toPath().resolve("modules")
+    Files.write(imagePath, content.toByteArray())
+    return imagePath
+  }
+
+  private fun JdkClassIndexCache.getOrFail(imagePath: Path): Map<String, String> =
+    getOrBuild(imagePath) { fail("Index must be reused"); emptyMap() }
+
+  @Test
+  fun `index is built and reloaded`() {
+    val imagePath = createImage("image")
+    val indexDirectory = temporaryFolder.newFolder().toPath()
+
+    assertEquals(classNameToModuleName, JdkClassIndexCache(indexDirectory).getOrBuild(imagePath) { classNameToModuleName })
+    assertEquals(1, indexDirectory.listFiles().size)
+
+    assertEquals(classNameToModuleName, JdkClassIndexCache(indexDirectory).getOrFail(imagePath))
+  }
+
+  @Test
+  fun `index is rebuilt when image changes`() {
+    val imagePath = createImage("image")
+    val indexDirectory = temporaryFolder.newFolder().toPath()
+    val indexCache = JdkClassIndexCache(indexDirectory)
+    indexCache.getOrBuild(imagePath) { classNameToModuleName }
+
+    Files.write(imagePath, "changed image".toByteArray())
+    val changedIndex = mapOf("java/lang/Object" to "java.base")
+    assertEquals(changedIndex, indexCache.getOrBuild(imagePath) { changedIndex })
+    assertEquals(changedIndex, JdkClassIndexCache(indexDirectory).getOrFail(imagePath))
+    assertEquals(1, indexDirectory.listFiles().size)
+  }
+
+  @Test
+  fun `indexes of deleted and changed images are removed`() {
+    val keptImage = createImage("kept")
+    val deletedImage = createImage("deleted")
+    val changedImage = createImage("changed")
+    val indexDirectory = temporaryFolder.newFolder().toPath()
+    val indexCache = JdkClassIndexCache(indexDirectory)
+    listOf(keptImage, deletedImage, changedImage).forEach { image -> indexCache.getOrBuild(image) { classNameToModuleName } }
+    assertEquals(3, indexDirectory.listFiles().size)
+
+    Files.delete(deletedImage)
+    Files.write(changedImage, "changed image".toByteArray())
+    val reopenedCache = JdkClassIndexCache(indexDirectory)
+    assertEquals(1, indexDirectory.listFiles().size)
+    assertEquals(classNameToModuleName, reopenedCache.getOrFail(keptImage))
+  }
+
+  @Test
+  fun `image resolver reuses saved index`() {
+    val jdkPath = Paths.get(System.getProperty("java.home"))
+    val imagePath = jdkPath.resolve("lib").resolve("modules")
+    assumeTrue(Files.exists(imagePath))
+    val indexDirectory = temporaryFolder.newFolder().toPath()
+
+    val allClasses = JdkJImageResolver(jdkPath, Resolver.ReadMode.SIGNATURES, indexDirectory).use { it.allClasses }
+    assertTrue("java/lang/String" in allClasses)
+    assertEquals(1, indexDirectory.listFiles().size)
+
+    val savedIndex = JdkClassIndexCache(indexDirectory).getOrFail(imagePath)
+    assertEquals(allClasses, savedIndex.keys)
+    assertEquals("java.base", savedIndex["java/lang/String"])
+    JdkJImageResolver(jdkPath, Resolver.ReadMode.SIGNATURES, indexDirectory).use { resolver ->
+      assertEquals(allClasses, resolver.allClasses)
+      assertTrue(resolver.containsClass("java/lang/String"))
+    }
+  }
+}
@@ -8,10 +8,12 @@ import com.jetbrains.plugin.structure.base.utils.closeLogged
 import com.jetbrains.pluginverifier.ide.IdeDescriptorsCache
 import com.jetbrains.pluginverifier.ide.IdeFilesBank
 import com.jetbrains.pluginverifier.ide.repositories.IdeRepository
+import com.jetbrains.pluginverifier.metrics.VerificationMetricsCollector
 import com.jetbrains.pluginverifier.plugin.PluginDetailsCache
 import com.jetbrains.pluginverifier.repository.repositories.marketplace.MarketplaceRepository
 import org.jetbrains.plugins.verifier.service.service.BaseService
 import org.jetbrains.plugins.verifier.service.service.verifier.VerificationResultFilter
+import org.jetbrains.plugins.verifier.service.service.verifier.VerificationResultStore
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.context.ApplicationContext
 import javax.annotation.PreDestroy
@@ -30,7 +32,9 @@ class ServerContext(
   val serviceDAO: ServiceDAO,
   val ideDescriptorsCache: IdeDescriptorsCache,
   val pluginDetailsCache: PluginDetailsCache,
-  val verificationResultsFilter: VerificationResultFilter
+  val verificationResultsFilter: VerificationResultFilter,
+  val verificationResultStore: VerificationResultStore,
+  val verificationMetrics: VerificationMetricsCollector
 ) {
   @Autowired
   private lateinit var applicationContext: ApplicationContext
@@ -7,10 +7,14 @@ package org.jetbrains.plugins.verifier.service.server.configuration
 import com.jetbrains.plugin.structure.base.utils.createDir
 import com.jetbrains.plugin.structure.base.utils.deleteLogged
 import com.jetbrains.plugin.structure.base.utils.rethrowIfInterrupted
+import com.jetbrains.plugin.structure.classes.resolvers.JarFileIndexCache
+import com.jetbrains.plugin.structure.classes.resolvers.JarFileResolver
 import com.jetbrains.plugin.structure.intellij.version.IdeVersion
 import com.jetbrains.pluginverifier.ide.IdeDescriptorsCache
 import com.jetbrains.pluginverifier.ide.IdeFilesBank
 import com.jetbrains.pluginverifier.ide.repositories.IdeRepository
+import com.jetbrains.pluginverifier.metrics.VerificationMetricsCollector
+import com.jetbrains.pluginverifier.plugin.ContentAddressedPluginJarsStorage
 import com.jetbrains.pluginverifier.plugin.PluginDetailsCache
 import com.jetbrains.pluginverifier.plugin.PluginDetailsProviderImpl
 import com.jetbrains.pluginverifier.plugin.PluginFilesBank
@@ -26,6 +30,7 @@ import org.jetbrains.plugins.verifier.service.service.features.FeatureServicePro
 import org.jetbrains.plugins.verifier.service.service.ide.AvailableIdeProtocol
 import org.jetbrains.plugins.verifier.service.service.ide.AvailableIdeService
 import org.jetbrains.plugins.verifier.service.service.verifier.VerificationResultFilter
+import org.jetbrains.plugins.verifier.service.service.verifier.VerificationResultStore
 import org.jetbrains.plugins.verifier.service.service.verifier.VerifierService
 import org.jetbrains.plugins.verifier.service.service.verifier.VerifierServiceProtocol
 import org.jetbrains.plugins.verifier.service.setting.DiskUsageDistributionSetting
@@ -37,6 +42,7 @@ import org.springframework.context.annotation.Bean
 import org.springframework.context.annotation.Configuration
 import java.nio.file.Path
 import java.nio.file.Paths
+import java.time.Duration
 
 @Configuration
 class ServerContextConfiguration(
@@ -59,7 +65,8 @@ class ServerContextConfiguration(
     featureServiceProtocol: FeatureServiceProtocol,
     @Value("\${verifier.service.jdk.8.dir}") defaultJdkPath: Path,
     @Value("\${verifier.service.home.directory}") applicationHomeDir: String,
-    @Value("\${verifier.service.clear.corrupted.database}") clearDatabaseOnCorruption: Boolean
+    @Value("\${verifier.service.clear.corrupted.database}") clearDatabaseOnCorruption: Boolean,
+    @Value("\${verifier.service.verification.results.lifetime.hours}") verificationResultsLifetimeHours: Long
   ): ServerContext {
     LOG.info("Server is ready to start")
 
@@ -68,20 +75,38 @@ class ServerContextConfiguration(
     val loadedPluginsDir = applicationHomeDirPath.resolve("loaded-plugins").createDir()
     val extractedPluginsDir = applicationHomeDirPath.resolve("extracted-plugins").createDir()
     val ideFilesDir = applicationHomeDirPath.resolve("ides").createDir()
+    val jarIndexesDir = applicationHomeDirPath.resolve("jar-indexes").createDir()
+    val sharedPluginJarsDir = applicationHomeDirPath.resolve("shared-plugin-jars").createDir()
+    val verificationResultsDir = applicationHomeDirPath.resolve("verification-results").createDir()
 
     val pluginDownloadDirSpaceSetting = getPluginDownloadDirDiskSpaceSetting()
 
-    val pluginDetailsProvider = PluginDetailsProviderImpl(extractedPluginsDir)
+    val pluginJarsStorage = ContentAddressedPluginJarsStorage(sharedPluginJarsDir, getSharedPluginJarsDirDiskSpaceSetting())
+    val verificationMetrics = VerificationMetricsCollector()
+    val pluginDetailsProvider = PluginDetailsProviderImpl(extractedPluginsDir, pluginJarsStorage, verificationMetrics)
     val pluginFilesBank = PluginFilesBank.create(pluginRepository, loadedPluginsDir, pluginDownloadDirSpaceSetting)
-    val pluginDetailsCache = PluginDetailsCache(PLUGIN_DETAILS_CACHE_SIZE, pluginFilesBank, pluginDetailsProvider)
+    val pluginDetailsCache = PluginDetailsCache(PLUGIN_DETAILS_CACHE_SIZE, pluginFilesBank, pluginDetailsProvider, verificationMetrics)
 
     val ideDownloadDirDiskSpaceSetting = getIdeDownloadDirDiskSpaceSetting()
     val serviceDAO = openServiceDAO(applicationHomeDirPath, clearDatabaseOnCorruption)
 
-    val ideFilesBank = IdeFilesBank(ideFilesDir, ideRepository, ideDownloadDirDiskSpaceSetting)
-    val ideDescriptorsCache = IdeDescriptorsCache(IDE_DESCRIPTORS_CACHE_SIZE, ideFilesBank, defaultJdkPath)
+    val jarIndexCache = JarFileIndexCache(jarIndexesDir)
+    val ideFilesBank = IdeFilesBank(ideFilesDir, ideRepository, ideDownloadDirDiskSpaceSetting, jarIndexCache)
+    val ideDescriptorsCache = IdeDescriptorsCache(
+      IDE_DESCRIPTORS_CACHE_SIZE,
+      ideFilesBank,
+      defaultJdkPath,
+      jarIndexCache,
+      JarFileResolver.Backend.ZIP_FILE
+    )
 
     val verificationResultsFilter = VerificationResultFilter()
+    val verificationResultStore = VerificationResultStore(
+      verificationResultsDir,
+      getVerificationResultsDirDiskSpaceSetting(),
+      buildProperties.version ?: "dev",
+      Duration.ofHours(verificationResultsLifetimeHours)
+    )
 
     return ServerContext(
       buildProperties.version,
@@ -91,7 +116,9 @@ class ServerContextConfiguration(
       serviceDAO,
       ideDescriptorsCache,
       pluginDetailsCache,
-      verificationResultsFilter
+      verificationResultsFilter,
+      verificationResultStore,
+      verificationMetrics
     )
   }
 
@@ -113,6 +140,7 @@ class ServerContextConfiguration(
         pluginDetailsCache,
         ideDescriptorsCache,
         verificationResultsFilter,
+        verificationResultStore,
         pluginRepository,
         serviceDAO,
         IdeVersion.createIdeVersion(verifierMinIdeVersion),
@@ -206,4 +234,10 @@ class ServerContextConfiguration(
 
   private fun getPluginDownloadDirDiskSpaceSetting() =
     DiskSpaceSetting(DiskUsageDistributionSetting.PLUGIN_DOWNLOAD_DIR.getIntendedSpace(maxDiskSpaceUsage))
+
+  private fun getSharedPluginJarsDirDiskSpaceSetting() =
+    DiskSpaceSetting(DiskUsageDistributionSetting.SHARED_PLUGIN_JARS_DIR.getIntendedSpace(maxDiskSpaceUsage))
+
+  private fun getVerificationResultsDirDiskSpaceSetting() =
+    DiskSpaceSetting(DiskUsageDistributionSetting.VERIFICATION_RESULTS_DIR.getIntendedSpace(maxDiskSpaceUsage))
 }
\ No newline at end of file
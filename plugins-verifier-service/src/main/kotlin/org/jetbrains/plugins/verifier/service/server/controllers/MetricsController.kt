@@ -0,0 +1,26 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package org.jetbrains.plugins.verifier.service.server.controllers
+
+import org.jetbrains.plugins.verifier.service.server.ServerContext
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.http.MediaType
+import org.springframework.web.bind.annotation.GetMapping
+import org.springframework.web.bind.annotation.RestController
+
+/**
+ * Exposes metrics of verifications performed by the service in the Prometheus text format and as JSON.
+ */
+@RestController
+class MetricsController {
+  @Autowired
+  private lateinit var serverContext: ServerContext
+
+  @GetMapping("/metrics", produces = ["text/plain; version=0.0.4"])
+  fun getPrometheusMetrics() = serverContext.verificationMetrics.toPrometheusText()
+
+  @GetMapping("/metrics.json", produces = [MediaType.APPLICATION_JSON_VALUE])
+  fun getJsonMetrics() = serverContext.verificationMetrics.toJson()
+}
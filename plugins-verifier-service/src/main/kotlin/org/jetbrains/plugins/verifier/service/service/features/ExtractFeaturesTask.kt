@@ -89,7 +89,7 @@ class ExtractFeaturesTask(
             Result(
               updateInfo,
               Result.ResultType.EXTRACTED,
-              FeaturesExtractor.extractFeatures(ideDescriptor.ide, ideDescriptor.ideResolver, pluginDetails.idePlugin)
+              FeaturesExtractor.extractFeatures(ideDescriptor.ideResolver, ideDescriptor.bundledPluginsResolver, pluginDetails.idePlugin)
             )
           }
           is PluginDetailsCache.Result.FileNotFound -> {
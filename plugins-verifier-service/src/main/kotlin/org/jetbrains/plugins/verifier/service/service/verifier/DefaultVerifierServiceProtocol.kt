@@ -7,7 +7,6 @@ package org.jetbrains.plugins.verifier.service.service.verifier
 import com.google.gson.Gson
 import com.google.gson.annotations.SerializedName
 import com.jetbrains.plugin.structure.intellij.version.IdeVersion
-import com.jetbrains.pluginverifier.PluginVerificationResult
 import com.jetbrains.pluginverifier.ide.repositories.IdeRepository
 import com.jetbrains.pluginverifier.misc.createOkHttpClient
 import com.jetbrains.pluginverifier.network.executeSuccessfully
@@ -56,9 +55,7 @@ class DefaultVerifierServiceProtocol(
     }
   }
 
-  override fun sendVerificationResult(scheduledVerification: ScheduledVerification, verificationResult: PluginVerificationResult) {
-    val verificationResultData = verificationResult.prepareResponse(scheduledVerification)
-
+  override fun sendVerificationResult(scheduledVerification: ScheduledVerification, verificationResultData: FullVerificationResultDto) {
     val ideVersion = scheduledVerification.availableIde.version.asString()
     val updateId = scheduledVerification.updateInfo.updateId
 
@@ -66,7 +63,7 @@ class DefaultVerifierServiceProtocol(
       authorizationToken,
       updateId,
       ideVersion.toRequestBody(stringMediaType),
-      verificationResult.verificationVerdict.toRequestBody(stringMediaType),
+      verificationResultData.verificationVerdict.toRequestBody(stringMediaType),
       verificationResultData.resultType.name.toRequestBody(stringMediaType)
     ).executeSuccessfully()
 
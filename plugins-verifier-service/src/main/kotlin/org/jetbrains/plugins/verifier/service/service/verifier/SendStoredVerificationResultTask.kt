@@ -0,0 +1,23 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package org.jetbrains.plugins.verifier.service.service.verifier
+
+import org.jetbrains.plugins.verifier.service.tasks.ProgressIndicator
+import org.jetbrains.plugins.verifier.service.tasks.Task
+
+/**
+ * Task that sends the [stored result] [VerificationResultStore] of [scheduledVerification]
+ * instead of performing the verification again.
+ */
+class SendStoredVerificationResultTask(
+  private val scheduledVerification: ScheduledVerification,
+  private val verificationResultData: FullVerificationResultDto,
+  private val verifierServiceProtocol: VerifierServiceProtocol
+) : Task<Unit>("Send stored result of $scheduledVerification", "SendStoredVerificationResult") {
+
+  override fun execute(progress: ProgressIndicator) {
+    verifierServiceProtocol.sendVerificationResult(scheduledVerification, verificationResultData)
+  }
+}
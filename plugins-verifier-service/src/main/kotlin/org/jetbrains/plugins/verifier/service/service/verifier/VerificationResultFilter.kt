@@ -94,6 +94,12 @@ class VerificationResultFilter {
     return triedEnough
   }
 
+  /**
+   * Returns `true` if the [verificationResult] is final and would be the same if the verification was repeated,
+   * that is, the plugin has been downloaded and verified without sporadic failures.
+   */
+  fun isFinalVerificationResult(verificationResult: PluginVerificationResult) = getFailureReason(verificationResult) == null
+
   private fun getFailureReason(verificationResult: PluginVerificationResult): FailureReason? = when (verificationResult) {
     is PluginVerificationResult.NotFound -> {
       FailureReason(verificationResult.notFoundReason, true)
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2000-2020 JetBrains s.r.o. and other contributors. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+ */
+
+package org.jetbrains.plugins.verifier.service.service.verifier
+
+import com.google.gson.Gson
+import com.jetbrains.plugin.structure.base.utils.*
+import com.jetbrains.pluginverifier.filtering.IgnoreCondition
+import com.jetbrains.pluginverifier.repository.cleanup.DiskSpaceSetting
+import com.jetbrains.pluginverifier.repository.cleanup.LruFileSizeSweepPolicy
+import com.jetbrains.pluginverifier.repository.files.FileRepository
+import com.jetbrains.pluginverifier.repository.files.FileRepositoryResult
+import com.jetbrains.pluginverifier.repository.provider.ProvideResult
+import com.jetbrains.pluginverifier.repository.provider.ResourceProvider
+import org.slf4j.LoggerFactory
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+import java.time.Duration
+import java.time.Instant
+import java.util.zip.GZIPInputStream
+import java.util.zip.GZIPOutputStream
+
+/**
+ * On-disk storage of verification results prepared for the Marketplace,
+ * so that verifications repeated after restarts of the service or failed uploads are not performed again.
+ *
+ * A result is identified by the plugin update, the IDE version, the [verifierVersion]
+ * and the ignored problems conditions that the verification was performed with.
+ * Results are stored in [storageDirectory] as gzipped JSON files. The least recently used results
+ * are removed when the storage exceeds [diskSpaceSetting].
+ *
+ * Results also depend on versions of the plugin's dependencies resolved from the Marketplace,
+ * which are not known before the verification, so results stored more than [resultLifetime] ago
+ * are not returned and are removed.
+ */
+class VerificationResultStore(
+  private val storageDirectory: Path,
+  diskSpaceSetting: DiskSpaceSetting,
+  private val verifierVersion: String,
+  private val resultLifetime: Duration = Duration.ofDays(1)
+) {
+
+  private companion object {
+    private val LOG = LoggerFactory.getLogger(VerificationResultStore::class.java)
+
+    private const val RESULT_EXTENSION = "gz"
+  }
+
+  private val json = Gson()
+
+  private val fileRepository = FileRepository(
+    StoredResultProvider(),
+    LruFileSizeSweepPolicy(diskSpaceSetting),
+    "verification-results"
+  )
+
+  init {
+    storageDirectory.createDir()
+    for (file in storageDirectory.listFiles()) {
+      if (file.extension == RESULT_EXTENSION) {
+        fileRepository.add(file.nameWithoutExtension, file)
+      } else {
+        file.deleteLogged()
+      }
+    }
+  }
+
+  /**
+   * Returns the stored result of [scheduledVerification] performed with [ignoreConditions],
+   * if any and if it is not older than [resultLifetime].
+   */
+  fun getResult(scheduledVerification: ScheduledVerification, ignoreConditions: List<IgnoreCondition>): FullVerificationResultDto? {
+    val key = getKey(scheduledVerification, ignoreConditions)
+    if (!fileRepository.has(key)) {
+      return null
+    }
+    val result = fileRepository.getFile(key)
+    if (result !is FileRepositoryResult.Found) {
+      return null
+    }
+    val storedResult = result.lockedFile.use { fileLock ->
+      if (isExpired(fileLock.file)) {
+        null
+      } else {
+        readResult(fileLock.file, scheduledVerification)
+      }
+    }
+    if (storedResult == null) {
+      fileRepository.remove(key)
+    }
+    return storedResult
+  }
+
+  private fun isExpired(resultFile: Path): Boolean =
+    try {
+      Files.getLastModifiedTime(resultFile).toInstant().plus(resultLifetime).isBefore(Instant.now())
+    } catch (e: Exception) {
+      e.rethrowIfInterrupted()
+      true
+    }
+
+  private fun readResult(resultFile: Path, scheduledVerification: ScheduledVerification): FullVerificationResultDto? =
+    try {
+      GZIPInputStream(Files.newInputStream(resultFile)).reader().use {
+        json.fromJson(it, FullVerificationResultDto::class.java)
+      }
+    } catch (e: Exception) {
+      e.rethrowIfInterrupted()
+      LOG.warn("Unable to read stored verification result of $scheduledVerification", e)
+      null
+    }
+
+  fun putResult(
+    scheduledVerification: ScheduledVerification,
+    ignoreConditions: List<IgnoreCondition>,
+    verificationResult: FullVerificationResultDto
+  ) {
+    val key = getKey(scheduledVerification, ignoreConditions)
+    if (fileRepository.has(key)) {
+      return
+    }
+    val resultFile = storageDirectory.resolve("$key.$RESULT_EXTENSION")
+    val tempFile = Files.createTempFile(storageDirectory, key, ".tmp")
+    try {
+      GZIPOutputStream(Files.newOutputStream(tempFile)).writer().use {
+        json.toJson(verificationResult, it)
+      }
+      Files.move(tempFile, resultFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING)
+      fileRepository.add(key, resultFile)
+    } catch (e: Exception) {
+      e.rethrowIfInterrupted()
+      LOG.warn("Unable to store verification result of $scheduledVerification", e)
+    } finally {
+      tempFile.deleteQuietly()
+    }
+  }
+
+  private fun getKey(scheduledVerification: ScheduledVerification, ignoreConditions: List<IgnoreCondition>): String {
+    val keyParts = listOf(
+      verifierVersion,
+      scheduledVerification.updateInfo.updateId.toString(),
+      scheduledVerification.availableIde.version.asString()
+    ) + ignoreConditions.map { it.serializeCondition() }.sorted()
+    val digest = MessageDigest.getInstance("SHA-256").digest(keyParts.joinToString("\u0000").toByteArray())
+    return digest.joinToString("") { String.format("%02x", it) }
+  }
+
+  private inner class StoredResultProvider : ResourceProvider<String, Path> {
+    override fun provide(key: String): ProvideResult<Path> {
+      val resultFile = storageDirectory.resolve("$key.$RESULT_EXTENSION")
+      if (resultFile.exists()) {
+        return ProvideResult.Provided(resultFile)
+      }
+      return ProvideResult.NotFound("No stored verification result $key")
+    }
+  }
+}
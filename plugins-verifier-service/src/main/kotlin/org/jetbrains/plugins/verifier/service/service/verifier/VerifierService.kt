@@ -8,6 +8,7 @@ import com.jetbrains.plugin.structure.base.utils.pluralizeWithNumber
 import com.jetbrains.plugin.structure.base.utils.rethrowIfInterrupted
 import com.jetbrains.plugin.structure.intellij.version.IdeVersion
 import com.jetbrains.pluginverifier.PluginVerificationResult
+import com.jetbrains.pluginverifier.filtering.IgnoreCondition
 import com.jetbrains.pluginverifier.filtering.IgnoredProblemsFilter
 import com.jetbrains.pluginverifier.ide.IdeDescriptorsCache
 import com.jetbrains.pluginverifier.network.ServerUnavailable503Exception
@@ -28,6 +29,9 @@ import java.util.concurrent.TimeUnit
  * This service periodically accesses the plugin repository, fetches plugins which should be verified,
  * and sends the verification reports.
  *
+ * Final verification results are kept in [verificationResultStore], so verifications scheduled again,
+ * for example after a restart of the service or a failed upload, send the stored results without verifying the plugin.
+ *
  * [Plugin verifier integration with the Plugins Repository](https://confluence.jetbrains.com/display/PLREP/plugin-verifier+integration+with+the+plugins.jetbrains.com)
  */
 class VerifierService(
@@ -36,6 +40,7 @@ class VerifierService(
   private val pluginDetailsCache: PluginDetailsCache,
   private val ideDescriptorsCache: IdeDescriptorsCache,
   private val verificationResultsFilter: VerificationResultFilter,
+  private val verificationResultStore: VerificationResultStore,
   private val pluginRepository: PluginRepository,
   private val serviceDAO: ServiceDAO,
   private val minIdeVersion: IdeVersion,
@@ -80,6 +85,12 @@ class VerifierService(
     lastVerifiedDate[scheduledVerification] = now
 
     val ignoreConditions = serviceDAO.ignoreConditions.toList()
+    val storedResultData = verificationResultStore.getResult(scheduledVerification, ignoreConditions)
+    if (storedResultData != null) {
+      scheduleSendingStoredResult(scheduledVerification, storedResultData)
+      return
+    }
+
     val ignoredProblemsFilter = IgnoredProblemsFilter(ignoreConditions)
     val ignoreProblemsFilters = listOf(ignoredProblemsFilter)
 
@@ -93,7 +104,7 @@ class VerifierService(
 
     val taskDescriptor = taskManager.enqueue(
       task,
-      { taskResult, taskDescriptor -> taskResult.onSuccess(taskDescriptor, scheduledVerification) },
+      { taskResult, taskDescriptor -> taskResult.onSuccess(taskDescriptor, scheduledVerification, ignoreConditions) },
       { error, _ -> onError(scheduledVerification, error) },
       { onCompletion(scheduledVerification) }
     )
@@ -101,6 +112,18 @@ class VerifierService(
     scheduledVerifications[scheduledVerification] = taskDescriptor
   }
 
+  private fun scheduleSendingStoredResult(scheduledVerification: ScheduledVerification, storedResultData: FullVerificationResultDto) {
+    val task = SendStoredVerificationResultTask(scheduledVerification, storedResultData, verifierServiceProtocol)
+    val taskDescriptor = taskManager.enqueue(
+      task,
+      { _, _ -> logger.info("Stored verification result has been successfully sent for $scheduledVerification") },
+      { error, _ -> onSendingError(scheduledVerification, error) },
+      { onCompletion(scheduledVerification) }
+    )
+    logger.info("Schedule sending of the stored verification result of $scheduledVerification with task #${taskDescriptor.taskId}")
+    scheduledVerifications[scheduledVerification] = taskDescriptor
+  }
+
   @Synchronized
   private fun onCompletion(scheduledVerification: ScheduledVerification) {
     scheduledVerifications.remove(scheduledVerification)
@@ -127,26 +150,40 @@ class VerifierService(
   }
 
   //Do not synchronize: results sending is performed from background threads.
-  private fun PluginVerificationResult.onSuccess(taskDescriptor: TaskDescriptor, scheduledVerification: ScheduledVerification) {
+  private fun PluginVerificationResult.onSuccess(
+    taskDescriptor: TaskDescriptor,
+    scheduledVerification: ScheduledVerification,
+    ignoreConditions: List<IgnoreCondition>
+  ) {
     logger.info("Finished verification $scheduledVerification: $verificationVerdict")
     if (verificationResultsFilter.shouldSendVerificationResult(this, taskDescriptor.endTime!!, scheduledVerification)) {
       try {
-        verifierServiceProtocol.sendVerificationResult(scheduledVerification, this)
+        val verificationResultData = prepareResponse(scheduledVerification)
+        if (verificationResultsFilter.isFinalVerificationResult(this)) {
+          verificationResultStore.putResult(scheduledVerification, ignoreConditions, verificationResultData)
+        }
+        verifierServiceProtocol.sendVerificationResult(scheduledVerification, verificationResultData)
         logger.info("Verification result has been successfully sent for $scheduledVerification")
-      } catch (e: ServerUnavailable503Exception) {
-        logger.info(
-          "Marketplace $pluginRepository is currently unavailable (HTTP 503). " +
-            "Stop all the scheduled verification tasks."
-        )
-        pauseVerification()
       } catch (e: Exception) {
-        e.rethrowIfInterrupted()
-        logger.error("Unable to send verification result for $plugin", e)
+        onSendingError(scheduledVerification, e)
       }
     } else {
       logger.info("Verification result for $plugin against $verificationTarget has been ignored")
     }
   }
 
+  private fun onSendingError(scheduledVerification: ScheduledVerification, error: Throwable) {
+    if (error is ServerUnavailable503Exception) {
+      logger.info(
+        "Marketplace $pluginRepository is currently unavailable (HTTP 503). " +
+          "Stop all the scheduled verification tasks."
+      )
+      pauseVerification()
+    } else {
+      error.rethrowIfInterrupted()
+      logger.error("Unable to send verification result for $scheduledVerification", error)
+    }
+  }
+
   override fun onStop() = Unit
 }
\ No newline at end of file
@@ -4,8 +4,6 @@
 
 package org.jetbrains.plugins.verifier.service.service.verifier
 
-import com.jetbrains.pluginverifier.PluginVerificationResult
-
 /**
  * Protocol used to communicate with the Marketplace:
  * 1) Request scheduled verifications: [requestScheduledVerifications].
@@ -15,6 +13,6 @@ interface VerifierServiceProtocol {
 
   fun requestScheduledVerifications(): List<ScheduledVerification>
 
-  fun sendVerificationResult(scheduledVerification: ScheduledVerification, verificationResult: PluginVerificationResult)
+  fun sendVerificationResult(scheduledVerification: ScheduledVerification, verificationResultData: FullVerificationResultDto)
 
 }
\ No newline at end of file
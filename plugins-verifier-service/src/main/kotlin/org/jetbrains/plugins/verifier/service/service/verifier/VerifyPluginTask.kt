@@ -59,7 +59,8 @@ class VerifyPluginTask(
     val classResolverProvider = DefaultClassResolverProvider(
       dependencyFinder,
       ideDescriptor,
-      DefaultPackageFilter(emptyList())
+      DefaultPackageFilter(emptyList()),
+      pluginDetailsCache.metrics
     )
     val verificationDescriptor = PluginVerificationDescriptor.IDE(ideDescriptor, classResolverProvider, scheduledVerification.updateInfo)
     return PluginVerifier(
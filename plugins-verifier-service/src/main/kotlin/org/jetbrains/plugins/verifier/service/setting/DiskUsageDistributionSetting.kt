@@ -12,13 +12,17 @@ import com.jetbrains.pluginverifier.repository.cleanup.SpaceAmount
  *
  * Currently, the space is distributed as follows:
  * - 40% for the downloaded IDEs,
- * - 40% for the downloaded plugins,
- * - 20% for other needs, such as temp files.
+ * - 35% for the downloaded plugins,
+ * - 5% for the library jars shared by extracted plugins,
+ * - 2% for the stored verification results,
+ * - 18% for other needs, such as temp files.
  */
 enum class DiskUsageDistributionSetting(val proportion: Double) {
   IDE_DOWNLOAD_DIR(0.4),
-  PLUGIN_DOWNLOAD_DIR(0.4),
-  OTHER_NEEDS(0.2);
+  PLUGIN_DOWNLOAD_DIR(0.35),
+  SHARED_PLUGIN_JARS_DIR(0.05),
+  VERIFICATION_RESULTS_DIR(0.02),
+  OTHER_NEEDS(0.18);
 
   fun getIntendedSpace(maximumDiskUsage: SpaceAmount) = maximumDiskUsage * proportion
 
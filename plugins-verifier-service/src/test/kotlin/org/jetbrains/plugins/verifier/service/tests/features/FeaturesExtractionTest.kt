@@ -0,0 +1,218 @@
+package org.jetbrains.plugins.verifier.service.tests.features
+
+import com.jetbrains.intellij.feature.extractor.ExtensionPoint
+import com.jetbrains.intellij.feature.extractor.ExtensionPointFeatures
+import com.jetbrains.intellij.feature.extractor.FeaturesExtractor
+import com.jetbrains.plugin.structure.base.plugin.PluginCreationSuccess
+import com.jetbrains.plugin.structure.base.utils.contentBuilder.buildDirectory
+import com.jetbrains.plugin.structure.base.utils.contentBuilder.buildZipFile
+import com.jetbrains.plugin.structure.classes.resolvers.EmptyResolver
+import com.jetbrains.plugin.structure.ide.IdeManager
+import com.jetbrains.plugin.structure.ide.classes.IdeResolverCreator
+import com.jetbrains.plugin.structure.intellij.plugin.IdePlugin
+import com.jetbrains.plugin.structure.intellij.plugin.IdePluginManager
+import com.jetbrains.pluginverifier.ide.IdeDescriptor
+import com.jetbrains.pluginverifier.jdk.JdkDescriptor
+import com.jetbrains.pluginverifier.jdk.JdkVersion
+import org.junit.Assert.assertEquals
+import org.junit.Assert.fail
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Opcodes
+
+class FeaturesExtractionTest {
+
+  @Rule
+  @JvmField
+  val temporaryFolder = TemporaryFolder()
+
+  /**
+   * Bundled plugin
+   * ```
+   *   public class bundled.BundledFileType implements FileType { public String getDefaultExtension() { return "bnd"; } }
+   * ```
+   *
+   * Plugin
+   * ```
+   *   public class plugin.PluginFileTypeFactory extends FileTypeFactory {
+   *     public void createFileTypes(FileTypeConsumer consumer) { consumer.consume(new bundled.BundledFileType()); }
+   *   }
+   * ```
+   */
+  @Test
+  fun `features extracted with cached resolver of bundled plugins are the same as with resolver created per call`() {
+    val ideDescriptor = createIdeDescriptor()
+    ideDescriptor.use {
+      val plugin = buildPlugin()
+      val expectedFeatures = listOf(ExtensionPointFeatures(ExtensionPoint.FILE_TYPE_FACTORY, listOf("*.bnd")))
+
+      val perCallFeatures = FeaturesExtractor.extractFeatures(ideDescriptor.ide, ideDescriptor.ideResolver, plugin)
+      assertEquals(expectedFeatures, perCallFeatures)
+
+      //The cached resolver must stay open for subsequent plugins.
+      repeat(2) {
+        val cachedFeatures = FeaturesExtractor.extractFeatures(ideDescriptor.ideResolver, ideDescriptor.bundledPluginsResolver, plugin)
+        assertEquals(perCallFeatures, cachedFeatures)
+      }
+    }
+  }
+
+  @Test
+  fun `closing of IDE descriptor closes lazily opened bundled plugins`() {
+    val ideDescriptor = createIdeDescriptor()
+    val bundledPluginsResolver = ideDescriptor.use {
+      val resolver = ideDescriptor.bundledPluginsResolver
+      assertEquals(setOf("bundled/BundledFileType"), resolver.allClasses)
+      resolver.resolveClass("bundled/BundledFileType")
+      resolver
+    }
+    try {
+      bundledPluginsResolver.resolveClass("bundled/BundledFileType")
+      fail("Resolver of bundled plugins must be closed along with the IDE descriptor")
+    } catch (e: IllegalStateException) {
+      //Expected: the jar of the bundled plugin is closed.
+    }
+  }
+
+  private fun createIdeDescriptor(): IdeDescriptor {
+    val ideDirectory = buildDirectory(temporaryFolder.newFolder().toPath()) {
+      file("build.txt", "IU-201.1")
+      dir("lib") {
+        zip("idea.jar") {
+          dir("META-INF") {
+            file("plugin.xml") {
+              """
+                <idea-plugin>
+                  <id>com.intellij</id>
+                  <name>IDEA CORE</name>
+                  <version>1.0</version>
+                  <module value="com.intellij.modules.all"/>
+                </idea-plugin>
+                """.trimIndent()
+            }
+          }
+        }
+      }
+      dir("plugins") {
+        dir("bundled") {
+          dir("lib") {
+            zip("bundled.jar") {
+              dir("bundled") {
+                file("BundledFileType.class", createBundledFileType())
+              }
+              dir("META-INF") {
+                file("plugin.xml") {
+                  """
+                    <idea-plugin>
+                      <id>bundled</id>
+                      <name>Bundled</name>
+                      <version>1.0</version>
+                    </idea-plugin>
+                    """.trimIndent()
+                }
+              }
+            }
+          }
+        }
+      }
+    }
+    val ide = IdeManager.createManager().createIde(ideDirectory)
+    val ideResolver = IdeResolverCreator.createIdeResolver(ide)
+    val jdkDescriptor = JdkDescriptor(temporaryFolder.root.toPath(), EmptyResolver, JdkVersion("1.8", null))
+    return IdeDescriptor(ide, ideResolver, jdkDescriptor, null)
+  }
+
+  private fun buildPlugin(): IdePlugin {
+    val pluginFile = buildZipFile(temporaryFolder.newFile("plugin.jar").toPath()) {
+      dir("plugin") {
+        file("PluginFileTypeFactory.class", createPluginFileTypeFactory())
+      }
+      dir("META-INF") {
+        file("plugin.xml") {
+          """
+            <idea-plugin>
+              <id>someId</id>
+              <name>someName</name>
+              <version>someVersion</version>
+              ""<vendor email="vendor.com" url="url">vendor</vendor>""
+              <description>this description is looooooooooong enough</description>
+              <change-notes>these change-notes are looooooooooong enough</change-notes>
+              <idea-version since-build="131.1"/>
+              <extensions defaultExtensionNs="com.intellij">
+                <fileTypeFactory implementation="plugin.PluginFileTypeFactory"/>
+              </extensions>
+            </idea-plugin>
+            """.trimIndent()
+        }
+      }
+    }
+    return (IdePluginManager.createManager().createPlugin(pluginFile) as PluginCreationSuccess).plugin
+  }
+
+  private fun createBundledFileType(): ByteArray {
+    val classWriter = ClassWriter(ClassWriter.COMPUTE_MAXS)
+    classWriter.visit(
+      Opcodes.V1_6,
+      Opcodes.ACC_PUBLIC,
+      "bundled/BundledFileType",
+      null,
+      "java/lang/Object",
+      arrayOf("com/intellij/openapi/fileTypes/FileType")
+    )
+    classWriter.visitDefaultConstructor()
+    with(classWriter.visitMethod(Opcodes.ACC_PUBLIC, "getDefaultExtension", "()Ljava/lang/String;", null, null)) {
+      visitCode()
+      visitLdcInsn("bnd")
+      visitInsn(Opcodes.ARETURN)
+      visitMaxs(0, 0)
+      visitEnd()
+    }
+    classWriter.visitEnd()
+    return classWriter.toByteArray()
+  }
+
+  private fun createPluginFileTypeFactory(): ByteArray {
+    val classWriter = ClassWriter(ClassWriter.COMPUTE_MAXS)
+    classWriter.visit(
+      Opcodes.V1_6,
+      Opcodes.ACC_PUBLIC,
+      "plugin/PluginFileTypeFactory",
+      null,
+      "com/intellij/openapi/fileTypes/FileTypeFactory",
+      null
+    )
+    classWriter.visitDefaultConstructor("com/intellij/openapi/fileTypes/FileTypeFactory")
+    with(classWriter.visitMethod(Opcodes.ACC_PUBLIC, "createFileTypes", "(Lcom/intellij/openapi/fileTypes/FileTypeConsumer;)V", null, null)) {
+      visitCode()
+      visitVarInsn(Opcodes.ALOAD, 1)
+      visitTypeInsn(Opcodes.NEW, "bundled/BundledFileType")
+      visitInsn(Opcodes.DUP)
+      visitMethodInsn(Opcodes.INVOKESPECIAL, "bundled/BundledFileType", "<init>", "()V", false)
+      visitMethodInsn(
+        Opcodes.INVOKEINTERFACE,
+        "com/intellij/openapi/fileTypes/FileTypeConsumer",
+        "consume",
+        "(Lcom/intellij/openapi/fileTypes/FileType;)V",
+        true
+      )
+      visitInsn(Opcodes.RETURN)
+      visitMaxs(0, 0)
+      visitEnd()
+    }
+    classWriter.visitEnd()
+    return classWriter.toByteArray()
+  }
+
+  private fun ClassWriter.visitDefaultConstructor(superName: String = "java/lang/Object") {
+    with(visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null)) {
+      visitCode()
+      visitVarInsn(Opcodes.ALOAD, 0)
+      visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false)
+      visitInsn(Opcodes.RETURN)
+      visitMaxs(0, 0)
+      visitEnd()
+    }
+  }
+}
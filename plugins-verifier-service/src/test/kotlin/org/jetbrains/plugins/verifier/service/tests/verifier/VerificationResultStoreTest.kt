@@ -0,0 +1,107 @@
+package org.jetbrains.plugins.verifier.service.tests.verifier
+
+import com.jetbrains.plugin.structure.ide.IntelliJPlatformProduct
+import com.jetbrains.plugin.structure.intellij.version.IdeVersion
+import com.jetbrains.pluginverifier.filtering.IgnoreCondition
+import com.jetbrains.pluginverifier.ide.AvailableIde
+import com.jetbrains.pluginverifier.repository.cleanup.DiskSpaceSetting
+import com.jetbrains.pluginverifier.repository.cleanup.SpaceAmount
+import com.jetbrains.pluginverifier.repository.repositories.marketplace.UpdateInfo
+import org.jetbrains.plugins.verifier.service.service.verifier.*
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.net.URL
+import java.nio.file.Files
+import java.nio.file.attribute.FileTime
+import java.time.Duration
+import java.time.Instant
+import java.time.LocalDate
+
+class VerificationResultStoreTest {
+
+  @JvmField
+  @Rule
+  val tempFolder = TemporaryFolder()
+
+  private val storageDirectory by lazy {
+    tempFolder.newFolder().toPath().resolve("verification-results")
+  }
+
+  private val diskSpaceSetting = DiskSpaceSetting(SpaceAmount.ofMegabytes(10))
+
+  private val scheduledVerification = createScheduledVerification(42, "IU-201.1")
+
+  private val ignoreConditions = listOf(IgnoreCondition.parseCondition("some.plugin:access to unresolved class org.Foo"))
+
+  private val verificationResultData = FullVerificationResultDto(
+    42,
+    AvailableIdeDto("IU-201.1", null, "IntelliJ IDEA"),
+    "1.8",
+    VerificationResultTypeDto.PROBLEMS,
+    "1 compatibility problem",
+    null,
+    compatibilityProblems = listOf(CompatibilityProblemDto("short", "full", "type"))
+  )
+
+  @Test
+  fun `stored result is returned after reopening the store`() {
+    VerificationResultStore(storageDirectory, diskSpaceSetting, "1.0")
+      .putResult(scheduledVerification, ignoreConditions, verificationResultData)
+
+    val reopenedStore = VerificationResultStore(storageDirectory, diskSpaceSetting, "1.0")
+    assertEquals(verificationResultData, reopenedStore.getResult(scheduledVerification, ignoreConditions))
+  }
+
+  @Test
+  fun `result is not returned for another verifier version, IDE or ignore conditions`() {
+    val store = VerificationResultStore(storageDirectory, diskSpaceSetting, "1.0")
+    store.putResult(scheduledVerification, ignoreConditions, verificationResultData)
+
+    assertNull(store.getResult(createScheduledVerification(42, "IU-201.2"), ignoreConditions))
+    assertNull(store.getResult(createScheduledVerification(43, "IU-201.1"), ignoreConditions))
+    assertNull(store.getResult(scheduledVerification, emptyList()))
+    assertNull(VerificationResultStore(storageDirectory, diskSpaceSetting, "1.1").getResult(scheduledVerification, ignoreConditions))
+  }
+
+  @Test
+  fun `expired result is not returned and is stored again`() {
+    val store = VerificationResultStore(storageDirectory, diskSpaceSetting, "1.0", Duration.ofHours(1))
+    store.putResult(scheduledVerification, ignoreConditions, verificationResultData)
+
+    val expiredTime = FileTime.from(Instant.now().minus(Duration.ofHours(2)))
+    Files.list(storageDirectory).use { files -> files.forEach { Files.setLastModifiedTime(it, expiredTime) } }
+    assertNull(store.getResult(scheduledVerification, ignoreConditions))
+    assertEquals(0L, Files.list(storageDirectory).use { it.count() })
+
+    store.putResult(scheduledVerification, ignoreConditions, verificationResultData)
+    assertEquals(verificationResultData, store.getResult(scheduledVerification, ignoreConditions))
+  }
+
+  private fun createScheduledVerification(updateId: Int, ideVersion: String): ScheduledVerification {
+    val updateInfo = UpdateInfo(
+      "some.plugin",
+      "Some Plugin",
+      "1.0",
+      null,
+      null,
+      "vendor",
+      null,
+      URL("https://plugins.jetbrains.com/plugin/download?updateId=$updateId"),
+      updateId,
+      URL("https://plugins.jetbrains.com/plugin/1"),
+      emptyList(),
+      1
+    )
+    val availableIde = AvailableIde(
+      IdeVersion.createIdeVersion(ideVersion),
+      null,
+      URL("https://unused.com"),
+      LocalDate.of(2020, 1, 1),
+      IntelliJPlatformProduct.IDEA
+    )
+    return ScheduledVerification(updateInfo, availableIde)
+  }
+}